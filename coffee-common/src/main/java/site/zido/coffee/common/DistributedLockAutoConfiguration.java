@@ -0,0 +1,51 @@
+package site.zido.coffee.common;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import site.zido.coffee.extra.lock.DistributedLockFactory;
+import site.zido.coffee.extra.lock.DistributedLockMetrics;
+import site.zido.coffee.extra.lock.MicrometerLockMetrics;
+
+/**
+ * 分布式锁自动配置，为{@link site.zido.coffee.extra.lock.EnableDistributedLock}提供锁工厂
+ * <p>
+ * 存在micrometer的{@link MeterRegistry}时自动输出锁指标
+ *
+ * @author zido
+ */
+@Configuration
+@AutoConfigureAfter(value = RedisAutoConfiguration.class,
+        name = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
+public class DistributedLockAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean(DistributedLockFactory.class)
+    @ConditionalOnBean(RedisConnectionFactory.class)
+    public DistributedLockFactory distributedLockFactory(RedisConnectionFactory connectionFactory,
+                                                         ObjectProvider<DistributedLockMetrics> metrics) {
+        DistributedLockFactory factory = new DistributedLockFactory();
+        factory.setRedisConnectionFactory(connectionFactory);
+        metrics.ifAvailable(factory::setMetrics);
+        return factory;
+    }
+
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    static class DistributedLockMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(DistributedLockMetrics.class)
+        @ConditionalOnBean(MeterRegistry.class)
+        public MicrometerLockMetrics distributedLockMetrics(MeterRegistry registry) {
+            return new MicrometerLockMetrics(registry);
+        }
+    }
+}
@@ -1,63 +1,372 @@
 package site.zido.coffee.common;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.util.StringUtils;
+import site.zido.coffee.extra.limiter.ApproximateRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.CircuitBreakerFrequencyLimiter;
+import site.zido.coffee.extra.limiter.CircuitBreakerRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.FrequencyLimiter;
+import site.zido.coffee.extra.limiter.GcraRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.LimiterCircuitBreaker;
+import site.zido.coffee.extra.limiter.LimiterFallbackPolicy;
+import site.zido.coffee.extra.limiter.LimiterKeyMetrics;
+import site.zido.coffee.extra.limiter.LimiterMetrics;
+import site.zido.coffee.extra.limiter.LocalFrequencyLimiter;
+import site.zido.coffee.extra.limiter.LocalGcraRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.LocalQuotaLimiter;
+import site.zido.coffee.extra.limiter.LocalSlidingWindowRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.LocalTokenBucketRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.MicrometerLimiterMetrics;
+import site.zido.coffee.extra.limiter.QuotaLimiter;
+import site.zido.coffee.extra.limiter.RateLimitAlgorithm;
 import site.zido.coffee.extra.limiter.RedisFrequencyLimiter;
+import site.zido.coffee.extra.limiter.RedisQuotaLimiter;
+import site.zido.coffee.extra.limiter.SlidingWindowRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.TieredFrequencyLimiter;
+import site.zido.coffee.extra.limiter.TieredRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.TokenBucketRateLimitAlgorithm;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+/**
+ * 限流自动配置，为{@link site.zido.coffee.extra.limiter.EnableLimiter}提供限流后端，
+ * 开启coffee.limiter.filter.enabled后注册{@link RateLimitFilter}；
+ * 存在micrometer的{@link MeterRegistry}时自动输出限流指标，开启coffee.limiter.endpoint.enabled后可以查看被限制最多的key
+ *
+ * @author zido
+ */
 @Configuration
+@AutoConfigureAfter(value = RedisAutoConfiguration.class,
+        name = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
 public class LimiterAutoConfiguration {
+    static final String DEFAULT_ENDPOINT_PATH = "/limiter/hot-keys";
+
     @Bean(name = "limiterExceptionHandler")
     @ConditionalOnMissingBean(name = "limiterExceptionHandler")
     public LimiterExceptionAdvice advice() {
         return new LimiterExceptionAdvice();
     }
 
-    @Bean(name = "limiterTemplate")
-    @ConditionalOnMissingBean(name = "limiterTemplate")
+    /**
+     * 基于redis的限流，集群内共享状态
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = "coffee.limiter", name = "store", havingValue = "redis", matchIfMissing = true)
     @ConditionalOnBean(RedisConnectionFactory.class)
-    public RedisTemplate<String, Long> template(RedisConnectionFactory connectionFactory) {
-        RedisTemplate<String, Long> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
-        template.setKeySerializer(new StringRedisSerializer(StandardCharsets.UTF_8));
-        template.setValueSerializer(new RedisSerializer<Long>() {
-
-            @Override
-            public byte[] serialize(Long value) throws SerializationException {
-                return ByteBuffer.allocate(Long.SIZE / Byte.SIZE).putLong(value).array();
-            }
-
-            @Override
-            public Long deserialize(byte[] bytes) throws SerializationException {
-                ByteBuffer buffer = ByteBuffer.allocate(8);
-                buffer.put(bytes, 0, bytes.length);
-                buffer.flip();
-                return buffer.getLong();
-            }
-        });
-        return template;
-    }
+    static class RedisLimiterConfiguration {
+        @Bean(name = "limiterTemplate")
+        @ConditionalOnMissingBean(name = "limiterTemplate")
+        @ConditionalOnBean(RedisConnectionFactory.class)
+        public RedisTemplate<String, Long> template(RedisConnectionFactory connectionFactory) {
+            RedisTemplate<String, Long> template = new RedisTemplate<>();
+            template.setConnectionFactory(connectionFactory);
+            template.setKeySerializer(new StringRedisSerializer(StandardCharsets.UTF_8));
+            template.setValueSerializer(new RedisSerializer<Long>() {
 
-    @Bean
-    public RedisFrequencyLimiter limiter(@Autowired LimiterProperties properties,
+                @Override
+                public byte[] serialize(Long value) throws SerializationException {
+                    return ByteBuffer.allocate(Long.SIZE / Byte.SIZE).putLong(value).array();
+                }
+
+                @Override
+                public Long deserialize(byte[] bytes) throws SerializationException {
+                    ByteBuffer buffer = ByteBuffer.allocate(8);
+                    buffer.put(bytes, 0, bytes.length);
+                    buffer.flip();
+                    return buffer.getLong();
+                }
+            });
+            return template;
+        }
+
+        /**
+         * redis不可用时快速失败，由后台线程探测恢复
+         */
+        @Bean(destroyMethod = "close")
+        @ConditionalOnMissingBean(LimiterCircuitBreaker.class)
+        @ConditionalOnProperty(prefix = "coffee.limiter.circuit-breaker", name = "enabled", havingValue = "true")
+        public LimiterCircuitBreaker limiterCircuitBreaker(LimiterProperties properties,
+                                                           RedisConnectionFactory connectionFactory) {
+            LimiterProperties.CircuitBreaker config = properties.getCircuitBreaker();
+            LimiterCircuitBreaker breaker = new LimiterCircuitBreaker(() -> {
+                RedisConnection connection = connectionFactory.getConnection();
+                try {
+                    return "PONG".equalsIgnoreCase(connection.ping());
+                } finally {
+                    connection.close();
+                }
+            });
+            breaker.setSlowCallThreshold(config.getSlowCallThreshold(), TimeUnit.MILLISECONDS);
+            breaker.setFailureRateThreshold(config.getFailureRateThreshold());
+            breaker.setMinimumCalls(config.getMinimumCalls());
+            breaker.setWindowMillis(config.getWindow());
+            breaker.setProbeIntervalMillis(config.getProbeInterval());
+            return breaker;
+        }
+
+        @Bean
+        public FrequencyLimiter limiter(@Autowired LimiterProperties properties,
+                                        @Autowired @Qualifier(value = "limiterTemplate") RedisTemplate<String, Long> template,
+                                        ObjectProvider<LimiterCircuitBreaker> breaker,
+                                        ObjectProvider<LimiterMetrics> metrics) {
+            FrequencyLimiter limiter;
+            if (StringUtils.hasLength(properties.getPrefix())) {
+                limiter = new RedisFrequencyLimiter(properties.getPrefix(), template);
+            } else {
+                limiter = new RedisFrequencyLimiter(template);
+            }
+            LimiterCircuitBreaker circuitBreaker = breaker.getIfAvailable();
+            if (circuitBreaker != null) {
+                CircuitBreakerFrequencyLimiter guarded = new CircuitBreakerFrequencyLimiter(limiter, circuitBreaker,
+                        properties.getCircuitBreaker().getPolicy());
+                metrics.ifAvailable(guarded::setMetrics);
+                limiter = guarded;
+            }
+            if (properties.getLocalCacheSize() > 0) {
+                return new TieredFrequencyLimiter(limiter, properties.getLocalCacheSize());
+            }
+            return limiter;
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(TokenBucketRateLimitAlgorithm.class)
+        public RateLimitAlgorithm tokenBucketRateLimitAlgorithm(@Autowired LimiterProperties properties,
+                                                                @Autowired @Qualifier(value = "limiterTemplate") RedisTemplate<String, Long> template,
+                                                                ObjectProvider<LimiterCircuitBreaker> breaker,
+                                                                ObjectProvider<LimiterMetrics> metrics) {
+            return tiered(guarded(new TokenBucketRateLimitAlgorithm(properties.getPrefix(), template),
+                    LocalTokenBucketRateLimitAlgorithm::new, properties, breaker, metrics), properties);
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(SlidingWindowRateLimitAlgorithm.class)
+        public RateLimitAlgorithm slidingWindowRateLimitAlgorithm(@Autowired LimiterProperties properties,
+                                                                  @Autowired @Qualifier(value = "limiterTemplate") RedisTemplate<String, Long> template,
+                                                                  ObjectProvider<LimiterCircuitBreaker> breaker,
+                                                                  ObjectProvider<LimiterMetrics> metrics) {
+            return tiered(guarded(new SlidingWindowRateLimitAlgorithm(properties.getPrefix(), template),
+                    LocalSlidingWindowRateLimitAlgorithm::new, properties, breaker, metrics), properties);
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(GcraRateLimitAlgorithm.class)
+        public RateLimitAlgorithm gcraRateLimitAlgorithm(@Autowired LimiterProperties properties,
+                                                         @Autowired @Qualifier(value = "limiterTemplate") RedisTemplate<String, Long> template,
+                                                         ObjectProvider<LimiterCircuitBreaker> breaker,
+                                                         ObjectProvider<LimiterMetrics> metrics) {
+            return tiered(guarded(new GcraRateLimitAlgorithm(properties.getPrefix(), template),
+                    LocalGcraRateLimitAlgorithm::new, properties, breaker, metrics), properties);
+        }
+
+        /**
+         * 本地计数、定期同步的近似限流，会启动一个后台同步线程，需要显式开启
+         */
+        @Bean(destroyMethod = "close")
+        @ConditionalOnMissingBean(ApproximateRateLimitAlgorithm.class)
+        @ConditionalOnProperty(prefix = "coffee.limiter.approximate", name = "enabled", havingValue = "true")
+        public ApproximateRateLimitAlgorithm approximateRateLimitAlgorithm(@Autowired LimiterProperties properties,
+                                                                           @Autowired @Qualifier(value = "limiterTemplate") RedisTemplate<String, Long> template) {
+            LimiterProperties.Approximate config = properties.getApproximate();
+            ApproximateRateLimitAlgorithm algorithm = new ApproximateRateLimitAlgorithm(properties.getPrefix(), template);
+            algorithm.setSyncIntervalMillis(config.getSyncInterval());
+            algorithm.setMaxErrorRatio(config.getMaxErrorRatio());
+            if (StringUtils.hasText(config.getInstanceId())) {
+                algorithm.setInstanceId(config.getInstanceId());
+            }
+            return algorithm;
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(QuotaLimiter.class)
+        public QuotaLimiter quotaLimiter(@Autowired LimiterProperties properties,
                                          @Autowired @Qualifier(value = "limiterTemplate") RedisTemplate<String, Long> template) {
-        if (StringUtils.hasLength(properties.getPrefix())) {
-            return new RedisFrequencyLimiter(properties.getPrefix(), template);
+            RedisQuotaLimiter limiter = new RedisQuotaLimiter(
+                    StringUtils.hasLength(properties.getPrefix()) ? properties.getPrefix() + "quota:" : null, template);
+            limiter.setRefreshInterval(properties.getQuota().getRefreshInterval());
+            if (StringUtils.hasText(properties.getQuota().getZone())) {
+                limiter.setZone(ZoneId.of(properties.getQuota().getZone()));
+            }
+            return limiter;
+        }
+
+        private static RateLimitAlgorithm guarded(RateLimitAlgorithm algorithm,
+                                                  Supplier<RateLimitAlgorithm> local,
+                                                  LimiterProperties properties,
+                                                  ObjectProvider<LimiterCircuitBreaker> breaker,
+                                                  ObjectProvider<LimiterMetrics> metrics) {
+            LimiterCircuitBreaker circuitBreaker = breaker.getIfAvailable();
+            if (circuitBreaker == null) {
+                return algorithm;
+            }
+            LimiterFallbackPolicy policy = properties.getCircuitBreaker().getPolicy();
+            CircuitBreakerRateLimitAlgorithm guarded = new CircuitBreakerRateLimitAlgorithm(algorithm, circuitBreaker,
+                    policy, policy == LimiterFallbackPolicy.LOCAL ? local.get() : null);
+            metrics.ifAvailable(guarded::setMetrics);
+            return guarded;
+        }
+
+        private static RateLimitAlgorithm tiered(RateLimitAlgorithm algorithm, LimiterProperties properties) {
+            if (properties.getLocalCacheSize() > 0) {
+                return new TieredRateLimitAlgorithm(algorithm, properties.getLocalCacheSize());
+            }
+            return algorithm;
+        }
+    }
+
+    /**
+     * 进程内限流，不依赖redis，适合单节点部署与测试
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = "coffee.limiter", name = "store", havingValue = "local")
+    static class LocalLimiterConfiguration {
+        @Bean
+        @ConditionalOnMissingBean(FrequencyLimiter.class)
+        public FrequencyLimiter limiter() {
+            return new LocalFrequencyLimiter();
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(QuotaLimiter.class)
+        public QuotaLimiter quotaLimiter(LimiterProperties properties) {
+            LocalQuotaLimiter limiter = new LocalQuotaLimiter();
+            if (StringUtils.hasText(properties.getQuota().getZone())) {
+                limiter.setZone(ZoneId.of(properties.getQuota().getZone()));
+            }
+            return limiter;
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(name = "tokenBucketRateLimitAlgorithm")
+        public RateLimitAlgorithm tokenBucketRateLimitAlgorithm() {
+            return new LocalTokenBucketRateLimitAlgorithm();
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(name = "slidingWindowRateLimitAlgorithm")
+        public RateLimitAlgorithm slidingWindowRateLimitAlgorithm() {
+            return new LocalSlidingWindowRateLimitAlgorithm();
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(name = "gcraRateLimitAlgorithm")
+        public RateLimitAlgorithm gcraRateLimitAlgorithm() {
+            return new LocalGcraRateLimitAlgorithm();
+        }
+    }
+
+    /**
+     * 过滤器级别的限流，在认证与handler映射之前执行
+     */
+    @Configuration
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @ConditionalOnProperty(prefix = "coffee.limiter.filter", name = "enabled", havingValue = "true")
+    static class RateLimitFilterConfiguration {
+        @Bean
+        @ConditionalOnMissingBean(name = "rateLimitFilter")
+        public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(LimiterProperties properties,
+                                                                       ObjectProvider<FrequencyLimiter> limiter,
+                                                                       ObjectProvider<RateLimitAlgorithm> algorithms,
+                                                                       ObjectProvider<LimiterMetrics> metrics,
+                                                                       ObjectProvider<SecurityProperties> security) {
+            LimiterProperties.Filter filter = properties.getFilter();
+            List<RateLimitRule> rules = new ArrayList<>(filter.getRules().size());
+            boolean principal = false;
+            for (Map.Entry<String, LimiterProperties.Rule> entry : filter.getRules().entrySet()) {
+                LimiterProperties.Rule rule = entry.getValue();
+                principal |= "principal".equalsIgnoreCase(rule.getKey().trim());
+                RateLimitRule.Builder builder = RateLimitRule.builder(entry.getKey())
+                        .patterns(rule.getPatterns().toArray(new String[0]))
+                        .keyExtractor(RateLimitKeyExtractor.parse(rule.getKey()))
+                        .timeout(rule.getTimeout(), rule.getUnit());
+                if (StringUtils.hasText(rule.getAlgorithm())) {
+                    builder.algorithm(rule.getAlgorithm(), rule.getRate(), rule.getBurst());
+                }
+                rules.add(builder.build());
+            }
+            RateLimitFilter rateLimitFilter = new RateLimitFilter(rules, limiter.getIfAvailable(),
+                    algorithms.orderedStream().collect(Collectors.toList()));
+            rateLimitFilter.setFailOpen(filter.isFailOpen());
+            metrics.ifAvailable(rateLimitFilter::setMetrics);
+            FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(rateLimitFilter);
+            Integer order = filter.getOrder();
+            if (order == null) {
+                //按登录用户限流时需要位于spring security之后才能取到用户，否则尽量靠前
+                if (principal) {
+                    SecurityProperties securityProperties = security.getIfAvailable();
+                    order = (securityProperties == null ? SecurityProperties.DEFAULT_FILTER_ORDER
+                            : securityProperties.getFilter().getOrder()) + 1;
+                } else {
+                    order = Ordered.HIGHEST_PRECEDENCE + 10;
+                }
+            }
+            registration.setOrder(order);
+            return registration;
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    static class LimiterMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(LimiterMetrics.class)
+        @ConditionalOnBean(MeterRegistry.class)
+        public MicrometerLimiterMetrics limiterMetrics(MeterRegistry registry) {
+            return new MicrometerLimiterMetrics(registry);
+        }
+    }
+
+    /**
+     * 查看被限制最多的key，需要一个{@link LimiterKeyMetrics}，没有micrometer时单独创建
+     */
+    @Configuration
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @ConditionalOnProperty(prefix = "coffee.limiter.endpoint", name = "enabled", havingValue = "true")
+    static class LimiterEndpointConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(value = LimiterMetrics.class, type = "io.micrometer.core.instrument.MeterRegistry")
+        public LimiterKeyMetrics limiterKeyMetrics() {
+            return new LimiterKeyMetrics();
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(LimiterMetricsController.class)
+        public LimiterMetricsController limiterMetricsController(LimiterKeyMetrics metrics) {
+            return new LimiterMetricsController(metrics);
         }
-        return new RedisFrequencyLimiter(template);
     }
 
     @Bean
@@ -66,8 +375,21 @@ public class LimiterAutoConfiguration {
         return new LimiterProperties();
     }
 
-    class LimiterProperties {
+    public static class LimiterProperties {
         private String prefix;
+        /**
+         * 限流状态的存储位置：redis(默认)或者local
+         */
+        private String store = "redis";
+        /**
+         * 本地缓存被拒绝key的最大数量，小于等于0时每次都访问redis
+         */
+        private int localCacheSize = 10000;
+        private Filter filter = new Filter();
+        private Endpoint endpoint = new Endpoint();
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+        private Quota quota = new Quota();
+        private Approximate approximate = new Approximate();
 
         public String getPrefix() {
             return prefix;
@@ -76,5 +398,361 @@ public class LimiterAutoConfiguration {
         public void setPrefix(String prefix) {
             this.prefix = prefix;
         }
+
+        public String getStore() {
+            return store;
+        }
+
+        public void setStore(String store) {
+            this.store = store;
+        }
+
+        public int getLocalCacheSize() {
+            return localCacheSize;
+        }
+
+        public void setLocalCacheSize(int localCacheSize) {
+            this.localCacheSize = localCacheSize;
+        }
+
+        public Filter getFilter() {
+            return filter;
+        }
+
+        public void setFilter(Filter filter) {
+            this.filter = filter;
+        }
+
+        public Endpoint getEndpoint() {
+            return endpoint;
+        }
+
+        public void setEndpoint(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public CircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+        }
+
+        public Quota getQuota() {
+            return quota;
+        }
+
+        public void setQuota(Quota quota) {
+            this.quota = quota;
+        }
+
+        public Approximate getApproximate() {
+            return approximate;
+        }
+
+        public void setApproximate(Approximate approximate) {
+            this.approximate = approximate;
+        }
+
+        /**
+         * 近似限流，只在redis存储下可用
+         */
+        public static class Approximate {
+            private boolean enabled = false;
+            /**
+             * 本地增量同步到redis的间隔，毫秒
+             */
+            private long syncInterval = 100;
+            /**
+             * 单个实例两次同步之间最多放行rate的多少比例，同时是每个未同步实例的误差上限
+             */
+            private double maxErrorRatio = 0.1;
+            /**
+             * 实例标识，默认随机生成
+             */
+            private String instanceId;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public long getSyncInterval() {
+                return syncInterval;
+            }
+
+            public void setSyncInterval(long syncInterval) {
+                this.syncInterval = syncInterval;
+            }
+
+            public double getMaxErrorRatio() {
+                return maxErrorRatio;
+            }
+
+            public void setMaxErrorRatio(double maxErrorRatio) {
+                this.maxErrorRatio = maxErrorRatio;
+            }
+
+            public String getInstanceId() {
+                return instanceId;
+            }
+
+            public void setInstanceId(String instanceId) {
+                this.instanceId = instanceId;
+            }
+        }
+
+        public static class Quota {
+            /**
+             * 划分每天、每月配额周期的时区，默认为系统时区
+             */
+            private String zone;
+            /**
+             * 本地记录的剩余配额的有效时间，毫秒
+             */
+            private long refreshInterval = 5000;
+
+            public String getZone() {
+                return zone;
+            }
+
+            public void setZone(String zone) {
+                this.zone = zone;
+            }
+
+            public long getRefreshInterval() {
+                return refreshInterval;
+            }
+
+            public void setRefreshInterval(long refreshInterval) {
+                this.refreshInterval = refreshInterval;
+            }
+        }
+
+        public static class CircuitBreaker {
+            private boolean enabled = false;
+            /**
+             * redis出错或者熔断打开时的处理方式
+             */
+            private LimiterFallbackPolicy policy = LimiterFallbackPolicy.FAIL_OPEN;
+            /**
+             * 慢调用阈值，毫秒，超过时按失败统计。只用于打开熔断，单次调用的耗时上限由spring.redis.timeout决定
+             */
+            private long slowCallThreshold = 100;
+            /**
+             * 打开熔断的失败比例
+             */
+            private double failureRateThreshold = 0.5;
+            /**
+             * 窗口内至少有多少次调用才计算失败比例
+             */
+            private int minimumCalls = 20;
+            /**
+             * 统计窗口，毫秒
+             */
+            private long window = 10000;
+            /**
+             * 熔断打开后探测redis的间隔，毫秒
+             */
+            private long probeInterval = 1000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public LimiterFallbackPolicy getPolicy() {
+                return policy;
+            }
+
+            public void setPolicy(LimiterFallbackPolicy policy) {
+                this.policy = policy;
+            }
+
+            public long getSlowCallThreshold() {
+                return slowCallThreshold;
+            }
+
+            public void setSlowCallThreshold(long slowCallThreshold) {
+                this.slowCallThreshold = slowCallThreshold;
+            }
+
+            public double getFailureRateThreshold() {
+                return failureRateThreshold;
+            }
+
+            public void setFailureRateThreshold(double failureRateThreshold) {
+                this.failureRateThreshold = failureRateThreshold;
+            }
+
+            public int getMinimumCalls() {
+                return minimumCalls;
+            }
+
+            public void setMinimumCalls(int minimumCalls) {
+                this.minimumCalls = minimumCalls;
+            }
+
+            public long getWindow() {
+                return window;
+            }
+
+            public void setWindow(long window) {
+                this.window = window;
+            }
+
+            public long getProbeInterval() {
+                return probeInterval;
+            }
+
+            public void setProbeInterval(long probeInterval) {
+                this.probeInterval = probeInterval;
+            }
+        }
+
+        public static class Endpoint {
+            private boolean enabled = false;
+            private String path = DEFAULT_ENDPOINT_PATH;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getPath() {
+                return path;
+            }
+
+            public void setPath(String path) {
+                this.path = path;
+            }
+        }
+
+        public static class Filter {
+            private boolean enabled = false;
+            /**
+             * 过滤器顺序。默认在最前面，有按principal限流的规则时默认紧跟在spring security之后
+             */
+            private Integer order;
+            /**
+             * 限流后端出错时是否放行请求，false时返回503
+             */
+            private boolean failOpen = true;
+            /**
+             * 规则名称到规则的映射，名称会作为限流key的一部分
+             */
+            private Map<String, Rule> rules = new LinkedHashMap<>();
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public Integer getOrder() {
+                return order;
+            }
+
+            public void setOrder(Integer order) {
+                this.order = order;
+            }
+
+            public boolean isFailOpen() {
+                return failOpen;
+            }
+
+            public void setFailOpen(boolean failOpen) {
+                this.failOpen = failOpen;
+            }
+
+            public Map<String, Rule> getRules() {
+                return rules;
+            }
+
+            public void setRules(Map<String, Rule> rules) {
+                this.rules = rules;
+            }
+        }
+
+        public static class Rule {
+            private List<String> patterns = new ArrayList<>(Collections.singletonList("/**"));
+            /**
+             * ip、principal或者header:名称。principal需要过滤器位于spring security之后，见{@link Filter#getOrder()}
+             */
+            private String key = "ip";
+            private long timeout = 1;
+            private TimeUnit unit = TimeUnit.SECONDS;
+            private String algorithm;
+            private long rate = 1;
+            private long burst;
+
+            public List<String> getPatterns() {
+                return patterns;
+            }
+
+            public void setPatterns(List<String> patterns) {
+                this.patterns = patterns;
+            }
+
+            public String getKey() {
+                return key;
+            }
+
+            public void setKey(String key) {
+                this.key = key;
+            }
+
+            public long getTimeout() {
+                return timeout;
+            }
+
+            public void setTimeout(long timeout) {
+                this.timeout = timeout;
+            }
+
+            public TimeUnit getUnit() {
+                return unit;
+            }
+
+            public void setUnit(TimeUnit unit) {
+                this.unit = unit;
+            }
+
+            public String getAlgorithm() {
+                return algorithm;
+            }
+
+            public void setAlgorithm(String algorithm) {
+                this.algorithm = algorithm;
+            }
+
+            public long getRate() {
+                return rate;
+            }
+
+            public void setRate(long rate) {
+                this.rate = rate;
+            }
+
+            public long getBurst() {
+                return burst;
+            }
+
+            public void setBurst(long burst) {
+                this.burst = burst;
+            }
+        }
     }
 }
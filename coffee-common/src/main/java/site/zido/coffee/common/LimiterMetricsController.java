@@ -0,0 +1,37 @@
+package site.zido.coffee.common;
+
+import org.springframework.util.Assert;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import site.zido.coffee.extra.limiter.LimiterKeyMetrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 查看被限制最多的key，路径由coffee.limiter.endpoint.path指定
+ * <p>
+ * 返回内容包含限流key(例如客户端ip)，只应该暴露给运维人员
+ *
+ * @author zido
+ */
+@RestController
+public class LimiterMetricsController {
+    private static final int MAXIMUM_TOP = 1000;
+    private final LimiterKeyMetrics metrics;
+
+    public LimiterMetricsController(LimiterKeyMetrics metrics) {
+        Assert.notNull(metrics, "metrics can't be null");
+        this.metrics = metrics;
+    }
+
+    @GetMapping("${coffee.limiter.endpoint.path:" + LimiterAutoConfiguration.DEFAULT_ENDPOINT_PATH + "}")
+    public Map<String, Object> hotKeys(@RequestParam(defaultValue = "10") int top) {
+        Map<String, Object> result = new LinkedHashMap<>(4);
+        result.put("total", metrics.getTotal());
+        result.put("trackedKeys", metrics.getTrackedKeys());
+        result.put("keys", metrics.topLimited(Math.max(0, Math.min(top, MAXIMUM_TOP))));
+        return result;
+    }
+}
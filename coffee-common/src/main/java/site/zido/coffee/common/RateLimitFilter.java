@@ -0,0 +1,222 @@
+package site.zido.coffee.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+import site.zido.coffee.extra.limiter.FrequencyLimiter;
+import site.zido.coffee.extra.limiter.LimiterMetrics;
+import site.zido.coffee.extra.limiter.LimiterViolation;
+import site.zido.coffee.extra.limiter.RateLimitAlgorithm;
+import site.zido.coffee.mvc.CommonErrorCode;
+import site.zido.coffee.mvc.rest.Result;
+import site.zido.coffee.mvc.utils.ResponseUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过滤器级别的限流，在参数解析与handler映射之前拒绝超频的请求
+ * <p>
+ * 与{@link site.zido.coffee.extra.limiter.Limiter}共用同一个限流后端，
+ * 同一个请求命中的多条频率限制通过{@link FrequencyLimiter#tryGetAll(String[], long[])}一次判定，
+ * 被拒绝时返回429与{@link CommonErrorCode#LIMIT}。
+ * 限流后端出错时默认放行请求，关闭{@link #setFailOpen(boolean)}后返回503
+ *
+ * @author zido
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateLimitFilter.class);
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final String KEY_PREFIX = "filter:";
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+    private final List<RateLimitRule> rules;
+    private final FrequencyLimiter limiter;
+    private final Map<String, RateLimitAlgorithm> algorithms = new HashMap<>(4);
+    private LimiterMetrics metrics = LimiterMetrics.NONE;
+    private boolean failOpen = true;
+
+    public RateLimitFilter(List<RateLimitRule> rules,
+                           FrequencyLimiter limiter,
+                           Collection<? extends RateLimitAlgorithm> algorithms) {
+        Assert.notNull(rules, "rules can't be null");
+        this.rules = new ArrayList<>(rules);
+        this.limiter = limiter;
+        if (algorithms != null) {
+            for (RateLimitAlgorithm algorithm : algorithms) {
+                this.algorithms.put(algorithm.getName(), algorithm);
+            }
+        }
+        for (RateLimitRule rule : this.rules) {
+            if (StringUtils.hasText(rule.getAlgorithm())) {
+                Assert.isTrue(this.algorithms.containsKey(rule.getAlgorithm()),
+                        String.format("未找到名为[%s]的限流算法", rule.getAlgorithm()));
+            } else {
+                Assert.notNull(limiter, "no FrequencyLimiter configured for rule " + rule.getName());
+            }
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String path = urlPathHelper.getPathWithinApplication(request);
+        List<String> keys = null;
+        List<RateLimitRule> frequencyRules = null;
+        for (RateLimitRule rule : rules) {
+            if (!rule.matches(path)) {
+                continue;
+            }
+            String key = rule.getKeyExtractor().extract(request);
+            if (key == null) {
+                continue;
+            }
+            key = KEY_PREFIX + rule.getName() + ":" + key;
+            if (StringUtils.hasText(rule.getAlgorithm())) {
+                long start = System.nanoTime();
+                long wait;
+                try {
+                    wait = algorithms.get(rule.getAlgorithm()).tryAcquire(rule.getName(), key, rule.getRate(),
+                            rule.getUnit().toMillis(rule.getTimeout()), rule.getBurst());
+                } catch (RuntimeException e) {
+                    if (handleError(response, Collections.singletonList(rule), Collections.singletonList(key), e)) {
+                        continue;
+                    }
+                    return;
+                }
+                metrics.recordDecision(rule.getName(), key, wait <= 0, System.nanoTime() - start);
+                if (wait > 0) {
+                    reject(response, rule, key, wait);
+                    return;
+                }
+                continue;
+            }
+            if (keys == null) {
+                keys = new ArrayList<>(2);
+                frequencyRules = new ArrayList<>(2);
+            }
+            keys.add(key);
+            frequencyRules.add(rule);
+        }
+        if (keys != null) {
+            long[] timeouts = new long[keys.size()];
+            String[] operations = new String[keys.size()];
+            for (int i = 0; i < timeouts.length; i++) {
+                RateLimitRule rule = frequencyRules.get(i);
+                timeouts[i] = rule.getUnit().toSeconds(rule.getTimeout());
+                operations[i] = rule.getName();
+            }
+            long start = System.nanoTime();
+            LimiterViolation violation;
+            try {
+                violation = limiter.tryGetAll(operations, keys.toArray(new String[0]), timeouts);
+            } catch (RuntimeException e) {
+                if (handleError(response, frequencyRules, keys, e)) {
+                    filterChain.doFilter(request, response);
+                }
+                return;
+            }
+            long latency = System.nanoTime() - start;
+            if (violation != null) {
+                int index = violation.getIndex();
+                metrics.recordDecision(frequencyRules.get(index).getName(), keys.get(index), false, latency);
+                reject(response, frequencyRules.get(index), keys.get(index), violation.getRemaining());
+                return;
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                metrics.recordDecision(frequencyRules.get(i).getName(), keys.get(i), true, latency);
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * 拒绝请求
+     *
+     * @param response response
+     * @param rule     被违反的规则
+     * @param key      限流key
+     * @param wait     还需等待的毫秒数
+     * @throws IOException io exception
+     */
+    protected void reject(HttpServletResponse response, RateLimitRule rule, String key, long wait) throws IOException {
+        LOGGER.debug("限制请求 rule:{}, key:{}, remain: {}", rule.getName(), key, wait);
+        long seconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(wait + 999));
+        response.setHeader("Retry-After", String.valueOf(seconds));
+        ResponseUtils.json(response, TOO_MANY_REQUESTS,
+                Result.error(CommonErrorCode.LIMIT, String.format("频率过高，请在 %d 秒后重试", seconds)));
+    }
+
+    /**
+     * 限流后端出错，记录指标后按{@link #isFailOpen()}放行或者返回503
+     *
+     * @param response response
+     * @param rules    出错的规则
+     * @param keys     与规则一一对应的限流key
+     * @param error    异常
+     * @return 是否继续处理请求
+     * @throws IOException io exception
+     */
+    protected boolean handleError(HttpServletResponse response, List<RateLimitRule> rules, List<String> keys,
+                                  RuntimeException error) throws IOException {
+        for (int i = 0; i < keys.size(); i++) {
+            metrics.recordError(rules.get(i).getName(), keys.get(i), error);
+        }
+        if (failOpen) {
+            LOGGER.warn("限流后端不可用，放行请求 keys:{}", keys, error);
+            for (int i = 0; i < keys.size(); i++) {
+                metrics.recordFailOpen(rules.get(i).getName(), keys.get(i));
+            }
+            return true;
+        }
+        LOGGER.error("限流后端不可用，拒绝请求 keys:{}", keys, error);
+        ResponseUtils.json(response, SERVICE_UNAVAILABLE,
+                Result.error(CommonErrorCode.LIMIT, "限流服务暂不可用，请稍后重试"));
+        return false;
+    }
+
+    public boolean isFailOpen() {
+        return failOpen;
+    }
+
+    /**
+     * 限流后端出错时是否放行请求，默认放行
+     *
+     * @param failOpen true放行，false返回503
+     */
+    public void setFailOpen(boolean failOpen) {
+        this.failOpen = failOpen;
+    }
+
+    public LimiterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 设置限流指标收集器，指标的操作名称为规则名称
+     *
+     * @param metrics metrics
+     */
+    public void setMetrics(LimiterMetrics metrics) {
+        Assert.notNull(metrics, "metrics can't be null");
+        this.metrics = metrics;
+    }
+
+    public List<RateLimitRule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+}
@@ -0,0 +1,81 @@
+package site.zido.coffee.common;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.security.Principal;
+
+/**
+ * 从请求中提取限流key，返回null时本条规则不生效
+ *
+ * @author zido
+ * @see RateLimitFilter
+ */
+@FunctionalInterface
+public interface RateLimitKeyExtractor {
+
+    /**
+     * 提取key
+     *
+     * @param request request
+     * @return key
+     */
+    String extract(HttpServletRequest request);
+
+    /**
+     * 按客户端地址限流，部署在代理之后时请使用{@link #header(String)}读取代理写入的真实地址
+     *
+     * @return extractor
+     */
+    static RateLimitKeyExtractor ip() {
+        return HttpServletRequest::getRemoteAddr;
+    }
+
+    /**
+     * 按请求头限流，例如X-Real-IP、X-Api-Key
+     *
+     * @param name 请求头名称
+     * @return extractor
+     */
+    static RateLimitKeyExtractor header(String name) {
+        Assert.hasText(name, "header name can't be blank");
+        return request -> {
+            String value = request.getHeader(name);
+            return StringUtils.hasText(value) ? value : null;
+        };
+    }
+
+    /**
+     * 按登录用户限流，需要过滤器位于认证过滤器之后才能取到用户，未登录时不生效
+     *
+     * @return extractor
+     */
+    static RateLimitKeyExtractor principal() {
+        return request -> {
+            Principal principal = request.getUserPrincipal();
+            return principal == null ? null : principal.getName();
+        };
+    }
+
+    /**
+     * 解析配置中的提取器：ip、principal或者header:名称
+     *
+     * @param expression 配置
+     * @return extractor
+     */
+    static RateLimitKeyExtractor parse(String expression) {
+        Assert.hasText(expression, "key extractor can't be blank");
+        String value = expression.trim();
+        if ("ip".equalsIgnoreCase(value)) {
+            return ip();
+        }
+        if ("principal".equalsIgnoreCase(value)) {
+            return principal();
+        }
+        if (value.regionMatches(true, 0, "header:", 0, 7)) {
+            return header(value.substring(7).trim());
+        }
+        throw new IllegalArgumentException(String.format("不支持的限流key[%s]，可选值为ip、principal、header:名称", expression));
+    }
+}
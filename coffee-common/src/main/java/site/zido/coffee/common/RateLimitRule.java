@@ -0,0 +1,139 @@
+package site.zido.coffee.common;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.Assert;
+import org.springframework.util.PathMatcher;
+import org.springframework.util.StringUtils;
+import site.zido.coffee.extra.limiter.Limiter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RateLimitFilter}的一条限流规则，含义与{@link Limiter}一致
+ *
+ * @author zido
+ */
+public class RateLimitRule {
+    private static final PathMatcher PATH_MATCHER = new AntPathMatcher();
+    private final String name;
+    private final List<String> patterns;
+    private final RateLimitKeyExtractor keyExtractor;
+    private final long timeout;
+    private final TimeUnit unit;
+    private final String algorithm;
+    private final long rate;
+    private final long burst;
+
+    private RateLimitRule(Builder builder) {
+        this.name = builder.name;
+        this.patterns = Collections.unmodifiableList(builder.patterns);
+        this.keyExtractor = builder.keyExtractor;
+        this.timeout = builder.timeout;
+        this.unit = builder.unit;
+        this.algorithm = builder.algorithm;
+        this.rate = builder.rate;
+        this.burst = builder.burst;
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    public boolean matches(String path) {
+        for (String pattern : patterns) {
+            if (PATH_MATCHER.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    public RateLimitKeyExtractor getKeyExtractor() {
+        return keyExtractor;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public TimeUnit getUnit() {
+        return unit;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    public long getBurst() {
+        return burst;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitRule{name='" + name + "', patterns=" + patterns + '}';
+    }
+
+    public static class Builder {
+        private final String name;
+        private List<String> patterns = Collections.singletonList("/**");
+        private RateLimitKeyExtractor keyExtractor = RateLimitKeyExtractor.ip();
+        private long timeout = 1;
+        private TimeUnit unit = TimeUnit.SECONDS;
+        private String algorithm;
+        private long rate = 1;
+        private long burst;
+
+        private Builder(String name) {
+            Assert.hasText(name, "rule name can't be blank");
+            this.name = name;
+        }
+
+        public Builder patterns(String... patterns) {
+            this.patterns = Arrays.asList(patterns);
+            return this;
+        }
+
+        public Builder keyExtractor(RateLimitKeyExtractor keyExtractor) {
+            this.keyExtractor = keyExtractor;
+            return this;
+        }
+
+        public Builder timeout(long timeout, TimeUnit unit) {
+            this.timeout = timeout;
+            this.unit = unit;
+            return this;
+        }
+
+        public Builder algorithm(String algorithm, long rate, long burst) {
+            this.algorithm = algorithm;
+            this.rate = rate;
+            this.burst = burst;
+            return this;
+        }
+
+        public RateLimitRule build() {
+            Assert.notEmpty(patterns, "patterns can't be empty");
+            Assert.notNull(keyExtractor, "keyExtractor can't be null");
+            Assert.isTrue(timeout > 0, "timeout must be greater than 0");
+            if (!StringUtils.hasText(algorithm)) {
+                Assert.isTrue(unit.toSeconds(timeout) > 0, "频率限制的超时时间以秒为单位，并且需要大于0");
+            }
+            return new RateLimitRule(this);
+        }
+    }
+}
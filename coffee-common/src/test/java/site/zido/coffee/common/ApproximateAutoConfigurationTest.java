@@ -0,0 +1,43 @@
+package site.zido.coffee.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.context.ConfigurationPropertiesAutoConfiguration;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import site.zido.coffee.extra.limiter.ApproximateRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.RateLimitAlgorithm;
+
+public class ApproximateAutoConfigurationTest {
+
+    @Test
+    public void testApproximate() {
+        new WebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ConfigurationPropertiesAutoConfiguration.class,
+                        LimiterAutoConfiguration.class))
+                .withBean(RedisConnectionFactory.class, () -> Mockito.mock(RedisConnectionFactory.class))
+                .withPropertyValues("coffee.limiter.approximate.enabled=true",
+                        "coffee.limiter.approximate.sync-interval=50",
+                        "coffee.limiter.approximate.instance-id=node-1")
+                .run(context -> {
+                    ApproximateRateLimitAlgorithm algorithm = context.getBean(ApproximateRateLimitAlgorithm.class);
+                    Assert.assertEquals(50, algorithm.getSyncIntervalMillis());
+                    Assert.assertEquals("node-1", algorithm.getInstanceId());
+                    Assert.assertEquals(4, context.getBeansOfType(RateLimitAlgorithm.class).size());
+                });
+    }
+
+    @Test
+    public void testDisabled() {
+        new WebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ConfigurationPropertiesAutoConfiguration.class,
+                        LimiterAutoConfiguration.class))
+                .withBean(RedisConnectionFactory.class, () -> Mockito.mock(RedisConnectionFactory.class))
+                .run(context -> {
+                    Assert.assertTrue(context.getBeansOfType(ApproximateRateLimitAlgorithm.class).isEmpty());
+                    Assert.assertEquals(3, context.getBeansOfType(RateLimitAlgorithm.class).size());
+                });
+    }
+}
@@ -0,0 +1,38 @@
+package site.zido.coffee.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.context.ConfigurationPropertiesAutoConfiguration;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import site.zido.coffee.extra.limiter.CircuitBreakerFrequencyLimiter;
+import site.zido.coffee.extra.limiter.CircuitBreakerRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.FrequencyLimiter;
+import site.zido.coffee.extra.limiter.LimiterCircuitBreaker;
+import site.zido.coffee.extra.limiter.RateLimitAlgorithm;
+
+public class CircuitBreakerAutoConfigurationTest {
+
+    @Test
+    public void testCircuitBreaker() {
+        //redis不可用时按fail-open放行
+        new WebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ConfigurationPropertiesAutoConfiguration.class,
+                        LimiterAutoConfiguration.class))
+                .withBean(RedisConnectionFactory.class, () -> Mockito.mock(RedisConnectionFactory.class))
+                .withPropertyValues("coffee.limiter.local-cache-size=0",
+                        "coffee.limiter.circuit-breaker.enabled=true",
+                        "coffee.limiter.circuit-breaker.policy=fail-open")
+                .run(context -> {
+                    FrequencyLimiter limiter = context.getBean(FrequencyLimiter.class);
+                    Assert.assertTrue(limiter instanceof CircuitBreakerFrequencyLimiter);
+                    Assert.assertEquals(0, limiter.tryGet("key", 10));
+                    for (RateLimitAlgorithm algorithm : context.getBeansOfType(RateLimitAlgorithm.class).values()) {
+                        Assert.assertTrue(algorithm instanceof CircuitBreakerRateLimitAlgorithm);
+                    }
+                    Assert.assertEquals(1, context.getBeansOfType(LimiterCircuitBreaker.class).size());
+                });
+    }
+}
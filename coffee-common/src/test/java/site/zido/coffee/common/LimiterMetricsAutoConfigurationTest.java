@@ -0,0 +1,74 @@
+package site.zido.coffee.common;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.context.ConfigurationPropertiesAutoConfiguration;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import site.zido.coffee.extra.limiter.LimiterKeyMetrics;
+import site.zido.coffee.extra.limiter.LimiterMetrics;
+
+import javax.servlet.Filter;
+import java.util.List;
+import java.util.Map;
+
+public class LimiterMetricsAutoConfigurationTest {
+
+    private static void request(Filter filter, String path, String ip) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setRemoteAddr(ip);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMetrics() {
+        new WebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ConfigurationPropertiesAutoConfiguration.class,
+                        LimiterAutoConfiguration.class))
+                .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+                .withPropertyValues("coffee.limiter.store=local",
+                        "coffee.limiter.endpoint.enabled=true",
+                        "coffee.limiter.filter.enabled=true",
+                        "coffee.limiter.filter.rules.sms.patterns=/sms/**",
+                        "coffee.limiter.filter.rules.sms.timeout=60")
+                .run(context -> {
+                    Assert.assertEquals(1, context.getBeansOfType(LimiterMetrics.class).size());
+                    FilterRegistrationBean<RateLimitFilter> registration = context.getBean(FilterRegistrationBean.class);
+                    RateLimitFilter filter = registration.getFilter();
+                    request(filter, "/sms/send", "10.0.0.1");
+                    request(filter, "/sms/send", "10.0.0.1");
+                    request(filter, "/sms/send", "10.0.0.1");
+                    request(filter, "/sms/send", "10.0.0.2");
+                    MeterRegistry registry = context.getBean(MeterRegistry.class);
+                    Assert.assertEquals(2, registry.get("coffee.limiter.requests")
+                            .tags("operation", "sms", "result", "blocked").counter().count(), 0);
+
+                    Map<String, Object> hotKeys = context.getBean(LimiterMetricsController.class).hotKeys(1);
+                    List<LimiterKeyMetrics.LimiterStats> keys = (List<LimiterKeyMetrics.LimiterStats>) hotKeys.get("keys");
+                    Assert.assertEquals(1, keys.size());
+                    Assert.assertEquals("filter:sms:10.0.0.1", keys.get(0).getKey());
+                    Assert.assertEquals(2, keys.get(0).getBlocked());
+                    //只被放行的key不单独统计
+                    Assert.assertEquals(1, hotKeys.get("trackedKeys"));
+                });
+    }
+
+    @Test
+    public void testEndpointWithoutMicrometer() {
+        new WebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ConfigurationPropertiesAutoConfiguration.class,
+                        LimiterAutoConfiguration.class))
+                .withPropertyValues("coffee.limiter.store=local", "coffee.limiter.endpoint.enabled=true")
+                .run(context -> {
+                    Assert.assertNotNull(context.getBean(LimiterKeyMetrics.class));
+                    Assert.assertNotNull(context.getBean(LimiterMetricsController.class));
+                });
+    }
+}
@@ -0,0 +1,40 @@
+package site.zido.coffee.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.context.ConfigurationPropertiesAutoConfiguration;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import site.zido.coffee.extra.limiter.LocalQuotaLimiter;
+import site.zido.coffee.extra.limiter.QuotaLimiter;
+import site.zido.coffee.extra.limiter.RedisQuotaLimiter;
+
+public class QuotaLimiterAutoConfigurationTest {
+
+    @Test
+    public void testLocal() {
+        new WebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ConfigurationPropertiesAutoConfiguration.class,
+                        LimiterAutoConfiguration.class))
+                .withPropertyValues("coffee.limiter.store=local")
+                .run(context -> Assert.assertTrue(context.getBean(QuotaLimiter.class) instanceof LocalQuotaLimiter));
+    }
+
+    @Test
+    public void testRedis() {
+        //熔断只包装频率限制，配额仍然直接使用redis
+        new WebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ConfigurationPropertiesAutoConfiguration.class,
+                        LimiterAutoConfiguration.class))
+                .withBean(RedisConnectionFactory.class, () -> Mockito.mock(RedisConnectionFactory.class))
+                .withPropertyValues("coffee.limiter.circuit-breaker.enabled=true",
+                        "coffee.limiter.quota.refresh-interval=1000")
+                .run(context -> {
+                    QuotaLimiter limiter = context.getBean(QuotaLimiter.class);
+                    Assert.assertTrue(limiter instanceof RedisQuotaLimiter);
+                    Assert.assertEquals(1000, ((RedisQuotaLimiter) limiter).getRefreshInterval());
+                });
+    }
+}
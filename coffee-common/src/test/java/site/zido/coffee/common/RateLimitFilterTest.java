@@ -0,0 +1,138 @@
+package site.zido.coffee.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.context.ConfigurationPropertiesAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.core.Ordered;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import site.zido.coffee.extra.limiter.FrequencyLimiter;
+import site.zido.coffee.extra.limiter.LimiterMetrics;
+import site.zido.coffee.extra.limiter.LocalFrequencyLimiter;
+import site.zido.coffee.extra.limiter.LocalTokenBucketRateLimitAlgorithm;
+import site.zido.coffee.mvc.CommonErrorCode;
+
+import javax.servlet.Filter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RateLimitFilterTest {
+
+    private static MockHttpServletResponse request(Filter filter, String path, String ip) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setRemoteAddr(ip);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        RateLimitFilter filter = new RateLimitFilter(Arrays.asList(
+                RateLimitRule.builder("sms").patterns("/sms/**").timeout(60, TimeUnit.SECONDS).build(),
+                RateLimitRule.builder("api").patterns("/api/**")
+                        .algorithm(LocalTokenBucketRateLimitAlgorithm.TOKEN_BUCKET, 2, 0)
+                        .timeout(1, TimeUnit.MINUTES).build()),
+                new LocalFrequencyLimiter(), Collections.singletonList(new LocalTokenBucketRateLimitAlgorithm()));
+        Assert.assertEquals(200, request(filter, "/sms/send", "10.0.0.1").getStatus());
+        MockHttpServletResponse limited = request(filter, "/sms/send", "10.0.0.1");
+        Assert.assertEquals(429, limited.getStatus());
+        Assert.assertNotNull(limited.getHeader("Retry-After"));
+        Assert.assertTrue(limited.getContentAsString().contains("\"code\":" + CommonErrorCode.LIMIT));
+        Assert.assertEquals("60", limited.getHeader("Retry-After"));
+        Assert.assertTrue(limited.getContentAsString().contains("60 秒"));
+        //不同的ip与不匹配的路径不受影响
+        Assert.assertEquals(200, request(filter, "/sms/send", "10.0.0.2").getStatus());
+        Assert.assertEquals(200, request(filter, "/other", "10.0.0.1").getStatus());
+
+        Assert.assertEquals(200, request(filter, "/api/a", "10.0.0.1").getStatus());
+        Assert.assertEquals(200, request(filter, "/api/b", "10.0.0.1").getStatus());
+        Assert.assertEquals(429, request(filter, "/api/c", "10.0.0.1").getStatus());
+    }
+
+    @Test
+    public void testBackendError() throws Exception {
+        FrequencyLimiter broken = (key, timeout) -> {
+            throw new IllegalStateException("redis down");
+        };
+        RateLimitFilter filter = new RateLimitFilter(Collections.singletonList(
+                RateLimitRule.builder("sms").patterns("/sms/**").timeout(60, TimeUnit.SECONDS).build()),
+                broken, Collections.emptyList());
+        AtomicInteger failOpen = new AtomicInteger();
+        filter.setMetrics(new LimiterMetrics() {
+            @Override
+            public void recordFailOpen(String operation, String key) {
+                failOpen.incrementAndGet();
+            }
+        });
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/sms/send");
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        Assert.assertNotNull(chain.getRequest());
+        Assert.assertEquals(1, failOpen.get());
+
+        filter.setFailOpen(false);
+        Assert.assertEquals(503, request(filter, "/sms/send", "10.0.0.1").getStatus());
+        Assert.assertEquals(1, failOpen.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFilterOrder() {
+        WebApplicationContextRunner runner = new WebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ConfigurationPropertiesAutoConfiguration.class,
+                        LimiterAutoConfiguration.class))
+                .withPropertyValues("coffee.limiter.store=local",
+                        "coffee.limiter.filter.enabled=true",
+                        "coffee.limiter.filter.rules.login.patterns=/login");
+        runner.run(context -> Assert.assertEquals(Ordered.HIGHEST_PRECEDENCE + 10,
+                context.getBean(FilterRegistrationBean.class).getOrder()));
+        //按登录用户限流时紧跟在spring security之后
+        runner.withPropertyValues("coffee.limiter.filter.rules.user.key=principal")
+                .run(context -> Assert.assertEquals(SecurityProperties.DEFAULT_FILTER_ORDER + 1,
+                        context.getBean(FilterRegistrationBean.class).getOrder()));
+        runner.withPropertyValues("coffee.limiter.filter.rules.user.key=principal", "coffee.limiter.filter.order=5")
+                .run(context -> Assert.assertEquals(5, context.getBean(FilterRegistrationBean.class).getOrder()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAutoConfiguration() {
+        new WebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ConfigurationPropertiesAutoConfiguration.class,
+                        LimiterAutoConfiguration.class))
+                .withPropertyValues("coffee.limiter.store=local",
+                        "coffee.limiter.filter.enabled=true",
+                        "coffee.limiter.filter.rules.login.patterns=/login",
+                        "coffee.limiter.filter.rules.login.key=header:X-Real-IP",
+                        "coffee.limiter.filter.rules.login.timeout=10")
+                .run(context -> {
+                    FilterRegistrationBean<RateLimitFilter> registration = context.getBean(FilterRegistrationBean.class);
+                    RateLimitFilter filter = registration.getFilter();
+                    Assert.assertEquals(1, filter.getRules().size());
+                    RateLimitRule rule = filter.getRules().get(0);
+                    Assert.assertEquals("login", rule.getName());
+                    Assert.assertTrue(rule.matches("/login"));
+                    Assert.assertEquals(10, rule.getTimeout());
+                });
+    }
+
+    @Test
+    public void testWithoutRedis() {
+        //默认使用redis，没有redis连接时不创建限流后端也不影响启动
+        new WebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ConfigurationPropertiesAutoConfiguration.class,
+                        LimiterAutoConfiguration.class))
+                .run(context -> {
+                    Assert.assertNull(context.getStartupFailure());
+                    Assert.assertTrue(context.getBeansOfType(FrequencyLimiter.class).isEmpty());
+                });
+    }
+}
@@ -5,16 +5,23 @@ import org.slf4j.LoggerFactory;
 import org.springframework.core.BridgeMethodResolver;
 import org.springframework.core.MethodClassKey;
 import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 注解扫描结果的缓存中心,包括类，方法
+ * <p>
+ * 默认在第一次调用时解析并缓存；通过{@link #precompute(Collection)}预先解析的类存放在不可变的map中，
+ * 之后这些类的方法不再访问懒加载的缓存
  *
  * @author zido
  */
@@ -22,6 +29,7 @@ public abstract class AbstractLimiterOperationSource implements LimiterOperation
     private final static Collection<LimiterOperation> NULL_CACHING_ATTRIBUTE = Collections.emptyList();
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final Map<Object, Collection<LimiterOperation>> attributeCache = new ConcurrentHashMap<>(16);
+    private volatile Map<Object, Collection<LimiterOperation>> precomputed = Collections.emptyMap();
 
     @Override
     public Collection<LimiterOperation> getLimiterOperations(Method method, Class<?> targetClass) {
@@ -29,7 +37,10 @@ public abstract class AbstractLimiterOperationSource implements LimiterOperation
             return null;
         }
         Object limiterKey = new MethodClassKey(method, targetClass);
-        Collection<LimiterOperation> cached = this.attributeCache.get(limiterKey);
+        Collection<LimiterOperation> cached = this.precomputed.get(limiterKey);
+        if (cached == null) {
+            cached = this.attributeCache.get(limiterKey);
+        }
         if (cached != null) {
             return (cached != NULL_CACHING_ATTRIBUTE ? cached : null);
         } else {
@@ -44,6 +55,41 @@ public abstract class AbstractLimiterOperationSource implements LimiterOperation
         }
     }
 
+    /**
+     * 预先解析这些类的所有方法(包括接口中声明的方法)，与之前预先解析的结果合并
+     *
+     * @param targetClasses 目标类
+     */
+    @Override
+    public void precompute(Collection<Class<?>> targetClasses) {
+        Map<Object, Collection<LimiterOperation>> operations = new HashMap<>(this.precomputed);
+        for (Class<?> targetClass : targetClasses) {
+            for (Method method : candidateMethods(targetClass)) {
+                Collection<LimiterOperation> ops = computeLimiterOperation(method, targetClass);
+                operations.put(new MethodClassKey(method, targetClass),
+                        ops == null ? NULL_CACHING_ATTRIBUTE : Collections.unmodifiableCollection(ops));
+            }
+        }
+        this.precomputed = Collections.unmodifiableMap(operations);
+        this.attributeCache.keySet().removeAll(operations.keySet());
+        logger.debug("Precomputed limiter operations of {} methods", operations.size());
+    }
+
+    /**
+     * 目标类上可能被代理调用的方法：类自身及父类声明的方法，以及接口中声明的方法(jdk代理传入的是接口方法)
+     *
+     * @param targetClass 目标类
+     * @return 方法
+     */
+    static Set<Method> candidateMethods(Class<?> targetClass) {
+        Set<Method> methods = new LinkedHashSet<>();
+        Collections.addAll(methods, ReflectionUtils.getUniqueDeclaredMethods(targetClass, ReflectionUtils.USER_DECLARED_METHODS));
+        for (Class<?> ifc : ClassUtils.getAllInterfacesForClassAsSet(targetClass)) {
+            Collections.addAll(methods, ifc.getMethods());
+        }
+        return methods;
+    }
+
     private Collection<LimiterOperation> computeLimiterOperation(Method method, Class<?> targetClass) {
         if (allowPublicMethodsOnly() && !Modifier.isPublic(method.getModifiers())) {
             return null;
@@ -0,0 +1,48 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 配额限制器的公共部分，缓存每种周期当前所在的{@link QuotaWindow.Period}，周期切换时才重新计算
+ *
+ * @author zido
+ */
+public abstract class AbstractQuotaLimiter implements QuotaLimiter {
+    private final AtomicReferenceArray<QuotaWindow.Period> periods =
+            new AtomicReferenceArray<>(QuotaWindow.values().length);
+    private ZoneId zone = ZoneId.systemDefault();
+
+    protected QuotaWindow.Period periodOf(QuotaWindow window, long now) {
+        QuotaWindow.Period period = periods.get(window.ordinal());
+        if (period == null || !period.contains(now)) {
+            period = window.periodOf(now, zone);
+            periods.set(window.ordinal(), period);
+        }
+        return period;
+    }
+
+    protected static void checkArguments(Quota[] quotas, long permits) {
+        Assert.notEmpty(quotas, "quotas can't be empty");
+        Assert.isTrue(permits > 0, "permits must be greater than 0");
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * 划分自然周期使用的时区，默认为系统时区
+     *
+     * @param zone 时区
+     */
+    public void setZone(ZoneId zone) {
+        Assert.notNull(zone, "zone can't be null");
+        this.zone = zone;
+        for (int i = 0; i < periods.length(); i++) {
+            periods.set(i, null);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+import java.util.Collections;
+
+/**
+ * 基于redis lua脚本的限流算法，每次判定只有一次网络往返
+ * <p>
+ * 脚本通过{@link RedisTemplate#execute(RedisScript, RedisSerializer, RedisSerializer, java.util.List, Object...)}执行，
+ * 优先使用EVALSHA。当前时间由客户端传入，需要保证实例之间的时钟基本一致
+ *
+ * @author zido
+ */
+public abstract class AbstractRedisRateLimitAlgorithm implements RateLimitAlgorithm {
+    private static final String PRE = "coffee:limiter:";
+    private final RedisTemplate<String, ?> template;
+    private final String prefix;
+    private final RedisScript<Long> script;
+
+    protected AbstractRedisRateLimitAlgorithm(String prefix, RedisTemplate<String, ?> template, String script) {
+        Assert.notNull(template, "redis template can't be null");
+        this.template = template;
+        this.prefix = (prefix == null ? PRE : prefix) + getName() + ":";
+        this.script = new DefaultRedisScript<>(script, Long.class);
+    }
+
+    @Override
+    public long tryAcquire(String key, long rate, long periodMillis, long burst) {
+        Assert.isTrue(rate > 0, "rate must be greater than 0");
+        Assert.isTrue(periodMillis > 0, "period must be greater than 0");
+        long capacity = burst > 0 ? burst : rate;
+        Long wait = template.execute(script, LimiterScriptSerializers.ARGS, LimiterScriptSerializers.LONG,
+                Collections.singletonList(prefix + key),
+                args(System.currentTimeMillis(), rate, periodMillis, capacity));
+        return wait == null ? 0 : wait;
+    }
+
+    /**
+     * 脚本参数
+     *
+     * @param now          当前时间
+     * @param rate         每个周期允许通过的次数
+     * @param periodMillis 周期
+     * @param capacity     突发容量
+     * @return ARGV
+     */
+    protected abstract Object[] args(long now, long rate, long periodMillis, long capacity);
+}
@@ -0,0 +1,195 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 自适应的并发限制器，使用vegas算法根据延迟调整允许的并发数量
+ * <p>
+ * 根据little定律，无排队时的延迟(rttNoLoad)与当前延迟的比值反映了排队的程度，
+ * 估算的排队数量为 limit * (1 - rttNoLoad / rtt)：
+ * 排队少于alpha时增加限制，多于beta时减少限制，alpha和beta随限制按对数增长。
+ * 达到限制后立即拒绝，不会等待
+ * <p>
+ * 每个统计窗口取最小的延迟作为样本，只由一个线程更新限制，请求线程不加锁。
+ * 无排队延迟取历史最小值，并且每隔一段窗口重新取样，避免下游永久变慢后限制无法恢复
+ *
+ * @author zido
+ * @see ConcurrencyLimiter
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final int PROBE_WINDOWS = 1000;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong windowMinRtt = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private final AtomicInteger windowSamples = new AtomicInteger();
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private final LongAdder rejected = new LongAdder();
+    private final int minLimit;
+    private final int maxLimit;
+    private volatile int limit;
+    private volatile long windowStart = System.nanoTime();
+    private long windowNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private int minWindowSamples = 10;
+    //以下字段只在更新线程中访问
+    private double estimatedLimit;
+    private long rttNoLoad;
+    private int probeCountdown = PROBE_WINDOWS;
+
+    public AdaptiveConcurrencyLimiter() {
+        this(20, 1, 1000);
+    }
+
+    /**
+     * @param initialLimit 初始的并发数量
+     * @param minLimit     最小的并发数量
+     * @param maxLimit     最大的并发数量
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        Assert.isTrue(minLimit > 0, "minLimit must be greater than 0");
+        Assert.isTrue(maxLimit >= minLimit, "maxLimit must not be less than minLimit");
+        Assert.isTrue(initialLimit >= minLimit && initialLimit <= maxLimit,
+                "initialLimit must be between minLimit and maxLimit");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    /**
+     * 尝试占用一个并发名额，成功后必须调用{@link #release(long)}或{@link #release()}
+     *
+     * @return 是否成功
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * 释放名额，并把本次的耗时作为延迟样本
+     *
+     * @param rttNanos 本次请求的耗时
+     */
+    public void release(long rttNanos) {
+        int current = inFlight.getAndDecrement();
+        if (rttNanos <= 0) {
+            return;
+        }
+        long min;
+        while (rttNanos < (min = windowMinRtt.get()) && !windowMinRtt.compareAndSet(min, rttNanos)) {
+            //retry
+        }
+        int max;
+        while (current > (max = windowMaxInFlight.get()) && !windowMaxInFlight.compareAndSet(max, current)) {
+            //retry
+        }
+        int samples = windowSamples.incrementAndGet();
+        long now = System.nanoTime();
+        if (samples >= minWindowSamples && now - windowStart >= windowNanos && updating.compareAndSet(false, true)) {
+            try {
+                long rtt = windowMinRtt.getAndSet(Long.MAX_VALUE);
+                int maxInFlight = windowMaxInFlight.getAndSet(0);
+                windowSamples.set(0);
+                windowStart = now;
+                update(rtt, maxInFlight);
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    /**
+     * 释放名额，不作为延迟样本，用于失败的请求
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    private void update(long rtt, int maxInFlight) {
+        if (rtt == Long.MAX_VALUE) {
+            return;
+        }
+        if (--probeCountdown <= 0) {
+            probeCountdown = PROBE_WINDOWS;
+            rttNoLoad = rtt;
+        } else if (rttNoLoad == 0 || rtt < rttNoLoad) {
+            rttNoLoad = rtt;
+        }
+        double current = estimatedLimit;
+        int queueSize = (int) Math.ceil(current * (1 - (double) rttNoLoad / rtt));
+        double step = Math.max(1, Math.log10(current));
+        double next;
+        if (queueSize >= 6 * step) {
+            next = current - step;
+        } else if (queueSize <= 3 * step && maxInFlight * 2 >= current) {
+            //并发远低于限制时延迟无法说明容量，不增加限制
+            next = current + step;
+        } else {
+            return;
+        }
+        next = Math.max(minLimit, Math.min(maxLimit, next));
+        estimatedLimit = next;
+        limit = (int) next;
+    }
+
+    /**
+     * @return 当前允许的并发数量
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return 正在执行的数量
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return 累计拒绝的数量
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * 统计窗口的长度，每个窗口最多调整一次限制
+     *
+     * @param window 长度
+     * @param unit   单位
+     */
+    public void setWindow(long window, TimeUnit unit) {
+        Assert.isTrue(window >= 0, "window must not be negative");
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * @param minWindowSamples 每个窗口至少需要的样本数量
+     */
+    public void setMinWindowSamples(int minWindowSamples) {
+        Assert.isTrue(minWindowSamples > 0, "minWindowSamples must be greater than 0");
+        this.minWindowSamples = minWindowSamples;
+    }
+}
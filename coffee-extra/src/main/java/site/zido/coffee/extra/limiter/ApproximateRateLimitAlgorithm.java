@@ -0,0 +1,362 @@
+package site.zido.coffee.extra.limiter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.Assert;
+import site.zido.coffee.core.utils.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 近似的分布式固定窗口限流，判定只访问本地计数，不在请求路径上访问redis
+ * <p>
+ * 每个实例用{@link LongAdder}记录窗口内本地放行的数量，由后台线程按同步间隔把增量批量写入redis，
+ * 同时取回窗口内的全局数量与参与的实例数量。两次同步之间，每个实例最多放行剩余额度中属于自己的一份，
+ * 并且不超过rate * maxErrorRatio；份额用完时立即触发一次同步，在同步完成前拒绝。
+ * <p>
+ * 误差来源：刚加入窗口、还没有同步过的实例各自最多多放行rate * maxErrorRatio；
+ * 同一个实例内并发的判定先检查后计数，最多多放行并发的线程数。
+ * 每次同步写入的是实例在窗口内累计放行的数量而不是增量，脚本只保留较大的值，
+ * 所以同步失败或者脚本执行成功但没有收到回复时，下一次同步重新提交也不会重复计数
+ *
+ * @author zido
+ */
+public class ApproximateRateLimitAlgorithm implements RateLimitAlgorithm, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ApproximateRateLimitAlgorithm.class);
+    private static final String PRE = "coffee:limiter:";
+    /**
+     * 每个窗口一个hash，field为实例标识，value为该实例累计放行的数量。
+     * ARGV[1]为实例标识，之后每个key两个参数：累计数量与窗口结束的时间戳，返回{全局数量, 实例数量, ...}
+     */
+    private static final RedisScript<List<Long>> SYNC_SCRIPT = LimiterScriptSerializers.longListScript(
+            "local result = {} " +
+                    "for i = 1, #KEYS do " +
+                    "local count = tonumber(ARGV[i * 2]) " +
+                    "if count > tonumber(redis.call('hget', KEYS[i], ARGV[1]) or '0') then " +
+                    "redis.call('hset', KEYS[i], ARGV[1], count) " +
+                    "redis.call('pexpireat', KEYS[i], ARGV[i * 2 + 1]) " +
+                    "end " +
+                    "local values = redis.call('hvals', KEYS[i]) " +
+                    "local total = 0 " +
+                    "for j = 1, #values do total = total + tonumber(values[j]) end " +
+                    "result[i * 2 - 1] = total " +
+                    "result[i * 2] = #values " +
+                    "end " +
+                    "return result");
+    private final RedisTemplate<String, ?> template;
+    private final String prefix;
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final AtomicBoolean syncRequested = new AtomicBoolean(false);
+    private String instanceId = UUID.randomUUID().toString();
+    private volatile ScheduledExecutorService scheduler;
+    private boolean ownScheduler;
+    private ScheduledFuture<?> syncing;
+    private volatile boolean started;
+    private volatile boolean closed;
+    private long syncIntervalMillis = 100;
+    private double maxErrorRatio = 0.1;
+    private int batchSize = 100;
+
+    public ApproximateRateLimitAlgorithm(String prefix, RedisTemplate<String, ?> template) {
+        Assert.notNull(template, "redis template can't be null");
+        this.template = template;
+        this.prefix = (prefix == null ? PRE : prefix) + getName() + ":";
+    }
+
+    public ApproximateRateLimitAlgorithm(RedisTemplate<String, ?> template) {
+        this(null, template);
+    }
+
+    @Override
+    public String getName() {
+        return APPROXIMATE;
+    }
+
+    /**
+     * 固定窗口，不使用burst
+     */
+    @Override
+    public long tryAcquire(String key, long rate, long periodMillis, long burst) {
+        Assert.isTrue(rate > 0, "rate must be greater than 0");
+        Assert.isTrue(periodMillis > 0, "period must be greater than 0");
+        if (!started) {
+            start();
+        }
+        long now = SystemClock.now();
+        long windowId = now / periodMillis;
+        Counter counter = counters.get(key);
+        if (counter == null || counter.windowId != windowId) {
+            counter = counters.compute(key, (k, current) -> {
+                if (current == null) {
+                    current = new Counter(prefix + k);
+                }
+                if (current.windowId != windowId) {
+                    current.roll(windowId, (windowId + 1) * periodMillis, rate, bound(rate));
+                }
+                return current;
+            });
+        }
+        long pending = counter.pending.sum();
+        if (counter.synced + counter.sent - counter.confirmed + pending >= rate) {
+            return counter.windowEnd - now;
+        }
+        if (pending >= counter.share) {
+            requestSync();
+            return Math.max(1, Math.min(syncIntervalMillis, counter.windowEnd - now));
+        }
+        counter.pending.increment();
+        return 0;
+    }
+
+    private long bound(long rate) {
+        return Math.max(1, (long) Math.ceil(rate * maxErrorRatio));
+    }
+
+    private synchronized void start() {
+        Assert.state(!closed, "approximate rate limit algorithm has been closed");
+        if (started) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "coffee-limiter-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ownScheduler = true;
+        }
+        syncing = scheduler.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        started = true;
+    }
+
+    private void requestSync() {
+        ScheduledExecutorService current = scheduler;
+        if (closed || current == null || !syncRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            current.execute(this::syncQuietly);
+        } catch (RejectedExecutionException e) {
+            //并发关闭时调度线程已经停止
+            syncRequested.set(false);
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            LOGGER.warn("同步限流计数失败，增量保留到下一次同步", e);
+        }
+    }
+
+    /**
+     * 把所有key的本地增量写入redis，并取回全局数量，由后台线程按同步间隔调用
+     */
+    public synchronized void sync() {
+        syncRequested.set(false);
+        long now = SystemClock.now();
+        List<Counter> batch = new ArrayList<>(Math.min(batchSize, counters.size()));
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            if (counter.windowEnd <= now) {
+                //窗口已经结束，剩余的增量不再有意义
+                counters.computeIfPresent(entry.getKey(), (k, current) -> current.windowEnd <= now ? null : current);
+                continue;
+            }
+            batch.add(counter);
+            if (batch.size() >= batchSize) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    private void flush(List<Counter> batch) {
+        int size = batch.size();
+        List<String> keys = new ArrayList<>(size);
+        long[] windows = new long[size];
+        long[] sent = new long[size];
+        Object[] args = new Object[size * 2 + 1];
+        args[0] = instanceId;
+        for (int i = 0; i < size; i++) {
+            Counter counter = batch.get(i);
+            synchronized (counter) {
+                long delta = counter.pending.sum();
+                counter.pending.add(-delta);
+                counter.sent += delta;
+                windows[i] = counter.windowId;
+                sent[i] = counter.sent;
+                keys.add(counter.key + ":" + counter.windowId);
+                args[i * 2 + 1] = String.valueOf(counter.sent);
+                args[i * 2 + 2] = String.valueOf(counter.windowEnd);
+            }
+        }
+        //失败时未确认的数量仍然计入本地估计，下一次同步提交的累计数量包含这一部分
+        List<?> result = template.execute(SYNC_SCRIPT, LimiterScriptSerializers.ARGS, LimiterScriptSerializers.LONG_LIST,
+                keys, args);
+        if (result == null || result.size() < size * 2) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            Counter counter = batch.get(i);
+            synchronized (counter) {
+                if (counter.windowId != windows[i]) {
+                    continue;
+                }
+                long total = ((Number) result.get(i * 2)).longValue();
+                int instances = Math.max(1, ((Number) result.get(i * 2 + 1)).intValue());
+                counter.synced = total;
+                counter.confirmed = sent[i];
+                counter.instances = instances;
+                long remaining = Math.max(0, counter.rate - total);
+                counter.share = Math.min((remaining + instances - 1) / instances, bound(counter.rate));
+            }
+        }
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * 实例标识，同一个窗口内用于区分各实例的增量，默认随机生成
+     *
+     * @param instanceId 实例标识
+     */
+    public void setInstanceId(String instanceId) {
+        Assert.hasText(instanceId, "instanceId can't be empty");
+        this.instanceId = instanceId;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    /**
+     * 同步间隔，越小越精确，redis的压力越大。需要在第一次判定之前设置
+     *
+     * @param syncIntervalMillis 毫秒
+     */
+    public void setSyncIntervalMillis(long syncIntervalMillis) {
+        Assert.isTrue(syncIntervalMillis > 0, "syncIntervalMillis must be greater than 0");
+        Assert.state(!started, "syncIntervalMillis must be set before first use");
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    public double getMaxErrorRatio() {
+        return maxErrorRatio;
+    }
+
+    /**
+     * 单个实例两次同步之间最多放行rate的多少比例，同时是每个未同步实例的误差上限
+     *
+     * @param maxErrorRatio (0, 1]
+     */
+    public void setMaxErrorRatio(double maxErrorRatio) {
+        Assert.isTrue(maxErrorRatio > 0 && maxErrorRatio <= 1, "maxErrorRatio must be in (0, 1]");
+        this.maxErrorRatio = maxErrorRatio;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize 一次脚本调用同步的key数量
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 使用外部的调度线程执行同步，默认在第一次判定时创建一个守护线程
+     *
+     * @param scheduler scheduler
+     */
+    public synchronized void setScheduler(ScheduledExecutorService scheduler) {
+        Assert.notNull(scheduler, "scheduler can't be null");
+        Assert.state(this.scheduler == null, "scheduler has already been initialized");
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 同步剩余的增量并停止后台同步，之后不能再使用
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!started) {
+                return;
+            }
+            started = false;
+            syncing.cancel(false);
+            syncing = null;
+            if (ownScheduler) {
+                scheduler.shutdownNow();
+                scheduler = null;
+                ownScheduler = false;
+            }
+        }
+        syncQuietly();
+    }
+
+    private static final class Counter {
+        private final String key;
+        private final LongAdder pending = new LongAdder();
+        private volatile long windowId = -1;
+        private volatile long windowEnd;
+        private volatile long rate;
+        /**
+         * 上一次同步取回的全局数量
+         */
+        private volatile long synced;
+        /**
+         * 已经从pending取出、提交给redis的累计数量
+         */
+        private volatile long sent;
+        /**
+         * 已经确认写入redis、包含在synced中的累计数量
+         */
+        private volatile long confirmed;
+        private volatile long share;
+        private int instances = 1;
+
+        Counter(String key) {
+            this.key = key;
+        }
+
+        synchronized void roll(long windowId, long windowEnd, long rate, long bound) {
+            this.pending.reset();
+            this.synced = 0;
+            this.sent = 0;
+            this.confirmed = 0;
+            this.rate = rate;
+            //沿用上一个窗口的实例数量估计份额
+            this.share = Math.min((rate + instances - 1) / instances, bound);
+            this.windowEnd = windowEnd;
+            this.windowId = windowId;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.AbstractBeanFactoryPointcutAdvisor;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+
+import java.lang.reflect.Method;
+
+/**
+ * {@link ConcurrencyLimiter}的advisor
+ *
+ * @author zido
+ */
+public class BeanFactoryConcurrencyLimiterAdvisor extends AbstractBeanFactoryPointcutAdvisor {
+    private static final long serialVersionUID = -4379176011566362583L;
+    private final StaticMethodMatcherPointcut pointcut = new StaticMethodMatcherPointcut() {
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return ConcurrencyLimiterInterceptor.findAnnotation(
+                    AopUtils.getMostSpecificMethod(method, targetClass), targetClass) != null;
+        }
+    };
+
+    @Override
+    public Pointcut getPointcut() {
+        return pointcut;
+    }
+}
@@ -0,0 +1,127 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+
+/**
+ * 带熔断的频率限制器，后端出错或者熔断打开时按{@link LimiterFallbackPolicy}处理，不再把异常抛给调用方
+ * <p>
+ * 错误与放行的指标按调用方传入的操作名称记录，未传入时使用{@link #OPERATION}
+ *
+ * @author zido
+ * @see CircuitBreakerRateLimitAlgorithm
+ */
+public class CircuitBreakerFrequencyLimiter implements FrequencyLimiter {
+    /**
+     * 调用方没有传入操作名称时，指标中使用的操作名称
+     */
+    public static final String OPERATION = "frequencyLimiter";
+    private final FrequencyLimiter delegate;
+    private final LimiterCircuitBreaker breaker;
+    private final LimiterFallbackPolicy policy;
+    private final FrequencyLimiter fallback;
+    private LimiterMetrics metrics = LimiterMetrics.NONE;
+
+    public CircuitBreakerFrequencyLimiter(FrequencyLimiter delegate,
+                                          LimiterCircuitBreaker breaker,
+                                          LimiterFallbackPolicy policy) {
+        this(delegate, breaker, policy, policy == LimiterFallbackPolicy.LOCAL ? new LocalFrequencyLimiter() : null);
+    }
+
+    public CircuitBreakerFrequencyLimiter(FrequencyLimiter delegate,
+                                          LimiterCircuitBreaker breaker,
+                                          LimiterFallbackPolicy policy,
+                                          FrequencyLimiter fallback) {
+        Assert.notNull(delegate, "delegate can't be null");
+        Assert.notNull(breaker, "breaker can't be null");
+        Assert.notNull(policy, "policy can't be null");
+        Assert.isTrue(policy != LimiterFallbackPolicy.LOCAL || fallback != null,
+                "fallback can't be null when policy is LOCAL");
+        this.delegate = delegate;
+        this.breaker = breaker;
+        this.policy = policy;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public long tryGet(String key, long timeout) {
+        return tryGet(OPERATION, key, timeout);
+    }
+
+    @Override
+    public long tryGet(String operation, String key, long timeout) {
+        if (breaker.isCallPermitted()) {
+            long start = System.nanoTime();
+            try {
+                long remaining = delegate.tryGet(operation, key, timeout);
+                breaker.onSuccess(System.nanoTime() - start);
+                return remaining;
+            } catch (RuntimeException e) {
+                breaker.onError();
+                metrics.recordError(operation, key, e);
+            }
+        }
+        switch (policy) {
+            case LOCAL:
+                return fallback.tryGet(operation, key, timeout);
+            case FAIL_CLOSED:
+                return breaker.getProbeIntervalMillis();
+            default:
+                metrics.recordFailOpen(operation, key);
+                return 0;
+        }
+    }
+
+    @Override
+    public LimiterViolation tryGetAll(String[] keys, long[] timeouts) {
+        String[] operations = new String[keys.length];
+        Arrays.fill(operations, OPERATION);
+        return tryGetAll(operations, keys, timeouts);
+    }
+
+    @Override
+    public LimiterViolation tryGetAll(String[] operations, String[] keys, long[] timeouts) {
+        if (breaker.isCallPermitted()) {
+            long start = System.nanoTime();
+            try {
+                LimiterViolation violation = delegate.tryGetAll(operations, keys, timeouts);
+                breaker.onSuccess(System.nanoTime() - start);
+                return violation;
+            } catch (RuntimeException e) {
+                breaker.onError();
+                for (int i = 0; i < keys.length; i++) {
+                    metrics.recordError(operations[i], keys[i], e);
+                }
+            }
+        }
+        switch (policy) {
+            case LOCAL:
+                return fallback.tryGetAll(operations, keys, timeouts);
+            case FAIL_CLOSED:
+                return new LimiterViolation(0, breaker.getProbeIntervalMillis());
+            default:
+                for (int i = 0; i < keys.length; i++) {
+                    metrics.recordFailOpen(operations[i], keys[i]);
+                }
+                return null;
+        }
+    }
+
+    public FrequencyLimiter getDelegate() {
+        return delegate;
+    }
+
+    public LimiterCircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    public LimiterFallbackPolicy getPolicy() {
+        return policy;
+    }
+
+    public void setMetrics(LimiterMetrics metrics) {
+        Assert.notNull(metrics, "metrics can't be null");
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,91 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+
+/**
+ * 带熔断的限流算法，后端出错或者熔断打开时按{@link LimiterFallbackPolicy}处理，不再把异常抛给调用方
+ * <p>
+ * 错误与放行的指标按调用方传入的操作名称记录，未传入时使用算法名称
+ *
+ * @author zido
+ * @see CircuitBreakerFrequencyLimiter
+ */
+public class CircuitBreakerRateLimitAlgorithm implements RateLimitAlgorithm {
+    private final RateLimitAlgorithm delegate;
+    private final LimiterCircuitBreaker breaker;
+    private final LimiterFallbackPolicy policy;
+    private final RateLimitAlgorithm fallback;
+    private LimiterMetrics metrics = LimiterMetrics.NONE;
+
+    /**
+     * @param delegate 远端算法
+     * @param breaker  熔断器，同一个后端的算法共享
+     * @param policy   处理方式
+     * @param fallback 本地算法，policy为{@link LimiterFallbackPolicy#LOCAL}时必须提供
+     */
+    public CircuitBreakerRateLimitAlgorithm(RateLimitAlgorithm delegate,
+                                            LimiterCircuitBreaker breaker,
+                                            LimiterFallbackPolicy policy,
+                                            RateLimitAlgorithm fallback) {
+        Assert.notNull(delegate, "delegate can't be null");
+        Assert.notNull(breaker, "breaker can't be null");
+        Assert.notNull(policy, "policy can't be null");
+        Assert.isTrue(policy != LimiterFallbackPolicy.LOCAL || fallback != null,
+                "fallback can't be null when policy is LOCAL");
+        this.delegate = delegate;
+        this.breaker = breaker;
+        this.policy = policy;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public long tryAcquire(String key, long rate, long periodMillis, long burst) {
+        return tryAcquire(getName(), key, rate, periodMillis, burst);
+    }
+
+    @Override
+    public long tryAcquire(String operation, String key, long rate, long periodMillis, long burst) {
+        if (breaker.isCallPermitted()) {
+            long start = System.nanoTime();
+            try {
+                long wait = delegate.tryAcquire(operation, key, rate, periodMillis, burst);
+                breaker.onSuccess(System.nanoTime() - start);
+                return wait;
+            } catch (RuntimeException e) {
+                breaker.onError();
+                metrics.recordError(operation, key, e);
+            }
+        }
+        switch (policy) {
+            case LOCAL:
+                return fallback.tryAcquire(operation, key, rate, periodMillis, burst);
+            case FAIL_CLOSED:
+                return breaker.getProbeIntervalMillis();
+            default:
+                metrics.recordFailOpen(operation, key);
+                return 0;
+        }
+    }
+
+    public RateLimitAlgorithm getDelegate() {
+        return delegate;
+    }
+
+    public LimiterCircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    public LimiterFallbackPolicy getPolicy() {
+        return policy;
+    }
+
+    public void setMetrics(LimiterMetrics metrics) {
+        Assert.notNull(metrics, "metrics can't be null");
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,37 @@
+package site.zido.coffee.extra.limiter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 自适应并发限制注解，按延迟自动调整允许同时执行的数量，超出时立即拒绝
+ * <p>
+ * 与{@link Limiter}不同，限制的是进程内同时执行的请求数而不是单位时间的请求数，不需要预先设定阈值，
+ * 下游变慢时自动收紧，恢复后逐步放开
+ *
+ * @author zido
+ * @see AdaptiveConcurrencyLimiter
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface ConcurrencyLimiter {
+    /**
+     * 限制器名称，名称相同的方法共享同一个并发限制，默认为全限定类名.方法名(参数类型)
+     */
+    String name() default "";
+
+    /**
+     * 初始的并发数量
+     */
+    int initialLimit() default 20;
+
+    int minLimit() default 1;
+
+    int maxLimit() default 1000;
+}
@@ -0,0 +1,24 @@
+package site.zido.coffee.extra.limiter;
+
+/**
+ * 并发数量超过{@link AdaptiveConcurrencyLimiter}当前的限制时抛出的异常
+ *
+ * @author zido
+ * @see ConcurrencyLimiter
+ */
+public class ConcurrencyLimiterException extends LimiterException {
+    private static final long serialVersionUID = 2811236472541937710L;
+    private final int limit;
+
+    public ConcurrencyLimiterException(String name, int limit) {
+        super("请求过多，请稍后重试", name, 0, 0);
+        this.limit = limit;
+    }
+
+    /**
+     * @return 拒绝时的并发限制
+     */
+    public int getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,178 @@
+package site.zido.coffee.extra.limiter;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ConcurrencyLimiter}的拦截器，每个方法(或同名的一组方法)对应一个{@link AdaptiveConcurrencyLimiter}
+ * <p>
+ * 正常返回的调用作为延迟样本，抛出异常的调用只释放名额，避免快速失败的请求拉低延迟而放大限制
+ *
+ * @author zido
+ */
+public class ConcurrencyLimiterInterceptor extends AbstractLimiterInvoker implements MethodInterceptor {
+    protected final Logger LOGGER = LoggerFactory.getLogger(getClass());
+    private final Map<Method, Entry> entries = new ConcurrentHashMap<>(64);
+    private final Map<MethodClassKey, Entry> sharedEntries = new ConcurrentHashMap<>(16);
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>(16);
+    private LimiterMetrics metrics = LimiterMetrics.NONE;
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Entry entry = getEntry(invocation.getMethod(), invocation.getThis());
+        AdaptiveConcurrencyLimiter limiter = entry.limiter;
+        if (limiter == null) {
+            return invocation.proceed();
+        }
+        boolean acquired = limiter.tryAcquire();
+        metrics.recordDecision(entry.name, entry.name, acquired);
+        if (!acquired) {
+            LOGGER.debug("并发过高{} , limit: {}", entry.name, limiter.getLimit());
+            getErrorHandler().handleOnLimited(new ConcurrencyLimiterException(entry.name, limiter.getLimit()));
+            return null;
+        }
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable e) {
+            limiter.release();
+            throw e;
+        }
+        limiter.release(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * 与{@link LimiterInterceptor}的调用计划相同，常见情况下只需要一次按{@link Method}的查找，
+     * 同一个方法被多个类共享时，其余的类按方法与类缓存
+     */
+    private Entry getEntry(Method method, Object target) {
+        Class<?> instanceClass = target == null ? null : target.getClass();
+        Entry entry = entries.get(method);
+        if (entry != null && entry.instanceClass == instanceClass) {
+            return entry;
+        }
+        if (entry != null) {
+            MethodClassKey cacheKey = new MethodClassKey(method, instanceClass);
+            entry = sharedEntries.get(cacheKey);
+            if (entry == null) {
+                entry = createEntry(method, target, instanceClass);
+                sharedEntries.putIfAbsent(cacheKey, entry);
+            }
+            return entry;
+        }
+        entry = createEntry(method, target, instanceClass);
+        Entry existing = entries.putIfAbsent(method, entry);
+        if (existing != null && existing.instanceClass != instanceClass) {
+            sharedEntries.putIfAbsent(new MethodClassKey(method, instanceClass), entry);
+        }
+        return entry;
+    }
+
+    private Entry createEntry(Method method, Object target, Class<?> instanceClass) {
+        Class<?> targetClass = target == null ? null : AopProxyUtils.ultimateTargetClass(target);
+        Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+        ConcurrencyLimiter annotation = findAnnotation(specificMethod, targetClass);
+        if (annotation == null) {
+            return new Entry(instanceClass, null, null);
+        }
+        String name = StringUtils.hasText(annotation.name()) ? annotation.name() : defaultName(specificMethod, targetClass);
+        return new Entry(instanceClass, name, limiters.computeIfAbsent(name, n -> new AdaptiveConcurrencyLimiter(
+                annotation.initialLimit(), annotation.minLimit(), annotation.maxLimit())));
+    }
+
+    /**
+     * 全限定类名.方法名(参数类型)，不同类的同名方法以及重载的方法不会共享限制
+     */
+    private static String defaultName(Method method, Class<?> targetClass) {
+        Class<?> userClass = ClassUtils.getUserClass(targetClass != null ? targetClass : method.getDeclaringClass());
+        StringJoiner joiner = new StringJoiner(",", ClassUtils.getQualifiedMethodName(method, userClass) + "(", ")");
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            joiner.add(parameterType.getName());
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * 查找方法上的注解，找不到时查找类上的注解(只作用于public方法，不包括{@link Object}声明的方法)
+     *
+     * @param method      方法
+     * @param targetClass 目标类
+     * @return 注解，没有时返回null
+     */
+    static ConcurrencyLimiter findAnnotation(Method method, Class<?> targetClass) {
+        ConcurrencyLimiter annotation = AnnotatedElementUtils.findMergedAnnotation(method, ConcurrencyLimiter.class);
+        if (annotation != null || !Modifier.isPublic(method.getModifiers()) || ReflectionUtils.isObjectMethod(method)) {
+            return annotation;
+        }
+        if (targetClass != null) {
+            annotation = AnnotatedElementUtils.findMergedAnnotation(targetClass, ConcurrencyLimiter.class);
+        }
+        if (annotation == null) {
+            annotation = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), ConcurrencyLimiter.class);
+        }
+        return annotation;
+    }
+
+    /**
+     * @param name 限制器名称
+     * @return 限制器，没有被调用过时返回null
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter(String name) {
+        return limiters.get(name);
+    }
+
+    /**
+     * @return 所有已创建的限制器，key为名称
+     */
+    public Map<String, AdaptiveConcurrencyLimiter> getConcurrencyLimiters() {
+        return Collections.unmodifiableMap(limiters);
+    }
+
+    public LimiterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 记录放行与拒绝的次数，延迟由限制器自身统计
+     *
+     * @param metrics metrics
+     */
+    public void setMetrics(LimiterMetrics metrics) {
+        Assert.notNull(metrics, "metrics can't be null");
+        this.metrics = metrics;
+    }
+
+    private static final class Entry {
+        private final Class<?> instanceClass;
+        private final String name;
+        /**
+         * 没有注解时为null
+         */
+        private final AdaptiveConcurrencyLimiter limiter;
+
+        private Entry(Class<?> instanceClass, String name, AdaptiveConcurrencyLimiter limiter) {
+            this.instanceClass = instanceClass;
+            this.name = name;
+            this.limiter = limiter;
+        }
+    }
+}
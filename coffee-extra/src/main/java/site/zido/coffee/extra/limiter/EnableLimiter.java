@@ -34,4 +34,9 @@ public @interface EnableLimiter {
      * 代理顺序
      */
     int order() default Ordered.LOWEST_PRECEDENCE;
+
+    /**
+     * 是否在容器启动时预先解析所有限流操作，默认在每个方法第一次被调用时解析
+     */
+    boolean eager() default false;
 }
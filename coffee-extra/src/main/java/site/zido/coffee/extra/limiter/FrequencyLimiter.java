@@ -3,7 +3,7 @@ package site.zido.coffee.extra.limiter;
 /**
  * 节点频率限制器，限制某个用户（key区分）的某个动作在特定时间内只能有一次
  * <p>
- * 秒为单位
+ * 有效时间以秒为单位，返回的等待时间以毫秒为单位
  *
  * @author zido
  */
@@ -14,7 +14,52 @@ public interface FrequencyLimiter {
      *
      * @param key     key
      * @param timeout 设置如果本次拿到执行权的有效时间
-     * @return 如果拿到了执行权则返回0，否则返回还需等待的时间
+     * @return 如果拿到了执行权则返回0，否则返回还需等待的毫秒数
      */
     long tryGet(String key, long timeout);
+
+    /**
+     * 与{@link #tryGet(String, long)}相同，同时告知调用方的操作名称，
+     * 包装类(例如{@link CircuitBreakerFrequencyLimiter})据此记录指标，默认忽略
+     *
+     * @param operation 操作名称，例如限流的方法或者规则名称
+     * @param key       key
+     * @param timeout   设置如果本次拿到执行权的有效时间
+     * @return 如果拿到了执行权则返回0，否则返回还需等待的毫秒数
+     */
+    default long tryGet(String operation, String key, long timeout) {
+        return tryGet(key, timeout);
+    }
+
+    /**
+     * 同时判定多个规则，全部满足时才拿到执行权
+     * <p>
+     * 默认逐个调用{@link #tryGet(String, long)}，不满足的规则之前的规则已经被消耗；
+     * 实现可以覆盖为原子操作，任一规则不满足时不消耗任何规则
+     *
+     * @param keys     keys
+     * @param timeouts 与keys一一对应的有效时间
+     * @return 全部满足时返回null，否则返回第一个不满足的规则
+     */
+    default LimiterViolation tryGetAll(String[] keys, long[] timeouts) {
+        for (int i = 0; i < keys.length; i++) {
+            long remaining = tryGet(keys[i], timeouts[i]);
+            if (remaining > 0) {
+                return new LimiterViolation(i, remaining);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 与{@link #tryGetAll(String[], long[])}相同，同时告知每个规则的操作名称，默认忽略
+     *
+     * @param operations 与keys一一对应的操作名称
+     * @param keys       keys
+     * @param timeouts   与keys一一对应的有效时间
+     * @return 全部满足时返回null，否则返回第一个不满足的规则
+     */
+    default LimiterViolation tryGetAll(String[] operations, String[] keys, long[] timeouts) {
+        return tryGetAll(keys, timeouts);
+    }
 }
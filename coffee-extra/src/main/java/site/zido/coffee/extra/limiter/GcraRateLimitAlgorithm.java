@@ -0,0 +1,41 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * 通用信元速率算法(GCRA)，效果与令牌桶相同，但每个key只需要保存一个理论到达时间(TAT)
+ * <p>
+ * 请求的间隔为period/rate，最多允许burst个请求突发
+ *
+ * @author zido
+ */
+public class GcraRateLimitAlgorithm extends AbstractRedisRateLimitAlgorithm {
+    private static final String SCRIPT = "local now = tonumber(ARGV[1]) " +
+            "local interval = tonumber(ARGV[3]) / tonumber(ARGV[2]) " +
+            "local offset = interval * tonumber(ARGV[4]) " +
+            "local tat = tonumber(redis.call('get', KEYS[1])) " +
+            "if not tat or tat < now then tat = now end " +
+            "local newTat = tat + interval " +
+            "local allowAt = newTat - offset " +
+            "if now < allowAt then return math.max(1, math.ceil(allowAt - now)) end " +
+            "redis.call('set', KEYS[1], tostring(newTat), 'PX', math.ceil(newTat - now)) " +
+            "return 0";
+
+    public GcraRateLimitAlgorithm(RedisTemplate<String, ?> template) {
+        this(null, template);
+    }
+
+    public GcraRateLimitAlgorithm(String prefix, RedisTemplate<String, ?> template) {
+        super(prefix, template, SCRIPT);
+    }
+
+    @Override
+    public String getName() {
+        return GCRA;
+    }
+
+    @Override
+    protected Object[] args(long now, long rate, long periodMillis, long capacity) {
+        return new Object[]{String.valueOf(now), String.valueOf(rate), String.valueOf(periodMillis), String.valueOf(capacity)};
+    }
+}
@@ -5,6 +5,9 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * 限流器注解，可以根据任何资源进行限流{@link #key()}
+ * <p>
+ * 默认使用{@link FrequencyLimiter}，在{@link #timeout()}内只允许一次；
+ * 指定{@link #algorithm()}后使用对应的{@link RateLimitAlgorithm}，每{@link #timeout()}允许{@link #rate()}次，最多突发{@link #burst()}次
  *
  * @author zido
  */
@@ -12,10 +15,35 @@ import java.util.concurrent.TimeUnit;
 @Retention(RetentionPolicy.RUNTIME)
 @Inherited
 @Documented
+@Repeatable(Limiters.class)
 public @interface Limiter {
     String key() default "";
 
     long timeout() default 55;
 
     TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * 限流算法名称，为空时使用{@link FrequencyLimiter}
+     *
+     * @return algorithm name
+     * @see RateLimitAlgorithm#TOKEN_BUCKET
+     * @see RateLimitAlgorithm#SLIDING_WINDOW
+     * @see RateLimitAlgorithm#GCRA
+     */
+    String algorithm() default "";
+
+    /**
+     * 每个周期允许通过的次数，只对{@link #algorithm()}生效
+     *
+     * @return rate
+     */
+    long rate() default 1;
+
+    /**
+     * 允许的突发数量，小于等于0时等于{@link #rate()}，只对{@link #algorithm()}生效
+     *
+     * @return burst
+     */
+    long burst() default 0;
 }
@@ -0,0 +1,236 @@
+package site.zido.coffee.extra.limiter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import site.zido.coffee.core.utils.SystemClock;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 限流后端的熔断器
+ * <p>
+ * 统计窗口内失败(包括超过慢调用阈值的调用)的比例达到阈值后打开，打开期间不再访问后端，
+ * 由后台线程按固定间隔探测后端，探测成功并且没有超过慢调用阈值时关闭。
+ * 请求线程只读取状态，不会因为等待后端恢复而阻塞
+ * <p>
+ * 慢调用阈值只用于统计，不会中断正在进行的调用：同步的redis调用无法中途放弃，
+ * 单次调用的耗时上限由连接的命令超时(例如spring.redis.timeout)决定
+ *
+ * @author zido
+ * @see CircuitBreakerFrequencyLimiter
+ * @see CircuitBreakerRateLimitAlgorithm
+ */
+public class LimiterCircuitBreaker implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LimiterCircuitBreaker.class);
+    private final BooleanSupplier probe;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private ScheduledExecutorService scheduler;
+    private boolean ownScheduler;
+    private ScheduledFuture<?> probing;
+    private volatile boolean open;
+    private volatile long windowStart = SystemClock.now();
+    private long slowCallNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private double failureRateThreshold = 0.5;
+    private int minimumCalls = 20;
+    private long windowMillis = 10000;
+    private long probeIntervalMillis = 1000;
+
+    /**
+     * @param probe 探测后端是否可用，在后台线程中执行
+     */
+    public LimiterCircuitBreaker(BooleanSupplier probe) {
+        Assert.notNull(probe, "probe can't be null");
+        this.probe = probe;
+    }
+
+    /**
+     * @return 是否可以访问后端
+     */
+    public boolean isCallPermitted() {
+        return !open;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * 一次成功的调用，超过慢调用阈值时按失败统计
+     *
+     * @param elapsedNanos 调用耗时
+     */
+    public void onSuccess(long elapsedNanos) {
+        record(elapsedNanos > slowCallNanos);
+    }
+
+    /**
+     * 一次失败的调用
+     */
+    public void onError() {
+        record(true);
+    }
+
+    private void record(boolean failure) {
+        long now = SystemClock.now();
+        long start = windowStart;
+        if (now - start >= windowMillis) {
+            synchronized (this) {
+                if (windowStart == start) {
+                    calls.reset();
+                    failures.reset();
+                    windowStart = now;
+                }
+            }
+        }
+        calls.increment();
+        if (!failure) {
+            return;
+        }
+        failures.increment();
+        long total = calls.sum();
+        if (!open && total >= minimumCalls && failures.sum() >= total * failureRateThreshold) {
+            transitionToOpen();
+        }
+    }
+
+    private synchronized void transitionToOpen() {
+        if (open) {
+            return;
+        }
+        open = true;
+        LOGGER.warn("限流后端失败率过高，熔断器打开，{}ms后开始探测", probeIntervalMillis);
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "coffee-limiter-probe");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ownScheduler = true;
+        }
+        probing = scheduler.scheduleWithFixedDelay(this::probe,
+                probeIntervalMillis, probeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe() {
+        long start = System.nanoTime();
+        boolean available;
+        try {
+            available = probe.getAsBoolean();
+        } catch (RuntimeException e) {
+            LOGGER.debug("限流后端探测失败", e);
+            available = false;
+        }
+        if (available && System.nanoTime() - start <= slowCallNanos) {
+            transitionToClosed();
+        }
+    }
+
+    private synchronized void transitionToClosed() {
+        if (!open) {
+            return;
+        }
+        calls.reset();
+        failures.reset();
+        windowStart = SystemClock.now();
+        open = false;
+        if (probing != null) {
+            probing.cancel(false);
+            probing = null;
+        }
+        LOGGER.info("限流后端恢复，熔断器关闭");
+    }
+
+    /**
+     * 下一次探测前的等待时间，用于拒绝时告知调用方
+     *
+     * @return 毫秒
+     */
+    public long getProbeIntervalMillis() {
+        return probeIntervalMillis;
+    }
+
+    public void setProbeIntervalMillis(long probeIntervalMillis) {
+        Assert.isTrue(probeIntervalMillis > 0, "probeIntervalMillis must be greater than 0");
+        this.probeIntervalMillis = probeIntervalMillis;
+    }
+
+    /**
+     * 慢调用阈值，调用成功但耗时超过阈值时按失败统计，不限制调用本身的耗时
+     *
+     * @param timeout 耗时
+     * @param unit    单位
+     */
+    public void setSlowCallThreshold(long timeout, TimeUnit unit) {
+        Assert.isTrue(timeout > 0, "timeout must be greater than 0");
+        this.slowCallNanos = unit.toNanos(timeout);
+    }
+
+    public long getSlowCallThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowCallNanos);
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * @param failureRateThreshold 打开熔断的失败比例，(0, 1]
+     */
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        Assert.isTrue(failureRateThreshold > 0 && failureRateThreshold <= 1,
+                "failureRateThreshold must be in (0, 1]");
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * @param minimumCalls 窗口内至少有多少次调用才计算失败比例
+     */
+    public void setMinimumCalls(int minimumCalls) {
+        Assert.isTrue(minimumCalls > 0, "minimumCalls must be greater than 0");
+        this.minimumCalls = minimumCalls;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        Assert.isTrue(windowMillis > 0, "windowMillis must be greater than 0");
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * 使用外部的调度线程执行探测，默认在第一次打开时创建一个守护线程
+     *
+     * @param scheduler scheduler
+     */
+    public synchronized void setScheduler(ScheduledExecutorService scheduler) {
+        Assert.notNull(scheduler, "scheduler can't be null");
+        Assert.state(this.scheduler == null, "scheduler has already been initialized");
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (probing != null) {
+            probing.cancel(false);
+            probing = null;
+        }
+        if (ownScheduler) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            ownScheduler = false;
+        }
+    }
+}
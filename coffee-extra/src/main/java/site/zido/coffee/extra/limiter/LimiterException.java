@@ -14,7 +14,7 @@ public class LimiterException extends RuntimeException {
      */
     private Object key;
     /**
-     * 剩余时间
+     * 剩余时间，毫秒
      */
     private long last;
     /**
@@ -26,8 +26,20 @@ public class LimiterException extends RuntimeException {
 
     }
 
+    /**
+     * @param key         限制的key
+     * @param last        剩余毫秒数，提示信息中向上取整为秒
+     * @param requireTime 下次需要的时间
+     */
     public LimiterException(Object key, long last, long requireTime) {
-        super(String.format("频率过高，请在 %d 秒后重试", last));
+        super(String.format("频率过高，请在 %d 秒后重试", Math.max(1, (last + 999) / 1000)));
+        this.key = key;
+        this.last = last;
+        this.requireTime = requireTime;
+    }
+
+    protected LimiterException(String message, Object key, long last, long requireTime) {
+        super(message);
         this.key = key;
         this.last = last;
         this.requireTime = requireTime;
@@ -0,0 +1,22 @@
+package site.zido.coffee.extra.limiter;
+
+/**
+ * 限流后端出错或者熔断打开时的处理方式
+ *
+ * @author zido
+ * @see LimiterCircuitBreaker
+ */
+public enum LimiterFallbackPolicy {
+    /**
+     * 直接放行
+     */
+    FAIL_OPEN,
+    /**
+     * 按被限制处理，等待时间为熔断器的探测间隔
+     */
+    FAIL_CLOSED,
+    /**
+     * 由进程内的限流器判定，每个实例单独计数
+     */
+    LOCAL
+}
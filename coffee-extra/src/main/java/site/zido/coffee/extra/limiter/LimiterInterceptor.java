@@ -4,92 +4,371 @@ import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.TargetSource;
+import org.springframework.aop.framework.Advised;
 import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.context.expression.AnnotatedElementKey;
 import org.springframework.context.expression.BeanFactoryResolver;
 import org.springframework.context.expression.MethodBasedEvaluationContext;
 import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.MethodClassKey;
 import org.springframework.core.ParameterNameDiscoverer;
-import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 /**
  * @author zido
  */
-public class LimiterInterceptor extends AbstractLimiterInvoker implements MethodInterceptor, BeanFactoryAware, InitializingBean {
+public class LimiterInterceptor extends AbstractLimiterInvoker
+        implements MethodInterceptor, BeanFactoryAware, InitializingBean, SmartInitializingSingleton {
 
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final Pattern PARAMETER_REFERENCE = Pattern.compile("#(\\w+)");
+    private static final Pattern INDEXED_REFERENCE = Pattern.compile("[ap](\\d+)");
     protected final Logger LOGGER = LoggerFactory.getLogger(getClass());
     private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
-    private final SpelExpressionParser parser = new SpelExpressionParser();
-    private final ConcurrentHashMap<String, Expression> caches = new ConcurrentHashMap<>(3);
+    private final SpelExpressionParser parser = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, LimiterInterceptor.class.getClassLoader()));
+    private final ConcurrentHashMap<Method, InvocationPlan> plans = new ConcurrentHashMap<>(64);
+    private final ConcurrentHashMap<MethodClassKey, InvocationPlan> sharedPlans = new ConcurrentHashMap<>(16);
     private LimiterOperationSource limiterOperationSource;
+    private final Map<String, RateLimitAlgorithm> algorithms = new ConcurrentHashMap<>(4);
     private FrequencyLimiter limiter;
+    private LimiterMetrics metrics = LimiterMetrics.NONE;
+    private boolean eagerInitialization = false;
     private BeanFactory factory;
 
     @Override
     public Object invoke(MethodInvocation invocation) throws Throwable {
-        Method method = invocation.getMethod();
         Object target = invocation.getThis();
-        Class<?> targetClass = AopProxyUtils.ultimateTargetClass(target);
-        Collection<LimiterOperation> operations = getLimiterOperationSource().getLimiterOperations(method, targetClass);
-        if (!CollectionUtils.isEmpty(operations)) {
-            for (LimiterOperation operation : operations) {
-                String key = operation.getKey();
-                Object[] args = invocation.getArguments();
-                if (StringUtils.hasText(key)) {
-                    EvaluationContext context = createEvaluationContext(method, args, target, targetClass);
-                    key = generateKey(key, context);
-                } else {
-                    key = generateKey(target, method, args);
+        InvocationPlan plan = getPlan(invocation.getMethod(), target);
+        if (plan.batch != null && !tryAcquireAll(plan, target, invocation.getArguments())) {
+            return null;
+        }
+        LimiterMetrics metrics = this.metrics;
+        for (Step step : plan.steps) {
+            String key = step.keyGenerator.generate(target, plan.method, invocation.getArguments());
+            try {
+                long start = metrics == LimiterMetrics.NONE ? 0 : System.nanoTime();
+                long lastTimeout = step.acquirer.tryAcquire(key);
+                if (start != 0) {
+                    metrics.recordDecision(step.name, key, lastTimeout <= 0, System.nanoTime() - start);
                 }
-                long timeout = operation.getTimeout();
-                try {
-                    long lastTimeout = limiter.tryGet(key, timeout);
-                    if (lastTimeout > 0) {
-                        LOGGER.debug("限制行为{}#{} , remain: {}", targetClass.getName(), method.getName(), lastTimeout);
-                        getErrorHandler().handleOnLimited(new LimiterException(key, lastTimeout, timeout));
-                        return null;
-                    }
-                } catch (RuntimeException e) {
-                    getErrorHandler().handleError(e, key);
+                if (lastTimeout > 0) {
+                    LOGGER.debug("限制行为{}#{} , remain: {}", plan.targetClass.getName(), plan.method.getName(), lastTimeout);
+                    getErrorHandler().handleOnLimited(new LimiterException(key, lastTimeout, step.operation.getTimeout()));
                     return null;
                 }
+            } catch (RuntimeException e) {
+                metrics.recordError(step.name, key, e);
+                getErrorHandler().handleError(e, key);
+                return null;
             }
         }
         return invocation.proceed();
     }
 
+    /**
+     * 同一个方法上的多个频率限制一次性判定
+     *
+     * @return 是否全部通过
+     */
+    private boolean tryAcquireAll(InvocationPlan plan, Object target, Object[] args) {
+        Step[] batch = plan.batch;
+        String[] keys = new String[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            keys[i] = batch[i].keyGenerator.generate(target, plan.method, args);
+        }
+        LimiterMetrics metrics = this.metrics;
+        try {
+            long start = metrics == LimiterMetrics.NONE ? 0 : System.nanoTime();
+            LimiterViolation violation = plan.batchLimiter.tryGetAll(plan.batchOperations, keys, plan.batchTimeouts);
+            if (start != 0) {
+                recordBatch(metrics, batch, keys, violation, System.nanoTime() - start);
+            }
+            if (violation != null) {
+                int index = violation.getIndex();
+                LOGGER.debug("限制行为{}#{} , remain: {}", plan.targetClass.getName(), plan.method.getName(), violation.getRemaining());
+                getErrorHandler().handleOnLimited(new LimiterException(keys[index], violation.getRemaining(), batch[index].operation.getTimeout()));
+                return false;
+            }
+        } catch (RuntimeException e) {
+            for (int i = 0; i < batch.length; i++) {
+                metrics.recordError(batch[i].name, keys[i], e);
+            }
+            getErrorHandler().handleError(e, Arrays.asList(keys));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 全部通过时每条规则都记为放行；被拒绝时只有违反的规则被记录，其余规则没有被消耗。
+     * 批量判定只访问一次后端，耗时只记录一次
+     */
+    private static void recordBatch(LimiterMetrics metrics, Step[] batch, String[] keys,
+                                    LimiterViolation violation, long latencyNanos) {
+        metrics.recordLatency(batch[0].name, latencyNanos);
+        if (violation != null) {
+            int index = violation.getIndex();
+            metrics.recordDecision(batch[index].name, keys[index], false);
+            return;
+        }
+        for (int i = 0; i < batch.length; i++) {
+            metrics.recordDecision(batch[i].name, keys[i], true);
+        }
+    }
+
+    /**
+     * 常见情况下一个方法只对应一个目标类，只需要一次按{@link Method}的查找；
+     * 同一个方法被多个类共享(例如接口方法)时，其余的类按方法与类缓存
+     */
+    private InvocationPlan getPlan(Method method, Object target) {
+        Class<?> instanceClass = target == null ? null : target.getClass();
+        InvocationPlan plan = plans.get(method);
+        if (plan != null && plan.instanceClass == instanceClass) {
+            return plan;
+        }
+        if (plan != null) {
+            MethodClassKey cacheKey = new MethodClassKey(method, instanceClass);
+            plan = sharedPlans.get(cacheKey);
+            if (plan == null) {
+                plan = createPlan(method, target, instanceClass);
+                sharedPlans.putIfAbsent(cacheKey, plan);
+            }
+            return plan;
+        }
+        plan = createPlan(method, target, instanceClass);
+        InvocationPlan existing = plans.putIfAbsent(method, plan);
+        if (existing != null && existing.instanceClass != instanceClass) {
+            sharedPlans.putIfAbsent(new MethodClassKey(method, instanceClass), plan);
+        }
+        return plan;
+    }
+
+    private InvocationPlan createPlan(Method method, Object target, Class<?> instanceClass) {
+        Class<?> targetClass = AopProxyUtils.ultimateTargetClass(target);
+        Collection<LimiterOperation> operations = getLimiterOperationSource().getLimiterOperations(method, targetClass);
+        InvocationPlan plan = new InvocationPlan(method, targetClass, instanceClass);
+        if (CollectionUtils.isEmpty(operations)) {
+            return plan;
+        }
+        List<Step> steps = new ArrayList<>(operations.size());
+        List<Step> batch = new ArrayList<>(operations.size());
+        String name = ClassUtils.getQualifiedMethodName(method, targetClass);
+        for (LimiterOperation operation : operations) {
+            Step step = new Step(name, operation, createKeyGenerator(operation.getKey(), method, targetClass), createAcquirer(name, operation));
+            if (limiter != null && !StringUtils.hasText(operation.getAlgorithm())) {
+                batch.add(step);
+            } else {
+                steps.add(step);
+            }
+        }
+        if (batch.size() > 1) {
+            //多个频率限制合并为一次判定，先于限流算法执行
+            plan.batch = batch.toArray(new Step[0]);
+            plan.batchLimiter = limiter;
+            plan.batchTimeouts = batch.stream().mapToLong(step -> step.operation.getTimeout()).toArray();
+            plan.batchOperations = batch.stream().map(step -> step.name).toArray(String[]::new);
+        } else {
+            steps.addAll(0, batch);
+        }
+        plan.steps = steps.toArray(new Step[0]);
+        return plan;
+    }
+
+    private Acquirer createAcquirer(String name, LimiterOperation operation) {
+        String algorithmName = operation.getAlgorithm();
+        if (!StringUtils.hasText(algorithmName)) {
+            FrequencyLimiter limiter = this.limiter;
+            long timeout = operation.getTimeout();
+            if (limiter == null) {
+                return key -> {
+                    throw new IllegalStateException("no FrequencyLimiter configured for " + operation.getName());
+                };
+            }
+            return key -> limiter.tryGet(name, key, timeout);
+        }
+        RateLimitAlgorithm algorithm = algorithms.get(algorithmName);
+        if (algorithm == null) {
+            return key -> {
+                throw new IllegalStateException(String.format("未找到名为[%s]的限流算法", algorithmName));
+            };
+        }
+        long rate = operation.getRate();
+        long periodMillis = operation.getUnit().toMillis(operation.getTimeout());
+        long burst = operation.getBurst();
+        return key -> algorithm.tryAcquire(name, key, rate, periodMillis, burst);
+    }
+
+    /**
+     * 未指定{@link Limiter#key()}时的默认key，为参数内容的64位哈希，长度固定
+     *
+     * @param target 目标对象
+     * @param method 方法
+     * @param args   参数
+     * @return key
+     */
     protected String generateKey(Object target, Method method, Object[] args) {
-        return Arrays.toString(args);
+        long hash = FNV_OFFSET;
+        for (Object arg : args) {
+            hash = (hash ^ hash(arg)) * FNV_PRIME;
+        }
+        return Long.toHexString(mix(hash));
     }
 
-    private String generateKey(String expression, EvaluationContext context) {
-        Expression expr = caches.computeIfAbsent(expression, parser::parseExpression);
-        return expr.getValue(context, String.class);
+    private static long hash(Object arg) {
+        if (arg == null) {
+            return 0;
+        }
+        if (arg instanceof CharSequence) {
+            CharSequence chars = (CharSequence) arg;
+            long hash = FNV_OFFSET;
+            for (int i = 0; i < chars.length(); i++) {
+                hash = (hash ^ chars.charAt(i)) * FNV_PRIME;
+            }
+            return hash;
+        }
+        if (arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+            return mix(((Number) arg).longValue());
+        }
+        if (arg.getClass().isArray()) {
+            return mix(Arrays.deepHashCode(new Object[]{arg}));
+        }
+        return mix(arg.hashCode());
     }
 
-    private EvaluationContext createEvaluationContext(Method method, Object[] args, Object target, Class<?> targetClass) {
-        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(new LimiterRootObject(method, args, target, targetClass), method, args, getParameterNameDiscoverer());
-        context.setBeanResolver(new BeanFactoryResolver(factory));
-        return context;
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private LimiterKeyGenerator createKeyGenerator(String expression, Method method, Class<?> targetClass) {
+        if (!StringUtils.hasText(expression)) {
+            return this::generateKey;
+        }
+        int index = resolveParameterIndex(expression.trim(), method);
+        if (index >= 0) {
+            return (target, m, args) -> args[index] == null ? null : args[index].toString();
+        }
+        Expression expr = parser.parseExpression(expression);
+        BeanFactoryResolver beanResolver = factory == null ? null : new BeanFactoryResolver(factory);
+        return (target, m, args) -> {
+            MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(
+                    new LimiterRootObject(m, args, target, targetClass), m, args, getParameterNameDiscoverer());
+            context.setBeanResolver(beanResolver);
+            return expr.getValue(context, String.class);
+        };
+    }
+
+    /**
+     * 解析#name、#p0、#a0形式的参数引用
+     *
+     * @return 参数下标，不是简单参数引用时返回-1
+     */
+    private int resolveParameterIndex(String expression, Method method) {
+        Matcher matcher = PARAMETER_REFERENCE.matcher(expression);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        String name = matcher.group(1);
+        String[] names = getParameterNameDiscoverer().getParameterNames(method);
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+        }
+        Matcher indexed = INDEXED_REFERENCE.matcher(name);
+        if (indexed.matches()) {
+            int index = Integer.parseInt(indexed.group(1));
+            if (index < method.getParameterCount()) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 开启{@link #setEagerInitialization(boolean)}时，在所有单例创建完成后预先解析被代理的单例上的限流操作并生成调用计划，
+     * 避免第一次请求时扫描注解与解析表达式
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!eagerInitialization || !(factory instanceof ConfigurableListableBeanFactory)) {
+            return;
+        }
+        ConfigurableListableBeanFactory beanFactory = (ConfigurableListableBeanFactory) factory;
+        Map<Class<?>, Object> targets = new LinkedHashMap<>();
+        for (String name : beanFactory.getSingletonNames()) {
+            Object bean = beanFactory.getSingleton(name);
+            if (!(bean instanceof Advised) || !isAdvisedByThis((Advised) bean)) {
+                continue;
+            }
+            TargetSource targetSource = ((Advised) bean).getTargetSource();
+            if (!targetSource.isStatic()) {
+                continue;
+            }
+            try {
+                targets.putIfAbsent(AopProxyUtils.ultimateTargetClass(bean), targetSource.getTarget());
+            } catch (Exception e) {
+                LOGGER.debug("无法获取代理目标 {}", name, e);
+            }
+        }
+        getLimiterOperationSource().precompute(targets.keySet());
+        int count = 0;
+        for (Map.Entry<Class<?>, Object> entry : targets.entrySet()) {
+            for (Method method : AbstractLimiterOperationSource.candidateMethods(entry.getKey())) {
+                if (!CollectionUtils.isEmpty(getLimiterOperationSource().getLimiterOperations(method, entry.getKey()))) {
+                    getPlan(method, entry.getValue());
+                    count++;
+                }
+            }
+        }
+        LOGGER.debug("预先生成了{}个限流方法的调用计划", count);
+    }
+
+    private boolean isAdvisedByThis(Advised advised) {
+        for (Advisor advisor : advised.getAdvisors()) {
+            if (advisor.getAdvice() == this) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private ExpressionKey createKey(AnnotatedElementKey elementKey, String expression) {
@@ -102,6 +381,7 @@ public class LimiterInterceptor extends AbstractLimiterInvoker implements Method
 
     public void setLimiterOperationSource(LimiterOperationSource limiterOperationSource) {
         this.limiterOperationSource = limiterOperationSource;
+        clearPlans();
     }
 
     @Override
@@ -115,6 +395,56 @@ public class LimiterInterceptor extends AbstractLimiterInvoker implements Method
 
     public void setLimiter(FrequencyLimiter limiter) {
         this.limiter = limiter;
+        clearPlans();
+    }
+
+    public Map<String, RateLimitAlgorithm> getAlgorithms() {
+        return Collections.unmodifiableMap(algorithms);
+    }
+
+    /**
+     * 注册限流算法，按{@link RateLimitAlgorithm#getName()}被{@link Limiter#algorithm()}引用
+     *
+     * @param algorithms algorithms
+     */
+    public void setAlgorithms(Collection<? extends RateLimitAlgorithm> algorithms) {
+        this.algorithms.clear();
+        for (RateLimitAlgorithm algorithm : algorithms) {
+            this.algorithms.put(algorithm.getName(), algorithm);
+        }
+        clearPlans();
+    }
+
+    public LimiterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 设置限流指标收集器，默认不收集
+     *
+     * @param metrics metrics
+     */
+    public void setMetrics(LimiterMetrics metrics) {
+        Assert.notNull(metrics, "metrics can't be null");
+        this.metrics = metrics;
+    }
+
+    public boolean isEagerInitialization() {
+        return eagerInitialization;
+    }
+
+    /**
+     * 是否在容器启动时预先解析限流操作，默认在第一次调用时解析
+     *
+     * @param eagerInitialization true/false
+     */
+    public void setEagerInitialization(boolean eagerInitialization) {
+        this.eagerInitialization = eagerInitialization;
+    }
+
+    private void clearPlans() {
+        plans.clear();
+        sharedPlans.clear();
     }
 
     @Override
@@ -122,13 +452,58 @@ public class LimiterInterceptor extends AbstractLimiterInvoker implements Method
         Assert.state(getLimiterOperationSource() != null, "The 'limiterOperationSources' property is required: " +
                 "If there are no limiter methods, then don't use a limiter aspect.");
         Assert.state(getErrorHandler() != null, "The 'errorHandler' property is required");
-        Assert.state(limiter != null, "the 'limiter' property is required");
+        Assert.state(limiter != null || !algorithms.isEmpty(), "the 'limiter' or 'algorithms' property is required");
     }
 
     protected ParameterNameDiscoverer getParameterNameDiscoverer() {
         return parameterNameDiscoverer;
     }
 
+    /**
+     * 单个方法预先计算好的调用计划，没有限流操作时steps为空
+     */
+    private static final class InvocationPlan {
+        private final Method method;
+        private final Class<?> targetClass;
+        private final Class<?> instanceClass;
+        private Step[] steps = new Step[0];
+        /**
+         * 合并判定的频率限制，少于两个时为null
+         */
+        private Step[] batch;
+        private FrequencyLimiter batchLimiter;
+        private long[] batchTimeouts;
+        private String[] batchOperations;
+
+        InvocationPlan(Method method, Class<?> targetClass, Class<?> instanceClass) {
+            this.method = method;
+            this.targetClass = targetClass;
+            this.instanceClass = instanceClass;
+        }
+    }
+
+    private static final class Step {
+        /**
+         * 指标中的操作名称，类名.方法名
+         */
+        private final String name;
+        private final LimiterOperation operation;
+        private final LimiterKeyGenerator keyGenerator;
+        private final Acquirer acquirer;
+
+        Step(String name, LimiterOperation operation, LimiterKeyGenerator keyGenerator, Acquirer acquirer) {
+            this.name = name;
+            this.operation = operation;
+            this.keyGenerator = keyGenerator;
+            this.acquirer = acquirer;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Acquirer {
+        long tryAcquire(String key);
+    }
+
     protected static class ExpressionKey implements Comparable<ExpressionKey> {
 
         private final AnnotatedElementKey element;
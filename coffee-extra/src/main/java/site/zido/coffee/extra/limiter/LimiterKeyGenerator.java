@@ -0,0 +1,21 @@
+package site.zido.coffee.extra.limiter;
+
+import java.lang.reflect.Method;
+
+/**
+ * 限流key生成器，由{@link LimiterInterceptor}在方法第一次调用时按{@link Limiter#key()}编译并缓存
+ *
+ * @author zido
+ */
+@FunctionalInterface
+public interface LimiterKeyGenerator {
+    /**
+     * 生成本次调用的限流key
+     *
+     * @param target 目标对象
+     * @param method 方法
+     * @param args   参数
+     * @return key
+     */
+    String generate(Object target, Method method, Object[] args);
+}
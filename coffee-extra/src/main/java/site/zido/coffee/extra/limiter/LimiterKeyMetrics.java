@@ -0,0 +1,310 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按key统计的限流指标，用于找出被限制最多的key
+ * <p>
+ * 只有被拒绝、出错或者在后端不可用时放行的key才会进入统计，单纯被放行的key只计入汇总。
+ * 统计的key数量达到{@link #setMaximumKeys(int)}后，淘汰被拒绝与出错次数最少的一半，
+ * 之后出现的热点key仍然可以进入统计。不同操作使用相同的key时分开统计
+ *
+ * @author zido
+ */
+public class LimiterKeyMetrics implements LimiterMetrics {
+    private static final int DEFAULT_MAXIMUM_KEYS = 1000;
+    private final Map<String, Map<String, Counters>> counters = new ConcurrentHashMap<>();
+    private final AtomicInteger trackedKeys = new AtomicInteger();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final Counters total = new Counters("*", "*");
+    private int maximumKeys = DEFAULT_MAXIMUM_KEYS;
+
+    public int getMaximumKeys() {
+        return maximumKeys;
+    }
+
+    /**
+     * 设置单独统计的最大key数量
+     *
+     * @param maximumKeys 最大key数量
+     */
+    public void setMaximumKeys(int maximumKeys) {
+        Assert.isTrue(maximumKeys > 0, "maximumKeys must be greater than 0");
+        this.maximumKeys = maximumKeys;
+    }
+
+    @Override
+    public void recordDecision(String operation, String key, boolean allowed, long latencyNanos) {
+        LimiterMetrics.super.recordDecision(operation, key, allowed, latencyNanos);
+        Counters keyCounters = countersOf(operation, key, false);
+        if (keyCounters != null) {
+            keyCounters.latencyNanos.add(latencyNanos);
+        }
+    }
+
+    @Override
+    public void recordDecision(String operation, String key, boolean allowed) {
+        total.recordDecision(allowed);
+        Counters keyCounters = countersOf(operation, key, !allowed);
+        if (keyCounters != null) {
+            keyCounters.recordDecision(allowed);
+        }
+    }
+
+    @Override
+    public void recordLatency(String operation, long latencyNanos) {
+        total.latencyNanos.add(latencyNanos);
+    }
+
+    @Override
+    public void recordError(String operation, String key, Throwable error) {
+        total.errors.increment();
+        Counters keyCounters = countersOf(operation, key, true);
+        if (keyCounters != null) {
+            keyCounters.errors.increment();
+        }
+    }
+
+    @Override
+    public void recordFailOpen(String operation, String key) {
+        total.failOpen.increment();
+        Counters keyCounters = countersOf(operation, key, true);
+        if (keyCounters != null) {
+            keyCounters.failOpen.increment();
+        }
+    }
+
+    /**
+     * @param admit 不在统计中时是否加入
+     */
+    private Counters countersOf(String operation, String key, boolean admit) {
+        if (key == null) {
+            return null;
+        }
+        Map<String, Counters> keys = counters.get(operation);
+        Counters keyCounters = keys == null ? null : keys.get(key);
+        if (keyCounters != null || !admit) {
+            return keyCounters;
+        }
+        if (trackedKeys.get() >= maximumKeys && !evict()) {
+            return null;
+        }
+        if (keys == null) {
+            keys = counters.computeIfAbsent(operation, o -> new ConcurrentHashMap<>());
+        }
+        return keys.computeIfAbsent(key, k -> {
+            trackedKeys.incrementAndGet();
+            return new Counters(operation, k);
+        });
+    }
+
+    /**
+     * 淘汰被拒绝与出错次数最少的一半，每次淘汰之后可以接纳maximumKeys/2个新的key，排序的开销被分摊
+     *
+     * @return 是否有空位，其他线程正在淘汰时返回false，本次不统计该key
+     */
+    private boolean evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            if (trackedKeys.get() < maximumKeys) {
+                return true;
+            }
+            List<Counters> all = new ArrayList<>(trackedKeys.get());
+            for (Map<String, Counters> keys : counters.values()) {
+                all.addAll(keys.values());
+            }
+            all.sort(Comparator.comparingLong(Counters::score));
+            int evicted = all.size() - maximumKeys / 2;
+            for (int i = 0; i < evicted; i++) {
+                Counters keyCounters = all.get(i);
+                Map<String, Counters> keys = counters.get(keyCounters.operation);
+                if (keys != null && keys.remove(keyCounters.key, keyCounters)) {
+                    trackedKeys.decrementAndGet();
+                }
+            }
+            return true;
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * 所有操作的汇总统计
+     *
+     * @return 汇总统计
+     */
+    public LimiterStats getTotal() {
+        return total.snapshot();
+    }
+
+    /**
+     * 某个操作下某个key的统计
+     *
+     * @param operation 限流操作名称
+     * @param key       限流key
+     * @return 统计，未统计的key返回null
+     */
+    public LimiterStats getStats(String operation, String key) {
+        Map<String, Counters> keys = counters.get(operation);
+        Counters keyCounters = keys == null ? null : keys.get(key);
+        return keyCounters == null ? null : keyCounters.snapshot();
+    }
+
+    /**
+     * 按被拒绝次数排序，被限制最多的n个key
+     *
+     * @param n 数量
+     * @return 统计列表
+     */
+    public List<LimiterStats> topLimited(int n) {
+        List<LimiterStats> all = new ArrayList<>(trackedKeys.get());
+        for (Map<String, Counters> keys : counters.values()) {
+            for (Counters keyCounters : keys.values()) {
+                all.add(keyCounters.snapshot());
+            }
+        }
+        all.sort(Comparator.comparingLong(LimiterStats::getBlocked).reversed());
+        return all.size() > n ? new ArrayList<>(all.subList(0, n)) : all;
+    }
+
+    /**
+     * 单独统计的key数量
+     *
+     * @return key数量
+     */
+    public int getTrackedKeys() {
+        return trackedKeys.get();
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        counters.clear();
+        trackedKeys.set(0);
+        total.reset();
+    }
+
+    private static class Counters {
+        private final String operation;
+        private final String key;
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder blocked = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder failOpen = new LongAdder();
+
+        Counters(String operation, String key) {
+            this.operation = operation;
+            this.key = key;
+        }
+
+        void recordDecision(boolean success) {
+            (success ? allowed : blocked).increment();
+        }
+
+        long score() {
+            return blocked.sum() + errors.sum() + failOpen.sum();
+        }
+
+        LimiterStats snapshot() {
+            return new LimiterStats(operation, key, allowed.sum(), blocked.sum(),
+                    latencyNanos.sum(), errors.sum(), failOpen.sum());
+        }
+
+        void reset() {
+            allowed.reset();
+            blocked.reset();
+            latencyNanos.reset();
+            errors.reset();
+            failOpen.reset();
+        }
+    }
+
+    /**
+     * 某个key的统计快照
+     */
+    public static class LimiterStats {
+        private final String operation;
+        private final String key;
+        private final long allowed;
+        private final long blocked;
+        private final long latencyNanos;
+        private final long errors;
+        private final long failOpen;
+
+        LimiterStats(String operation, String key, long allowed, long blocked,
+                     long latencyNanos, long errors, long failOpen) {
+            this.operation = operation;
+            this.key = key;
+            this.allowed = allowed;
+            this.blocked = blocked;
+            this.latencyNanos = latencyNanos;
+            this.errors = errors;
+            this.failOpen = failOpen;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getAllowed() {
+            return allowed;
+        }
+
+        public long getBlocked() {
+            return blocked;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getFailOpen() {
+            return failOpen;
+        }
+
+        /**
+         * 被拒绝的比例
+         *
+         * @return blocked / (allowed + blocked)
+         */
+        public double getBlockedRatio() {
+            long decisions = allowed + blocked;
+            return decisions == 0 ? 0 : (double) blocked / decisions;
+        }
+
+        @Override
+        public String toString() {
+            return "LimiterStats{" +
+                    "operation='" + operation + '\'' +
+                    ", key='" + key + '\'' +
+                    ", allowed=" + allowed +
+                    ", blocked=" + blocked +
+                    ", latencyMillis=" + TimeUnit.NANOSECONDS.toMillis(latencyNanos) +
+                    ", errors=" + errors +
+                    ", failOpen=" + failOpen +
+                    '}';
+        }
+    }
+}
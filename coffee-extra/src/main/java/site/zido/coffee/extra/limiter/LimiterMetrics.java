@@ -0,0 +1,70 @@
+package site.zido.coffee.extra.limiter;
+
+/**
+ * 限流指标收集器
+ * <p>
+ * 回调在被限流的调用线程中同步执行，实现需要线程安全并且不能阻塞。
+ * operation为限流操作的名称(被限流的方法或者过滤器规则)，数量有限，可以作为指标标签；key的数量不受控制
+ *
+ * @author zido
+ * @see LimiterKeyMetrics
+ * @see MicrometerLimiterMetrics
+ */
+public interface LimiterMetrics {
+    /**
+     * 不收集任何指标
+     */
+    LimiterMetrics NONE = new LimiterMetrics() {
+    };
+
+    /**
+     * 一次限流判定结束，同时记录判定次数与耗时
+     *
+     * @param operation    限流操作名称
+     * @param key          限流key
+     * @param allowed      是否放行
+     * @param latencyNanos 访问限流后端的耗时
+     */
+    default void recordDecision(String operation, String key, boolean allowed, long latencyNanos) {
+        recordDecision(operation, key, allowed);
+        recordLatency(operation, latencyNanos);
+    }
+
+    /**
+     * 一次限流判定结束，只记录次数，用于没有单独耗时的判定(例如批量判定中的每条规则)
+     *
+     * @param operation 限流操作名称
+     * @param key       限流key
+     * @param allowed   是否放行
+     */
+    default void recordDecision(String operation, String key, boolean allowed) {
+    }
+
+    /**
+     * 一次访问限流后端的耗时，批量判定只记录一次
+     *
+     * @param operation    限流操作名称
+     * @param latencyNanos 耗时
+     */
+    default void recordLatency(String operation, long latencyNanos) {
+    }
+
+    /**
+     * 访问限流后端出错
+     *
+     * @param operation 限流操作名称
+     * @param key       限流key
+     * @param error     异常
+     */
+    default void recordError(String operation, String key, Throwable error) {
+    }
+
+    /**
+     * 限流后端不可用时放行了请求
+     *
+     * @param operation 限流操作名称
+     * @param key       限流key
+     */
+    default void recordFailOpen(String operation, String key) {
+    }
+}
@@ -7,12 +7,18 @@ public class LimiterOperation {
     private final long timeout;
     private final TimeUnit unit;
     private final String name;
+    private final String algorithm;
+    private final long rate;
+    private final long burst;
 
     public LimiterOperation(Builder builder) {
         this.key = builder.getKey();
         this.timeout = builder.getTimeout();
         this.unit = builder.getUnit();
         name = builder.getName();
+        this.algorithm = builder.getAlgorithm();
+        this.rate = builder.getRate();
+        this.burst = builder.getBurst();
     }
 
     public String getKey() {
@@ -31,11 +37,26 @@ public class LimiterOperation {
         return name;
     }
 
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    public long getBurst() {
+        return burst;
+    }
+
     public static class Builder {
         private String key = "";
         private long timeout = 55;
         private TimeUnit unit = TimeUnit.SECONDS;
         private String name = "";
+        private String algorithm = "";
+        private long rate = 1;
+        private long burst = 0;
 
         public String getKey() {
             return key;
@@ -73,5 +94,29 @@ public class LimiterOperation {
         public void setName(String name) {
             this.name = name;
         }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public void setAlgorithm(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public long getRate() {
+            return rate;
+        }
+
+        public void setRate(long rate) {
+            this.rate = rate;
+        }
+
+        public long getBurst() {
+            return burst;
+        }
+
+        public void setBurst(long burst) {
+            this.burst = burst;
+        }
     }
 }
@@ -5,4 +5,12 @@ import java.util.Collection;
 
 public interface LimiterOperationSource {
     Collection<LimiterOperation> getLimiterOperations(Method method, Class<?> targetClass);
+
+    /**
+     * 预先解析目标类上的限流操作，默认不做任何事，在第一次调用时解析
+     *
+     * @param targetClasses 目标类
+     */
+    default void precompute(Collection<Class<?>> targetClasses) {
+    }
 }
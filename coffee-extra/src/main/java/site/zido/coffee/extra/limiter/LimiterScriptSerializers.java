@@ -0,0 +1,59 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 限流脚本共用的序列化器
+ *
+ * @author zido
+ */
+final class LimiterScriptSerializers {
+    /**
+     * 脚本的key与参数
+     */
+    static final RedisSerializer<String> ARGS = new StringRedisSerializer(StandardCharsets.UTF_8);
+    /**
+     * 脚本返回的整数
+     */
+    static final RedisSerializer<Long> LONG = new GenericToStringSerializer<>(Long.class);
+    /**
+     * 脚本返回的整数数组，驱动已经把数组元素转换为Long，不会调用反序列化
+     */
+    static final RedisSerializer<List<Long>> LONG_LIST = new LongListSerializer();
+
+    private LimiterScriptSerializers() {
+    }
+
+    /**
+     * 创建返回整数数组的脚本
+     *
+     * @param source lua脚本
+     * @return 脚本
+     */
+    @SuppressWarnings("unchecked")
+    static RedisScript<List<Long>> longListScript(String source) {
+        //泛型类型没有对应的Class对象，List.class只用于选择返回类型
+        Class<List<Long>> resultType = (Class<List<Long>>) (Class<?>) List.class;
+        return new DefaultRedisScript<>(source, resultType);
+    }
+
+    private static final class LongListSerializer implements RedisSerializer<List<Long>> {
+        @Override
+        public byte[] serialize(List<Long> value) {
+            throw new SerializationException("script results are never serialized");
+        }
+
+        @Override
+        public List<Long> deserialize(byte[] bytes) {
+            throw new SerializationException("integer array elements are returned as Long by the driver");
+        }
+    }
+}
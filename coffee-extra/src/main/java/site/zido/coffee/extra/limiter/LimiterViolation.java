@@ -0,0 +1,36 @@
+package site.zido.coffee.extra.limiter;
+
+/**
+ * 批量判定时第一个不满足的规则
+ *
+ * @author zido
+ * @see FrequencyLimiter#tryGetAll(String[], long[])
+ */
+public class LimiterViolation {
+    private final int index;
+    private final long remaining;
+
+    public LimiterViolation(int index, long remaining) {
+        this.index = index;
+        this.remaining = remaining;
+    }
+
+    /**
+     * @return 规则在参数中的下标
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return 还需等待的时间
+     */
+    public long getRemaining() {
+        return remaining;
+    }
+
+    @Override
+    public String toString() {
+        return "LimiterViolation{index=" + index + ", remaining=" + remaining + '}';
+    }
+}
@@ -0,0 +1,16 @@
+package site.zido.coffee.extra.limiter;
+
+import java.lang.annotation.*;
+
+/**
+ * 多个{@link Limiter}的容器，同一个方法上的多个频率限制会被一次性判定
+ *
+ * @author zido
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface Limiters {
+    Limiter[] value();
+}
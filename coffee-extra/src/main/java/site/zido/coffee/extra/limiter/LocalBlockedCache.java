@@ -0,0 +1,106 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+import site.zido.coffee.core.utils.SystemClock;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地的"禁止到期时间"缓存，记录每个key在远端被拒绝后到什么时候之前一定还会被拒绝
+ * <p>
+ * 条目按到期时间自动失效，总数不超过maximumSize：满了之后先清理过期条目，仍然没有空间时不再记录新的key，
+ * 这些key的请求照常交给远端判定
+ *
+ * @author zido
+ */
+public class LocalBlockedCache {
+    private final ConcurrentHashMap<String, Long> blockedUntil = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private final LongAdder hits = new LongAdder();
+    private final int maximumSize;
+
+    public LocalBlockedCache(int maximumSize) {
+        Assert.isTrue(maximumSize > 0, "maximumSize must be greater than 0");
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * 查询key在本地剩余的禁止时间
+     *
+     * @param key key
+     * @return 剩余毫秒数，未被禁止时返回0
+     */
+    public long remaining(String key) {
+        Long until = blockedUntil.get(key);
+        if (until == null) {
+            return 0;
+        }
+        long remaining = until - SystemClock.now();
+        if (remaining <= 0) {
+            blockedUntil.remove(key, until);
+            return 0;
+        }
+        hits.increment();
+        return remaining;
+    }
+
+    /**
+     * 记录key在接下来的一段时间内会被拒绝
+     *
+     * @param key  key
+     * @param wait 远端返回的等待毫秒数
+     */
+    public void block(String key, long wait) {
+        if (wait <= 0) {
+            return;
+        }
+        if (blockedUntil.size() >= maximumSize && !blockedUntil.containsKey(key)) {
+            sweep();
+            if (blockedUntil.size() >= maximumSize) {
+                return;
+            }
+        }
+        blockedUntil.merge(key, SystemClock.now() + wait, Math::max);
+    }
+
+    private void sweep() {
+        //同一时间只需要一个线程清理，其余线程直接放弃本次记录
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = SystemClock.now();
+            Iterator<Map.Entry<String, Long>> iterator = blockedUntil.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue() <= now) {
+                    iterator.remove();
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * @return 在本地直接拒绝的次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public int size() {
+        return blockedUntil.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void clear() {
+        blockedUntil.clear();
+    }
+}
@@ -0,0 +1,85 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+import site.zido.coffee.core.utils.SystemClock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内的频率限制器，语义与{@link RedisFrequencyLimiter}一致，适合单节点部署与测试
+ * <p>
+ * 多个实例之间不共享状态，集群部署时每个实例各自限制
+ *
+ * @author zido
+ */
+public class LocalFrequencyLimiter implements FrequencyLimiter {
+    private final LocalLimiterTable<Tag> table = new LocalLimiterTable<>(Tag::new);
+
+    @Override
+    public long tryGet(String key, long timeout) {
+        Assert.isTrue(timeout > 0, "超时时间(秒)需要大于0");
+        long now = SystemClock.now();
+        long millis = TimeUnit.SECONDS.toMillis(timeout);
+        return table.apply(key, now, tag -> {
+            if (tag.expireAt > now) {
+                return tag.expireAt - now;
+            }
+            tag.expireAt = now + millis;
+            return 0;
+        });
+    }
+
+    /**
+     * 在每个key的锁内依次占用，任一规则不满足时撤销已经占用的规则，不消耗其他规则
+     * <p>
+     * 撤销只恢复仍然由本次占用的条目，撤销之前其他线程可能短暂地看到这些规则被占用
+     */
+    @Override
+    public LimiterViolation tryGetAll(String[] keys, long[] timeouts) {
+        for (long timeout : timeouts) {
+            Assert.isTrue(timeout > 0, "超时时间(秒)需要大于0");
+        }
+        long now = SystemClock.now();
+        long[] previous = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            final int index = i;
+            long expireAt = now + TimeUnit.SECONDS.toMillis(timeouts[i]);
+            long remaining = table.apply(keys[i], now, tag -> {
+                if (tag.expireAt > now) {
+                    return tag.expireAt - now;
+                }
+                previous[index] = tag.expireAt;
+                tag.expireAt = expireAt;
+                return 0;
+            });
+            if (remaining > 0) {
+                rollback(keys, timeouts, previous, i, now);
+                return new LimiterViolation(i, remaining);
+            }
+        }
+        return null;
+    }
+
+    private void rollback(String[] keys, long[] timeouts, long[] previous, int count, long now) {
+        for (int i = count - 1; i >= 0; i--) {
+            final int index = i;
+            long expireAt = now + TimeUnit.SECONDS.toMillis(timeouts[i]);
+            table.apply(keys[i], now, tag -> {
+                if (tag.expireAt == expireAt) {
+                    tag.expireAt = previous[index];
+                }
+                return 0;
+            });
+        }
+    }
+
+    public LocalLimiterTable<?> getTable() {
+        return table;
+    }
+
+    private static class Tag extends LocalLimiterTable.Entry {
+        Tag(String key) {
+            super(key);
+        }
+    }
+}
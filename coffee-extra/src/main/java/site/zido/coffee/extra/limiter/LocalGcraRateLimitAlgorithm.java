@@ -0,0 +1,50 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+import site.zido.coffee.core.utils.SystemClock;
+
+/**
+ * 进程内的GCRA，语义与{@link GcraRateLimitAlgorithm}一致，每个key只保存理论到达时间
+ *
+ * @author zido
+ */
+public class LocalGcraRateLimitAlgorithm implements RateLimitAlgorithm {
+    private final LocalLimiterTable<Cell> table = new LocalLimiterTable<>(Cell::new);
+
+    @Override
+    public String getName() {
+        return GCRA;
+    }
+
+    @Override
+    public long tryAcquire(String key, long rate, long periodMillis, long burst) {
+        Assert.isTrue(rate > 0, "rate must be greater than 0");
+        Assert.isTrue(periodMillis > 0, "period must be greater than 0");
+        long capacity = burst > 0 ? burst : rate;
+        double interval = (double) periodMillis / rate;
+        long now = SystemClock.now();
+        return table.apply(key, now, cell -> {
+            double tat = Math.max(cell.tat, now);
+            double newTat = tat + interval;
+            double allowAt = newTat - interval * capacity;
+            if (now < allowAt) {
+                return Math.max(1, (long) Math.ceil(allowAt - now));
+            }
+            cell.tat = newTat;
+            cell.expireAt = (long) Math.ceil(newTat);
+            return 0;
+        });
+    }
+
+    public LocalLimiterTable<?> getTable() {
+        return table;
+    }
+
+    private static class Cell extends LocalLimiterTable.Entry {
+        private double tat;
+
+        Cell(String key) {
+            super(key);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+import site.zido.coffee.core.utils.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * 进程内限流状态表，每个key一个状态条目，过期条目由时间轮回收
+ * <p>
+ * 时间轮在每次访问时顺带推进，不需要额外的线程：条目创建时放入一个槽位，槽位到期时检查条目的{@link Entry#expireAt}，
+ * 已经过期的移除，被续期的重新放入对应的槽位。条目的读写与回收都在条目自身的锁内完成，回收与更新不会相互覆盖
+ *
+ * @param <E> 状态条目
+ * @author zido
+ */
+public class LocalLimiterTable<E extends LocalLimiterTable.Entry> {
+    private static final long DEFAULT_TICK = 100;
+    private static final int DEFAULT_SLOTS = 512;
+
+    private final ConcurrentHashMap<String, E> entries = new ConcurrentHashMap<>();
+    private final Function<String, E> factory;
+    private final Queue<Entry>[] wheel;
+    private final int mask;
+    private final long tick;
+    private final AtomicBoolean advancing = new AtomicBoolean(false);
+    private volatile long currentTick;
+
+    public LocalLimiterTable(Function<String, E> factory) {
+        this(factory, DEFAULT_TICK, TimeUnit.MILLISECONDS, DEFAULT_SLOTS);
+    }
+
+    /**
+     * @param factory 条目构造器
+     * @param tick    时间轮的刻度
+     * @param unit    时间单位
+     * @param slots   槽位数量，会向上取整为2的幂
+     */
+    public LocalLimiterTable(Function<String, E> factory, long tick, TimeUnit unit, int slots) {
+        Assert.notNull(factory, "factory can't be null");
+        Assert.isTrue(tick > 0, "tick must be greater than 0");
+        Assert.isTrue(slots > 0, "slots must be greater than 0");
+        this.factory = factory;
+        this.tick = unit.toMillis(tick);
+        int size = 1;
+        while (size < slots) {
+            size <<= 1;
+        }
+        //泛型数组只能通过原始类型创建，槽位只放入Entry
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Queue<Entry>[] slotQueues = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            slotQueues[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.wheel = slotQueues;
+        this.mask = size - 1;
+        this.currentTick = SystemClock.now() / this.tick;
+    }
+
+    /**
+     * 在条目的锁内执行一次判定
+     *
+     * @param key    key
+     * @param now    当前时间
+     * @param action 判定逻辑，需要同时维护{@link Entry#expireAt}
+     * @return 判定结果
+     */
+    public long apply(String key, long now, ToLongFunction<E> action) {
+        advance(now);
+        while (true) {
+            E entry = entries.get(key);
+            if (entry == null) {
+                E created = factory.apply(key);
+                entry = entries.putIfAbsent(key, created);
+                if (entry == null) {
+                    entry = created;
+                    schedule(entry, now + tick);
+                }
+            }
+            synchronized (entry) {
+                //已经被时间轮回收，重新创建
+                if (!((Entry) entry).removed) {
+                    return action.applyAsLong(entry);
+                }
+            }
+        }
+    }
+
+    private void schedule(Entry entry, long at) {
+        wheel[(int) (at / tick) & mask].offer(entry);
+    }
+
+    private void advance(long now) {
+        long target = now / tick;
+        if (target <= currentTick || !advancing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long from = currentTick + 1;
+            //间隔超过一圈时每个槽位只需要处理一次
+            long to = Math.min(target, from + mask);
+            List<Entry> pending = new ArrayList<>();
+            for (long t = from; t <= to; t++) {
+                Queue<Entry> slot = wheel[(int) t & mask];
+                Entry entry;
+                while ((entry = slot.poll()) != null) {
+                    synchronized (entry) {
+                        if (entry.expireAt <= now) {
+                            entry.removed = true;
+                            entries.remove(entry.key, entry);
+                        } else {
+                            pending.add(entry);
+                        }
+                    }
+                }
+            }
+            currentTick = target;
+            for (Entry entry : pending) {
+                schedule(entry, Math.max(entry.expireAt, (target + 1) * tick));
+            }
+        } finally {
+            advancing.set(false);
+        }
+    }
+
+    /**
+     * @return 当前的条目数量，包括还未被回收的过期条目
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * 限流状态条目，子类的字段只能在{@link #apply(String, long, ToLongFunction)}中读写
+     */
+    public abstract static class Entry {
+        private final String key;
+        private boolean removed;
+        /**
+         * 条目可以被回收的时间，之后的判定结果与新建条目相同
+         */
+        protected long expireAt;
+
+        protected Entry(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package site.zido.coffee.extra.limiter;
+
+import site.zido.coffee.core.utils.SystemClock;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 进程内的多级配额限制器，每个实例单独计数，适合单节点部署与测试
+ * <p>
+ * 多级配额需要一起检查与扣减，所有操作在同一把锁内完成；过期周期的计数器在计数器数量翻倍时清理
+ *
+ * @author zido
+ */
+public class LocalQuotaLimiter extends AbstractQuotaLimiter {
+    private static final int INITIAL_SWEEP_THRESHOLD = 1024;
+    private final Map<String, Counter> counters = new HashMap<>();
+    private int sweepThreshold = INITIAL_SWEEP_THRESHOLD;
+
+    @Override
+    public LimiterViolation tryConsume(Quota[] quotas, long permits) {
+        checkArguments(quotas, permits);
+        long now = SystemClock.now();
+        QuotaWindow.Period[] periods = new QuotaWindow.Period[quotas.length];
+        String[] keys = new String[quotas.length];
+        synchronized (counters) {
+            for (int i = 0; i < quotas.length; i++) {
+                periods[i] = periodOf(quotas[i].getWindow(), now);
+                keys[i] = storageKey(quotas[i], periods[i]);
+                Counter counter = counters.get(keys[i]);
+                long used = counter == null ? 0 : counter.used;
+                if (used + permits > quotas[i].getLimit()) {
+                    return new LimiterViolation(i, periods[i].getEnd() - now);
+                }
+            }
+            for (int i = 0; i < quotas.length; i++) {
+                counters.computeIfAbsent(keys[i], k -> new Counter()).consume(permits, periods[i].getEnd());
+            }
+            if (counters.size() >= sweepThreshold) {
+                sweep(now);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 本地计数就是准确值
+     */
+    @Override
+    public long getApproximateRemaining(Quota quota) {
+        long now = SystemClock.now();
+        String key = storageKey(quota, periodOf(quota.getWindow(), now));
+        synchronized (counters) {
+            Counter counter = counters.get(key);
+            return Math.max(0, quota.getLimit() - (counter == null ? 0 : counter.used));
+        }
+    }
+
+    private void sweep(long now) {
+        Iterator<Counter> iterator = counters.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expireAt <= now) {
+                iterator.remove();
+            }
+        }
+        sweepThreshold = Math.max(INITIAL_SWEEP_THRESHOLD, counters.size() * 2);
+    }
+
+    private static String storageKey(Quota quota, QuotaWindow.Period period) {
+        return quota.getKey() + ":" + period.getId();
+    }
+
+    public int size() {
+        synchronized (counters) {
+            return counters.size();
+        }
+    }
+
+    private static final class Counter {
+        private long used;
+        private long expireAt;
+
+        void consume(long permits, long end) {
+            used += permits;
+            expireAt = end;
+        }
+    }
+}
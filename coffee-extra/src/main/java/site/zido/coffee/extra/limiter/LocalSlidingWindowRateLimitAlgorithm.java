@@ -0,0 +1,53 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+import site.zido.coffee.core.utils.SystemClock;
+
+/**
+ * 进程内的滑动窗口日志，语义与{@link SlidingWindowRateLimitAlgorithm}一致，每个key保存rate个时间戳
+ *
+ * @author zido
+ */
+public class LocalSlidingWindowRateLimitAlgorithm implements RateLimitAlgorithm {
+    private final LocalLimiterTable<Window> table = new LocalLimiterTable<>(Window::new);
+
+    @Override
+    public String getName() {
+        return SLIDING_WINDOW;
+    }
+
+    @Override
+    public long tryAcquire(String key, long rate, long periodMillis, long burst) {
+        Assert.isTrue(rate > 0 && rate <= Integer.MAX_VALUE, "rate must be between 1 and " + Integer.MAX_VALUE);
+        Assert.isTrue(periodMillis > 0, "period must be greater than 0");
+        long now = SystemClock.now();
+        return table.apply(key, now, window -> {
+            if (window.log == null || window.log.length != rate) {
+                window.log = new long[(int) rate];
+                window.head = 0;
+            }
+            //环形数组，head指向最早的一条记录，未使用的位置为0
+            long oldest = window.log[window.head];
+            if (oldest != 0 && oldest > now - periodMillis) {
+                return Math.max(1, oldest + periodMillis - now);
+            }
+            window.log[window.head] = now;
+            window.head = (window.head + 1) % window.log.length;
+            window.expireAt = now + periodMillis;
+            return 0;
+        });
+    }
+
+    public LocalLimiterTable<?> getTable() {
+        return table;
+    }
+
+    private static class Window extends LocalLimiterTable.Entry {
+        private long[] log;
+        private int head;
+
+        Window(String key) {
+            super(key);
+        }
+    }
+}
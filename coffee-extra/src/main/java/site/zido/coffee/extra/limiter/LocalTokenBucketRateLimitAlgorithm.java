@@ -0,0 +1,57 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+import site.zido.coffee.core.utils.SystemClock;
+
+/**
+ * 进程内的令牌桶，语义与{@link TokenBucketRateLimitAlgorithm}一致
+ *
+ * @author zido
+ */
+public class LocalTokenBucketRateLimitAlgorithm implements RateLimitAlgorithm {
+    private final LocalLimiterTable<Bucket> table = new LocalLimiterTable<>(Bucket::new);
+
+    @Override
+    public String getName() {
+        return TOKEN_BUCKET;
+    }
+
+    @Override
+    public long tryAcquire(String key, long rate, long periodMillis, long burst) {
+        Assert.isTrue(rate > 0, "rate must be greater than 0");
+        Assert.isTrue(periodMillis > 0, "period must be greater than 0");
+        long capacity = burst > 0 ? burst : rate;
+        long now = SystemClock.now();
+        return table.apply(key, now, bucket -> {
+            if (bucket.expireAt <= now) {
+                //空闲到桶已经装满，与新建的桶相同
+                bucket.tokens = capacity;
+                bucket.ts = now;
+            } else if (now > bucket.ts) {
+                bucket.tokens = Math.min(capacity, bucket.tokens + (double) (now - bucket.ts) * rate / periodMillis);
+                bucket.ts = now;
+            }
+            long wait = 0;
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+            } else {
+                wait = (long) Math.ceil((1 - bucket.tokens) * periodMillis / rate);
+            }
+            bucket.expireAt = bucket.ts + (long) Math.ceil((capacity - bucket.tokens) * periodMillis / rate);
+            return wait;
+        });
+    }
+
+    public LocalLimiterTable<?> getTable() {
+        return table;
+    }
+
+    private static class Bucket extends LocalLimiterTable.Entry {
+        private double tokens;
+        private long ts;
+
+        Bucket(String key) {
+            super(key);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package site.zido.coffee.extra.limiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过micrometer输出的限流指标，同时保留{@link LimiterKeyMetrics}的按key统计
+ * <p>
+ * 输出的指标均带有operation标签:
+ * <ul>
+ * <li>{@code coffee.limiter.requests}: 判定次数，result标签区分allowed与blocked</li>
+ * <li>{@code coffee.limiter.latency}: 访问限流后端的耗时</li>
+ * <li>{@code coffee.limiter.errors}: 访问限流后端出错的次数，exception标签为异常类名</li>
+ * <li>{@code coffee.limiter.fail.open}: 后端不可用时放行的次数</li>
+ * </ul>
+ * key不作为标签输出，被限制最多的key通过{@link #topLimited(int)}查看
+ *
+ * @author zido
+ */
+public class MicrometerLimiterMetrics extends LimiterKeyMetrics {
+    private static final String PREFIX = "coffee.limiter";
+    private final MeterRegistry registry;
+    private final ConcurrentHashMap<String, OperationMeters> meters = new ConcurrentHashMap<>();
+
+    public MicrometerLimiterMetrics(MeterRegistry registry) {
+        Assert.notNull(registry, "meter registry can't be null");
+        this.registry = registry;
+        Gauge.builder(PREFIX + ".keys", this, LimiterKeyMetrics::getTrackedKeys)
+                .description("number of limiter keys tracked")
+                .register(registry);
+    }
+
+    @Override
+    public void recordDecision(String operation, String key, boolean allowed) {
+        super.recordDecision(operation, key, allowed);
+        OperationMeters operationMeters = metersOf(operation);
+        (allowed ? operationMeters.allowed : operationMeters.blocked).increment();
+    }
+
+    @Override
+    public void recordLatency(String operation, long latencyNanos) {
+        super.recordLatency(operation, latencyNanos);
+        metersOf(operation).latency.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordError(String operation, String key, Throwable error) {
+        super.recordError(operation, key, error);
+        Counter.builder(PREFIX + ".errors")
+                .description("limiter backend errors")
+                .tag("operation", operation)
+                .tag("exception", error.getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+
+    @Override
+    public void recordFailOpen(String operation, String key) {
+        super.recordFailOpen(operation, key);
+        metersOf(operation).failOpen.increment();
+    }
+
+    private OperationMeters metersOf(String operation) {
+        OperationMeters operationMeters = meters.get(operation);
+        if (operationMeters == null) {
+            operationMeters = meters.computeIfAbsent(operation, OperationMeters::new);
+        }
+        return operationMeters;
+    }
+
+    /**
+     * 同一个操作的指标，只在第一次使用时注册
+     */
+    private final class OperationMeters {
+        private final Counter allowed;
+        private final Counter blocked;
+        private final Timer latency;
+        private final Counter failOpen;
+
+        OperationMeters(String operation) {
+            this.allowed = requestsCounter(operation, "allowed");
+            this.blocked = requestsCounter(operation, "blocked");
+            this.latency = Timer.builder(PREFIX + ".latency")
+                    .description("time spent deciding whether to limit")
+                    .tag("operation", operation)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.failOpen = Counter.builder(PREFIX + ".fail.open")
+                    .description("requests let through while the limiter backend was unavailable")
+                    .tag("operation", operation)
+                    .register(registry);
+        }
+
+        private Counter requestsCounter(String operation, String result) {
+            return Counter.builder(PREFIX + ".requests")
+                    .description("limiter decisions")
+                    .tag("operation", operation)
+                    .tag("result", result)
+                    .register(registry);
+        }
+    }
+}
@@ -1,15 +1,29 @@
 package site.zido.coffee.extra.limiter;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportAware;
 import org.springframework.context.annotation.Role;
+import org.springframework.core.annotation.AnnotationAttributes;
+import org.springframework.core.type.AnnotationMetadata;
+
+import java.util.stream.Collectors;
 
 /**
  * @author zido
  */
 @Configuration
-public class ProxyLimiterConfiguration {
+public class ProxyLimiterConfiguration implements ImportAware {
+    private AnnotationAttributes enableLimiter;
+
+    @Override
+    public void setImportMetadata(AnnotationMetadata importMetadata) {
+        this.enableLimiter = AnnotationAttributes.fromMap(
+                importMetadata.getAnnotationAttributes(EnableLimiter.class.getName(), false));
+    }
+
     @Bean
     @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
     public BeanFactoryLimiterOperationSourceAdvisor limiterAdvisor(LimiterInterceptor interceptor) {
@@ -27,10 +41,33 @@ public class ProxyLimiterConfiguration {
 
     @Bean
     @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
-    public LimiterInterceptor interceptor(FrequencyLimiter limiter) {
+    public LimiterInterceptor interceptor(ObjectProvider<FrequencyLimiter> limiter,
+                                          ObjectProvider<RateLimitAlgorithm> algorithms,
+                                          ObjectProvider<LimiterMetrics> metrics) {
         LimiterInterceptor interceptor = new LimiterInterceptor();
         interceptor.setLimiterOperationSource(limiterOperationSource());
-        interceptor.setLimiter(limiter);
+        interceptor.setLimiter(limiter.getIfAvailable());
+        interceptor.setAlgorithms(algorithms.orderedStream().collect(Collectors.toList()));
+        metrics.ifAvailable(interceptor::setMetrics);
+        if (enableLimiter != null) {
+            interceptor.setEagerInitialization(enableLimiter.getBoolean("eager"));
+        }
+        return interceptor;
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public BeanFactoryConcurrencyLimiterAdvisor concurrencyLimiterAdvisor(ConcurrencyLimiterInterceptor concurrencyLimiterInterceptor) {
+        BeanFactoryConcurrencyLimiterAdvisor advisor = new BeanFactoryConcurrencyLimiterAdvisor();
+        advisor.setAdvice(concurrencyLimiterInterceptor);
+        return advisor;
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public ConcurrencyLimiterInterceptor concurrencyLimiterInterceptor(ObjectProvider<LimiterMetrics> metrics) {
+        ConcurrencyLimiterInterceptor interceptor = new ConcurrencyLimiterInterceptor();
+        metrics.ifAvailable(interceptor::setMetrics);
         return interceptor;
     }
 }
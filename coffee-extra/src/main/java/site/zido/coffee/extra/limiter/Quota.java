@@ -0,0 +1,53 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+
+/**
+ * 一级配额，例如某个用户每天1000次、某个租户每月100万次
+ *
+ * @author zido
+ * @see QuotaLimiter
+ */
+public final class Quota {
+    private final String key;
+    private final long limit;
+    private final QuotaWindow window;
+
+    public Quota(String key, long limit, QuotaWindow window) {
+        Assert.hasText(key, "key can't be empty");
+        Assert.isTrue(limit >= 0, "limit can't be negative");
+        Assert.notNull(window, "window can't be null");
+        this.key = key;
+        this.limit = limit;
+        this.window = window;
+    }
+
+    public static Quota hourly(String key, long limit) {
+        return new Quota(key, limit, QuotaWindow.HOURLY);
+    }
+
+    public static Quota daily(String key, long limit) {
+        return new Quota(key, limit, QuotaWindow.DAILY);
+    }
+
+    public static Quota monthly(String key, long limit) {
+        return new Quota(key, limit, QuotaWindow.MONTHLY);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public QuotaWindow getWindow() {
+        return window;
+    }
+
+    @Override
+    public String toString() {
+        return "Quota{key='" + key + "', limit=" + limit + ", window=" + window + '}';
+    }
+}
@@ -0,0 +1,30 @@
+package site.zido.coffee.extra.limiter;
+
+/**
+ * 多级配额限制器，例如同一次调用同时扣减用户、租户与全局三级配额
+ * <p>
+ * 与{@link FrequencyLimiter}不同，配额按自然周期累计使用量，周期结束时重置
+ *
+ * @author zido
+ * @see RedisQuotaLimiter
+ * @see LocalQuotaLimiter
+ */
+public interface QuotaLimiter {
+
+    /**
+     * 检查并扣减多级配额，所有配额都足够时才一起扣减，任一级不足时不扣减任何配额
+     *
+     * @param quotas  配额，通常由内到外排列：用户、租户、全局
+     * @param permits 本次消耗的数量
+     * @return 全部满足时返回null，否则返回第一个不足的配额，remaining为距离该配额重置的毫秒数
+     */
+    LimiterViolation tryConsume(Quota[] quotas, long permits);
+
+    /**
+     * 当前周期内的剩余配额，可以使用本地缓存的近似值，适合展示用途
+     *
+     * @param quota 配额
+     * @return 剩余数量
+     */
+    long getApproximateRemaining(Quota quota);
+}
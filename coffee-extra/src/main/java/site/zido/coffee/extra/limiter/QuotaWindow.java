@@ -0,0 +1,94 @@
+package site.zido.coffee.extra.limiter;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 配额的统计周期，按自然时间划分，周期结束时配额重置
+ *
+ * @author zido
+ * @see Quota
+ */
+public enum QuotaWindow {
+    /**
+     * 每小时
+     */
+    HOURLY(ChronoUnit.HOURS, "yyyyMMddHH"),
+    /**
+     * 每天
+     */
+    DAILY(ChronoUnit.DAYS, "yyyyMMdd"),
+    /**
+     * 每月
+     */
+    MONTHLY(ChronoUnit.MONTHS, "yyyyMM");
+
+    private final ChronoUnit unit;
+    private final DateTimeFormatter formatter;
+
+    QuotaWindow(ChronoUnit unit, String pattern) {
+        this.unit = unit;
+        this.formatter = DateTimeFormatter.ofPattern(pattern);
+    }
+
+    /**
+     * 计算某个时间所在的周期
+     *
+     * @param now  时间戳，毫秒
+     * @param zone 划分周期使用的时区
+     * @return 周期
+     */
+    public Period periodOf(long now, ZoneId zone) {
+        ZonedDateTime time = Instant.ofEpochMilli(now).atZone(zone);
+        ZonedDateTime start;
+        if (unit == ChronoUnit.MONTHS) {
+            start = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+        } else {
+            start = time.truncatedTo(unit);
+        }
+        ZonedDateTime end = start.plus(1, unit);
+        return new Period(formatter.format(start), start.toInstant().toEpochMilli(), end.toInstant().toEpochMilli());
+    }
+
+    /**
+     * 一个具体的统计周期，[start, end)
+     */
+    public static final class Period {
+        private final String id;
+        private final long start;
+        private final long end;
+
+        Period(String id, long start, long end) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return 周期标识，作为存储key的后缀
+         */
+        public String getId() {
+            return id;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public boolean contains(long time) {
+            return time >= start && time < end;
+        }
+
+        @Override
+        public String toString() {
+            return "Period{id='" + id + "', start=" + start + ", end=" + end + '}';
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package site.zido.coffee.extra.limiter;
+
+/**
+ * 限流算法，通过{@link Limiter#algorithm()}按名称选择
+ * <p>
+ * 实现需要保证一次判定是原子的，并且线程安全
+ *
+ * @author zido
+ * @see TokenBucketRateLimitAlgorithm
+ * @see SlidingWindowRateLimitAlgorithm
+ * @see GcraRateLimitAlgorithm
+ * @see ApproximateRateLimitAlgorithm
+ */
+public interface RateLimitAlgorithm {
+    /**
+     * 令牌桶
+     */
+    String TOKEN_BUCKET = "tokenBucket";
+    /**
+     * 滑动窗口日志
+     */
+    String SLIDING_WINDOW = "slidingWindow";
+    /**
+     * 通用信元速率算法(generic cell rate algorithm)
+     */
+    String GCRA = "gcra";
+    /**
+     * 本地计数、定期同步到redis的近似固定窗口
+     */
+    String APPROXIMATE = "approximate";
+
+    /**
+     * 算法名称，与{@link Limiter#algorithm()}对应
+     *
+     * @return name
+     */
+    String getName();
+
+    /**
+     * 尝试通过一次
+     *
+     * @param key          限流的key
+     * @param rate         每个周期允许通过的次数
+     * @param periodMillis 周期，毫秒
+     * @param burst        允许的突发数量，小于等于0时等于rate，部分算法不使用该参数
+     * @return 允许通过返回0，否则返回还需等待的毫秒数
+     */
+    long tryAcquire(String key, long rate, long periodMillis, long burst);
+
+    /**
+     * 与{@link #tryAcquire(String, long, long, long)}相同，同时告知调用方的操作名称，
+     * 包装类(例如{@link CircuitBreakerRateLimitAlgorithm})据此记录指标，默认忽略
+     *
+     * @param operation    操作名称，例如限流的方法或者规则名称
+     * @param key          限流的key
+     * @param rate         每个周期允许通过的次数
+     * @param periodMillis 周期，毫秒
+     * @param burst        允许的突发数量
+     * @return 允许通过返回0，否则返回还需等待的毫秒数
+     */
+    default long tryAcquire(String operation, String key, long rate, long periodMillis, long burst) {
+        return tryAcquire(key, rate, periodMillis, burst);
+    }
+}
@@ -1,9 +1,14 @@
 package site.zido.coffee.extra.limiter;
 
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.util.Assert;
 import site.zido.coffee.core.utils.SystemClock;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -16,6 +21,24 @@ import java.util.concurrent.TimeUnit;
 public class RedisFrequencyLimiter implements FrequencyLimiter {
 
     private static final String PRE = "coffee:limiter:";
+    /**
+     * 检查与加锁在一次脚本中完成，值为拿到执行权时的毫秒时间戳，拿到执行权返回0，否则返回剩余毫秒数(永久有效的键返回-1)
+     */
+    private static final RedisScript<Long> TRY_GET_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return 0 end " +
+                    "return redis.call('pttl', KEYS[1])", Long.class);
+    /**
+     * 先检查所有的key，全部可用时才一起加锁，返回{0, 0}或者{第一个被限制的下标(从1开始), 剩余毫秒数}
+     */
+    private static final RedisScript<List<Long>> TRY_GET_ALL_SCRIPT = LimiterScriptSerializers.longListScript(
+            "for i = 1, #KEYS do " +
+                    "local ttl = redis.call('pttl', KEYS[i]) " +
+                    "if ttl == -1 or ttl > 0 then return {i, ttl} end " +
+                    "end " +
+                    "for i = 1, #KEYS do " +
+                    "redis.call('set', KEYS[i], ARGV[1], 'PX', ARGV[i + 1]) " +
+                    "end " +
+                    "return {0, 0}");
     private final String prefix;
     private final RedisTemplate<String, Long> template;
 
@@ -30,27 +53,56 @@ public class RedisFrequencyLimiter implements FrequencyLimiter {
 
     @Override
     public long tryGet(String key, long timeout) {
-        Assert.isTrue(timeout > 1, "超时时间设定以秒为单位，并且需要大于一秒");
+        Assert.isTrue(timeout > 0, "超时时间(秒)需要大于0");
         Assert.isTrue(timeout <= Integer.MAX_VALUE, "超时时间需要小于等于" + Integer.MAX_VALUE);
-        long now = SystemClock.now();
-        now = now / 1000;
         String prefixedKey = prefix + key;
-        Long expire = template.getExpire(prefixedKey, TimeUnit.MILLISECONDS);
-        //redis集群可能无法准确过期，用ttl判断更准确
-        if (expire != null) {
-            //如果值永久有效将永远无法有效获取
-            if (expire == -1) {
-                throw new IllegalStateException(String.format("键[%s]永久有效，需要排查", prefixedKey));
-            }
-            if (expire > 0) {
-                return expire;
-            }
+        //SET NX PX保证并发请求只有一个能拿到执行权，用ttl判断比比较时间戳更准确
+        Long expire = template.execute(TRY_GET_SCRIPT, LimiterScriptSerializers.ARGS, LimiterScriptSerializers.LONG,
+                Collections.singletonList(prefixedKey),
+                String.valueOf(SystemClock.now()), String.valueOf(TimeUnit.SECONDS.toMillis(timeout)));
+        if (expire == null) {
+            return 0;
         }
-        createTag(key, now, timeout);
-        return 0;
+        //如果值永久有效将永远无法有效获取
+        if (expire == -1) {
+            throw new IllegalStateException(String.format("键[%s]永久有效，需要排查", prefixedKey));
+        }
+        return Math.max(0, expire);
     }
 
-    private void createTag(String key, long date, long timeout) {
-        template.opsForValue().set(prefix + key, date, timeout);
+    /**
+     * 所有规则在一个脚本中判定，只有一次网络往返，任一规则不满足时不消耗其他规则
+     * <p>
+     * redis集群下所有key需要在同一个slot，可以通过hash tag保证
+     */
+    @Override
+    public LimiterViolation tryGetAll(String[] keys, long[] timeouts) {
+        Assert.isTrue(keys.length == timeouts.length, "keys and timeouts must have the same length");
+        if (keys.length == 1) {
+            long remaining = tryGet(keys[0], timeouts[0]);
+            return remaining > 0 ? new LimiterViolation(0, remaining) : null;
+        }
+        List<String> prefixedKeys = new ArrayList<>(keys.length);
+        Object[] args = new Object[keys.length + 1];
+        args[0] = String.valueOf(SystemClock.now());
+        for (int i = 0; i < keys.length; i++) {
+            Assert.isTrue(timeouts[i] > 0, "超时时间(秒)需要大于0");
+            prefixedKeys.add(prefix + keys[i]);
+            args[i + 1] = String.valueOf(TimeUnit.SECONDS.toMillis(timeouts[i]));
+        }
+        List<?> result = template.execute(TRY_GET_ALL_SCRIPT, LimiterScriptSerializers.ARGS, LimiterScriptSerializers.LONG_LIST,
+                prefixedKeys, args);
+        if (result == null || result.isEmpty()) {
+            return null;
+        }
+        int index = ((Number) result.get(0)).intValue();
+        if (index == 0) {
+            return null;
+        }
+        long remaining = ((Number) result.get(1)).longValue();
+        if (remaining == -1) {
+            throw new IllegalStateException(String.format("键[%s]永久有效，需要排查", prefixedKeys.get(index - 1)));
+        }
+        return new LimiterViolation(index - 1, remaining);
     }
 }
@@ -0,0 +1,183 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.Assert;
+import site.zido.coffee.core.utils.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于redis的多级配额限制器，检查与扣减在一个脚本中完成
+ * <p>
+ * 每一级配额在每个周期使用一个计数器，key为前缀+配额key+周期标识，在周期结束时过期。
+ * 每次扣减返回各级的最新使用量并记录在本地，{@link #getApproximateRemaining(Quota)}在刷新间隔内直接使用本地记录；
+ * 本地记录的条目数量不超过maximumSize，满了之后不再记录新的key。
+ * <p>
+ * redis集群下同一次扣减的所有key需要在同一个slot，可以通过hash tag保证
+ *
+ * @author zido
+ */
+public class RedisQuotaLimiter extends AbstractQuotaLimiter {
+    private static final String PRE = "coffee:quota:";
+    private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    /**
+     * ARGV[1]为本次消耗的数量，之后每级配额两个参数：上限与周期结束的时间戳。
+     * 先检查所有配额，全部足够时才一起扣减，返回{0, 各级使用量...}或者{第一个不足的下标(从1开始), 该级使用量}
+     */
+    private static final RedisScript<List<Long>> CONSUME_SCRIPT = LimiterScriptSerializers.longListScript(
+            "local permits = tonumber(ARGV[1]) " +
+                    "for i = 1, #KEYS do " +
+                    "local used = tonumber(redis.call('get', KEYS[i]) or '0') " +
+                    "if used + permits > tonumber(ARGV[i * 2]) then return {i, used} end " +
+                    "end " +
+                    "local result = {0} " +
+                    "for i = 1, #KEYS do " +
+                    "local used = redis.call('incrby', KEYS[i], permits) " +
+                    "if used == permits then redis.call('pexpireat', KEYS[i], ARGV[i * 2 + 1]) end " +
+                    "result[i + 1] = used " +
+                    "end " +
+                    "return result");
+    private static final RedisScript<Long> USAGE_SCRIPT = new DefaultRedisScript<>(
+            "return tonumber(redis.call('get', KEYS[1]) or '0')", Long.class);
+    private final String prefix;
+    private final RedisTemplate<String, Long> template;
+    private final ConcurrentHashMap<String, Usage> usages = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private long refreshInterval = 5000;
+
+    public RedisQuotaLimiter(String prefix, RedisTemplate<String, Long> template) {
+        Assert.notNull(template, "template can't be null");
+        this.prefix = prefix == null ? PRE : prefix;
+        this.template = template;
+    }
+
+    public RedisQuotaLimiter(RedisTemplate<String, Long> template) {
+        this(PRE, template);
+    }
+
+    @Override
+    public LimiterViolation tryConsume(Quota[] quotas, long permits) {
+        checkArguments(quotas, permits);
+        long now = SystemClock.now();
+        List<String> keys = new ArrayList<>(quotas.length);
+        QuotaWindow.Period[] periods = new QuotaWindow.Period[quotas.length];
+        Object[] args = new Object[quotas.length * 2 + 1];
+        args[0] = String.valueOf(permits);
+        for (int i = 0; i < quotas.length; i++) {
+            periods[i] = periodOf(quotas[i].getWindow(), now);
+            keys.add(storageKey(quotas[i], periods[i]));
+            args[i * 2 + 1] = String.valueOf(quotas[i].getLimit());
+            args[i * 2 + 2] = String.valueOf(periods[i].getEnd());
+        }
+        List<?> result = template.execute(CONSUME_SCRIPT, LimiterScriptSerializers.ARGS, LimiterScriptSerializers.LONG_LIST,
+                keys, args);
+        if (result == null || result.isEmpty()) {
+            return null;
+        }
+        int index = ((Number) result.get(0)).intValue();
+        if (index == 0) {
+            for (int i = 0; i < quotas.length; i++) {
+                record(keys.get(i), ((Number) result.get(i + 1)).longValue(), now, periods[i].getEnd());
+            }
+            return null;
+        }
+        int violated = index - 1;
+        record(keys.get(violated), ((Number) result.get(1)).longValue(), now, periods[violated].getEnd());
+        return new LimiterViolation(violated, periods[violated].getEnd() - now);
+    }
+
+    /**
+     * 刷新间隔内返回本地记录的使用量，否则从redis读取一次
+     */
+    @Override
+    public long getApproximateRemaining(Quota quota) {
+        long now = SystemClock.now();
+        QuotaWindow.Period period = periodOf(quota.getWindow(), now);
+        String key = storageKey(quota, period);
+        Usage usage = usages.get(key);
+        long used;
+        if (usage != null && now - usage.updatedAt < refreshInterval) {
+            used = usage.used;
+        } else {
+            Long value = template.execute(USAGE_SCRIPT, LimiterScriptSerializers.ARGS, LimiterScriptSerializers.LONG,
+                    Collections.singletonList(key));
+            used = value == null ? 0 : value;
+            record(key, used, now, period.getEnd());
+        }
+        return Math.max(0, quota.getLimit() - used);
+    }
+
+    private String storageKey(Quota quota, QuotaWindow.Period period) {
+        return prefix + quota.getKey() + ":" + period.getId();
+    }
+
+    private void record(String key, long used, long now, long expireAt) {
+        if (usages.size() >= maximumSize && !usages.containsKey(key)) {
+            sweep(now);
+            if (usages.size() >= maximumSize) {
+                return;
+            }
+        }
+        usages.put(key, new Usage(used, now, expireAt));
+    }
+
+    private void sweep(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Iterator<Map.Entry<String, Usage>> iterator = usages.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue().expireAt <= now) {
+                    iterator.remove();
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * 本地记录的使用量的有效时间，毫秒
+     *
+     * @param refreshInterval 刷新间隔
+     */
+    public void setRefreshInterval(long refreshInterval) {
+        Assert.isTrue(refreshInterval >= 0, "refreshInterval can't be negative");
+        this.refreshInterval = refreshInterval;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(int maximumSize) {
+        Assert.isTrue(maximumSize > 0, "maximumSize must be greater than 0");
+        this.maximumSize = maximumSize;
+    }
+
+    private static final class Usage {
+        private final long used;
+        private final long updatedAt;
+        private final long expireAt;
+
+        Usage(long used, long updatedAt, long expireAt) {
+            this.used = used;
+            this.updatedAt = updatedAt;
+            this.expireAt = expireAt;
+        }
+    }
+}
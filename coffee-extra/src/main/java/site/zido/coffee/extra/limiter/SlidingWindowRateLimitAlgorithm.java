@@ -0,0 +1,44 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import site.zido.coffee.core.utils.IdWorker;
+
+/**
+ * 滑动窗口日志，记录窗口内每一次通过的时间，任意连续的一个周期内通过次数不超过rate，不使用burst
+ * <p>
+ * 精确但每个key需要保存rate条记录，适合rate较小的场景
+ *
+ * @author zido
+ */
+public class SlidingWindowRateLimitAlgorithm extends AbstractRedisRateLimitAlgorithm {
+    private static final String SCRIPT = "local now = tonumber(ARGV[1]) " +
+            "local limit = tonumber(ARGV[2]) " +
+            "local window = tonumber(ARGV[3]) " +
+            "redis.call('zremrangebyscore', KEYS[1], '-inf', now - window) " +
+            "if redis.call('zcard', KEYS[1]) < limit then " +
+            "redis.call('zadd', KEYS[1], now, ARGV[4]) " +
+            "redis.call('pexpire', KEYS[1], window) " +
+            "return 0 " +
+            "end " +
+            "local oldest = redis.call('zrange', KEYS[1], 0, 0, 'WITHSCORES') " +
+            "return math.max(1, tonumber(oldest[2]) + window - now)";
+
+    public SlidingWindowRateLimitAlgorithm(RedisTemplate<String, ?> template) {
+        this(null, template);
+    }
+
+    public SlidingWindowRateLimitAlgorithm(String prefix, RedisTemplate<String, ?> template) {
+        super(prefix, template, SCRIPT);
+    }
+
+    @Override
+    public String getName() {
+        return SLIDING_WINDOW;
+    }
+
+    @Override
+    protected Object[] args(long now, long rate, long periodMillis, long capacity) {
+        return new Object[]{String.valueOf(now), String.valueOf(rate), String.valueOf(periodMillis),
+                String.valueOf(IdWorker.nextId())};
+    }
+}
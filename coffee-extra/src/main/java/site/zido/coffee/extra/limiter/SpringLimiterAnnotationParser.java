@@ -40,7 +40,7 @@ public class SpringLimiterAnnotationParser implements LimiterAnnotationParser {
     protected Collection<LimiterOperation> parse(AnnotatedElement ae) {
         Collection<LimiterOperation> ops = new ArrayList<>(1);
 
-        Collection<Limiter> limiters = AnnotatedElementUtils.getAllMergedAnnotations(ae, Limiter.class);
+        Collection<Limiter> limiters = AnnotatedElementUtils.getMergedRepeatableAnnotations(ae, Limiter.class);
         if (!limiters.isEmpty()) {
             for (Limiter limiter : limiters) {
                 ops.add(parseLimiterAnnotation(ae, limiter));
@@ -55,6 +55,9 @@ public class SpringLimiterAnnotationParser implements LimiterAnnotationParser {
         builder.setKey(limiter.key());
         builder.setTimeout(limiter.timeout());
         builder.setUnit(limiter.unit());
+        builder.setAlgorithm(limiter.algorithm());
+        builder.setRate(limiter.rate());
+        builder.setBurst(limiter.burst());
         return builder.build();
     }
 
@@ -0,0 +1,82 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 两级频率限制器，被拒绝的key在剩余时间内由本地直接拒绝，不再访问远端；拿到执行权仍然只由远端判定
+ * <p>
+ * 本地只缓存远端返回的剩余时间，不会提前放行，因此不影响多实例之间的正确性，
+ * 但手动删除远端的key后，本地的拒绝会持续到原有的到期时间
+ *
+ * @author zido
+ */
+public class TieredFrequencyLimiter implements FrequencyLimiter {
+    private final FrequencyLimiter delegate;
+    private final LocalBlockedCache cache;
+
+    public TieredFrequencyLimiter(FrequencyLimiter delegate, int maximumSize) {
+        this(delegate, new LocalBlockedCache(maximumSize));
+    }
+
+    public TieredFrequencyLimiter(FrequencyLimiter delegate, LocalBlockedCache cache) {
+        Assert.notNull(delegate, "delegate can't be null");
+        Assert.notNull(cache, "cache can't be null");
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public long tryGet(String key, long timeout) {
+        return tiered(key, () -> delegate.tryGet(key, timeout));
+    }
+
+    @Override
+    public long tryGet(String operation, String key, long timeout) {
+        return tiered(key, () -> delegate.tryGet(operation, key, timeout));
+    }
+
+    private long tiered(String key, LongSupplier remote) {
+        long remaining = cache.remaining(key);
+        if (remaining > 0) {
+            return remaining;
+        }
+        long wait = remote.getAsLong();
+        cache.block(key, wait);
+        return wait;
+    }
+
+    @Override
+    public LimiterViolation tryGetAll(String[] keys, long[] timeouts) {
+        return tiered(keys, () -> delegate.tryGetAll(keys, timeouts));
+    }
+
+    @Override
+    public LimiterViolation tryGetAll(String[] operations, String[] keys, long[] timeouts) {
+        return tiered(keys, () -> delegate.tryGetAll(operations, keys, timeouts));
+    }
+
+    private LimiterViolation tiered(String[] keys, Supplier<LimiterViolation> remote) {
+        for (int i = 0; i < keys.length; i++) {
+            long remaining = cache.remaining(keys[i]);
+            if (remaining > 0) {
+                return new LimiterViolation(i, remaining);
+            }
+        }
+        LimiterViolation violation = remote.get();
+        if (violation != null) {
+            cache.block(keys[violation.getIndex()], violation.getRemaining());
+        }
+        return violation;
+    }
+
+    public FrequencyLimiter getDelegate() {
+        return delegate;
+    }
+
+    public LocalBlockedCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,62 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.util.Assert;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 两级限流算法，远端返回的等待时间内由本地直接拒绝，通过仍然只由远端判定
+ * <p>
+ * 其他实例的请求只会让下一次可以通过的时间更晚，因此本地拒绝不会误伤
+ *
+ * @author zido
+ * @see TieredFrequencyLimiter
+ */
+public class TieredRateLimitAlgorithm implements RateLimitAlgorithm {
+    private final RateLimitAlgorithm delegate;
+    private final LocalBlockedCache cache;
+
+    public TieredRateLimitAlgorithm(RateLimitAlgorithm delegate, int maximumSize) {
+        this(delegate, new LocalBlockedCache(maximumSize));
+    }
+
+    public TieredRateLimitAlgorithm(RateLimitAlgorithm delegate, LocalBlockedCache cache) {
+        Assert.notNull(delegate, "delegate can't be null");
+        Assert.notNull(cache, "cache can't be null");
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public long tryAcquire(String key, long rate, long periodMillis, long burst) {
+        return tiered(key, () -> delegate.tryAcquire(key, rate, periodMillis, burst));
+    }
+
+    @Override
+    public long tryAcquire(String operation, String key, long rate, long periodMillis, long burst) {
+        return tiered(key, () -> delegate.tryAcquire(operation, key, rate, periodMillis, burst));
+    }
+
+    private long tiered(String key, LongSupplier remote) {
+        long remaining = cache.remaining(key);
+        if (remaining > 0) {
+            return remaining;
+        }
+        long wait = remote.getAsLong();
+        cache.block(key, wait);
+        return wait;
+    }
+
+    public RateLimitAlgorithm getDelegate() {
+        return delegate;
+    }
+
+    public LocalBlockedCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,45 @@
+package site.zido.coffee.extra.limiter;
+
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * 令牌桶，每个周期匀速放入rate个令牌，桶容量为burst，允许短时间内的突发请求
+ * <p>
+ * 例如每秒100次，突发20次：rate=100，timeout=1，unit=SECONDS，burst=20
+ *
+ * @author zido
+ */
+public class TokenBucketRateLimitAlgorithm extends AbstractRedisRateLimitAlgorithm {
+    private static final String SCRIPT = "local now = tonumber(ARGV[1]) " +
+            "local rate = tonumber(ARGV[2]) " +
+            "local period = tonumber(ARGV[3]) " +
+            "local capacity = tonumber(ARGV[4]) " +
+            "local state = redis.call('hmget', KEYS[1], 'tokens', 'ts') " +
+            "local tokens = tonumber(state[1]) " +
+            "local ts = tonumber(state[2]) " +
+            "if not tokens then tokens = capacity ts = now end " +
+            "if now > ts then tokens = math.min(capacity, tokens + (now - ts) * rate / period) ts = now end " +
+            "local wait = 0 " +
+            "if tokens >= 1 then tokens = tokens - 1 else wait = math.ceil((1 - tokens) * period / rate) end " +
+            "redis.call('hmset', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(ts)) " +
+            "redis.call('pexpire', KEYS[1], math.ceil(capacity * period / rate) + 1000) " +
+            "return wait";
+
+    public TokenBucketRateLimitAlgorithm(RedisTemplate<String, ?> template) {
+        this(null, template);
+    }
+
+    public TokenBucketRateLimitAlgorithm(String prefix, RedisTemplate<String, ?> template) {
+        super(prefix, template, SCRIPT);
+    }
+
+    @Override
+    public String getName() {
+        return TOKEN_BUCKET;
+    }
+
+    @Override
+    protected Object[] args(long now, long rate, long periodMillis, long capacity) {
+        return new Object[]{String.valueOf(now), String.valueOf(rate), String.valueOf(periodMillis), String.valueOf(capacity)};
+    }
+}
@@ -3,10 +3,23 @@ package site.zido.coffee.extra.lock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisConnectionUtils;
 
+import site.zido.coffee.core.utils.IdWorker;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.HashSet;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
@@ -18,13 +31,25 @@ import java.util.concurrent.locks.Lock;
  * 充分考虑意外退出情况下导致的锁被一直占用直到超时
  * <p>
  * 如果锁在spring容器中，会有spring容器进行自动释放，否则会根据jvm退出进行扫尾释放。
- * 通过{@link #unlocked}变量保证释放操作只进行一次
+ * <p>
+ * 每次加锁成功对应一个{@link Acquisition}，持有者标识在每次加锁时重新生成并绑定到加锁的线程，
+ * {@link #unlock()}只释放当前线程自己的那一次加锁，并通过{@link Acquisition}保证只释放一次。
+ * 同一个锁实例被多个线程共用时，租期已过的旧持有者解锁不会释放新持有者的锁
+ * <p>
+ * 非spring管理的锁加锁成功后登记在并发的持有者表中，以每次加锁为键，解锁后立即移除。
+ * 扫尾释放时，同一个连接工厂下的redis锁通过一次pipeline批量释放
  *
  * @author zido
  */
 public abstract class AbstractDistributedLock implements Lock, Serializable, DisposableBean {
     private static final long serialVersionUID = -4560451450005316185L;
-    private static final Set<AbstractDistributedLock> CONTAINER = new HashSet<>();
+    private static final Map<Acquisition, AbstractDistributedLock> HOLDERS = new ConcurrentHashMap<>();
+    private static final Charset USE_CHARSET = StandardCharsets.UTF_8;
+    /**
+     * 加锁失败后重试的最短与最长间隔
+     */
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
     private static final Logger log = LoggerFactory.getLogger("distributed lock manager");
 
 
@@ -33,17 +58,73 @@ public abstract class AbstractDistributedLock implements Lock, Serializable, Dis
         Runtime.getRuntime().addShutdownHook(new Thread(AbstractDistributedLock::releaseAll));
     }
 
-    public static void releaseAll(){
-        log.debug("try release distributed locks:number[{}]", CONTAINER.size());
-        for (AbstractDistributedLock lock : CONTAINER) {
-            lock.destroy();
+    public static void releaseAll() {
+        List<Map.Entry<Acquisition, AbstractDistributedLock>> held = new ArrayList<>(HOLDERS.entrySet());
+        log.debug("try release distributed locks:number[{}]", held.size());
+        Map<RedisConnectionFactory, List<Map.Entry<Acquisition, AbstractDistributedLock>>> batches = new IdentityHashMap<>();
+        for (Map.Entry<Acquisition, AbstractDistributedLock> entry : held) {
+            AbstractDistributedLock lock = entry.getValue();
+            if (lock instanceof PipelinedRelease) {
+                batches.computeIfAbsent(((PipelinedRelease) lock).getConnectionFactory(), k -> new ArrayList<>()).add(entry);
+            } else {
+                lock.release(entry.getKey());
+            }
+        }
+        for (Map.Entry<RedisConnectionFactory, List<Map.Entry<Acquisition, AbstractDistributedLock>>> batch : batches.entrySet()) {
+            releaseInPipeline(batch.getKey(), batch.getValue());
         }
         log.debug("release distributed locks finished");
     }
 
+    private static void releaseInPipeline(RedisConnectionFactory connectionFactory,
+                                          List<Map.Entry<Acquisition, AbstractDistributedLock>> entries) {
+        List<Map.Entry<Acquisition, AbstractDistributedLock>> pending = new ArrayList<>(entries.size());
+        for (Map.Entry<Acquisition, AbstractDistributedLock> entry : entries) {
+            if (entry.getValue().markReleased(entry.getKey())) {
+                pending.add(entry);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        RedisConnection connection = null;
+        try {
+            connection = RedisConnectionUtils.getConnection(connectionFactory);
+            connection.openPipeline();
+            try {
+                for (Map.Entry<Acquisition, AbstractDistributedLock> entry : pending) {
+                    ((PipelinedRelease) entry.getValue()).releaseInPipeline(connection, entry.getKey());
+                }
+            } catch (UnsupportedOperationException e) {
+                //部分客户端(例如jedis)不支持在pipeline中执行脚本，逐个释放
+                connection.closePipeline();
+                for (Map.Entry<Acquisition, AbstractDistributedLock> entry : pending) {
+                    entry.getValue().doUnlock(entry.getKey());
+                }
+                return;
+            }
+            connection.closePipeline();
+        } catch (RuntimeException e) {
+            //连接工厂可能已经关闭，锁会在租期结束后自动释放
+            log.warn("release distributed locks failed:number[{}]", pending.size(), e);
+        } finally {
+            if (connection != null) {
+                RedisConnectionUtils.releaseConnection(connection, connectionFactory, false);
+            }
+        }
+    }
+
     private final boolean isSpringBean;
     private final Logger logger = LoggerFactory.getLogger(getClass());
-    private final AtomicBoolean unlocked = new AtomicBoolean(false);
+    private transient DistributedLockMetrics metrics = DistributedLockMetrics.NONE;
+    /**
+     * 当前线程持有的那一次加锁
+     */
+    private transient ThreadLocal<Acquisition> current = new ThreadLocal<>();
+    /**
+     * 当前jvm中通过该实例持有、尚未释放的所有加锁
+     */
+    private transient Set<Acquisition> held = ConcurrentHashMap.newKeySet();
 
     /**
      * 默认认为此分布式锁生命周期由spring进行管理，非正常关闭导致的未解锁会由spring负责扫尾解锁工作
@@ -73,69 +154,246 @@ public abstract class AbstractDistributedLock implements Lock, Serializable, Dis
 
     @Override
     public void lockInterruptibly() throws InterruptedException {
-        while (!tryLock()) {
-            TimeUnit.NANOSECONDS.sleep(5);
+        final long start = System.nanoTime();
+        int roundTrips = 0;
+        boolean acquired = false;
+        Acquisition acquisition = newAcquisition();
+        try {
+            for (; ; ) {
+                roundTrips++;
+                if (doTryLock(acquisition)) {
+                    markLocked(acquisition);
+                    acquired = true;
+                    return;
+                }
+                backoff(roundTrips, Long.MAX_VALUE);
+            }
+        } finally {
+            recordAcquire(acquired, start, roundTrips);
         }
     }
 
     @Override
     public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
-        final long timeout = unit.toNanos(time);
-        final long deadline = System.nanoTime() + timeout;
-        for (; ; ) {
-            if (tryLock()) {
-                return true;
-            }
-            time = deadline - System.nanoTime();
-            if (time <= 0L) {
-                return false;
-            }
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
+        final long start = System.nanoTime();
+        final long deadline = start + unit.toNanos(time);
+        int roundTrips = 0;
+        boolean acquired = false;
+        Acquisition acquisition = newAcquisition();
+        try {
+            for (; ; ) {
+                roundTrips++;
+                if (doTryLock(acquisition)) {
+                    markLocked(acquisition);
+                    acquired = true;
+                    return true;
+                }
+                time = deadline - System.nanoTime();
+                if (time <= 0L) {
+                    return false;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                backoff(roundTrips, time);
             }
+        } finally {
+            recordAcquire(acquired, start, roundTrips);
         }
     }
 
     @Override
     public boolean tryLock() {
-        boolean result = doTryLock();
-        //保证只有当前拿到锁的线程能够修改unlock
+        final long start = System.nanoTime();
+        Acquisition acquisition = newAcquisition();
+        boolean result = doTryLock(acquisition);
         if (result) {
-            unlocked.set(false);
-            if (!isSpringBean) {
-                CONTAINER.add(this);
-            }
+            markLocked(acquisition);
         }
+        recordAcquire(result, start, 1);
         return result;
     }
 
+    /**
+     * 加锁失败后等待一段时间再重试，间隔从1毫秒开始随次数翻倍，最多50毫秒，并且不超过剩余的等待时间
+     *
+     * @param roundTrips 已经尝试的次数
+     * @param remaining  剩余的等待时间，纳秒
+     * @throws InterruptedException 等待时被中断
+     */
+    protected static void backoff(int roundTrips, long remaining) throws InterruptedException {
+        long nanos = Math.min(MIN_BACKOFF_NANOS << Math.min(roundTrips - 1, 6), MAX_BACKOFF_NANOS);
+        TimeUnit.NANOSECONDS.sleep(Math.min(nanos, remaining));
+    }
+
+    /**
+     * 创建一次加锁，子类需要在加锁记录中保存额外状态时覆盖
+     *
+     * @return 带有新持有者标识的加锁记录
+     */
+    protected Acquisition newAcquisition() {
+        return new Acquisition();
+    }
+
+    /**
+     * 加锁成功后把这次加锁绑定到当前线程，子类提供其他加锁方式时需要在成功后调用
+     *
+     * @param acquisition 成功的加锁
+     */
+    protected void markLocked(Acquisition acquisition) {
+        acquisition.lockedAt = System.nanoTime();
+        held.add(acquisition);
+        if (!isSpringBean) {
+            HOLDERS.put(acquisition, this);
+        }
+        Acquisition previous = current.get();
+        if (previous != null && previous != acquisition) {
+            //同一个线程在旧的租期结束后重新加锁，旧的加锁已经不再属于自己
+            forget(previous);
+        }
+        current.set(acquisition);
+    }
+
+    /**
+     * @return 当前线程持有的加锁，未持有时返回null
+     */
+    protected Acquisition currentAcquisition() {
+        return current.get();
+    }
+
+    /**
+     * 解除当前线程与其加锁的绑定，之后只能通过{@link #release(Acquisition)}释放，
+     * 用于把持有的锁交给其他线程释放
+     *
+     * @return 当前线程持有的加锁，未持有时返回null
+     */
+    Acquisition detach() {
+        Acquisition acquisition = current.get();
+        current.remove();
+        return acquisition;
+    }
+
+    /**
+     * 释放指定的一次加锁，重复调用只会释放一次
+     *
+     * @param acquisition 加锁
+     */
+    void release(Acquisition acquisition) {
+        if (acquisition != null && markReleased(acquisition)) {
+            doUnlock(acquisition);
+        }
+    }
+
+    private boolean markReleased(Acquisition acquisition) {
+        if (!acquisition.released.compareAndSet(false, true)) {
+            return false;
+        }
+        getMetrics().recordRelease(getKey(), System.nanoTime() - acquisition.lockedAt);
+        held.remove(acquisition);
+        HOLDERS.remove(acquisition);
+        return true;
+    }
+
+    private void forget(Acquisition acquisition) {
+        if (acquisition.released.compareAndSet(false, true)) {
+            held.remove(acquisition);
+            HOLDERS.remove(acquisition);
+        }
+    }
+
     @Override
     public Condition newCondition() {
         throw new UnsupportedOperationException("not support condition");
     }
 
 
+    /**
+     * 释放当前jvm中通过该实例持有的所有加锁
+     */
     @Override
     public void destroy() {
-        if (unlocked.compareAndSet(false, true)) {
+        for (Acquisition acquisition : new ArrayList<>(held)) {
             logger.debug("try release:{}", getKey());
-            doUnlock();
+            release(acquisition);
         }
     }
 
+    /**
+     * 只释放当前线程持有的加锁，当前线程未持有时不做任何操作
+     */
     @Override
     public void unlock() {
-        if (unlocked.compareAndSet(false, true)) {
-            doUnlock();
-            if (!isSpringBean) {
-                CONTAINER.remove(this);
-            }
+        Acquisition acquisition = current.get();
+        if (acquisition != null) {
+            current.remove();
+            release(acquisition);
         }
     }
 
-    protected abstract void doUnlock();
+    public DistributedLockMetrics getMetrics() {
+        //反序列化后transient字段为null
+        return metrics == null ? DistributedLockMetrics.NONE : metrics;
+    }
 
-    protected abstract boolean doTryLock();
+    /**
+     * 设置指标收集器
+     *
+     * @param metrics 指标收集器
+     */
+    public void setMetrics(DistributedLockMetrics metrics) {
+        this.metrics = metrics == null ? DistributedLockMetrics.NONE : metrics;
+    }
+
+    /**
+     * 记录一次加锁调用，子类提供其他加锁方式时调用
+     *
+     * @param acquired   是否加锁成功
+     * @param startNanos 开始加锁的时间({@link System#nanoTime()})
+     * @param roundTrips 本次加锁访问redis的次数
+     */
+    protected void recordAcquire(boolean acquired, long startNanos, int roundTrips) {
+        getMetrics().recordAcquire(getKey(), acquired, System.nanoTime() - startNanos, roundTrips);
+    }
+
+    /**
+     * 解锁时发现锁已经不属于自己(租期已过)时由子类调用
+     */
+    protected void recordLeaseExpired() {
+        getMetrics().recordLeaseExpired(getKey());
+    }
+
+    /**
+     * 当前jvm中是否持有该锁
+     *
+     * @return true/false
+     */
+    public boolean isHeld() {
+        return !held.isEmpty();
+    }
+
+    /**
+     * 当前线程是否持有该锁
+     *
+     * @return true/false
+     */
+    public boolean isHeldByCurrentThread() {
+        return current.get() != null;
+    }
+
+    /**
+     * 使用{@link Acquisition#getOwner()}释放锁，锁已经不属于该持有者时不能影响其他持有者
+     *
+     * @param acquisition 要释放的加锁
+     */
+    protected abstract void doUnlock(Acquisition acquisition);
+
+    /**
+     * 使用{@link Acquisition#getOwner()}作为持有者标识尝试加锁一次
+     *
+     * @param acquisition 本次加锁
+     * @return 是否成功
+     */
+    protected abstract boolean doTryLock(Acquisition acquisition);
 
     @Override
     public abstract int hashCode();
@@ -145,4 +403,43 @@ public abstract class AbstractDistributedLock implements Lock, Serializable, Dis
 
     public abstract String getKey();
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.current = new ThreadLocal<>();
+        this.held = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * 一次成功的加锁，持有者标识只属于这一次加锁
+     */
+    protected static class Acquisition {
+        private final String id = String.valueOf(IdWorker.nextId());
+        private final byte[] owner = id.getBytes(USE_CHARSET);
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private volatile long lockedAt;
+
+        protected Acquisition() {
+        }
+
+        /**
+         * @return 持有者标识
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return 写入redis的持有者标识
+         */
+        public byte[] getOwner() {
+            return owner;
+        }
+
+        /**
+         * @return 是否已经释放
+         */
+        public boolean isReleased() {
+            return released.get();
+        }
+    }
 }
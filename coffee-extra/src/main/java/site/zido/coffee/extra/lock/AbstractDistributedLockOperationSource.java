@@ -0,0 +1,82 @@
+package site.zido.coffee.extra.lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.BridgeMethodResolver;
+import org.springframework.core.MethodClassKey;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分布式锁注解扫描结果的缓存中心,包括类，方法
+ *
+ * @author zido
+ */
+public abstract class AbstractDistributedLockOperationSource implements DistributedLockOperationSource {
+    private final static Collection<DistributedLockOperation> NULL_CACHING_ATTRIBUTE = Collections.emptyList();
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Map<Object, Collection<DistributedLockOperation>> attributeCache = new ConcurrentHashMap<>(16);
+
+    @Override
+    public Collection<DistributedLockOperation> getLockOperations(Method method, Class<?> targetClass) {
+        if (method.getDeclaringClass() == Object.class) {
+            return null;
+        }
+        Object lockKey = new MethodClassKey(method, targetClass);
+        Collection<DistributedLockOperation> cached = this.attributeCache.get(lockKey);
+        if (cached != null) {
+            return (cached != NULL_CACHING_ATTRIBUTE ? cached : null);
+        } else {
+            Collection<DistributedLockOperation> lockOps = computeLockOperations(method, targetClass);
+            if (lockOps != null) {
+                logger.debug("Adding distributed lock method '{}' with attribute: {}", method.getName(), lockOps);
+                this.attributeCache.put(lockKey, lockOps);
+            } else {
+                this.attributeCache.put(lockKey, NULL_CACHING_ATTRIBUTE);
+            }
+            return lockOps;
+        }
+    }
+
+    private Collection<DistributedLockOperation> computeLockOperations(Method method, Class<?> targetClass) {
+        if (allowPublicMethodsOnly() && !Modifier.isPublic(method.getModifiers())) {
+            return null;
+        }
+        Method specMethod = ClassUtils.getMostSpecificMethod(method, targetClass);
+        specMethod = BridgeMethodResolver.findBridgedMethod(specMethod);
+        Collection<DistributedLockOperation> opDef = resolve(specMethod, specMethod.getDeclaringClass());
+        if (opDef != null) {
+            return opDef;
+        }
+        if (specMethod != method) {
+            return resolve(method, method.getDeclaringClass());
+        }
+        return null;
+    }
+
+    private Collection<DistributedLockOperation> resolve(Method method, Class<?> clazz) {
+        Collection<DistributedLockOperation> opDef = findLockOperations(method);
+        if (opDef != null) {
+            return opDef;
+        }
+        opDef = findLockOperations(clazz);
+        if (opDef != null && ClassUtils.isUserLevelMethod(method)) {
+            return opDef;
+        }
+        return null;
+    }
+
+    protected abstract Collection<DistributedLockOperation> findLockOperations(Method method);
+
+    protected abstract Collection<DistributedLockOperation> findLockOperations(Class<?> clazz);
+
+    protected boolean allowPublicMethodsOnly() {
+        return false;
+    }
+}
@@ -0,0 +1,67 @@
+package site.zido.coffee.extra.lock;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 分布式锁注解扫描执行
+ *
+ * @author zido
+ */
+public class AnnotationDistributedLockOperationSource extends AbstractDistributedLockOperationSource {
+    private final Set<DistributedLockAnnotationParser> annotationParsers;
+    private final boolean publicMethodsOnly;
+
+    public AnnotationDistributedLockOperationSource() {
+        this(true);
+    }
+
+    public AnnotationDistributedLockOperationSource(boolean publicMethodsOnly) {
+        this.publicMethodsOnly = publicMethodsOnly;
+        this.annotationParsers = new LinkedHashSet<>(1);
+        this.annotationParsers.add(new SpringDistributedLockAnnotationParser());
+    }
+
+    @Override
+    protected Collection<DistributedLockOperation> findLockOperations(Method method) {
+        return determine(parser -> parser.parseLockAnnotations(method));
+    }
+
+    @Override
+    protected Collection<DistributedLockOperation> findLockOperations(Class<?> clazz) {
+        return determine(parser -> parser.parseLockAnnotations(clazz));
+    }
+
+    protected Collection<DistributedLockOperation> determine(LockOperationProvider provider) {
+        ArrayList<DistributedLockOperation> ops = null;
+        for (DistributedLockAnnotationParser parser : annotationParsers) {
+            Collection<DistributedLockOperation> operations = provider.getLockOperations(parser);
+            if (operations != null) {
+                if (ops == null) {
+                    ops = new ArrayList<>();
+                }
+                ops.addAll(operations);
+            }
+        }
+        return ops;
+    }
+
+    @Override
+    protected boolean allowPublicMethodsOnly() {
+        return this.publicMethodsOnly;
+    }
+
+    protected interface LockOperationProvider {
+
+        /**
+         * Return the {@link DistributedLockOperation} instance(s) provided by the specified parser.
+         *
+         * @param parser the parser to use
+         * @return the lock operations, or {@code null} if none found
+         */
+        Collection<DistributedLockOperation> getLockOperations(DistributedLockAnnotationParser parser);
+    }
+}
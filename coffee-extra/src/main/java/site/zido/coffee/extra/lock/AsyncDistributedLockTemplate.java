@@ -0,0 +1,283 @@
+package site.zido.coffee.extra.lock;
+
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisScriptingAsyncCommands;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.util.Assert;
+import site.zido.coffee.core.utils.IdWorker;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 异步分布式锁，基于lettuce的异步命令实现，等待锁时不占用线程
+ * <p>
+ * 加锁失败后订阅{@link RedisLockNotifier}，收到释放通知或者到达锁的剩余租期时重试，
+ * 重试由lettuce的io线程与一个调度线程驱动，调用方线程不会被挂起。
+ * 返回的{@link CompletionStage}可能在lettuce的io线程中完成，后续阶段中不能执行阻塞操作，需要时请使用*Async方法切换线程
+ * <p>
+ * 锁的存储格式与{@link DistributedRedisLock}一致，两者可以互斥同一个key，
+ * 但{@link DistributedRedisLock}释放时不发送通知，此时等待者最迟在{@link #setMaxPollInterval(long, TimeUnit)}后重试
+ *
+ * @author zido
+ */
+public class AsyncDistributedLockTemplate implements InitializingBean, DisposableBean {
+    private static final Charset USE_CHARSET = StandardCharsets.UTF_8;
+    private static final long DEFAULT_MAX_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    /**
+     * 返回0表示加锁成功，否则返回锁的剩余租期
+     */
+    private static final RedisLockScript ACQUIRE_SCRIPT = new RedisLockScript(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return 0 end " +
+                    "local ttl = redis.call('pttl', KEYS[1]) " +
+                    "if ttl > 0 then return ttl end " +
+                    "return 10");
+    private static final RedisLockScript RELEASE_SCRIPT = new RedisLockScript(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "redis.call('del', KEYS[1]) " +
+                    "redis.call('publish', ARGV[2], KEYS[1]) " +
+                    "return 1 " +
+                    "end " +
+                    "return 0");
+
+    private final LettuceConnectionFactory connectionFactory;
+    private final RedisLockNotifier notifier;
+    private long maxPollInterval = DEFAULT_MAX_POLL_INTERVAL;
+    private RedisConnection connection;
+    private RedisScriptingAsyncCommands<byte[], byte[]> commands;
+    private ScheduledThreadPoolExecutor scheduler;
+    private byte[] channelBytes;
+
+    /**
+     * @param connectionFactory lettuce连接工厂
+     * @param notifier          释放通知中心，可以为null，此时只按剩余租期重试
+     */
+    public AsyncDistributedLockTemplate(LettuceConnectionFactory connectionFactory, RedisLockNotifier notifier) {
+        this.connectionFactory = connectionFactory;
+        this.notifier = notifier;
+    }
+
+    public long getMaxPollInterval() {
+        return maxPollInterval;
+    }
+
+    /**
+     * 设置等待者两次重试之间的最大间隔，作为通知丢失时的兜底
+     *
+     * @param maxPollInterval 最大间隔
+     * @param unit            时间单位
+     */
+    public void setMaxPollInterval(long maxPollInterval, TimeUnit unit) {
+        Assert.isTrue(maxPollInterval > 0, "maxPollInterval must be greater than 0");
+        this.maxPollInterval = unit.toMillis(maxPollInterval);
+    }
+
+    /**
+     * 尝试一次加锁
+     *
+     * @param key   key
+     * @param lease 租期
+     * @param unit  时间单位
+     * @return 加锁成功时包含锁的持有凭证
+     */
+    public CompletionStage<Optional<LockHandle>> tryLockAsync(String key, long lease, TimeUnit unit) {
+        Assert.hasLength(key, "key can't be blank");
+        byte[] keyBytes = key.getBytes(USE_CHARSET);
+        byte[] owner = newOwner();
+        return acquire(keyBytes, owner, leaseBytes(lease, unit))
+                .thenApply(wait -> wait == 0 ? Optional.of(new LockHandle(this, key, keyBytes, owner)) : Optional.empty());
+    }
+
+    /**
+     * 加锁，直到成功为止
+     *
+     * @param key   key
+     * @param lease 租期
+     * @param unit  时间单位
+     * @return 锁的持有凭证
+     */
+    public CompletionStage<LockHandle> lockAsync(String key, long lease, TimeUnit unit) {
+        return lockAsync(key, lease, unit, -1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在给定时间内加锁，超时后以{@link DistributedLockException}异常完成；
+     * 取消返回的future会停止等待，已经拿到的锁会被释放
+     *
+     * @param key      key
+     * @param lease    租期
+     * @param unit     租期时间单位
+     * @param waitTime 最大等待时间，小于0表示一直等待
+     * @param waitUnit 等待时间单位
+     * @return 锁的持有凭证
+     */
+    public CompletionStage<LockHandle> lockAsync(String key, long lease, TimeUnit unit, long waitTime, TimeUnit waitUnit) {
+        Assert.hasLength(key, "key can't be blank");
+        long deadline = waitTime < 0 ? -1 : System.nanoTime() + waitUnit.toNanos(waitTime);
+        Waiter waiter = new Waiter(key, leaseBytes(lease, unit), deadline);
+        waiter.start();
+        return waiter.result;
+    }
+
+    CompletionStage<Boolean> release(byte[] keyBytes, byte[] owner) {
+        return eval(RELEASE_SCRIPT, keyBytes, owner, channelBytes).thenApply(result -> result == 1);
+    }
+
+    private CompletionStage<Long> acquire(byte[] keyBytes, byte[] owner, byte[] leaseBytes) {
+        return eval(ACQUIRE_SCRIPT, keyBytes, owner, leaseBytes);
+    }
+
+    private CompletionStage<Long> eval(RedisLockScript script, byte[] key, byte[]... args) {
+        Assert.state(commands != null, "template not initialized; call afterPropertiesSet() before using it");
+        byte[][] keys = {key};
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        commands.<Long>evalsha(script.getSha1(), ScriptOutputType.INTEGER, keys, args).whenComplete((value, e) -> {
+            if (e == null) {
+                result.complete(value);
+            } else if (RedisLockScript.isNoScriptError(e)) {
+                //EVAL会顺便缓存脚本，之后的EVALSHA不会再失败
+                commands.<Long>eval(script.getScript(), ScriptOutputType.INTEGER, keys, args).whenComplete((retried, error) -> {
+                    if (error == null) {
+                        result.complete(retried);
+                    } else {
+                        result.completeExceptionally(error);
+                    }
+                });
+            } else {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static byte[] newOwner() {
+        return String.valueOf(IdWorker.nextId()).getBytes(USE_CHARSET);
+    }
+
+    private static byte[] leaseBytes(long lease, TimeUnit unit) {
+        Assert.isTrue(lease > 0, "lease must be greater than 0");
+        return String.valueOf(unit.toMillis(lease)).getBytes(USE_CHARSET);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void afterPropertiesSet() {
+        Assert.notNull(connectionFactory, "redis connection factory can't be null");
+        this.connection = connectionFactory.getConnection();
+        this.commands = (RedisScriptingAsyncCommands<byte[], byte[]>) ((LettuceConnection) connection).getNativeConnection();
+        String channel = notifier != null ? notifier.getChannel() : RedisLockNotifier.DEFAULT_CHANNEL;
+        this.channelBytes = channel.getBytes(USE_CHARSET);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "coffee-lock-async-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * 一次异步等待，收到通知或者定时器到期时重试，同一时间只有一个重试请求在进行中
+     */
+    private final class Waiter {
+        private final String key;
+        private final byte[] keyBytes;
+        private final byte[] owner;
+        private final byte[] leaseBytes;
+        private final long deadline;
+        private final CompletableFuture<LockHandle> result = new CompletableFuture<>();
+        private final AtomicBoolean attempting = new AtomicBoolean(false);
+        private final AtomicBoolean retryRequested = new AtomicBoolean(false);
+        private RedisLockNotifier.Subscription subscription;
+        private volatile ScheduledFuture<?> timer;
+
+        Waiter(String key, byte[] leaseBytes, long deadline) {
+            this.key = key;
+            this.keyBytes = key.getBytes(USE_CHARSET);
+            this.owner = newOwner();
+            this.leaseBytes = leaseBytes;
+            this.deadline = deadline;
+        }
+
+        void start() {
+            if (notifier != null) {
+                subscription = notifier.subscribe(key, null, this::attempt);
+            }
+            //结束(包括调用方取消)后清理订阅与定时器
+            result.whenComplete((handle, e) -> {
+                if (subscription != null) {
+                    subscription.close();
+                }
+                ScheduledFuture<?> current = timer;
+                if (current != null) {
+                    current.cancel(false);
+                }
+            });
+            attempt();
+        }
+
+        void attempt() {
+            if (result.isDone()) {
+                return;
+            }
+            if (!attempting.compareAndSet(false, true)) {
+                //已经有请求在进行中，结束后再重试一次
+                retryRequested.set(true);
+                return;
+            }
+            acquire(keyBytes, owner, leaseBytes).whenComplete((wait, e) -> {
+                attempting.set(false);
+                if (e != null) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                if (wait == 0) {
+                    LockHandle handle = new LockHandle(AsyncDistributedLockTemplate.this, key, keyBytes, owner);
+                    if (!result.complete(handle)) {
+                        //调用方已经取消
+                        handle.unlockAsync();
+                    }
+                    return;
+                }
+                if (retryRequested.getAndSet(false)) {
+                    attempt();
+                    return;
+                }
+                schedule(wait);
+            });
+        }
+
+        private void schedule(long wait) {
+            long delay = TimeUnit.MILLISECONDS.toNanos(Math.min(wait, maxPollInterval));
+            if (deadline >= 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    result.completeExceptionally(new DistributedLockException(key));
+                    return;
+                }
+                delay = Math.min(delay, remaining);
+            }
+            timer = scheduler.schedule(this::attempt, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.AbstractBeanFactoryPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.util.CollectionUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * advisor
+ *
+ * @author zido
+ */
+public class BeanFactoryDistributedLockOperationSourceAdvisor extends AbstractBeanFactoryPointcutAdvisor {
+    private static final long serialVersionUID = -2367014622283446521L;
+    private DistributedLockOperationSource lockOperationSource;
+    private final StaticMethodMatcherPointcut pointcut = new StaticMethodMatcherPointcut() {
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return (getLockOperationSource() != null
+                    && !CollectionUtils.isEmpty(getLockOperationSource().getLockOperations(method, targetClass)));
+        }
+    };
+
+    @Override
+    public Pointcut getPointcut() {
+        return pointcut;
+    }
+
+    public DistributedLockOperationSource getLockOperationSource() {
+        return lockOperationSource;
+    }
+
+    public void setLockOperationSource(DistributedLockOperationSource lockOperationSource) {
+        this.lockOperationSource = lockOperationSource;
+    }
+}
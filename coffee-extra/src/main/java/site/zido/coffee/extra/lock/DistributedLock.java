@@ -0,0 +1,45 @@
+package site.zido.coffee.extra.lock;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁注解，方法执行前根据{@link #key()}加锁，执行结束后释放
+ * <p>
+ * 需要使用{@link EnableDistributedLock}开启
+ *
+ * @author zido
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface DistributedLock {
+    /**
+     * 锁的key，支持spel表达式，为空时使用类名+方法签名作为key
+     *
+     * @return key
+     */
+    String key() default "";
+
+    /**
+     * 锁的租期，超过租期锁会自动释放，方法结束时不会释放其他调用在此之后拿到的锁
+     *
+     * @return lease
+     */
+    long lease() default 30;
+
+    /**
+     * 获取锁的最大等待时间，小于等于0时只尝试一次
+     *
+     * @return waitTime
+     */
+    long waitTime() default 0;
+
+    /**
+     * {@link #lease()}与{@link #waitTime()}的时间单位
+     *
+     * @return unit
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -0,0 +1,15 @@
+package site.zido.coffee.extra.lock;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * 分布式锁注解解析器
+ *
+ * @author zido
+ */
+public interface DistributedLockAnnotationParser {
+    Collection<DistributedLockOperation> parseLockAnnotations(Class<?> type);
+
+    Collection<DistributedLockOperation> parseLockAnnotations(Method method);
+}
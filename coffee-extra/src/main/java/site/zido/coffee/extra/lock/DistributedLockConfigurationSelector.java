@@ -0,0 +1,18 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.context.annotation.AdviceMode;
+import org.springframework.context.annotation.AdviceModeImportSelector;
+import org.springframework.context.annotation.AutoProxyRegistrar;
+
+/**
+ * @author zido
+ */
+public class DistributedLockConfigurationSelector extends AdviceModeImportSelector<EnableDistributedLock> {
+    @Override
+    protected String[] selectImports(AdviceMode adviceMode) {
+        return new String[]{
+                AutoProxyRegistrar.class.getName(),
+                ProxyDistributedLockConfiguration.class.getName()
+        };
+    }
+}
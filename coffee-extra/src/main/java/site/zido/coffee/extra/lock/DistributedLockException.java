@@ -0,0 +1,23 @@
+package site.zido.coffee.extra.lock;
+
+/**
+ * 在等待时间内无法获取{@link DistributedLock}对应的锁时抛出的异常
+ *
+ * @author zido
+ */
+public class DistributedLockException extends RuntimeException {
+    private static final long serialVersionUID = 4032618245386019153L;
+    /**
+     * 锁的key
+     */
+    private final String key;
+
+    public DistributedLockException(String key) {
+        super(String.format("无法获取锁[%s]，请稍后重试", key));
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
@@ -1,19 +1,72 @@
 package site.zido.coffee.extra.lock;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import site.zido.coffee.core.utils.SystemClock;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
+import java.util.function.BooleanSupplier;
 
-public class DistributedLockFactory {
-    private Map<MultiKey, Lock> lockCache = new ConcurrentHashMap<>();
+/**
+ * 分布式锁工厂，相同key/超时时间的锁只会创建一次
+ * <p>
+ * 同一个锁实例会交给所有请求该key的线程，每个线程的加锁使用各自的持有者标识，解锁只释放本线程的加锁，
+ * 因此加锁与解锁需要在同一个线程中进行
+ * <p>
+ * 工厂创建的锁不受spring容器管理，由jvm退出信号负责扫尾解锁工作
+ * <p>
+ * 缓存的锁数量受{@link #setMaximumSize(int)}限制，长时间未使用的锁会在{@link #setMaxIdle(long, TimeUnit)}之后被淘汰，
+ * 当前jvm持有中的锁永远不会被淘汰
+ * <p>
+ * 使用lettuce并开启shareNativeConnection时，可以通过{@link #setUseSharedConnection(boolean)}让所有锁共用同一个多路复用连接
+ * <p>
+ * 开启{@link #setLocalCoalescing(boolean)}后返回{@link LocalCoalescingLock}，同一个jvm中的线程先在本地排队再竞争redis
+ * <p>
+ * 开启{@link #setFair(boolean)}后创建{@link FairDistributedRedisLock}，公平锁与{@link #createSemaphore(String, int, long, TimeUnit)}
+ * 共用{@link RedisLockNotifier}，未指定时由工厂创建并负责销毁
+ *
+ * @author zido
+ */
+public class DistributedLockFactory implements DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DistributedLockFactory.class);
+    private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    private static final long DEFAULT_MAX_IDLE = TimeUnit.MINUTES.toMillis(10);
+    private static final boolean LETTUCE_PRESENT = ClassUtils.isPresent("io.lettuce.core.RedisClient",
+            DistributedLockFactory.class.getClassLoader());
+    private final Map<MultiKey, CachedLock> lockCache = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private volatile long lastIdleSweep = SystemClock.now();
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private long maxIdle = DEFAULT_MAX_IDLE;
     private RedisConnectionFactory redisConnectionFactory;
     private Charset charset;
+    private boolean useSharedConnection = false;
+    private boolean localCoalescing = false;
+    private boolean localHandoff = false;
+    private boolean fair = false;
+    private RedisLockNotifier notifier;
+    private boolean ownNotifier = false;
+    private DistributedLockMetrics metrics = DistributedLockMetrics.NONE;
+    private volatile RedisConnection sharedConnection;
 
     public RedisConnectionFactory getRedisConnectionFactory() {
         return redisConnectionFactory;
@@ -31,8 +84,338 @@ public class DistributedLockFactory {
         this.charset = charset;
     }
 
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 设置最多缓存的锁数量
+     *
+     * @param maximumSize 最大数量
+     */
+    public void setMaximumSize(int maximumSize) {
+        Assert.isTrue(maximumSize > 0, "maximumSize must be greater than 0");
+        this.maximumSize = maximumSize;
+    }
+
+    public long getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * 设置锁的最大闲置时间，超过该时间未被获取的锁会被淘汰
+     *
+     * @param maxIdle 闲置时间
+     * @param unit    时间单位
+     */
+    public void setMaxIdle(long maxIdle, TimeUnit unit) {
+        Assert.isTrue(maxIdle > 0, "maxIdle must be greater than 0");
+        this.maxIdle = unit.toMillis(maxIdle);
+    }
+
+    public boolean isUseSharedConnection() {
+        return useSharedConnection;
+    }
+
+    /**
+     * 是否让所有锁共用一个多路复用连接，要求连接工厂为开启了shareNativeConnection的{@link LettuceConnectionFactory}
+     *
+     * @param useSharedConnection true/false
+     */
+    public void setUseSharedConnection(boolean useSharedConnection) {
+        this.useSharedConnection = useSharedConnection;
+    }
+
+    public boolean isLocalCoalescing() {
+        return localCoalescing;
+    }
+
+    /**
+     * 是否先在本地排队再竞争分布式锁，开启后加锁与解锁必须在同一个线程中进行
+     *
+     * @param localCoalescing true/false
+     * @see LocalCoalescingLock
+     */
+    public void setLocalCoalescing(boolean localCoalescing) {
+        this.localCoalescing = localCoalescing;
+    }
+
+    public boolean isLocalHandoff() {
+        return localHandoff;
+    }
+
+    /**
+     * 本地排队模式下，是否在本地等待者之间直接交接分布式锁
+     *
+     * @param localHandoff true/false
+     * @see LocalCoalescingLock#setHandoff(boolean)
+     */
+    public void setLocalHandoff(boolean localHandoff) {
+        this.localHandoff = localHandoff;
+    }
+
+    public boolean isFair() {
+        return fair;
+    }
+
+    /**
+     * 是否创建公平锁，等待者按到达顺序获取锁
+     *
+     * @param fair true/false
+     * @see FairDistributedRedisLock
+     */
+    public void setFair(boolean fair) {
+        this.fair = fair;
+    }
+
+    public RedisLockNotifier getNotifier() {
+        return notifier;
+    }
+
+    /**
+     * 设置公平锁使用的释放通知中心，生命周期由调用方负责
+     *
+     * @param notifier 通知中心
+     */
+    public void setNotifier(RedisLockNotifier notifier) {
+        this.notifier = notifier;
+    }
+
+    public DistributedLockMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 设置工厂创建的锁使用的指标收集器
+     *
+     * @param metrics 指标收集器
+     * @see MicrometerLockMetrics
+     */
+    public void setMetrics(DistributedLockMetrics metrics) {
+        this.metrics = metrics == null ? DistributedLockMetrics.NONE : metrics;
+    }
+
     public Lock getLock(String key, long timeout, TimeUnit unit) {
-        return lockCache.computeIfAbsent(new MultiKey(key, timeout, unit), multiKey -> new DistributedRedisLock(key, redisConnectionFactory, timeout, unit));
+        MultiKey multiKey = new MultiKey(key, timeout, unit);
+        CachedLock cached = lockCache.get(multiKey);
+        if (cached != null) {
+            hitCount.increment();
+            cached.touch();
+            return cached.lock;
+        }
+        missCount.increment();
+        cached = lockCache.computeIfAbsent(multiKey, k -> createCachedLock(key, timeout, unit));
+        cached.touch();
+        evictIfNecessary();
+        return cached.lock;
+    }
+
+    /**
+     * 创建分布式信号量，与公平锁共用释放通知中心，信号量不会被缓存
+     *
+     * @param key     key
+     * @param permits 集群范围内的许可总数
+     * @param lease   许可租期
+     * @param unit    时间单位
+     * @return semaphore
+     */
+    public DistributedSemaphore createSemaphore(String key, int permits, long lease, TimeUnit unit) {
+        DistributedSemaphore semaphore = new DistributedSemaphore(key, redisConnectionFactory,
+                getOrCreateNotifier(), permits, lease, unit);
+        semaphore.afterPropertiesSet();
+        return semaphore;
+    }
+
+    private CachedLock createCachedLock(String key, long timeout, TimeUnit unit) {
+        AbstractDistributedLock lock = createLock(key, timeout, unit);
+        if (localCoalescing) {
+            LocalCoalescingLock coalescingLock = new LocalCoalescingLock(lock, timeout, unit);
+            coalescingLock.setHandoff(localHandoff);
+            return new CachedLock(coalescingLock, coalescingLock::isHeld);
+        }
+        return new CachedLock(lock, lock::isHeld);
+    }
+
+    private AbstractDistributedLock createLock(String key, long timeout, TimeUnit unit) {
+        if (fair) {
+            FairDistributedRedisLock lock = new FairDistributedRedisLock(key, redisConnectionFactory,
+                    getOrCreateNotifier(), timeout, unit, false);
+            lock.setMetrics(metrics);
+            lock.afterPropertiesSet();
+            return lock;
+        }
+        DistributedRedisLock lock = new DistributedRedisLock(key, redisConnectionFactory, timeout, unit, false);
+        if (useSharedConnection) {
+            lock.setSharedConnection(getSharedConnection());
+        }
+        lock.setMetrics(metrics);
+        lock.afterPropertiesSet();
+        return lock;
+    }
+
+    private RedisConnection getSharedConnection() {
+        RedisConnection connection = this.sharedConnection;
+        if (connection == null) {
+            synchronized (this) {
+                connection = this.sharedConnection;
+                if (connection == null) {
+                    Assert.state(isMultiplexed(redisConnectionFactory),
+                            "shared connection requires a LettuceConnectionFactory with shareNativeConnection enabled");
+                    connection = redisConnectionFactory.getConnection();
+                    this.sharedConnection = connection;
+                }
+            }
+        }
+        return connection;
+    }
+
+    private synchronized RedisLockNotifier getOrCreateNotifier() {
+        if (notifier == null) {
+            RedisLockNotifier created = new RedisLockNotifier(redisConnectionFactory);
+            created.afterPropertiesSet();
+            this.notifier = created;
+            this.ownNotifier = true;
+        }
+        return notifier;
+    }
+
+    private static boolean isMultiplexed(RedisConnectionFactory connectionFactory) {
+        return LETTUCE_PRESENT
+                && connectionFactory instanceof LettuceConnectionFactory
+                && ((LettuceConnectionFactory) connectionFactory).getShareNativeConnection();
+    }
+
+    @Override
+    public void destroy() {
+        RedisConnection connection = this.sharedConnection;
+        if (connection != null) {
+            this.sharedConnection = null;
+            connection.close();
+        }
+        synchronized (this) {
+            if (ownNotifier) {
+                ownNotifier = false;
+                try {
+                    notifier.destroy();
+                } catch (Exception e) {
+                    LOGGER.warn("destroy lock notifier failed", e);
+                }
+                notifier = null;
+            }
+        }
+    }
+
+    /**
+     * 命中缓存的次数
+     *
+     * @return hit count
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 未命中缓存(新建锁)的次数
+     *
+     * @return miss count
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 被淘汰的锁数量
+     *
+     * @return eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 当前缓存的锁数量
+     *
+     * @return size
+     */
+    public int size() {
+        return lockCache.size();
+    }
+
+    /**
+     * 超过容量时淘汰最久未使用的锁，并定期淘汰闲置过久的锁，同一时间只有一个线程进行淘汰
+     */
+    private void evictIfNecessary() {
+        long now = SystemClock.now();
+        boolean overflow = lockCache.size() > maximumSize;
+        boolean sweep = now - lastIdleSweep > (maxIdle >> 1);
+        if (!(overflow || sweep) || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            lastIdleSweep = now;
+            List<Candidate> candidates = new ArrayList<>();
+            for (Map.Entry<MultiKey, CachedLock> entry : lockCache.entrySet()) {
+                long lastAccess = entry.getValue().lastAccess;
+                if (now - lastAccess > maxIdle) {
+                    evict(entry.getKey(), entry.getValue());
+                } else if (overflow) {
+                    candidates.add(new Candidate(entry.getKey(), entry.getValue(), lastAccess));
+                }
+            }
+            //批量淘汰到容量的90%，避免每次新建锁都进行排序
+            int target = maximumSize - maximumSize / 10;
+            if (lockCache.size() > target) {
+                candidates.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+                for (Candidate candidate : candidates) {
+                    if (lockCache.size() <= target) {
+                        break;
+                    }
+                    evict(candidate.key, candidate.cached);
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private void evict(MultiKey key, CachedLock cached) {
+        if (cached.held.getAsBoolean()) {
+            return;
+        }
+        if (lockCache.remove(key, cached)) {
+            evictionCount.increment();
+            LOGGER.debug("evict distributed lock:{}", key.key);
+        }
+    }
+
+    private static class CachedLock {
+        private final Lock lock;
+        private final BooleanSupplier held;
+        private volatile long lastAccess;
+
+        CachedLock(Lock lock, BooleanSupplier held) {
+            this.lock = lock;
+            this.held = held;
+        }
+
+        void touch() {
+            lastAccess = SystemClock.now();
+        }
+    }
+
+    /**
+     * 淘汰候选，记录扫描时的访问时间快照，保证排序稳定
+     */
+    private static class Candidate {
+        private final MultiKey key;
+        private final CachedLock cached;
+        private final long lastAccess;
+
+        Candidate(MultiKey key, CachedLock cached, long lastAccess) {
+            this.key = key;
+            this.cached = cached;
+            this.lastAccess = lastAccess;
+        }
     }
 
     static class MultiKey {
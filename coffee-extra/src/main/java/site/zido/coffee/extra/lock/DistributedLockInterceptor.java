@@ -0,0 +1,207 @@
+package site.zido.coffee.extra.lock;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.expression.BeanFactoryResolver;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 注解式分布式锁拦截器
+ * <p>
+ * 每个方法第一次调用时解析并缓存锁元数据（spel表达式，参数名等），之后的调用不再进行反射与表达式解析，
+ * 锁对象统一由{@link DistributedLockFactory}提供
+ * <p>
+ * 同一个key的锁实例由所有调用共享，加锁与解锁在调用线程中完成，解锁只释放本次调用的加锁。
+ * 方法执行超过租期时锁可能已经被其他调用拿到，此时解锁不会释放其他调用的锁，只记录一次租期过期
+ *
+ * @author zido
+ */
+public class DistributedLockInterceptor implements MethodInterceptor, BeanFactoryAware, InitializingBean {
+    private static final LockMetadata NULL_METADATA = new LockMetadata(new LockAttribute[0], new String[0], 0);
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+    private final Map<MethodClassKey, LockMetadata> metadataCache = new ConcurrentHashMap<>(16);
+    private DistributedLockOperationSource lockOperationSource;
+    private DistributedLockFactory lockFactory;
+    private BeanFactoryResolver beanResolver;
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        Object target = invocation.getThis();
+        Class<?> targetClass = AopProxyUtils.ultimateTargetClass(target);
+        LockMetadata metadata = getMetadata(method, targetClass);
+        if (metadata == NULL_METADATA) {
+            return invocation.proceed();
+        }
+        Object[] args = invocation.getArguments();
+        LockAttribute[] attributes = metadata.attributes;
+        Lock[] acquired = new Lock[attributes.length];
+        int count = 0;
+        EvaluationContext context = null;
+        try {
+            for (LockAttribute attribute : attributes) {
+                String key = attribute.defaultKey;
+                if (attribute.expression != null) {
+                    if (context == null) {
+                        context = createEvaluationContext(metadata, method, args, target, targetClass);
+                    }
+                    key = attribute.expression.getValue(context, String.class);
+                }
+                DistributedLockOperation operation = attribute.operation;
+                Lock lock = lockFactory.getLock(key, operation.getLease(), operation.getUnit());
+                boolean locked = operation.getWaitTime() > 0
+                        ? lock.tryLock(operation.getWaitTime(), operation.getUnit())
+                        : lock.tryLock();
+                if (!locked) {
+                    logger.debug("无法获取锁{}#{} , key: {}", targetClass.getName(), method.getName(), key);
+                    throw new DistributedLockException(key);
+                }
+                acquired[count++] = lock;
+            }
+            return invocation.proceed();
+        } finally {
+            for (int i = count - 1; i >= 0; i--) {
+                acquired[i].unlock();
+            }
+        }
+    }
+
+    private LockMetadata getMetadata(Method method, Class<?> targetClass) {
+        MethodClassKey cacheKey = new MethodClassKey(method, targetClass);
+        LockMetadata metadata = metadataCache.get(cacheKey);
+        if (metadata == null) {
+            metadata = metadataCache.computeIfAbsent(cacheKey, k -> computeMetadata(method, targetClass));
+        }
+        return metadata;
+    }
+
+    private LockMetadata computeMetadata(Method method, Class<?> targetClass) {
+        Collection<DistributedLockOperation> operations = lockOperationSource.getLockOperations(method, targetClass);
+        if (CollectionUtils.isEmpty(operations)) {
+            return NULL_METADATA;
+        }
+        String defaultKey = defaultKey(method, targetClass);
+        LockAttribute[] attributes = new LockAttribute[operations.size()];
+        int i = 0;
+        for (DistributedLockOperation operation : operations) {
+            Expression expression = StringUtils.hasText(operation.getKey())
+                    ? parser.parseExpression(operation.getKey())
+                    : null;
+            attributes[i++] = new LockAttribute(operation, expression, defaultKey);
+        }
+        String[] parameterNames = parameterNameDiscoverer.getParameterNames(method);
+        return new LockMetadata(attributes, parameterNames != null ? parameterNames : new String[0], method.getParameterCount());
+    }
+
+    /**
+     * 类名+方法签名，重载的方法不共用同一个锁
+     */
+    private static String defaultKey(Method method, Class<?> targetClass) {
+        StringJoiner joiner = new StringJoiner(",", targetClass.getName() + "#" + method.getName() + "(", ")");
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            joiner.add(parameterType.getName());
+        }
+        return joiner.toString();
+    }
+
+    private EvaluationContext createEvaluationContext(LockMetadata metadata, Method method, Object[] args, Object target, Class<?> targetClass) {
+        StandardEvaluationContext context = new StandardEvaluationContext(new DistributedLockRootObject(method, args, target, targetClass));
+        context.setBeanResolver(beanResolver);
+        int count = Math.min(args.length, metadata.indexedNames.length >> 1);
+        for (int i = 0; i < count; i++) {
+            context.setVariable(metadata.indexedNames[i << 1], args[i]);
+            context.setVariable(metadata.indexedNames[(i << 1) + 1], args[i]);
+            if (i < metadata.parameterNames.length) {
+                context.setVariable(metadata.parameterNames[i], args[i]);
+            }
+        }
+        return context;
+    }
+
+    public DistributedLockOperationSource getLockOperationSource() {
+        return lockOperationSource;
+    }
+
+    public void setLockOperationSource(DistributedLockOperationSource lockOperationSource) {
+        this.lockOperationSource = lockOperationSource;
+    }
+
+    public DistributedLockFactory getLockFactory() {
+        return lockFactory;
+    }
+
+    public void setLockFactory(DistributedLockFactory lockFactory) {
+        this.lockFactory = lockFactory;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanResolver = new BeanFactoryResolver(beanFactory);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.state(getLockOperationSource() != null, "The 'lockOperationSource' property is required: " +
+                "If there are no distributed lock methods, then don't use a distributed lock aspect.");
+        Assert.state(lockFactory != null, "the 'lockFactory' property is required");
+    }
+
+    /**
+     * 方法级别的锁元数据，首次调用时生成
+     */
+    private static class LockMetadata {
+        private final LockAttribute[] attributes;
+        private final String[] parameterNames;
+        /**
+         * a0,p0,a1,p1...形式的参数别名
+         */
+        private final String[] indexedNames;
+
+        LockMetadata(LockAttribute[] attributes, String[] parameterNames, int parameterCount) {
+            this.attributes = attributes;
+            this.parameterNames = parameterNames;
+            this.indexedNames = new String[parameterCount << 1];
+            for (int i = 0; i < parameterCount; i++) {
+                indexedNames[i << 1] = "a" + i;
+                indexedNames[(i << 1) + 1] = "p" + i;
+            }
+        }
+    }
+
+    private static class LockAttribute {
+        private final DistributedLockOperation operation;
+        private final Expression expression;
+        private final String defaultKey;
+
+        LockAttribute(DistributedLockOperation operation, Expression expression, String defaultKey) {
+            this.operation = operation;
+            this.expression = expression;
+            this.defaultKey = defaultKey;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package site.zido.coffee.extra.lock;
+
+/**
+ * 分布式锁指标收集器
+ * <p>
+ * 回调在加解锁的线程中同步执行，实现需要线程安全并且不能阻塞
+ *
+ * @author zido
+ * @see LockContentionMetrics
+ * @see MicrometerLockMetrics
+ */
+public interface DistributedLockMetrics {
+    /**
+     * 不收集任何指标
+     */
+    DistributedLockMetrics NONE = new DistributedLockMetrics() {
+    };
+
+    /**
+     * 一次加锁调用结束
+     *
+     * @param key        锁的key
+     * @param acquired   是否加锁成功
+     * @param waitNanos  加锁耗时
+     * @param roundTrips 本次加锁访问redis的次数
+     */
+    default void recordAcquire(String key, boolean acquired, long waitNanos, int roundTrips) {
+    }
+
+    /**
+     * 一次解锁
+     *
+     * @param key       锁的key
+     * @param holdNanos 持有时间
+     */
+    default void recordRelease(String key, long holdNanos) {
+    }
+
+    /**
+     * 解锁时锁已经因为租期结束而被释放或者被他人持有
+     *
+     * @param key 锁的key
+     */
+    default void recordLeaseExpired(String key) {
+    }
+}
@@ -0,0 +1,101 @@
+package site.zido.coffee.extra.lock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DistributedLock}注解解析后的元数据
+ *
+ * @author zido
+ */
+public class DistributedLockOperation {
+    private final String key;
+    private final long lease;
+    private final long waitTime;
+    private final TimeUnit unit;
+    private final String name;
+
+    public DistributedLockOperation(Builder builder) {
+        this.key = builder.getKey();
+        this.lease = builder.getLease();
+        this.waitTime = builder.getWaitTime();
+        this.unit = builder.getUnit();
+        this.name = builder.getName();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getLease() {
+        return lease;
+    }
+
+    public long getWaitTime() {
+        return waitTime;
+    }
+
+    public TimeUnit getUnit() {
+        return unit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return "DistributedLockOperation[" + name + "] key='" + key + "' lease=" + lease + " waitTime=" + waitTime + " unit=" + unit;
+    }
+
+    public static class Builder {
+        private String key = "";
+        private long lease = 30;
+        private long waitTime = 0;
+        private TimeUnit unit = TimeUnit.SECONDS;
+        private String name = "";
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public long getLease() {
+            return lease;
+        }
+
+        public void setLease(long lease) {
+            this.lease = lease;
+        }
+
+        public long getWaitTime() {
+            return waitTime;
+        }
+
+        public void setWaitTime(long waitTime) {
+            this.waitTime = waitTime;
+        }
+
+        public TimeUnit getUnit() {
+            return unit;
+        }
+
+        public void setUnit(TimeUnit unit) {
+            this.unit = unit;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public DistributedLockOperation build() {
+            return new DistributedLockOperation(this);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package site.zido.coffee.extra.lock;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * 分布式锁注解元数据来源
+ *
+ * @author zido
+ */
+public interface DistributedLockOperationSource {
+    Collection<DistributedLockOperation> getLockOperations(Method method, Class<?> targetClass);
+}
@@ -0,0 +1,42 @@
+package site.zido.coffee.extra.lock;
+
+import java.lang.reflect.Method;
+
+/**
+ * {@link DistributedLock#key()}表达式的根对象
+ *
+ * @author zido
+ */
+public class DistributedLockRootObject {
+
+    private final Method method;
+
+    private final Object[] args;
+
+    private final Object target;
+
+    private final Class<?> targetClass;
+
+    public DistributedLockRootObject(Method method, Object[] args, Object target, Class<?> targetClass) {
+        this.method = method;
+        this.args = args;
+        this.target = target;
+        this.targetClass = targetClass;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Object[] getArgs() {
+        return args;
+    }
+
+    public Object getTarget() {
+        return target;
+    }
+
+    public Class<?> getTargetClass() {
+        return targetClass;
+    }
+}
@@ -6,38 +6,51 @@ import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.RedisConnectionUtils;
 import org.springframework.util.Assert;
-import site.zido.coffee.core.utils.IdWorker;
 
 import java.io.Serializable;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * 分布式锁,基于redis实现,非公平锁，不可重入锁
+ * <p>
+ * 加解锁脚本通过EVALSHA执行，默认每次操作从连接工厂获取连接，
+ * 可以通过{@link #setSharedConnection(RedisConnection)}指定一个多路复用的共享连接(例如lettuce)，
+ * 此时加解锁都只是该连接上的一条命令
+ * <p>
+ * 需要防止持有者因为gc停顿等原因超过租期后继续写入时，使用{@link #tryLockWithFencingToken()}加锁，
+ * 加锁成功会在同一个脚本中通过INCR生成单调递增的fencing token，下游可以据此拒绝旧token的写入
  *
  * @author zido
  */
-public class DistributedRedisLock extends AbstractDistributedLock implements Serializable, InitializingBean {
+public class DistributedRedisLock extends AbstractDistributedLock implements Serializable, InitializingBean, PipelinedRelease {
     private static final long serialVersionUID = -8954727144655510783L;
-    private static final byte[] LOCK_SUCCESS = {79, 75};
-    private static final String SET_WITH_EXPIRE_TIME = "PX";
+    /**
+     * 未获取到锁时返回的fencing token
+     */
+    public static final long NOT_ACQUIRED = -1L;
+    private static final Long LOCK_SUCCESS = 1L;
+    private static final String FENCING_SUFFIX = ":fencing";
     private static final Charset USE_CHARSET = StandardCharsets.UTF_8;
-    private static final String DEL_SCRIPT = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
-    private static final String ADD_SCRIPT = "if redis.call('get', KEYS[1]) ~= ARGV[1] then return redis.call('set', KEYS[1], ARGV[1], ARGV[2], ARGV[3]) else return 0 end";
-    private static final byte[] DEL_SCRIPT_BYTES = DEL_SCRIPT.getBytes(USE_CHARSET);
-    private static final byte[] ADD_SCRIPT_BYTES = ADD_SCRIPT.getBytes(USE_CHARSET);
-    private static final byte[] SET_WITH_EXPIRE_TIME_BYTES = SET_WITH_EXPIRE_TIME.getBytes(USE_CHARSET);
+    private static final RedisLockScript DEL_SCRIPT = new RedisLockScript(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end");
+    private static final RedisLockScript ADD_SCRIPT = new RedisLockScript(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return 1 else return 0 end");
+    private static final RedisLockScript FENCED_ADD_SCRIPT = new RedisLockScript(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return redis.call('incr', KEYS[2]) else return 0 end");
 
     private final String key;
     private long timeout;
     private TimeUnit unit;
     private transient byte[] keyBytes;
+    private transient byte[] fencingKeyBytes;
     private transient byte[] timeoutBytes;
     private transient volatile boolean initialized = false;
+    private transient RedisConnection sharedConnection;
     private RedisConnectionFactory connectionFactory;
-    private byte[] value;
 
     /**
      * 默认情况下采用spring方式管理lock,也就是由spring负责回收生命周期
@@ -66,51 +79,126 @@ public class DistributedRedisLock extends AbstractDistributedLock implements Ser
         this.unit = unit;
     }
 
-    private void initValue() {
-        RedisConnection connection = RedisConnectionUtils.getConnection(connectionFactory);
-        try {
-            this.value = connection.get(keyBytes);
-            if (null == this.value || this.value.length == 0) {
-                this.value = (IdWorker.nextId() + "").getBytes(USE_CHARSET);
-            }
-        } finally {
-            RedisConnectionUtils.releaseConnection(connection, connectionFactory,false);
-        }
+    /**
+     * 设置共享连接，连接必须是线程安全的多路复用连接(例如开启了shareNativeConnection的lettuce连接)，
+     * 连接的生命周期由调用方负责
+     *
+     * @param sharedConnection 共享连接
+     */
+    public void setSharedConnection(RedisConnection sharedConnection) {
+        this.sharedConnection = sharedConnection;
     }
 
     @Override
-    public boolean doTryLock() {
+    protected boolean doTryLock(Acquisition acquisition) {
         Assert.isTrue(initialized, "lock not initialized; call afterPropertiesSet() before using it");
-        byte[][] keysAndArgs = new byte[4][];
-        keysAndArgs[0] = this.keyBytes;
-        keysAndArgs[1] = this.value;
-        keysAndArgs[2] = SET_WITH_EXPIRE_TIME_BYTES;
-        keysAndArgs[3] = timeoutBytes;
-        RedisConnection connection = RedisConnectionUtils.getConnection(connectionFactory);
+        Long result = execute(connection -> ADD_SCRIPT.execute(connection, ReturnType.INTEGER, 1,
+                keyBytes, acquisition.getOwner(), timeoutBytes));
+        return LOCK_SUCCESS.equals(result);
+    }
+
+    /**
+     * 尝试加锁并获取fencing token
+     * <p>
+     * token计数器保存在key为{@code key + ":fencing"}的键中且不会过期，
+     * redis集群模式下需要在锁的key中使用hash tag保证两个键在同一个slot
+     *
+     * @return 加锁成功返回单调递增的token，否则返回{@link #NOT_ACQUIRED}
+     */
+    public long tryLockWithFencingToken() {
+        final long start = System.nanoTime();
+        long token = doTryLockWithFencingToken(new FencedAcquisition());
+        recordAcquire(token != NOT_ACQUIRED, start, 1);
+        return token;
+    }
+
+    /**
+     * 在给定时间内尝试加锁并获取fencing token
+     *
+     * @param time 最大等待时间
+     * @param unit 时间单位
+     * @return 加锁成功返回单调递增的token，否则返回{@link #NOT_ACQUIRED}
+     * @throws InterruptedException 等待时被中断
+     */
+    public long tryLockWithFencingToken(long time, TimeUnit unit) throws InterruptedException {
+        final long start = System.nanoTime();
+        final long deadline = start + unit.toNanos(time);
+        int roundTrips = 0;
+        long token = NOT_ACQUIRED;
+        FencedAcquisition acquisition = new FencedAcquisition();
         try {
-            //结果应该是OK字符串的byte数组
-            Object result = connection.eval(ADD_SCRIPT_BYTES, ReturnType.INTEGER, 1, keysAndArgs);
-            if (result instanceof byte[]) {
-                return Arrays.equals(LOCK_SUCCESS, (byte[]) result);
+            for (; ; ) {
+                roundTrips++;
+                token = doTryLockWithFencingToken(acquisition);
+                if (token != NOT_ACQUIRED) {
+                    return token;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    return NOT_ACQUIRED;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                backoff(roundTrips, remaining);
             }
-            return false;
         } finally {
-            RedisConnectionUtils.releaseConnection(connection, connectionFactory,false);
+            recordAcquire(token != NOT_ACQUIRED, start, roundTrips);
         }
     }
 
+    private long doTryLockWithFencingToken(FencedAcquisition acquisition) {
+        Assert.isTrue(initialized, "lock not initialized; call afterPropertiesSet() before using it");
+        Long token = execute(connection -> FENCED_ADD_SCRIPT.execute(connection, ReturnType.INTEGER, 2,
+                keyBytes, fencingKeyBytes, acquisition.getOwner(), timeoutBytes));
+        if (token == null || token <= 0) {
+            return NOT_ACQUIRED;
+        }
+        acquisition.token = token;
+        markLocked(acquisition);
+        return token;
+    }
+
+    /**
+     * 当前线程持有的fencing token
+     *
+     * @return 当前线程通过{@link #tryLockWithFencingToken()}持有锁时返回对应的token，否则返回{@link #NOT_ACQUIRED}
+     */
+    public long getFencingToken() {
+        Acquisition acquisition = currentAcquisition();
+        return acquisition instanceof FencedAcquisition ? ((FencedAcquisition) acquisition).token : NOT_ACQUIRED;
+    }
+
     @Override
-    public void doUnlock() {
+    protected void doUnlock(Acquisition acquisition) {
         Assert.isTrue(initialized, "lock not initialized; call afterPropertiesSet() before using it");
-        //结果可能是0或者1，但是不需要有失败判定
-        byte[][] keysAndArgs = new byte[2][];
-        keysAndArgs[0] = this.keyBytes;
-        keysAndArgs[1] = this.value;
+        //结果为0说明锁已经因为租期结束而被释放(可能已经属于其他持有者)，不需要有失败判定，只记录指标
+        Long result = execute(connection -> DEL_SCRIPT.execute(connection, ReturnType.INTEGER, 1,
+                keyBytes, acquisition.getOwner()));
+        if (result != null && result == 0) {
+            recordLeaseExpired();
+        }
+    }
+
+    @Override
+    public RedisConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    @Override
+    public void releaseInPipeline(RedisConnection connection, Acquisition acquisition) {
+        DEL_SCRIPT.eval(connection, ReturnType.INTEGER, 1, keyBytes, acquisition.getOwner());
+    }
+
+    private <T> T execute(Function<RedisConnection, T> action) {
+        if (sharedConnection != null) {
+            return action.apply(sharedConnection);
+        }
         RedisConnection connection = RedisConnectionUtils.getConnection(connectionFactory);
         try {
-            connection.eval(DEL_SCRIPT_BYTES, ReturnType.VALUE, 1, keysAndArgs);
+            return action.apply(connection);
         } finally {
-            RedisConnectionUtils.releaseConnection(connection, connectionFactory,false);
+            RedisConnectionUtils.releaseConnection(connection, connectionFactory, false);
         }
     }
 
@@ -141,8 +229,15 @@ public class DistributedRedisLock extends AbstractDistributedLock implements Ser
         Assert.hasLength(this.key, "key can't be blank");
         Assert.notNull(connectionFactory, "redis connection factory can't be null");
         this.keyBytes = key.getBytes(USE_CHARSET);
+        this.fencingKeyBytes = (key + FENCING_SUFFIX).getBytes(USE_CHARSET);
         this.timeoutBytes = (unit.toMillis(timeout) + "").getBytes(USE_CHARSET);
-        initValue();
         initialized = true;
     }
+
+    /**
+     * 带有fencing token的加锁
+     */
+    private static final class FencedAcquisition extends Acquisition {
+        private volatile long token = NOT_ACQUIRED;
+    }
 }
@@ -0,0 +1,305 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisConnectionUtils;
+import org.springframework.util.Assert;
+import site.zido.coffee.core.utils.IdWorker;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 分布式信号量,基于redis实现
+ * <p>
+ * 每个许可是redis有序集合中的一个成员，分值为许可的过期时间，持有者宕机后许可会在租期结束后自动回收。
+ * 许可属于信号量实例而不是线程，同一个实例中任意线程都可以释放许可
+ * <p>
+ * 释放许可时通过{@link RedisLockNotifier}唤醒所有等待者重新竞争，未设置通知中心时退化为按最早过期时间定时重试
+ * <p>
+ * 许可的过期时间使用各实例的本地时间，需要保证实例之间的时钟基本一致
+ *
+ * @author zido
+ */
+public class DistributedSemaphore implements InitializingBean, DisposableBean {
+    private static final Charset USE_CHARSET = StandardCharsets.UTF_8;
+    /**
+     * 返回0表示获取成功，否则返回建议的等待毫秒数
+     */
+    private static final RedisLockScript ACQUIRE_SCRIPT = new RedisLockScript(
+            "local now = tonumber(ARGV[1]) " +
+                    "redis.call('zremrangebyscore', KEYS[1], '-inf', now) " +
+                    "local n = #ARGV - 4 " +
+                    "if redis.call('zcard', KEYS[1]) + n > tonumber(ARGV[2]) then " +
+                    "local first = redis.call('zrange', KEYS[1], 0, 0, 'WITHSCORES') " +
+                    "if first[2] then return math.max(tonumber(first[2]) - now, 1) end " +
+                    "return tonumber(ARGV[4]) " +
+                    "end " +
+                    "for i = 5, #ARGV do redis.call('zadd', KEYS[1], ARGV[3], ARGV[i]) end " +
+                    "redis.call('pexpire', KEYS[1], ARGV[4]) " +
+                    "return 0");
+    private static final RedisLockScript RELEASE_SCRIPT = new RedisLockScript(
+            "local removed = 0 " +
+                    "for i = 3, #ARGV do removed = removed + redis.call('zrem', KEYS[1], ARGV[i]) end " +
+                    "if removed > 0 then redis.call('publish', ARGV[1], ARGV[2]) end " +
+                    "return removed");
+    private static final RedisLockScript AVAILABLE_SCRIPT = new RedisLockScript(
+            "redis.call('zremrangebyscore', KEYS[1], '-inf', ARGV[1]) " +
+                    "return tonumber(ARGV[2]) - redis.call('zcard', KEYS[1])");
+
+    private final String key;
+    private final int permits;
+    private final long lease;
+    private final RedisConnectionFactory connectionFactory;
+    private final RedisLockNotifier notifier;
+    private final Deque<byte[]> heldPermits = new ConcurrentLinkedDeque<>();
+    private byte[] keyBytes;
+    private byte[] permitsBytes;
+    private byte[] leaseBytes;
+    private byte[] channelBytes;
+    private String owner;
+    private volatile boolean initialized = false;
+
+    /**
+     * @param key               key
+     * @param connectionFactory redis 连接
+     * @param notifier          释放通知中心，可以为null
+     * @param permits           集群范围内的许可总数
+     * @param lease             许可租期
+     * @param unit              时间单位
+     */
+    public DistributedSemaphore(String key,
+                                RedisConnectionFactory connectionFactory,
+                                RedisLockNotifier notifier,
+                                int permits,
+                                long lease,
+                                TimeUnit unit) {
+        this.key = key;
+        this.connectionFactory = connectionFactory;
+        this.notifier = notifier;
+        this.permits = permits;
+        this.lease = unit.toMillis(lease);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getPermits() {
+        return permits;
+    }
+
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    /**
+     * 阻塞直到获取到指定数量的许可
+     *
+     * @param n 许可数量
+     * @throws InterruptedException 等待时被中断
+     */
+    public void acquire(int n) throws InterruptedException {
+        awaitPermits(n, 0, false);
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 尝试一次获取指定数量的许可
+     *
+     * @param n 许可数量
+     * @return 是否获取成功
+     */
+    public boolean tryAcquire(int n) {
+        return doAcquire(n) == 0;
+    }
+
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        return tryAcquire(1, timeout, unit);
+    }
+
+    /**
+     * 在给定时间内尝试获取指定数量的许可
+     *
+     * @param n       许可数量
+     * @param timeout 最大等待时间
+     * @param unit    时间单位
+     * @return 是否获取成功
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean tryAcquire(int n, long timeout, TimeUnit unit) throws InterruptedException {
+        return awaitPermits(n, System.nanoTime() + unit.toNanos(timeout), true);
+    }
+
+    private boolean awaitPermits(int n, long deadline, boolean timed) throws InterruptedException {
+        //先订阅再获取，避免两次获取之间发布的释放通知丢失
+        RedisLockNotifier.Subscription subscription = notifier != null ? notifier.subscribe(key, null) : null;
+        try {
+            for (; ; ) {
+                long wait = doAcquire(n);
+                if (wait == 0) {
+                    return true;
+                }
+                long waitNanos = TimeUnit.MILLISECONDS.toNanos(wait);
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    waitNanos = Math.min(waitNanos, remaining);
+                }
+                if (subscription != null) {
+                    subscription.await(waitNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+            }
+        } finally {
+            if (subscription != null) {
+                subscription.close();
+            }
+        }
+    }
+
+    private long doAcquire(int n) {
+        Assert.isTrue(initialized, "semaphore not initialized; call afterPropertiesSet() before using it");
+        Assert.isTrue(n > 0 && n <= permits, "permits to acquire must be between 1 and " + permits);
+        long now = System.currentTimeMillis();
+        byte[][] args = new byte[4 + n][];
+        args[0] = String.valueOf(now).getBytes(USE_CHARSET);
+        args[1] = permitsBytes;
+        args[2] = String.valueOf(now + lease).getBytes(USE_CHARSET);
+        args[3] = leaseBytes;
+        for (int i = 0; i < n; i++) {
+            args[4 + i] = (owner + ":" + IdWorker.nextId()).getBytes(USE_CHARSET);
+        }
+        Long result = execute(connection -> ACQUIRE_SCRIPT.execute(connection, ReturnType.INTEGER, 1,
+                concat(keyBytes, args)));
+        if (result == null) {
+            return lease;
+        }
+        if (result == 0) {
+            for (int i = 0; i < n; i++) {
+                heldPermits.push(args[4 + i]);
+            }
+        }
+        return result;
+    }
+
+    public void release() {
+        release(1);
+    }
+
+    /**
+     * 释放当前实例持有的指定数量的许可，已经过期的许可会被忽略
+     *
+     * @param n 许可数量
+     */
+    public void release(int n) {
+        Assert.isTrue(initialized, "semaphore not initialized; call afterPropertiesSet() before using it");
+        Assert.isTrue(n > 0, "permits to release must be greater than 0");
+        List<byte[]> released = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            byte[] permit = heldPermits.poll();
+            if (permit == null) {
+                //归还已经取出的许可，保证释放失败时不丢失
+                for (byte[] polled : released) {
+                    heldPermits.push(polled);
+                }
+                throw new IllegalStateException("semaphore " + key + " does not hold " + n + " permits");
+            }
+            released.add(permit);
+        }
+        doRelease(released);
+    }
+
+    private void doRelease(List<byte[]> released) {
+        byte[][] args = new byte[released.size() + 2][];
+        args[0] = channelBytes;
+        args[1] = keyBytes;
+        for (int i = 0; i < released.size(); i++) {
+            args[2 + i] = released.get(i);
+        }
+        execute(connection -> RELEASE_SCRIPT.execute(connection, ReturnType.INTEGER, 1, concat(keyBytes, args)));
+    }
+
+    /**
+     * 集群范围内当前可用的许可数量
+     *
+     * @return 可用许可数量
+     */
+    public int availablePermits() {
+        Assert.isTrue(initialized, "semaphore not initialized; call afterPropertiesSet() before using it");
+        byte[] now = String.valueOf(System.currentTimeMillis()).getBytes(USE_CHARSET);
+        Long result = execute(connection -> AVAILABLE_SCRIPT.execute(connection, ReturnType.INTEGER, 1,
+                keyBytes, now, permitsBytes));
+        return result == null ? 0 : result.intValue();
+    }
+
+    /**
+     * 当前实例持有的许可数量(包括已经过期但尚未释放的许可)
+     *
+     * @return 许可数量
+     */
+    public int heldPermits() {
+        return heldPermits.size();
+    }
+
+    private static byte[][] concat(byte[] key, byte[][] args) {
+        byte[][] keysAndArgs = new byte[args.length + 1][];
+        keysAndArgs[0] = key;
+        System.arraycopy(args, 0, keysAndArgs, 1, args.length);
+        return keysAndArgs;
+    }
+
+    private <T> T execute(Function<RedisConnection, T> action) {
+        RedisConnection connection = RedisConnectionUtils.getConnection(connectionFactory);
+        try {
+            return action.apply(connection);
+        } finally {
+            RedisConnectionUtils.releaseConnection(connection, connectionFactory, false);
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.hasLength(this.key, "key can't be blank");
+        Assert.notNull(connectionFactory, "redis connection factory can't be null");
+        Assert.isTrue(permits > 0, "permits must be greater than 0");
+        Assert.isTrue(lease > 0, "lease must be greater than 0");
+        this.keyBytes = key.getBytes(USE_CHARSET);
+        this.permitsBytes = String.valueOf(permits).getBytes(USE_CHARSET);
+        this.leaseBytes = String.valueOf(lease).getBytes(USE_CHARSET);
+        String channel = notifier != null ? notifier.getChannel() : RedisLockNotifier.DEFAULT_CHANNEL;
+        this.channelBytes = channel.getBytes(USE_CHARSET);
+        this.owner = String.valueOf(IdWorker.nextId());
+        initialized = true;
+    }
+
+    /**
+     * 释放当前实例持有的全部许可
+     */
+    @Override
+    public void destroy() {
+        List<byte[]> released = new ArrayList<>();
+        byte[] permit;
+        while ((permit = heldPermits.poll()) != null) {
+            released.add(permit);
+        }
+        if (!released.isEmpty()) {
+            doRelease(released);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.context.annotation.AdviceMode;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.Ordered;
+
+import java.lang.annotation.*;
+
+/**
+ * 启用注解式分布式锁{@link DistributedLock},与{@link site.zido.coffee.extra.limiter.EnableLimiter}类似
+ * <p>
+ * 需要容器中存在{@link DistributedLockFactory}
+ *
+ * @author zido
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Import(DistributedLockConfigurationSelector.class)
+public @interface EnableDistributedLock {
+
+    /**
+     * 是否强制使用cglib代理
+     *
+     * @return true/false
+     */
+    boolean proxyTargetClass() default false;
+
+    /**
+     * 选择代理模式
+     */
+    AdviceMode mode() default AdviceMode.PROXY;
+
+    /**
+     * 代理顺序
+     */
+    int order() default Ordered.LOWEST_PRECEDENCE;
+}
@@ -0,0 +1,286 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisConnectionUtils;
+import org.springframework.util.Assert;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 公平分布式锁,基于redis实现,不可重入锁
+ * <p>
+ * 等待者按到达顺序进入redis中的等待队列({@code key + ":queue"})，锁只会交给队首的等待者。
+ * 每个等待者在{@code key + ":timeout"}中记录过期时间，等待期间定期续期，宕机的等待者过期后会被移出队列。
+ * <p>
+ * 释放锁时通过{@link RedisLockNotifier}只唤醒队首的等待者，其他等待者不会轮询redis；
+ * 未设置通知中心时退化为按锁剩余时间定时重试
+ * <p>
+ * 每次加锁生成新的持有者标识，同一个实例上并发等待的线程在队列中各自排队，互不影响；
+ * 释放时只使用本次加锁的标识，租期过期后的旧持有者不会释放下一个持有者的锁
+ * <p>
+ * 等待者的过期时间使用各实例的本地时间，需要保证实例之间的时钟基本一致
+ *
+ * @author zido
+ */
+public class FairDistributedRedisLock extends AbstractDistributedLock implements InitializingBean, PipelinedRelease {
+    private static final long serialVersionUID = 2830514960264381577L;
+    private static final Charset USE_CHARSET = StandardCharsets.UTF_8;
+    private static final long DEFAULT_WAITER_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final byte[] ENQUEUE = {'1'};
+    private static final byte[] NOT_ENQUEUE = {'0'};
+    /**
+     * 移除队首已经过期的等待者
+     */
+    private static final String PURGE = "local now = tonumber(ARGV[2]) " +
+            "while true do " +
+            "local first = redis.call('lindex', KEYS[2], 0) " +
+            "if not first then break end " +
+            "local t = redis.call('zscore', KEYS[3], first) " +
+            "if t and tonumber(t) > now then break end " +
+            "redis.call('lpop', KEYS[2]) " +
+            "redis.call('zrem', KEYS[3], first) " +
+            "end ";
+    private static final String NOTIFY_FIRST = "local head = redis.call('lindex', KEYS[2], 0) " +
+            "if head then redis.call('publish', ARGV[3], ARGV[4] .. '\\n' .. head) end ";
+    /**
+     * 返回0表示加锁成功，负数表示失败且未入队，正数表示建议的等待毫秒数
+     */
+    private static final RedisLockScript ACQUIRE_SCRIPT = new RedisLockScript(PURGE +
+            "if redis.call('exists', KEYS[1]) == 0 then " +
+            "local first = redis.call('lindex', KEYS[2], 0) " +
+            "if (not first) or first == ARGV[1] then " +
+            "if first then redis.call('lpop', KEYS[2]) redis.call('zrem', KEYS[3], first) end " +
+            "redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[3]) " +
+            "return 0 " +
+            "end " +
+            "end " +
+            "if ARGV[5] == '0' then return -1 end " +
+            "if not redis.call('zscore', KEYS[3], ARGV[1]) then redis.call('rpush', KEYS[2], ARGV[1]) end " +
+            "redis.call('zadd', KEYS[3], now + tonumber(ARGV[4]), ARGV[1]) " +
+            "redis.call('pexpire', KEYS[2], tonumber(ARGV[4]) * 2) " +
+            "redis.call('pexpire', KEYS[3], tonumber(ARGV[4]) * 2) " +
+            "local ttl = redis.call('pttl', KEYS[1]) " +
+            "if ttl > 0 then return ttl end " +
+            "return tonumber(ARGV[4])");
+    private static final RedisLockScript RELEASE_SCRIPT = new RedisLockScript(
+            "if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end " +
+                    "redis.call('del', KEYS[1]) " +
+                    PURGE + NOTIFY_FIRST +
+                    "return 1");
+    private static final RedisLockScript CANCEL_SCRIPT = new RedisLockScript(
+            "redis.call('lrem', KEYS[2], 0, ARGV[1]) " +
+                    "redis.call('zrem', KEYS[3], ARGV[1]) " +
+                    "if redis.call('exists', KEYS[1]) == 0 then " +
+                    PURGE + NOTIFY_FIRST +
+                    "end " +
+                    "return 1");
+
+    private final String key;
+    private final long lease;
+    private final TimeUnit unit;
+    private final transient RedisConnectionFactory connectionFactory;
+    private final transient RedisLockNotifier notifier;
+    private long waiterTimeout = DEFAULT_WAITER_TIMEOUT;
+    private transient byte[] keyBytes;
+    private transient byte[] queueKeyBytes;
+    private transient byte[] timeoutKeyBytes;
+    private transient byte[] leaseBytes;
+    private transient byte[] waiterTimeoutBytes;
+    private transient byte[] channelBytes;
+    private transient volatile boolean initialized = false;
+
+    public FairDistributedRedisLock(String key,
+                                    RedisConnectionFactory connectionFactory,
+                                    RedisLockNotifier notifier,
+                                    long lease,
+                                    TimeUnit unit) {
+        this(key, connectionFactory, notifier, lease, unit, true);
+    }
+
+    /**
+     * @param key               key
+     * @param connectionFactory redis 连接
+     * @param notifier          释放通知中心，可以为null
+     * @param lease             租期
+     * @param unit              时间单位
+     * @param isSpringBean      是否是spring的bean
+     */
+    public FairDistributedRedisLock(String key,
+                                    RedisConnectionFactory connectionFactory,
+                                    RedisLockNotifier notifier,
+                                    long lease,
+                                    TimeUnit unit,
+                                    boolean isSpringBean) {
+        super(isSpringBean);
+        this.key = key;
+        this.connectionFactory = connectionFactory;
+        this.notifier = notifier;
+        this.lease = lease;
+        this.unit = unit;
+    }
+
+    public long getWaiterTimeout() {
+        return waiterTimeout;
+    }
+
+    /**
+     * 设置等待者在队列中的过期时间，等待者会在过期时间的一半之内续期
+     *
+     * @param waiterTimeout 过期时间
+     * @param unit          时间单位
+     */
+    public void setWaiterTimeout(long waiterTimeout, TimeUnit unit) {
+        Assert.isTrue(waiterTimeout > 0, "waiterTimeout must be greater than 0");
+        this.waiterTimeout = unit.toMillis(waiterTimeout);
+    }
+
+    @Override
+    protected boolean doTryLock(Acquisition acquisition) {
+        return acquire(acquisition.getOwner(), false) == 0;
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        awaitLock(0, false);
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        return awaitLock(System.nanoTime() + unit.toNanos(time), true);
+    }
+
+    private boolean awaitLock(long deadline, boolean timed) throws InterruptedException {
+        final long start = System.nanoTime();
+        Acquisition acquisition = newAcquisition();
+        byte[] ownerBytes = acquisition.getOwner();
+        RedisLockNotifier.Subscription subscription = notifier != null ? notifier.subscribe(key, acquisition.getId()) : null;
+        int roundTrips = 0;
+        boolean acquired = false;
+        try {
+            for (; ; ) {
+                roundTrips++;
+                long wait = acquire(ownerBytes, true);
+                if (wait == 0) {
+                    acquired = true;
+                    markLocked(acquisition);
+                    return true;
+                }
+                long waitNanos = TimeUnit.MILLISECONDS.toNanos(Math.min(wait, waiterTimeout >> 1));
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    waitNanos = Math.min(waitNanos, remaining);
+                }
+                if (subscription != null) {
+                    subscription.await(waitNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+            }
+        } finally {
+            if (subscription != null) {
+                subscription.close();
+            }
+            if (!acquired) {
+                roundTrips++;
+                cancel(ownerBytes);
+            }
+            recordAcquire(acquired, start, roundTrips);
+        }
+    }
+
+    private long acquire(byte[] owner, boolean enqueue) {
+        Assert.isTrue(initialized, "lock not initialized; call afterPropertiesSet() before using it");
+        byte[] now = String.valueOf(System.currentTimeMillis()).getBytes(USE_CHARSET);
+        Long result = execute(connection -> ACQUIRE_SCRIPT.execute(connection, ReturnType.INTEGER, 3,
+                keyBytes, queueKeyBytes, timeoutKeyBytes,
+                owner, now, leaseBytes, waiterTimeoutBytes, enqueue ? ENQUEUE : NOT_ENQUEUE));
+        return result == null ? -1 : result;
+    }
+
+    private void cancel(byte[] owner) {
+        byte[] now = String.valueOf(System.currentTimeMillis()).getBytes(USE_CHARSET);
+        execute(connection -> CANCEL_SCRIPT.execute(connection, ReturnType.INTEGER, 3,
+                keyBytes, queueKeyBytes, timeoutKeyBytes,
+                owner, now, channelBytes, keyBytes));
+    }
+
+    @Override
+    protected void doUnlock(Acquisition acquisition) {
+        Assert.isTrue(initialized, "lock not initialized; call afterPropertiesSet() before using it");
+        byte[] now = String.valueOf(System.currentTimeMillis()).getBytes(USE_CHARSET);
+        Long result = execute(connection -> RELEASE_SCRIPT.execute(connection, ReturnType.INTEGER, 3,
+                keyBytes, queueKeyBytes, timeoutKeyBytes,
+                acquisition.getOwner(), now, channelBytes, keyBytes));
+        if (result != null && result == 0) {
+            recordLeaseExpired();
+        }
+    }
+
+    @Override
+    public RedisConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    @Override
+    public void releaseInPipeline(RedisConnection connection, Acquisition acquisition) {
+        byte[] now = String.valueOf(System.currentTimeMillis()).getBytes(USE_CHARSET);
+        RELEASE_SCRIPT.eval(connection, ReturnType.INTEGER, 3,
+                keyBytes, queueKeyBytes, timeoutKeyBytes,
+                acquisition.getOwner(), now, channelBytes, keyBytes);
+    }
+
+    private <T> T execute(Function<RedisConnection, T> action) {
+        RedisConnection connection = RedisConnectionUtils.getConnection(connectionFactory);
+        try {
+            return action.apply(connection);
+        } finally {
+            RedisConnectionUtils.releaseConnection(connection, connectionFactory, false);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.keyBytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FairDistributedRedisLock that = (FairDistributedRedisLock) o;
+        return Arrays.equals(keyBytes, that.keyBytes);
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.hasLength(this.key, "key can't be blank");
+        Assert.notNull(connectionFactory, "redis connection factory can't be null");
+        this.keyBytes = key.getBytes(USE_CHARSET);
+        this.queueKeyBytes = (key + ":queue").getBytes(USE_CHARSET);
+        this.timeoutKeyBytes = (key + ":timeout").getBytes(USE_CHARSET);
+        this.leaseBytes = String.valueOf(unit.toMillis(lease)).getBytes(USE_CHARSET);
+        this.waiterTimeoutBytes = String.valueOf(waiterTimeout).getBytes(USE_CHARSET);
+        String channel = notifier != null ? notifier.getChannel() : RedisLockNotifier.DEFAULT_CHANNEL;
+        this.channelBytes = channel.getBytes(USE_CHARSET);
+        initialized = true;
+    }
+}
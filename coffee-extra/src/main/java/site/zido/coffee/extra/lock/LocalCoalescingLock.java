@@ -0,0 +1,296 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 本地优先的分布式锁
+ * <p>
+ * 同一个jvm中的线程先在本地锁上排队，只有拿到本地锁的线程才会去redis中竞争，
+ * 等待中的线程挂起而不是轮询redis，redis的访问量只与实例数量有关，与线程数量无关
+ * <p>
+ * 开启{@link #setHandoff(boolean)}后，释放时如果本地还有等待者，会直接把已经持有的分布式锁交给下一个等待者，
+ * 而不释放redis中的锁。为了不让其他实例饿死，连续交接次数受{@link #setMaxHandoffs(int)}限制，
+ * 并且只在持有时间未超过租期一半时交接
+ * <p>
+ * 由于本地锁的限制，加锁与解锁必须在同一个线程中进行
+ *
+ * @author zido
+ */
+public class LocalCoalescingLock implements Lock {
+    private static final int DEFAULT_MAX_HANDOFFS = 8;
+    private final AbstractDistributedLock delegate;
+    private final ReentrantLock local = new ReentrantLock(true);
+    /**
+     * 正在等待本地锁的线程数量，交接只发给这些线程
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final long leaseNanos;
+    private boolean handoff = false;
+    private int maxHandoffs = DEFAULT_MAX_HANDOFFS;
+    /**
+     * 以下状态只在持有本地锁时读写
+     */
+    private AbstractDistributedLock.Acquisition distributed;
+    private long distributedAcquiredAt;
+    private int handoffCount;
+
+    public LocalCoalescingLock(AbstractDistributedLock delegate, long lease, TimeUnit unit) {
+        Assert.notNull(delegate, "delegate lock can't be null");
+        this.delegate = delegate;
+        this.leaseNanos = unit.toNanos(lease);
+    }
+
+    public boolean isHandoff() {
+        return handoff;
+    }
+
+    /**
+     * 是否在本地等待者之间直接交接分布式锁
+     *
+     * @param handoff true/false
+     */
+    public void setHandoff(boolean handoff) {
+        this.handoff = handoff;
+    }
+
+    public int getMaxHandoffs() {
+        return maxHandoffs;
+    }
+
+    /**
+     * 设置最大连续交接次数，达到后必须释放redis中的锁重新竞争
+     *
+     * @param maxHandoffs 最大连续交接次数
+     */
+    public void setMaxHandoffs(int maxHandoffs) {
+        Assert.isTrue(maxHandoffs > 0, "maxHandoffs must be greater than 0");
+        this.maxHandoffs = maxHandoffs;
+    }
+
+    /**
+     * 当前jvm中是否持有该锁(包括交接中的分布式锁)
+     *
+     * @return true/false
+     */
+    public boolean isHeld() {
+        return local.isLocked() || delegate.isHeld();
+    }
+
+    public AbstractDistributedLock getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 正在等待本地锁的线程数量
+     *
+     * @return 等待者数量
+     */
+    public int getQueueLength() {
+        return waiters.get();
+    }
+
+    @Override
+    public void lock() {
+        waiters.incrementAndGet();
+        try {
+            local.lock();
+        } finally {
+            waiters.decrementAndGet();
+        }
+        try {
+            checkNotReentrant();
+            if (!acquireDistributed()) {
+                delegate.lock();
+                onDistributedAcquired();
+            }
+        } catch (RuntimeException e) {
+            local.unlock();
+            throw e;
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        boolean locked = false;
+        waiters.incrementAndGet();
+        try {
+            local.lockInterruptibly();
+            locked = true;
+        } finally {
+            waiters.decrementAndGet();
+            if (!locked) {
+                leave();
+            }
+        }
+        try {
+            checkNotReentrant();
+            if (!acquireDistributed()) {
+                delegate.lockInterruptibly();
+                onDistributedAcquired();
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            local.unlock();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (!local.tryLock()) {
+            return false;
+        }
+        if (local.getHoldCount() > 1) {
+            local.unlock();
+            return false;
+        }
+        return acquireDistributedOrRelease();
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(time);
+        boolean locked = false;
+        waiters.incrementAndGet();
+        try {
+            locked = local.tryLock(time, unit);
+        } finally {
+            waiters.decrementAndGet();
+            if (!locked) {
+                leave();
+            }
+        }
+        if (!locked) {
+            return false;
+        }
+        if (local.getHoldCount() > 1) {
+            local.unlock();
+            return false;
+        }
+        try {
+            if (acquireDistributed()) {
+                return true;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0 && delegate.tryLock(remaining, TimeUnit.NANOSECONDS)) {
+                onDistributedAcquired();
+                return true;
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            local.unlock();
+            throw e;
+        }
+        local.unlock();
+        return false;
+    }
+
+    private boolean acquireDistributedOrRelease() {
+        try {
+            if (acquireDistributed()) {
+                return true;
+            }
+        } catch (RuntimeException e) {
+            local.unlock();
+            throw e;
+        }
+        local.unlock();
+        return false;
+    }
+
+    /**
+     * 持有本地锁后尝试一次获取分布式锁，优先使用上一个持有者交接过来的锁
+     *
+     * @return 是否获取成功
+     */
+    private boolean acquireDistributed() {
+        if (distributed != null) {
+            if (System.nanoTime() - distributedAcquiredAt < leaseNanos) {
+                handoffCount++;
+                return true;
+            }
+            //交接过来的锁已经过期
+            releaseDistributed();
+        }
+        if (delegate.tryLock()) {
+            onDistributedAcquired();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 分布式锁不可重入，阻塞式加锁时重入直接失败，避免自己等待自己直到租期结束
+     */
+    private void checkNotReentrant() {
+        if (local.getHoldCount() > 1) {
+            throw new IllegalStateException("distributed lock is not reentrant: " + delegate.getKey());
+        }
+    }
+
+    /**
+     * 分布式锁的加锁记录从当前线程上解除，交接后由实际释放的线程释放
+     */
+    private void onDistributedAcquired() {
+        distributed = delegate.detach();
+        distributedAcquiredAt = System.nanoTime();
+        handoffCount = 0;
+    }
+
+    private void releaseDistributed() {
+        AbstractDistributedLock.Acquisition acquisition = distributed;
+        distributed = null;
+        delegate.release(acquisition);
+    }
+
+    private boolean shouldHandoff() {
+        return handoff
+                && handoffCount < maxHandoffs
+                && System.nanoTime() - distributedAcquiredAt < (leaseNanos >> 1)
+                && waiters.get() > 0;
+    }
+
+    /**
+     * 没有等待者时释放交接出去的分布式锁。
+     * 释放者看到等待者后交接，等待者却在接手前超时或者被中断离开时，由最后离开的一方释放，
+     * 拿不到本地锁说明已经有新的持有者接手
+     */
+    private void leave() {
+        if (waiters.get() == 0 && local.tryLock()) {
+            try {
+                if (distributed != null) {
+                    releaseDistributed();
+                }
+            } finally {
+                local.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void unlock() {
+        if (!local.isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException("current thread does not hold lock: " + delegate.getKey());
+        }
+        if (shouldHandoff()) {
+            local.unlock();
+            //等待者可能已经超时离开，没有人接手时自行释放redis中的锁
+            leave();
+            return;
+        }
+        try {
+            releaseDistributed();
+        } finally {
+            local.unlock();
+        }
+    }
+
+    @Override
+    public Condition newCondition() {
+        throw new UnsupportedOperationException("not support condition");
+    }
+}
@@ -0,0 +1,288 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按key统计的锁竞争指标，用于找出竞争最激烈的锁
+ * <p>
+ * 统计的key数量达到{@link #setMaximumKeys(int)}后，淘汰累计等待时间最短的一半，
+ * 之后出现的竞争激烈的key仍然可以进入统计
+ *
+ * @author zido
+ */
+public class LockContentionMetrics implements DistributedLockMetrics {
+    private static final int DEFAULT_MAXIMUM_KEYS = 1000;
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final Counters total = new Counters("*");
+    private int maximumKeys = DEFAULT_MAXIMUM_KEYS;
+
+    public int getMaximumKeys() {
+        return maximumKeys;
+    }
+
+    /**
+     * 设置单独统计的最大key数量
+     *
+     * @param maximumKeys 最大key数量
+     */
+    public void setMaximumKeys(int maximumKeys) {
+        Assert.isTrue(maximumKeys > 0, "maximumKeys must be greater than 0");
+        this.maximumKeys = maximumKeys;
+    }
+
+    @Override
+    public void recordAcquire(String key, boolean acquired, long waitNanos, int roundTrips) {
+        total.recordAcquire(acquired, waitNanos, roundTrips);
+        Counters keyCounters = countersOf(key);
+        if (keyCounters != null) {
+            keyCounters.recordAcquire(acquired, waitNanos, roundTrips);
+        }
+    }
+
+    @Override
+    public void recordRelease(String key, long holdNanos) {
+        total.holdNanos.add(holdNanos);
+        Counters keyCounters = countersOf(key);
+        if (keyCounters != null) {
+            keyCounters.holdNanos.add(holdNanos);
+        }
+    }
+
+    @Override
+    public void recordLeaseExpired(String key) {
+        total.leaseExpired.increment();
+        Counters keyCounters = countersOf(key);
+        if (keyCounters != null) {
+            keyCounters.leaseExpired.increment();
+        }
+    }
+
+    private Counters countersOf(String key) {
+        Counters keyCounters = counters.get(key);
+        if (keyCounters == null && (counters.size() < maximumKeys || evict())) {
+            keyCounters = counters.computeIfAbsent(key, Counters::new);
+        }
+        return keyCounters;
+    }
+
+    /**
+     * 淘汰累计等待时间最短的一半，每次淘汰之后可以接纳maximumKeys/2个新的key，排序的开销被分摊
+     *
+     * @return 是否有空位，其他线程正在淘汰时返回false，本次不统计该key
+     */
+    private boolean evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            if (counters.size() < maximumKeys) {
+                return true;
+            }
+            List<Counters> all = new ArrayList<>(counters.values());
+            all.sort(Comparator.comparingLong(keyCounters -> keyCounters.waitNanos.sum()));
+            int evicted = all.size() - maximumKeys / 2;
+            for (int i = 0; i < evicted; i++) {
+                Counters keyCounters = all.get(i);
+                if (counters.remove(keyCounters.key, keyCounters)) {
+                    onEvicted(keyCounters.key);
+                }
+            }
+            return true;
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * key被淘汰，不再单独统计
+     *
+     * @param key 锁的key
+     */
+    protected void onEvicted(String key) {
+    }
+
+    /**
+     * @param key 锁的key
+     * @return 是否单独统计
+     */
+    protected boolean isTracked(String key) {
+        return counters.containsKey(key);
+    }
+
+    /**
+     * 所有锁的汇总统计
+     *
+     * @return 汇总统计
+     */
+    public LockStats getTotal() {
+        return total.snapshot();
+    }
+
+    /**
+     * 某个key的统计
+     *
+     * @param key 锁的key
+     * @return 统计，未统计的key返回null
+     */
+    public LockStats getStats(String key) {
+        Counters keyCounters = counters.get(key);
+        return keyCounters == null ? null : keyCounters.snapshot();
+    }
+
+    /**
+     * 按累计等待时间排序，竞争最激烈的n个key
+     *
+     * @param n 数量
+     * @return 统计列表
+     */
+    public List<LockStats> topContended(int n) {
+        List<LockStats> all = new ArrayList<>(counters.size());
+        for (Counters keyCounters : counters.values()) {
+            all.add(keyCounters.snapshot());
+        }
+        all.sort(Comparator.comparingLong(LockStats::getWaitNanos).reversed());
+        return all.size() > n ? new ArrayList<>(all.subList(0, n)) : all;
+    }
+
+    /**
+     * 单独统计的key数量
+     *
+     * @return key数量
+     */
+    public int getTrackedKeys() {
+        return counters.size();
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        counters.clear();
+        total.reset();
+    }
+
+    private static class Counters {
+        private final String key;
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder acquired = new LongAdder();
+        private final LongAdder roundTrips = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder holdNanos = new LongAdder();
+        private final LongAdder leaseExpired = new LongAdder();
+
+        Counters(String key) {
+            this.key = key;
+        }
+
+        void recordAcquire(boolean success, long wait, int trips) {
+            attempts.increment();
+            if (success) {
+                acquired.increment();
+            }
+            roundTrips.add(trips);
+            waitNanos.add(wait);
+        }
+
+        LockStats snapshot() {
+            return new LockStats(key, attempts.sum(), acquired.sum(), roundTrips.sum(),
+                    waitNanos.sum(), holdNanos.sum(), leaseExpired.sum());
+        }
+
+        void reset() {
+            attempts.reset();
+            acquired.reset();
+            roundTrips.reset();
+            waitNanos.reset();
+            holdNanos.reset();
+            leaseExpired.reset();
+        }
+    }
+
+    /**
+     * 某个key的统计快照
+     */
+    public static class LockStats {
+        private final String key;
+        private final long attempts;
+        private final long acquired;
+        private final long roundTrips;
+        private final long waitNanos;
+        private final long holdNanos;
+        private final long leaseExpired;
+
+        LockStats(String key, long attempts, long acquired, long roundTrips,
+                  long waitNanos, long holdNanos, long leaseExpired) {
+            this.key = key;
+            this.attempts = attempts;
+            this.acquired = acquired;
+            this.roundTrips = roundTrips;
+            this.waitNanos = waitNanos;
+            this.holdNanos = holdNanos;
+            this.leaseExpired = leaseExpired;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getAttempts() {
+            return attempts;
+        }
+
+        public long getAcquired() {
+            return acquired;
+        }
+
+        public long getFailed() {
+            return attempts - acquired;
+        }
+
+        public long getRoundTrips() {
+            return roundTrips;
+        }
+
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        public long getHoldNanos() {
+            return holdNanos;
+        }
+
+        public long getLeaseExpired() {
+            return leaseExpired;
+        }
+
+        /**
+         * 平均每次加锁访问redis的次数
+         *
+         * @return round trips per acquisition
+         */
+        public double getRoundTripsPerAttempt() {
+            return attempts == 0 ? 0 : (double) roundTrips / attempts;
+        }
+
+        @Override
+        public String toString() {
+            return "LockStats{" +
+                    "key='" + key + '\'' +
+                    ", attempts=" + attempts +
+                    ", acquired=" + acquired +
+                    ", roundTrips=" + roundTrips +
+                    ", waitMillis=" + TimeUnit.NANOSECONDS.toMillis(waitNanos) +
+                    ", holdMillis=" + TimeUnit.NANOSECONDS.toMillis(holdNanos) +
+                    ", leaseExpired=" + leaseExpired +
+                    '}';
+        }
+    }
+}
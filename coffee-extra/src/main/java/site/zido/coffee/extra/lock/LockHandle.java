@@ -0,0 +1,57 @@
+package site.zido.coffee.extra.lock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次异步加锁的结果，持有者通过{@link #unlockAsync()}释放
+ *
+ * @author zido
+ * @see AsyncDistributedLockTemplate
+ */
+public final class LockHandle implements AutoCloseable {
+    private final AsyncDistributedLockTemplate template;
+    private final String key;
+    private final byte[] keyBytes;
+    private final byte[] owner;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    LockHandle(AsyncDistributedLockTemplate template, String key, byte[] keyBytes, byte[] owner) {
+        this.template = template;
+        this.key = key;
+        this.keyBytes = keyBytes;
+        this.owner = owner;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return 是否已经调用过释放
+     */
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    /**
+     * 异步释放锁，重复调用只会释放一次
+     *
+     * @return 释放时锁是否仍然属于自己，租期已过时为false
+     */
+    public CompletionStage<Boolean> unlockAsync() {
+        if (!released.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return template.release(keyBytes, owner);
+    }
+
+    /**
+     * 同步释放锁，便于在try-with-resources中使用
+     */
+    @Override
+    public void close() {
+        unlockAsync().toCompletableFuture().join();
+    }
+}
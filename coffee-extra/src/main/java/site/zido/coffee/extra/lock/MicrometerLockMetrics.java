@@ -0,0 +1,177 @@
+package site.zido.coffee.extra.lock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过micrometer输出的锁指标，同时保留{@link LockContentionMetrics}的按key统计
+ * <p>
+ * 输出的指标:
+ * <ul>
+ * <li>{@code coffee.lock.acquire}: 加锁耗时，result标签区分成功与失败</li>
+ * <li>{@code coffee.lock.hold}: 持有时间</li>
+ * <li>{@code coffee.lock.round.trips}: 每次加锁访问redis的次数</li>
+ * <li>{@code coffee.lock.lease.expired}: 解锁时租期已过的次数</li>
+ * </ul>
+ * 默认不带key标签，避免key数量过多导致指标膨胀，可以通过{@link #setTagKeys(boolean)}开启，
+ * 开启后单独统计的key额外输出带key标签的{@code coffee.lock.key.*}指标，上面的汇总指标仍然包含所有key。
+ * 汇总指标与按key指标使用不同的名称，同一名称下的标签集合保持一致
+ *
+ * @author zido
+ */
+public class MicrometerLockMetrics extends LockContentionMetrics {
+    private static final String PREFIX = "coffee.lock";
+    private static final String KEY_PREFIX = PREFIX + ".key";
+    private final MeterRegistry registry;
+    private final Timer acquired;
+    private final Timer failed;
+    private final Timer hold;
+    private final DistributionSummary roundTrips;
+    private final Counter leaseExpired;
+    private final ConcurrentHashMap<String, KeyMeters> keyMeters = new ConcurrentHashMap<>();
+    private boolean tagKeys = false;
+
+    public MicrometerLockMetrics(MeterRegistry registry) {
+        Assert.notNull(registry, "meter registry can't be null");
+        this.registry = registry;
+        this.acquired = acquireTimer(PREFIX, Tags.of("result", "acquired"));
+        this.failed = acquireTimer(PREFIX, Tags.of("result", "failed"));
+        this.hold = holdTimer(PREFIX, Tags.empty());
+        this.roundTrips = roundTripsSummary(PREFIX, Tags.empty());
+        this.leaseExpired = leaseExpiredCounter(PREFIX, Tags.empty());
+        Gauge.builder(PREFIX + ".keys", this, LockContentionMetrics::getTrackedKeys)
+                .description("number of lock keys tracked for contention")
+                .register(registry);
+    }
+
+    public boolean isTagKeys() {
+        return tagKeys;
+    }
+
+    /**
+     * 是否为每个key单独输出指标，key数量受{@link #setMaximumKeys(int)}限制
+     *
+     * @param tagKeys true/false
+     */
+    public void setTagKeys(boolean tagKeys) {
+        this.tagKeys = tagKeys;
+    }
+
+    @Override
+    public void recordAcquire(String key, boolean success, long waitNanos, int trips) {
+        super.recordAcquire(key, success, waitNanos, trips);
+        (success ? acquired : failed).record(waitNanos, TimeUnit.NANOSECONDS);
+        roundTrips.record(trips);
+        KeyMeters meters = metersOf(key);
+        if (meters != null) {
+            (success ? meters.acquired : meters.failed).record(waitNanos, TimeUnit.NANOSECONDS);
+            meters.roundTrips.record(trips);
+        }
+    }
+
+    @Override
+    public void recordRelease(String key, long holdNanos) {
+        super.recordRelease(key, holdNanos);
+        hold.record(holdNanos, TimeUnit.NANOSECONDS);
+        KeyMeters meters = metersOf(key);
+        if (meters != null) {
+            meters.hold.record(holdNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void recordLeaseExpired(String key) {
+        super.recordLeaseExpired(key);
+        leaseExpired.increment();
+        KeyMeters meters = metersOf(key);
+        if (meters != null) {
+            meters.leaseExpired.increment();
+        }
+    }
+
+    /**
+     * 单独统计的key第一次使用时注册{@code coffee.lock.key.*}指标，之后直接使用缓存
+     */
+    private KeyMeters metersOf(String key) {
+        if (!tagKeys) {
+            return null;
+        }
+        KeyMeters meters = keyMeters.get(key);
+        if (meters == null && isTracked(key)) {
+            meters = keyMeters.computeIfAbsent(key, KeyMeters::new);
+        }
+        return meters;
+    }
+
+    /**
+     * 被淘汰的key同时移除带key标签的指标
+     */
+    @Override
+    protected void onEvicted(String key) {
+        KeyMeters meters = keyMeters.remove(key);
+        if (meters != null) {
+            registry.remove(meters.acquired);
+            registry.remove(meters.failed);
+            registry.remove(meters.hold);
+            registry.remove(meters.roundTrips);
+            registry.remove(meters.leaseExpired);
+        }
+    }
+
+    private Timer acquireTimer(String prefix, Tags tags) {
+        return Timer.builder(prefix + ".acquire")
+                .description("time spent acquiring distributed locks")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Timer holdTimer(String prefix, Tags tags) {
+        return Timer.builder(prefix + ".hold")
+                .description("time distributed locks are held")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private DistributionSummary roundTripsSummary(String prefix, Tags tags) {
+        return DistributionSummary.builder(prefix + ".round.trips")
+                .description("redis round trips per lock acquisition")
+                .tags(tags)
+                .register(registry);
+    }
+
+    private Counter leaseExpiredCounter(String prefix, Tags tags) {
+        return Counter.builder(prefix + ".lease.expired")
+                .description("unlocks that found the lease already expired")
+                .tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * 带key标签的指标，使用单独的名称，不与汇总指标混在同一个名称下
+     */
+    private final class KeyMeters {
+        private final Timer acquired;
+        private final Timer failed;
+        private final Timer hold;
+        private final DistributionSummary roundTrips;
+        private final Counter leaseExpired;
+
+        KeyMeters(String key) {
+            this.acquired = acquireTimer(KEY_PREFIX, Tags.of("result", "acquired", "key", key));
+            this.failed = acquireTimer(KEY_PREFIX, Tags.of("result", "failed", "key", key));
+            this.hold = holdTimer(KEY_PREFIX, Tags.of("key", key));
+            this.roundTrips = roundTripsSummary(KEY_PREFIX, Tags.of("key", key));
+            this.leaseExpired = leaseExpiredCounter(KEY_PREFIX, Tags.of("key", key));
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+/**
+ * 支持在pipeline中释放的redis锁，jvm退出扫尾时同一个连接工厂下的锁只需要一次网络往返
+ *
+ * @author zido
+ */
+interface PipelinedRelease {
+    /**
+     * @return 锁使用的连接工厂，用于对锁进行分组
+     */
+    RedisConnectionFactory getConnectionFactory();
+
+    /**
+     * 在已经开启pipeline的连接上发送释放命令，结果会被忽略
+     *
+     * @param connection  开启了pipeline的连接
+     * @param acquisition 要释放的加锁
+     */
+    void releaseInPipeline(RedisConnection connection, AbstractDistributedLock.Acquisition acquisition);
+}
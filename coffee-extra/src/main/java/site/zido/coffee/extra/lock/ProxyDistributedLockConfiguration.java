@@ -0,0 +1,36 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+
+/**
+ * @author zido
+ */
+@Configuration
+public class ProxyDistributedLockConfiguration {
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public BeanFactoryDistributedLockOperationSourceAdvisor distributedLockAdvisor(DistributedLockInterceptor distributedLockInterceptor) {
+        BeanFactoryDistributedLockOperationSourceAdvisor advisor = new BeanFactoryDistributedLockOperationSourceAdvisor();
+        advisor.setAdvice(distributedLockInterceptor);
+        advisor.setLockOperationSource(distributedLockOperationSource());
+        return advisor;
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public DistributedLockOperationSource distributedLockOperationSource() {
+        return new AnnotationDistributedLockOperationSource();
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public DistributedLockInterceptor distributedLockInterceptor(DistributedLockFactory lockFactory) {
+        DistributedLockInterceptor interceptor = new DistributedLockInterceptor();
+        interceptor.setLockOperationSource(distributedLockOperationSource());
+        interceptor.setLockFactory(lockFactory);
+        return interceptor;
+    }
+}
@@ -0,0 +1,262 @@
+package site.zido.coffee.extra.lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisConnectionUtils;
+import org.springframework.util.Assert;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多数派分布式锁(redlock)，在多个相互独立的redis节点上同时加锁，半数以上节点成功并且仍在有效期内才算加锁成功，
+ * 单个主节点故障切换不会导致锁被两个持有者同时拿到
+ * <p>
+ * 有效期为租期减去加锁耗时与时钟漂移，加锁失败时会在所有节点上释放，避免留下部分加锁的key。
+ * 每次加锁使用新的随机值，失败的尝试只会释放自己加上的key，解锁也只释放本次加锁的值，
+ * 不会影响同一个实例上其他线程的加锁。
+ * 各节点的请求通过{@link #setExecutor(ExecutorService)}并行发送，单个节点的响应时间受{@link #setNodeTimeout(long, TimeUnit)}限制
+ *
+ * @author zido
+ */
+public class QuorumRedisLock extends AbstractDistributedLock implements InitializingBean {
+    private static final long serialVersionUID = -3308927407626184227L;
+    private static final Logger LOGGER = LoggerFactory.getLogger(QuorumRedisLock.class);
+    private static final Charset USE_CHARSET = StandardCharsets.UTF_8;
+    private static final Long LOCK_SUCCESS = 1L;
+    /**
+     * 时钟漂移系数
+     */
+    private static final double CLOCK_DRIFT_FACTOR = 0.01;
+    private static final long DEFAULT_NODE_TIMEOUT = 50;
+    private static final RedisLockScript ADD_SCRIPT = new RedisLockScript(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return 1 else return 0 end");
+    private static final RedisLockScript DEL_SCRIPT = new RedisLockScript(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end");
+    private static volatile ExecutorService defaultExecutor;
+
+    private final String key;
+    private final long lease;
+    private final transient List<RedisConnectionFactory> connectionFactories;
+    private long nodeTimeout = DEFAULT_NODE_TIMEOUT;
+    private transient ExecutorService executor;
+    private transient byte[] keyBytes;
+    private transient byte[] leaseBytes;
+    private transient volatile boolean initialized = false;
+
+    public QuorumRedisLock(String key,
+                           List<RedisConnectionFactory> connectionFactories,
+                           long lease,
+                           TimeUnit unit) {
+        this(key, connectionFactories, lease, unit, true);
+    }
+
+    /**
+     * @param key                 key
+     * @param connectionFactories 相互独立的redis节点，建议为奇数个
+     * @param lease               租期
+     * @param unit                时间单位
+     * @param isSpringBean        是否是spring的bean
+     */
+    public QuorumRedisLock(String key,
+                           List<RedisConnectionFactory> connectionFactories,
+                           long lease,
+                           TimeUnit unit,
+                           boolean isSpringBean) {
+        super(isSpringBean);
+        this.key = key;
+        this.connectionFactories = connectionFactories == null ? null : new ArrayList<>(connectionFactories);
+        this.lease = unit.toMillis(lease);
+    }
+
+    public long getNodeTimeout() {
+        return nodeTimeout;
+    }
+
+    /**
+     * 设置等待单个节点响应的最长时间，应远小于租期
+     *
+     * @param nodeTimeout 超时时间
+     * @param unit        时间单位
+     */
+    public void setNodeTimeout(long nodeTimeout, TimeUnit unit) {
+        Assert.isTrue(nodeTimeout > 0, "nodeTimeout must be greater than 0");
+        this.nodeTimeout = unit.toMillis(nodeTimeout);
+    }
+
+    /**
+     * 设置并行访问各节点的线程池，默认使用所有锁共享的守护线程池
+     *
+     * @param executor 线程池
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 当前线程持有的锁的剩余有效时间，持有者应在有效期内完成操作
+     *
+     * @return 剩余毫秒数，当前线程未持有时返回0
+     */
+    public long getRemainingValidity() {
+        Acquisition acquisition = currentAcquisition();
+        if (!(acquisition instanceof QuorumAcquisition)) {
+            return 0;
+        }
+        long validUntil = ((QuorumAcquisition) acquisition).validUntil;
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(validUntil - System.nanoTime()));
+    }
+
+    public int getQuorum() {
+        return connectionFactories.size() / 2 + 1;
+    }
+
+    @Override
+    protected boolean doTryLock(Acquisition acquisition) {
+        Assert.isTrue(initialized, "lock not initialized; call afterPropertiesSet() before using it");
+        final long start = System.nanoTime();
+        byte[] owner = acquisition.getOwner();
+        int acquired = countSuccess(submitAll(ADD_SCRIPT, owner, leaseBytes), start);
+        long drift = (long) (lease * CLOCK_DRIFT_FACTOR) + 2;
+        long validity = TimeUnit.MILLISECONDS.toNanos(lease - drift) - (System.nanoTime() - start);
+        if (acquired >= getQuorum() && validity > 0) {
+            ((QuorumAcquisition) acquisition).validUntil = start + TimeUnit.MILLISECONDS.toNanos(lease - drift);
+            return true;
+        }
+        //未达到多数派或者已经超过有效期，释放已经加上的部分
+        releaseNodes(owner);
+        return false;
+    }
+
+    @Override
+    protected Acquisition newAcquisition() {
+        return new QuorumAcquisition();
+    }
+
+    @Override
+    protected void doUnlock(Acquisition acquisition) {
+        Assert.isTrue(initialized, "lock not initialized; call afterPropertiesSet() before using it");
+        int released = releaseNodes(acquisition.getOwner());
+        if (released < getQuorum()) {
+            recordLeaseExpired();
+        }
+    }
+
+    private int releaseNodes(byte[] owner) {
+        return countSuccess(submitAll(DEL_SCRIPT, owner, null), System.nanoTime());
+    }
+
+    private List<Future<Long>> submitAll(RedisLockScript script, byte[] owner, byte[] extraArg) {
+        ExecutorService executor = getExecutor();
+        List<Future<Long>> futures = new ArrayList<>(connectionFactories.size());
+        for (RedisConnectionFactory connectionFactory : connectionFactories) {
+            futures.add(executor.submit(() -> {
+                RedisConnection connection = RedisConnectionUtils.getConnection(connectionFactory);
+                try {
+                    return extraArg == null
+                            ? script.<Long>execute(connection, ReturnType.INTEGER, 1, keyBytes, owner)
+                            : script.<Long>execute(connection, ReturnType.INTEGER, 1, keyBytes, owner, extraArg);
+                } finally {
+                    RedisConnectionUtils.releaseConnection(connection, connectionFactory, false);
+                }
+            }));
+        }
+        return futures;
+    }
+
+    /**
+     * 所有节点共用同一个截止时间，慢节点与故障节点按失败处理
+     */
+    private int countSuccess(List<Future<Long>> futures, long start) {
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(nodeTimeout);
+        int success = 0;
+        for (Future<Long> future : futures) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                if (LOCK_SUCCESS.equals(future.get(remaining, TimeUnit.NANOSECONDS))) {
+                    success++;
+                }
+            } catch (TimeoutException e) {
+                future.cancel(false);
+            } catch (ExecutionException e) {
+                LOGGER.debug("redis node failed for lock:{}", key, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+            }
+        }
+        return success;
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor != null) {
+            return executor;
+        }
+        ExecutorService shared = defaultExecutor;
+        if (shared == null) {
+            synchronized (QuorumRedisLock.class) {
+                shared = defaultExecutor;
+                if (shared == null) {
+                    AtomicInteger index = new AtomicInteger();
+                    shared = Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable, "coffee-quorum-lock-" + index.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    defaultExecutor = shared;
+                }
+            }
+        }
+        return shared;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.keyBytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        QuorumRedisLock that = (QuorumRedisLock) o;
+        return Arrays.equals(keyBytes, that.keyBytes);
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.hasLength(this.key, "key can't be blank");
+        Assert.notEmpty(connectionFactories, "redis connection factories can't be empty");
+        Assert.isTrue(lease > 0, "lease must be greater than 0");
+        this.keyBytes = key.getBytes(USE_CHARSET);
+        this.leaseBytes = String.valueOf(lease).getBytes(USE_CHARSET);
+        initialized = true;
+    }
+
+    private static final class QuorumAcquisition extends Acquisition {
+        private volatile long validUntil;
+    }
+}
@@ -0,0 +1,178 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁释放通知中心
+ * <p>
+ * 所有锁共用一个redis频道，锁释放的脚本向频道发布{@code key}或{@code key + "\n" + 等待者id}，
+ * 本地只唤醒对应key(与id)的等待者，等待者被唤醒后重新竞争，避免轮询redis
+ * <p>
+ * redis的发布订阅不保证送达，等待者仍然需要设置等待超时作为兜底
+ *
+ * @author zido
+ */
+public class RedisLockNotifier implements MessageListener, InitializingBean, DisposableBean {
+    public static final String DEFAULT_CHANNEL = "coffee:lock:channel";
+    private static final char SEPARATOR = '\n';
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final RedisConnectionFactory connectionFactory;
+    private final String channel;
+    private RedisMessageListenerContainer container;
+
+    public RedisLockNotifier(RedisConnectionFactory connectionFactory) {
+        this(connectionFactory, DEFAULT_CHANNEL);
+    }
+
+    public RedisLockNotifier(RedisConnectionFactory connectionFactory, String channel) {
+        Assert.notNull(connectionFactory, "redis connection factory can't be null");
+        Assert.hasLength(channel, "channel can't be blank");
+        this.connectionFactory = connectionFactory;
+        this.channel = channel;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * 订阅某个key的释放通知
+     *
+     * @param key      锁的key
+     * @param waiterId 等待者id，通知中指定了id时只唤醒该等待者
+     * @param listener 收到通知时的回调，在订阅线程中执行，不能阻塞
+     * @return subscription
+     */
+    public Subscription subscribe(String key, String waiterId, Runnable listener) {
+        Subscription subscription = new Subscription(key, waiterId, listener);
+        subscriptions.compute(key, (k, set) -> {
+            if (set == null) {
+                set = ConcurrentHashMap.newKeySet();
+            }
+            set.add(subscription);
+            return set;
+        });
+        return subscription;
+    }
+
+    /**
+     * 订阅某个key的释放通知，并通过{@link Subscription#await(long, TimeUnit)}阻塞等待
+     *
+     * @param key      锁的key
+     * @param waiterId 等待者id
+     * @return subscription
+     */
+    public Subscription subscribe(String key, String waiterId) {
+        return subscribe(key, waiterId, null);
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        subscriptions.computeIfPresent(subscription.key, (k, set) -> {
+            set.remove(subscription);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(SEPARATOR);
+        String key = index < 0 ? body : body.substring(0, index);
+        String waiterId = index < 0 ? null : body.substring(index + 1);
+        Set<Subscription> set = subscriptions.get(key);
+        if (set == null) {
+            return;
+        }
+        for (Subscription subscription : set) {
+            if (waiterId == null || waiterId.isEmpty() || waiterId.equals(subscription.waiterId)) {
+                subscription.signal();
+            }
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (container != null) {
+            return;
+        }
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        //订阅独占一个守护线程，回调只是唤醒等待者，直接在订阅线程中执行
+        SimpleAsyncTaskExecutor subscriptionExecutor = new SimpleAsyncTaskExecutor("coffee-lock-notifier-");
+        subscriptionExecutor.setDaemon(true);
+        container.setSubscriptionExecutor(subscriptionExecutor);
+        container.setTaskExecutor(new SyncTaskExecutor());
+        container.addMessageListener(this, new ChannelTopic(channel));
+        container.afterPropertiesSet();
+        container.start();
+        this.container = container;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (container != null) {
+            container.destroy();
+            container = null;
+        }
+    }
+
+    /**
+     * 一次订阅，使用完成后需要关闭
+     */
+    public class Subscription implements AutoCloseable {
+        private final String key;
+        private final String waiterId;
+        private final Runnable listener;
+        private final Semaphore signal = new Semaphore(0);
+
+        Subscription(String key, String waiterId, Runnable listener) {
+            this.key = key;
+            this.waiterId = waiterId;
+            this.listener = listener;
+        }
+
+        void signal() {
+            if (listener != null) {
+                listener.run();
+            } else {
+                signal.release();
+            }
+        }
+
+        /**
+         * 等待通知
+         *
+         * @param timeout 超时时间
+         * @param unit    时间单位
+         * @return 是否收到了通知
+         * @throws InterruptedException 等待时被中断
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            boolean signaled = signal.tryAcquire(timeout, unit);
+            //合并等待期间的多次通知
+            signal.drainPermits();
+            return signaled;
+        }
+
+        @Override
+        public void close() {
+            unsubscribe(this);
+        }
+    }
+}
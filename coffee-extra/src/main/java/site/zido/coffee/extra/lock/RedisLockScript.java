@@ -0,0 +1,96 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.ClassUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 锁使用的lua脚本
+ * <p>
+ * 优先使用EVALSHA执行，只传输脚本的sha1，redis中不存在该脚本(NOSCRIPT)时通过SCRIPT LOAD加载后重试
+ * <p>
+ * NOSCRIPT通过驱动的异常类型(jedis/lettuce)识别，其他驱动退化为匹配错误信息的前缀
+ *
+ * @author zido
+ */
+class RedisLockScript {
+    private static final String NO_SCRIPT = "NOSCRIPT";
+    private static final Class<?>[] NO_SCRIPT_EXCEPTIONS = resolveNoScriptExceptions(
+            "redis.clients.jedis.exceptions.JedisNoScriptException",
+            "io.lettuce.core.RedisNoScriptException");
+    private final String script;
+    private final String sha1;
+    private final byte[] scriptBytes;
+
+    RedisLockScript(String script) {
+        this.script = script;
+        this.sha1 = RedisScript.of(script).getSha1();
+        this.scriptBytes = script.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T execute(RedisConnection connection, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        try {
+            return (T) connection.evalSha(sha1, returnType, numKeys, keysAndArgs);
+        } catch (RuntimeException e) {
+            if (!isNoScriptError(e)) {
+                throw e;
+            }
+            connection.scriptLoad(scriptBytes);
+            return (T) connection.evalSha(sha1, returnType, numKeys, keysAndArgs);
+        }
+    }
+
+    /**
+     * 直接发送脚本内容执行，用于pipeline等无法在NOSCRIPT时重试的场景
+     */
+    void eval(RedisConnection connection, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        connection.eval(scriptBytes, returnType, numKeys, keysAndArgs);
+    }
+
+    String getSha1() {
+        return sha1;
+    }
+
+    String getScript() {
+        return script;
+    }
+
+    static boolean isNoScriptError(Throwable e) {
+        Throwable current = e;
+        while (current != null) {
+            for (Class<?> type : NO_SCRIPT_EXCEPTIONS) {
+                if (type.isInstance(current)) {
+                    return true;
+                }
+            }
+            current = current.getCause();
+        }
+        //驱动没有专门的异常类型时，根据redis返回的错误前缀判断
+        current = e;
+        while (current != null) {
+            String message = current.getMessage();
+            if (message != null && message.startsWith(NO_SCRIPT)) {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    private static Class<?>[] resolveNoScriptExceptions(String... classNames) {
+        ClassLoader classLoader = RedisLockScript.class.getClassLoader();
+        List<Class<?>> types = new ArrayList<>(classNames.length);
+        for (String className : classNames) {
+            if (ClassUtils.isPresent(className, classLoader)) {
+                types.add(ClassUtils.resolveClassName(className, classLoader));
+            }
+        }
+        return types.toArray(new Class<?>[0]);
+    }
+}
@@ -0,0 +1,71 @@
+package site.zido.coffee.extra.lock;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * 分布式锁注解解析器,负责解析{@link DistributedLock}，以提供注解式分布式锁支持
+ *
+ * @author zido
+ * @see DistributedLock
+ */
+public class SpringDistributedLockAnnotationParser implements DistributedLockAnnotationParser {
+
+    /**
+     * 解析类上注解
+     *
+     * @param type target class type
+     * @return operations
+     */
+    @Override
+    public Collection<DistributedLockOperation> parseLockAnnotations(Class<?> type) {
+        return parse(type);
+    }
+
+    /**
+     * 解析方法上的注解
+     *
+     * @param method target method
+     * @return operations
+     */
+    @Override
+    public Collection<DistributedLockOperation> parseLockAnnotations(Method method) {
+        return parse(method);
+    }
+
+    protected Collection<DistributedLockOperation> parse(AnnotatedElement ae) {
+        Collection<DistributedLock> locks = AnnotatedElementUtils.getAllMergedAnnotations(ae, DistributedLock.class);
+        if (locks.isEmpty()) {
+            return null;
+        }
+        Collection<DistributedLockOperation> ops = new ArrayList<>(locks.size());
+        for (DistributedLock lock : locks) {
+            ops.add(parseLockAnnotation(ae, lock));
+        }
+        return ops;
+    }
+
+    private DistributedLockOperation parseLockAnnotation(AnnotatedElement ae, DistributedLock lock) {
+        DistributedLockOperation.Builder builder = new DistributedLockOperation.Builder();
+        builder.setName(ae.toString());
+        builder.setKey(lock.key());
+        builder.setLease(lock.lease());
+        builder.setWaitTime(lock.waitTime());
+        builder.setUnit(lock.unit());
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SpringDistributedLockAnnotationParser;
+    }
+
+    @Override
+    public int hashCode() {
+        return SpringDistributedLockAnnotationParser.class.hashCode();
+    }
+}
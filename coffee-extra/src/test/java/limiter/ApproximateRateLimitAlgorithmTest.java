@@ -0,0 +1,155 @@
+package limiter;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.limiter.ApproximateRateLimitAlgorithm;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ApproximateRateLimitAlgorithmTest {
+    /**
+     * 足够长的窗口，避免测试过程中跨越窗口
+     */
+    private static final long PERIOD = TimeUnit.DAYS.toMillis(10);
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory factory;
+    private static StringRedisTemplate template;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        redisServer = new RedisServer(6390);
+        redisServer.start();
+        factory = new JedisConnectionFactory(new JedisPoolConfig());
+        factory.getStandaloneConfiguration().setPort(6390);
+        factory.afterPropertiesSet();
+        template = new StringRedisTemplate(factory);
+    }
+
+    @AfterClass
+    public static void destroy() {
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    private static int acquire(ApproximateRateLimitAlgorithm algorithm, String key, long rate, int times) {
+        int admitted = 0;
+        for (int i = 0; i < times; i++) {
+            if (algorithm.tryAcquire(key, rate, PERIOD, 0) == 0) {
+                admitted++;
+            }
+        }
+        return admitted;
+    }
+
+    private static long storedTotal(String prefix, String key) {
+        String storageKey = prefix + "approximate:" + key + ":" + System.currentTimeMillis() / PERIOD;
+        return template.<String, String>opsForHash().values(storageKey).stream().mapToLong(Long::parseLong).sum();
+    }
+
+    @Test
+    public void testSingleInstance() {
+        try (ApproximateRateLimitAlgorithm algorithm = new ApproximateRateLimitAlgorithm("single:", template)) {
+            int admitted = 0;
+            for (int i = 0; i < 30; i++) {
+                admitted += acquire(algorithm, "user", 100, 20);
+                algorithm.sync();
+            }
+            Assert.assertEquals(100, admitted);
+            Assert.assertEquals(100, storedTotal("single:", "user"));
+        }
+    }
+
+    @Test
+    public void testShareExhausted() throws InterruptedException {
+        try (ApproximateRateLimitAlgorithm algorithm = new ApproximateRateLimitAlgorithm("share:", template)) {
+            //定时同步不在测试期间触发，只由份额用完时的主动同步续期
+            algorithm.setSyncIntervalMillis(1000);
+            //两次同步之间最多放行rate * maxErrorRatio，第一次被拒绝时主动同步在后台进行，之后的判定与其存在竞争
+            int admitted = 0;
+            long wait;
+            while ((wait = algorithm.tryAcquire("user", 100, PERIOD, 0)) == 0) {
+                admitted++;
+            }
+            Assert.assertEquals(10, admitted);
+            Assert.assertTrue(wait > 0 && wait <= 1000);
+            //份额用完时触发同步，之后继续放行
+            Thread.sleep(300);
+            Assert.assertEquals(10, acquire(algorithm, "user", 100, 10));
+        }
+    }
+
+    @Test
+    public void testMultipleInstances() {
+        long rate = 1000;
+        try (ApproximateRateLimitAlgorithm a = new ApproximateRateLimitAlgorithm("multi:", template);
+             ApproximateRateLimitAlgorithm b = new ApproximateRateLimitAlgorithm("multi:", template)) {
+            a.setInstanceId("a");
+            b.setInstanceId("b");
+            int admitted = 0;
+            for (int i = 0; i < 40; i++) {
+                admitted += acquire(a, "user", rate, 50);
+                admitted += acquire(b, "user", rate, 50);
+                a.sync();
+                b.sync();
+            }
+            a.sync();
+            //误差不超过每个实例一份rate * maxErrorRatio
+            Assert.assertTrue(admitted >= rate && admitted <= rate + 2 * rate * a.getMaxErrorRatio());
+            //增量没有丢失
+            Assert.assertEquals(admitted, storedTotal("multi:", "user"));
+        }
+    }
+
+    @Test
+    public void testLostReply() {
+        //脚本执行成功但没有收到回复，重新提交时不重复计数
+        AtomicBoolean loseReply = new AtomicBoolean();
+        StringRedisTemplate lossy = new StringRedisTemplate(factory) {
+            @Override
+            public <T> T execute(RedisScript<T> script, RedisSerializer<?> argsSerializer,
+                                 RedisSerializer<T> resultSerializer, List<String> keys, Object... args) {
+                T result = super.execute(script, argsSerializer, resultSerializer, keys, args);
+                if (loseReply.getAndSet(false)) {
+                    throw new QueryTimeoutException("reply lost");
+                }
+                return result;
+            }
+        };
+        try (ApproximateRateLimitAlgorithm algorithm = new ApproximateRateLimitAlgorithm("lost:", lossy)) {
+            algorithm.setSyncIntervalMillis(TimeUnit.HOURS.toMillis(1));
+            Assert.assertEquals(10, acquire(algorithm, "user", 100, 10));
+            loseReply.set(true);
+            try {
+                algorithm.sync();
+                Assert.fail();
+            } catch (QueryTimeoutException ignore) {
+            }
+            Assert.assertEquals(10, storedTotal("lost:", "user"));
+            algorithm.sync();
+            Assert.assertEquals(10, storedTotal("lost:", "user"));
+            Assert.assertEquals(10, acquire(algorithm, "user", 100, 10));
+            algorithm.sync();
+            Assert.assertEquals(20, storedTotal("lost:", "user"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() {
+        ApproximateRateLimitAlgorithm algorithm = new ApproximateRateLimitAlgorithm("closed:", template);
+        Assert.assertEquals(0, algorithm.tryAcquire("user", 100, PERIOD, 0));
+        algorithm.close();
+        algorithm.tryAcquire("user", 100, PERIOD, 0);
+    }
+}
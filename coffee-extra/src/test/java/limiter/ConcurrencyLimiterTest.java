@@ -0,0 +1,196 @@
+package limiter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import site.zido.coffee.extra.limiter.AdaptiveConcurrencyLimiter;
+import site.zido.coffee.extra.limiter.ConcurrencyLimiter;
+import site.zido.coffee.extra.limiter.ConcurrencyLimiterException;
+import site.zido.coffee.extra.limiter.ConcurrencyLimiterInterceptor;
+import site.zido.coffee.extra.limiter.EnableLimiter;
+import site.zido.coffee.extra.limiter.FrequencyLimiter;
+import site.zido.coffee.extra.limiter.LimiterMetrics;
+import site.zido.coffee.extra.limiter.LocalFrequencyLimiter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrencyLimiterTest {
+
+    public static class Service {
+        private static final CountDownLatch ENTERED = new CountDownLatch(1);
+        private static final CountDownLatch RELEASE = new CountDownLatch(1);
+
+        @ConcurrencyLimiter(name = "slow", initialLimit = 1, maxLimit = 1)
+        public void slow() throws InterruptedException {
+            ENTERED.countDown();
+            RELEASE.await(5, TimeUnit.SECONDS);
+        }
+
+        public void unlimited() {
+        }
+    }
+
+    @ConcurrencyLimiter
+    public static class ClassLevel {
+        public void call(String id) {
+        }
+
+        public void call(long id) {
+        }
+
+        @Override
+        public String toString() {
+            return "classLevel";
+        }
+    }
+
+    @Configuration
+    @EnableLimiter
+    static class LimiterConfiguration {
+        @Bean
+        public FrequencyLimiter limiter() {
+            return new LocalFrequencyLimiter();
+        }
+
+        @Bean
+        public Service service() {
+            return new Service();
+        }
+    }
+
+    private static AdaptiveConcurrencyLimiter newLimiter(int initialLimit, int minLimit, int maxLimit) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+        limiter.setWindow(0, TimeUnit.MILLISECONDS);
+        limiter.setMinWindowSamples(1);
+        return limiter;
+    }
+
+    /**
+     * 以当前限制的并发执行一轮，每个请求耗时rtt
+     */
+    private static void round(AdaptiveConcurrencyLimiter limiter, long rtt) {
+        int limit = limiter.getLimit();
+        for (int i = 0; i < limit; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+        }
+        for (int i = 0; i < limit; i++) {
+            limiter.release(rtt);
+        }
+    }
+
+    @Test
+    public void testRejectFast() {
+        AdaptiveConcurrencyLimiter limiter = newLimiter(2, 1, 10);
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertFalse(limiter.tryAcquire());
+        Assert.assertEquals(1, limiter.getRejected());
+        limiter.release();
+        Assert.assertEquals(1, limiter.getInFlight());
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testAdjust() {
+        AdaptiveConcurrencyLimiter limiter = newLimiter(10, 2, 100);
+        long rtt = TimeUnit.MILLISECONDS.toNanos(1);
+        //延迟不变说明没有排队，逐步放开
+        for (int i = 0; i < 3; i++) {
+            round(limiter, rtt);
+        }
+        int grown = limiter.getLimit();
+        Assert.assertTrue(grown > 10);
+        //延迟上升说明开始排队，逐步收紧
+        round(limiter, rtt * 10);
+        Assert.assertTrue(limiter.getLimit() < grown);
+        for (int i = 0; i < 5; i++) {
+            round(limiter, rtt * 10);
+        }
+        //稳定在排队数量介于alpha与beta之间的位置
+        int settled = limiter.getLimit();
+        Assert.assertTrue(settled >= 4 && settled <= 6);
+        round(limiter, rtt * 10);
+        Assert.assertEquals(settled, limiter.getLimit());
+    }
+
+    @Test
+    public void testIdleDoesNotGrow() {
+        AdaptiveConcurrencyLimiter limiter = newLimiter(10, 1, 100);
+        //并发远低于限制时不增加
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        Assert.assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void testAnnotation() throws InterruptedException {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(LimiterConfiguration.class)) {
+            Service service = context.getBean(Service.class);
+            Thread thread = new Thread(() -> {
+                try {
+                    service.slow();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            Assert.assertTrue(Service.ENTERED.await(5, TimeUnit.SECONDS));
+            try {
+                service.slow();
+                Assert.fail();
+            } catch (ConcurrencyLimiterException e) {
+                Assert.assertEquals("slow", e.getKey());
+                Assert.assertEquals(1, e.getLimit());
+            }
+            service.unlimited();
+            Service.RELEASE.countDown();
+            thread.join();
+            ConcurrencyLimiterInterceptor interceptor = context.getBean(ConcurrencyLimiterInterceptor.class);
+            Assert.assertEquals(1, interceptor.getConcurrencyLimiters().size());
+            Assert.assertEquals(0, interceptor.getConcurrencyLimiter("slow").getInFlight());
+        }
+    }
+
+    @Test
+    public void testDefaultName() {
+        List<String> decisions = new ArrayList<>();
+        ConcurrencyLimiterInterceptor interceptor = new ConcurrencyLimiterInterceptor();
+        interceptor.setMetrics(new LimiterMetrics() {
+            @Override
+            public void recordDecision(String operation, String key, boolean allowed) {
+                decisions.add(operation);
+            }
+
+            @Override
+            public void recordLatency(String operation, long latencyNanos) {
+                Assert.fail("latency is measured by the limiter itself");
+            }
+        });
+        ProxyFactory proxyFactory = new ProxyFactory(new ClassLevel());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        ClassLevel proxy = (ClassLevel) proxyFactory.getProxy();
+        proxy.call("1");
+        proxy.call(1L);
+        proxy.call("2");
+        //类上的注解不作用于Object声明的方法
+        Assert.assertEquals("classLevel", proxy.toString());
+        proxy.hashCode();
+        String prefix = ClassLevel.class.getName() + ".call(";
+        //重载的方法不共享限制
+        Assert.assertEquals(new HashSet<>(Arrays.asList(prefix + "java.lang.String)", prefix + "long)")),
+                interceptor.getConcurrencyLimiters().keySet());
+        Assert.assertEquals(Arrays.asList(prefix + "java.lang.String)", prefix + "long)", prefix + "java.lang.String)"),
+                decisions);
+    }
+}
@@ -0,0 +1,193 @@
+package limiter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import site.zido.coffee.extra.limiter.AnnotationLimiterOperationSource;
+import site.zido.coffee.extra.limiter.CircuitBreakerFrequencyLimiter;
+import site.zido.coffee.extra.limiter.CircuitBreakerRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.FrequencyLimiter;
+import site.zido.coffee.extra.limiter.Limiter;
+import site.zido.coffee.extra.limiter.LimiterCircuitBreaker;
+import site.zido.coffee.extra.limiter.LimiterFallbackPolicy;
+import site.zido.coffee.extra.limiter.LimiterInterceptor;
+import site.zido.coffee.extra.limiter.LimiterKeyMetrics;
+import site.zido.coffee.extra.limiter.LimiterMetrics;
+import site.zido.coffee.extra.limiter.LocalTokenBucketRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.RateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.TieredFrequencyLimiter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LimiterCircuitBreakerTest {
+    private final AtomicBoolean available = new AtomicBoolean(false);
+    private final AtomicInteger backendCalls = new AtomicInteger();
+    private LimiterCircuitBreaker breaker;
+
+    private final FrequencyLimiter broken = (key, timeout) -> {
+        backendCalls.incrementAndGet();
+        if (!available.get()) {
+            throw new IllegalStateException("connection refused");
+        }
+        return 0;
+    };
+
+    public static class Service {
+        @Limiter(key = "#p0")
+        public void single(String id) {
+        }
+
+        @Limiter(key = "'user:' + #p0")
+        @Limiter(key = "'ip:' + #p0", timeout = 30)
+        public void multiple(String id) {
+        }
+    }
+
+    @Before
+    public void init() {
+        breaker = new LimiterCircuitBreaker(available::get);
+        breaker.setMinimumCalls(5);
+        breaker.setProbeIntervalMillis(50);
+    }
+
+    @After
+    public void destroy() {
+        breaker.close();
+    }
+
+    @Test
+    public void testFailOpen() throws InterruptedException {
+        LimiterKeyMetrics metrics = new LimiterKeyMetrics();
+        CircuitBreakerFrequencyLimiter limiter = new CircuitBreakerFrequencyLimiter(broken, breaker,
+                LimiterFallbackPolicy.FAIL_OPEN);
+        limiter.setMetrics(metrics);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(0, limiter.tryGet("key", 1));
+        }
+        //达到最小调用次数后打开，不再访问后端
+        Assert.assertTrue(breaker.isOpen());
+        Assert.assertEquals(5, backendCalls.get());
+        Assert.assertEquals(5, metrics.getTotal().getErrors());
+        Assert.assertEquals(10, metrics.getTotal().getFailOpen());
+
+        available.set(true);
+        Thread.sleep(200);
+        Assert.assertFalse(breaker.isOpen());
+        Assert.assertEquals(0, limiter.tryGet("key", 1));
+        Assert.assertEquals(6, backendCalls.get());
+    }
+
+    @Test
+    public void testFailClosed() {
+        CircuitBreakerFrequencyLimiter limiter = new CircuitBreakerFrequencyLimiter(broken, breaker,
+                LimiterFallbackPolicy.FAIL_CLOSED);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(50, limiter.tryGet("key", 1));
+        }
+        Assert.assertNotNull(limiter.tryGetAll(new String[]{"a", "b"}, new long[]{1, 1}));
+    }
+
+    @Test
+    public void testLocalFallback() {
+        RateLimitAlgorithm algorithm = new RateLimitAlgorithm() {
+            @Override
+            public String getName() {
+                return TOKEN_BUCKET;
+            }
+
+            @Override
+            public long tryAcquire(String key, long rate, long periodMillis, long burst) {
+                throw new IllegalStateException("connection refused");
+            }
+        };
+        CircuitBreakerRateLimitAlgorithm guarded = new CircuitBreakerRateLimitAlgorithm(algorithm, breaker,
+                LimiterFallbackPolicy.LOCAL, new LocalTokenBucketRateLimitAlgorithm());
+        Assert.assertEquals(0, guarded.tryAcquire("key", 1, 60000, 1));
+        Assert.assertTrue(guarded.tryAcquire("key", 1, 60000, 1) > 0);
+    }
+
+    @Test
+    public void testSlowCalls() {
+        breaker.setSlowCallThreshold(1, TimeUnit.MILLISECONDS);
+        CircuitBreakerFrequencyLimiter limiter = new CircuitBreakerFrequencyLimiter((key, timeout) -> {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        }, breaker, LimiterFallbackPolicy.FAIL_OPEN);
+        for (int i = 0; i < 5; i++) {
+            limiter.tryGet("key", 1);
+        }
+        Assert.assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void testBelowThreshold() {
+        AtomicInteger counter = new AtomicInteger();
+        CircuitBreakerFrequencyLimiter limiter = new CircuitBreakerFrequencyLimiter((key, timeout) -> {
+            if (counter.incrementAndGet() % 3 == 0) {
+                throw new IllegalStateException("timeout");
+            }
+            return 0;
+        }, breaker, LimiterFallbackPolicy.FAIL_OPEN);
+        for (int i = 0; i < 30; i++) {
+            limiter.tryGet("key", 1);
+        }
+        Assert.assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void testOperationTag() throws Exception {
+        List<String> operations = Collections.synchronizedList(new ArrayList<>());
+        LimiterMetrics metrics = new LimiterMetrics() {
+            @Override
+            public void recordFailOpen(String operation, String key) {
+                operations.add(operation);
+            }
+        };
+        CircuitBreakerFrequencyLimiter limiter = new CircuitBreakerFrequencyLimiter(broken, breaker,
+                LimiterFallbackPolicy.FAIL_OPEN);
+        limiter.setMetrics(metrics);
+        LimiterInterceptor interceptor = new LimiterInterceptor();
+        interceptor.setLimiterOperationSource(new AnnotationLimiterOperationSource());
+        interceptor.setLimiter(new TieredFrequencyLimiter(limiter, 16));
+        interceptor.afterPropertiesSet();
+        ProxyFactory proxyFactory = new ProxyFactory(new Service());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        Service service = (Service) proxyFactory.getProxy();
+        service.single("1");
+        service.multiple("1");
+        //放行的指标记录为@Limiter所在的方法，而不是限制器的统一名称
+        String single = Service.class.getName() + ".single";
+        String multiple = Service.class.getName() + ".multiple";
+        Assert.assertEquals(Arrays.asList(single, multiple, multiple), operations);
+
+        operations.clear();
+        CircuitBreakerRateLimitAlgorithm algorithm = new CircuitBreakerRateLimitAlgorithm(new RateLimitAlgorithm() {
+            @Override
+            public String getName() {
+                return TOKEN_BUCKET;
+            }
+
+            @Override
+            public long tryAcquire(String key, long rate, long periodMillis, long burst) {
+                throw new IllegalStateException("connection refused");
+            }
+        }, breaker, LimiterFallbackPolicy.FAIL_OPEN, null);
+        algorithm.setMetrics(metrics);
+        Assert.assertEquals(0, algorithm.tryAcquire("login", "key", 1, 60000, 1));
+        Assert.assertEquals(0, algorithm.tryAcquire("key", 1, 60000, 1));
+        Assert.assertEquals(Arrays.asList("login", RateLimitAlgorithm.TOKEN_BUCKET), operations);
+    }
+}
@@ -0,0 +1,136 @@
+package limiter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.expression.ParseException;
+import org.springframework.util.CollectionUtils;
+import site.zido.coffee.extra.limiter.AnnotationLimiterOperationSource;
+import site.zido.coffee.extra.limiter.EnableLimiter;
+import site.zido.coffee.extra.limiter.FrequencyLimiter;
+import site.zido.coffee.extra.limiter.Limiter;
+import site.zido.coffee.extra.limiter.LimiterException;
+import site.zido.coffee.extra.limiter.LimiterInterceptor;
+import site.zido.coffee.extra.limiter.LimiterOperation;
+import site.zido.coffee.extra.limiter.LocalFrequencyLimiter;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LimiterEagerInitializationTest {
+
+    public interface Api {
+        void call(String id);
+    }
+
+    public static class Service implements Api {
+        @Override
+        @Limiter(key = "'call:' + #p0", timeout = 60)
+        public void call(String id) {
+        }
+
+        public void noop() {
+        }
+    }
+
+    public static class BrokenService {
+        @Limiter(key = "'call:' + ")
+        public void call(String id) {
+        }
+    }
+
+    @Configuration
+    @EnableLimiter(eager = true)
+    static class EagerConfiguration {
+        @Bean
+        public FrequencyLimiter limiter() {
+            return new LocalFrequencyLimiter();
+        }
+
+        @Bean
+        public Api service() {
+            return new Service();
+        }
+    }
+
+    @Configuration
+    @EnableLimiter(eager = true)
+    static class BrokenConfiguration {
+        @Bean
+        public FrequencyLimiter limiter() {
+            return new LocalFrequencyLimiter();
+        }
+
+        @Bean
+        public BrokenService service() {
+            return new BrokenService();
+        }
+    }
+
+    @Configuration
+    @EnableLimiter
+    static class LazyConfiguration {
+        @Bean
+        public FrequencyLimiter limiter() {
+            return new LocalFrequencyLimiter();
+        }
+
+        @Bean
+        public BrokenService service() {
+            return new BrokenService();
+        }
+    }
+
+    @Test
+    public void testPrecompute() throws NoSuchMethodException {
+        AtomicInteger lookups = new AtomicInteger();
+        AnnotationLimiterOperationSource source = new AnnotationLimiterOperationSource() {
+            @Override
+            protected Collection<LimiterOperation> findLimiterOperations(Method method) {
+                lookups.incrementAndGet();
+                return super.findLimiterOperations(method);
+            }
+        };
+        source.precompute(Collections.singletonList(Service.class));
+        int afterPrecompute = lookups.get();
+        Assert.assertTrue(afterPrecompute > 0);
+        //jdk代理传入的是接口方法
+        Assert.assertEquals(1, source.getLimiterOperations(Api.class.getMethod("call", String.class), Service.class).size());
+        Assert.assertEquals(1, source.getLimiterOperations(Service.class.getMethod("call", String.class), Service.class).size());
+        Assert.assertTrue(CollectionUtils.isEmpty(source.getLimiterOperations(Service.class.getMethod("noop"), Service.class)));
+        Assert.assertEquals(afterPrecompute, lookups.get());
+    }
+
+    @Test
+    public void testEager() {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(EagerConfiguration.class)) {
+            Assert.assertTrue(context.getBean(LimiterInterceptor.class).isEagerInitialization());
+            Api api = context.getBean(Api.class);
+            api.call("1");
+            try {
+                api.call("1");
+                Assert.fail();
+            } catch (LimiterException e) {
+                Assert.assertEquals("call:1", e.getKey());
+            }
+        }
+    }
+
+    @Test
+    public void testFailFast() {
+        //错误的表达式在启动时暴露，而不是在第一次请求时
+        try (AnnotationConfigApplicationContext ignored = new AnnotationConfigApplicationContext(BrokenConfiguration.class)) {
+            Assert.fail();
+        } catch (BeanCreationException | ParseException e) {
+            //expected
+        }
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(LazyConfiguration.class)) {
+            Assert.assertFalse(context.getBean(LimiterInterceptor.class).isEagerInitialization());
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package limiter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.aop.framework.ProxyFactory;
+import site.zido.coffee.extra.limiter.AnnotationLimiterOperationSource;
+import site.zido.coffee.extra.limiter.FrequencyLimiter;
+import site.zido.coffee.extra.limiter.Limiter;
+import site.zido.coffee.extra.limiter.LimiterException;
+import site.zido.coffee.extra.limiter.LimiterInterceptor;
+import site.zido.coffee.extra.limiter.LimiterKeyMetrics;
+import site.zido.coffee.extra.limiter.LimiterViolation;
+import site.zido.coffee.extra.limiter.MicrometerLimiterMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class LimiterInterceptorTest {
+    private final List<String> keys = new ArrayList<>();
+    private final List<List<String>> batches = new ArrayList<>();
+    private Service service;
+
+    public static class Service {
+        @Limiter(key = "#phone")
+        public void byName(String phone, int code) {
+        }
+
+        @Limiter(key = "#p1")
+        public void byIndex(String phone, int code) {
+        }
+
+        @Limiter(key = "'sms:' + #phone + ':' + #code")
+        public void byExpression(String phone, int code) {
+        }
+
+        @Limiter
+        public void byDefault(String phone, int code) {
+        }
+
+        public void noop() {
+        }
+
+        @Limiter(key = "'user:' + #p0")
+        @Limiter(key = "'ip:' + #p1", timeout = 30)
+        public void byMultiple(String user, String ip) {
+        }
+    }
+
+    public interface Api {
+        void call(String id);
+    }
+
+    public static class FirstApi implements Api {
+        @Override
+        @Limiter(key = "'first:' + #p0")
+        public void call(String id) {
+        }
+    }
+
+    public static class SecondApi implements Api {
+        @Override
+        @Limiter(key = "'second:' + #p0")
+        public void call(String id) {
+        }
+    }
+
+    private LimiterInterceptor interceptor;
+
+    @Before
+    public void init() throws Exception {
+        interceptor = new LimiterInterceptor();
+        interceptor.setLimiterOperationSource(new AnnotationLimiterOperationSource());
+        FrequencyLimiter limiter = new FrequencyLimiter() {
+            @Override
+            public long tryGet(String key, long timeout) {
+                keys.add(key);
+                return 0;
+            }
+
+            @Override
+            public LimiterViolation tryGetAll(String[] keys, long[] timeouts) {
+                batches.add(Arrays.asList(keys));
+                return keys[0].startsWith("user:blocked") ? new LimiterViolation(0, 1000) : null;
+            }
+        };
+        interceptor.setLimiter(limiter);
+        interceptor.afterPropertiesSet();
+        ProxyFactory proxyFactory = new ProxyFactory(new Service());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        service = (Service) proxyFactory.getProxy();
+    }
+
+    @Test
+    public void testKeys() {
+        service.byName("13800000000", 1);
+        service.byIndex("13800000000", 2);
+        service.byExpression("13800000000", 3);
+        //第二次调用使用缓存的生成器
+        service.byExpression("13800000001", 4);
+        Assert.assertEquals("13800000000", keys.get(0));
+        Assert.assertEquals("2", keys.get(1));
+        Assert.assertEquals("sms:13800000000:3", keys.get(2));
+        Assert.assertEquals("sms:13800000001:4", keys.get(3));
+    }
+
+    @Test
+    public void testDefaultKey() {
+        service.byDefault("13800000000", 1);
+        service.byDefault("13800000000", 1);
+        service.byDefault("13800000000", 2);
+        service.byDefault(null, 1);
+        Assert.assertEquals(keys.get(0), keys.get(1));
+        Assert.assertNotEquals(keys.get(0), keys.get(2));
+        Assert.assertNotEquals(keys.get(0), keys.get(3));
+        //固定长度，不随参数内容增长
+        Assert.assertTrue(keys.get(0).length() <= 16);
+    }
+
+    @Test
+    public void testBatch() {
+        service.byMultiple("u1", "127.0.0.1");
+        Assert.assertTrue(keys.isEmpty());
+        Assert.assertEquals(Collections.singletonList(Arrays.asList("user:u1", "ip:127.0.0.1")), batches);
+        try {
+            service.byMultiple("blocked", "127.0.0.1");
+            Assert.fail();
+        } catch (LimiterException e) {
+            Assert.assertEquals("user:blocked", e.getKey());
+            //剩余时间以毫秒传入，提示信息为秒
+            Assert.assertEquals(1000, e.getLast());
+            Assert.assertEquals("频率过高，请在 1 秒后重试", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerLimiterMetrics metrics = new MicrometerLimiterMetrics(registry);
+        interceptor.setMetrics(metrics);
+        service.byName("13800000000", 1);
+        service.byMultiple("u1", "127.0.0.1");
+        try {
+            service.byMultiple("blocked", "127.0.0.1");
+            Assert.fail();
+        } catch (LimiterException ignore) {
+        }
+        Assert.assertEquals(1, registry.get("coffee.limiter.requests")
+                .tags("operation", Service.class.getName() + ".byName", "result", "allowed").counter().count(), 0);
+        Assert.assertEquals(1, registry.get("coffee.limiter.requests")
+                .tags("operation", Service.class.getName() + ".byMultiple", "result", "blocked").counter().count(), 0);
+        //批量判定每次只记录一次耗时
+        Assert.assertEquals(2, registry.get("coffee.limiter.latency")
+                .tags("operation", Service.class.getName() + ".byMultiple").timer().count());
+        LimiterKeyMetrics.LimiterStats top = metrics.topLimited(1).get(0);
+        Assert.assertEquals("user:blocked", top.getKey());
+        Assert.assertEquals(1, top.getBlocked());
+        Assert.assertEquals(4, metrics.getTotal().getAllowed() + metrics.getTotal().getBlocked());
+    }
+
+    @Test
+    public void testSharedMethod() {
+        //接口方法被多个实现类共享时，各自使用自己的限流配置
+        Api first = proxy(new FirstApi());
+        Api second = proxy(new SecondApi());
+        first.call("1");
+        second.call("1");
+        first.call("2");
+        second.call("2");
+        Assert.assertEquals(Arrays.asList("first:1", "second:1", "first:2", "second:2"), keys);
+    }
+
+    @Test
+    public void testPlanBuiltOnce() throws Exception {
+        //统计每个方法与目标类查找限流配置的次数
+        Map<String, Integer> lookups = new ConcurrentHashMap<>();
+        AnnotationLimiterOperationSource delegate = new AnnotationLimiterOperationSource();
+        interceptor = new LimiterInterceptor();
+        interceptor.setLimiterOperationSource((method, targetClass) -> {
+            lookups.merge(targetClass.getSimpleName() + "#" + method.getName(), 1, Integer::sum);
+            return delegate.getLimiterOperations(method, targetClass);
+        });
+        interceptor.setLimiter(new FrequencyLimiter() {
+            @Override
+            public long tryGet(String key, long timeout) {
+                keys.add(key);
+                return 0;
+            }
+
+            @Override
+            public LimiterViolation tryGetAll(String[] keys, long[] timeouts) {
+                return null;
+            }
+        });
+        interceptor.afterPropertiesSet();
+        ProxyFactory proxyFactory = new ProxyFactory(new Service());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        Service counted = (Service) proxyFactory.getProxy();
+        Api first = proxy(new FirstApi());
+        Api second = proxy(new SecondApi());
+        for (int i = 0; i < 100; i++) {
+            counted.byExpression("13800000000", i);
+            counted.byMultiple("u" + i, "127.0.0.1");
+            counted.noop();
+            first.call(String.valueOf(i));
+            second.call(String.valueOf(i));
+        }
+        //每个方法的执行计划只在第一次调用时生成，共享的接口方法按实现类各生成一次
+        Assert.assertEquals(1, (int) lookups.get("Service#byExpression"));
+        Assert.assertEquals(1, (int) lookups.get("Service#byMultiple"));
+        Assert.assertEquals(1, (int) lookups.get("Service#noop"));
+        Assert.assertEquals(1, (int) lookups.get("FirstApi#call"));
+        Assert.assertEquals(1, (int) lookups.get("SecondApi#call"));
+        Assert.assertEquals(5, lookups.size());
+        Assert.assertEquals(300, keys.size());
+    }
+
+    private Api proxy(Api target) {
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.addInterface(Api.class);
+        proxyFactory.addAdvice(interceptor);
+        return (Api) proxyFactory.getProxy();
+    }
+}
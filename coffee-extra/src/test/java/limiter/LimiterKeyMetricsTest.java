@@ -0,0 +1,61 @@
+package limiter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import site.zido.coffee.extra.limiter.LimiterKeyMetrics;
+
+import java.util.List;
+
+public class LimiterKeyMetricsTest {
+
+    @Test
+    public void testAllowedKeysNotTracked() {
+        LimiterKeyMetrics metrics = new LimiterKeyMetrics();
+        for (int i = 0; i < 2000; i++) {
+            metrics.recordDecision("sms", "user:" + i, true, 10);
+        }
+        Assert.assertEquals(0, metrics.getTrackedKeys());
+        Assert.assertEquals(2000, metrics.getTotal().getAllowed());
+        Assert.assertEquals(20000, metrics.getTotal().getLatencyNanos());
+        metrics.recordDecision("sms", "user:1", false, 10);
+        metrics.recordDecision("sms", "user:1", true, 10);
+        LimiterKeyMetrics.LimiterStats stats = metrics.getStats("sms", "user:1");
+        Assert.assertEquals(1, stats.getBlocked());
+        Assert.assertEquals(1, stats.getAllowed());
+    }
+
+    @Test
+    public void testLateHotKey() {
+        LimiterKeyMetrics metrics = new LimiterKeyMetrics();
+        metrics.setMaximumKeys(1000);
+        for (int i = 0; i < 1000; i++) {
+            metrics.recordDecision("sms", "user:" + i, false, 10);
+        }
+        Assert.assertEquals(1000, metrics.getTrackedKeys());
+        //第1001个key出现得晚，但是被拒绝得最多
+        for (int i = 0; i < 50; i++) {
+            metrics.recordDecision("sms", "user:1000", false, 10);
+        }
+        Assert.assertTrue(metrics.getTrackedKeys() <= 1000);
+        List<LimiterKeyMetrics.LimiterStats> top = metrics.topLimited(1);
+        Assert.assertEquals("user:1000", top.get(0).getKey());
+        Assert.assertEquals(50, top.get(0).getBlocked());
+    }
+
+    @Test
+    public void testEvictKeepsHotKeys() {
+        LimiterKeyMetrics metrics = new LimiterKeyMetrics();
+        metrics.setMaximumKeys(10);
+        for (int i = 0; i < 5; i++) {
+            metrics.recordDecision("sms", "hot", false, 10);
+        }
+        metrics.recordError("sms", "broken", new IllegalStateException());
+        metrics.recordError("sms", "broken", new IllegalStateException());
+        for (int i = 0; i < 100; i++) {
+            metrics.recordDecision("sms", "cold:" + i, false, 10);
+        }
+        Assert.assertEquals(5, metrics.getStats("sms", "hot").getBlocked());
+        Assert.assertEquals(2, metrics.getStats("sms", "broken").getErrors());
+        Assert.assertTrue(metrics.getTrackedKeys() <= 10);
+    }
+}
@@ -0,0 +1,30 @@
+package limiter;
+
+import site.zido.coffee.extra.limiter.FrequencyLimiter;
+import site.zido.coffee.extra.limiter.LocalFrequencyLimiter;
+
+/**
+ * 进程内限流的单次判定耗时，结果依赖机器负载，不放在单元测试中，需要时手动运行main方法
+ */
+public class LocalLimiterBenchmark {
+
+    public static void main(String[] args) {
+        FrequencyLimiter limiter = new LocalFrequencyLimiter();
+        int keys = 1024;
+        int rounds = 2_000_000;
+        String[] names = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            names[i] = "bench-" + i;
+        }
+        //预热
+        for (int i = 0; i < rounds; i++) {
+            limiter.tryGet(names[i & (keys - 1)], 10);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            limiter.tryGet(names[i & (keys - 1)], 10);
+        }
+        double perCall = (double) (System.nanoTime() - start) / rounds;
+        System.out.printf("local limiter: %.1f ns/op (%s)%n", perCall, perCall < 1000 ? "sub-microsecond" : "over 1us");
+    }
+}
@@ -0,0 +1,180 @@
+package limiter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import site.zido.coffee.extra.limiter.FrequencyLimiter;
+import site.zido.coffee.extra.limiter.LimiterViolation;
+import site.zido.coffee.extra.limiter.LocalFrequencyLimiter;
+import site.zido.coffee.extra.limiter.LocalGcraRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.LocalLimiterTable;
+import site.zido.coffee.extra.limiter.LocalSlidingWindowRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.LocalTokenBucketRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.RateLimitAlgorithm;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LocalLimiterTest {
+
+    @Test
+    public void testFrequencyLimiter() throws InterruptedException {
+        FrequencyLimiter limiter = new LocalFrequencyLimiter();
+        Assert.assertEquals(0, limiter.tryGet("local", 1));
+        long remain = limiter.tryGet("local", 1);
+        Assert.assertTrue(remain > 0 && remain <= 1000);
+        Thread.sleep(remain + 20);
+        Assert.assertEquals(0, limiter.tryGet("local", 1));
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        FrequencyLimiter limiter = new LocalFrequencyLimiter();
+        int threads = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        AtomicInteger passed = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    barrier.await();
+                    if (limiter.tryGet("local-concurrent", 10) == 0) {
+                        passed.incrementAndGet();
+                    }
+                } catch (Exception ignore) {
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, passed.get());
+    }
+
+    @Test
+    public void testTryGetAll() throws InterruptedException {
+        FrequencyLimiter limiter = new LocalFrequencyLimiter();
+        Assert.assertEquals(0, limiter.tryGet("all-b", 10));
+        LimiterViolation violation = limiter.tryGetAll(new String[]{"all-a", "all-b"}, new long[]{10, 10});
+        Assert.assertNotNull(violation);
+        Assert.assertEquals(1, violation.getIndex());
+        //不满足的规则之前的规则没有被消耗
+        Assert.assertEquals(0, limiter.tryGet("all-a", 10));
+
+        //并发时两条规则要么一起被同一个线程占用，要么都没有被占用
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int round = 0; round < 50; round++) {
+            String x = "race-x-" + round;
+            String y = "race-y-" + round;
+            CyclicBarrier barrier = new CyclicBarrier(threads);
+            AtomicInteger passed = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                String[] keys = (i & 1) == 0 ? new String[]{x, y} : new String[]{y, x};
+                executor.execute(() -> {
+                    try {
+                        barrier.await();
+                        if (limiter.tryGetAll(keys, new long[]{10, 10}) == null) {
+                            passed.incrementAndGet();
+                        }
+                    } catch (Exception ignore) {
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(passed.get() <= 1);
+            boolean held = passed.get() == 1;
+            Assert.assertEquals(held, limiter.tryGet(x, 10) > 0);
+            Assert.assertEquals(held, limiter.tryGet(y, 10) > 0);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testAlgorithms() throws InterruptedException {
+        RateLimitAlgorithm bucket = new LocalTokenBucketRateLimitAlgorithm();
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(0, bucket.tryAcquire("bucket", 10, 1000, 5));
+        }
+        long wait = bucket.tryAcquire("bucket", 10, 1000, 5);
+        Assert.assertTrue(wait > 0 && wait <= 100);
+        Thread.sleep(wait + 20);
+        Assert.assertEquals(0, bucket.tryAcquire("bucket", 10, 1000, 5));
+
+        RateLimitAlgorithm window = new LocalSlidingWindowRateLimitAlgorithm();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(0, window.tryAcquire("window", 3, 300, 0));
+        }
+        wait = window.tryAcquire("window", 3, 300, 0);
+        Assert.assertTrue(wait > 0 && wait <= 300);
+        Thread.sleep(wait + 20);
+        Assert.assertEquals(0, window.tryAcquire("window", 3, 300, 0));
+
+        RateLimitAlgorithm gcra = new LocalGcraRateLimitAlgorithm();
+        Assert.assertEquals(0, gcra.tryAcquire("gcra", 5, 1000, 1));
+        wait = gcra.tryAcquire("gcra", 5, 1000, 1);
+        Assert.assertTrue(wait > 0 && wait <= 200);
+        Thread.sleep(wait + 20);
+        Assert.assertEquals(0, gcra.tryAcquire("gcra", 5, 1000, 1));
+    }
+
+    private static class Tag extends LocalLimiterTable.Entry {
+        Tag(String key) {
+            super(key);
+        }
+
+        void expireAt(long expireAt) {
+            this.expireAt = expireAt;
+        }
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        LocalLimiterTable<Tag> table = new LocalLimiterTable<>(Tag::new, 10, TimeUnit.MILLISECONDS, 8);
+        for (int i = 0; i < 100; i++) {
+            long now = System.currentTimeMillis();
+            table.apply("key" + i, now, tag -> {
+                tag.expireAt(now + 50);
+                return 0;
+            });
+        }
+        Assert.assertEquals(100, table.size());
+        Thread.sleep(200);
+        //访问时推进时间轮，过期条目被回收
+        long now = System.currentTimeMillis();
+        table.apply("trigger", now, tag -> 0);
+        Assert.assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testOperationCount() {
+        //使用模拟时钟，判定次数与条目创建次数都是确定的
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger decisions = new AtomicInteger();
+        LocalLimiterTable<Tag> table = new LocalLimiterTable<>(key -> {
+            created.incrementAndGet();
+            return new Tag(key);
+        }, 10, TimeUnit.MILLISECONDS, 8);
+        int keys = 1024;
+        int rounds = 100_000;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < rounds; i++) {
+            //每100次判定推进1毫秒，时间轮在判定过程中转过多圈
+            long now = start + i / 100;
+            table.apply("op-" + (i & (keys - 1)), now, tag -> {
+                decisions.incrementAndGet();
+                tag.expireAt(now + 5_000);
+                return 0;
+            });
+        }
+        //热点key只在第一次访问时创建条目，之后每次判定只执行一次，不会因回收而重试
+        Assert.assertEquals(keys, created.get());
+        Assert.assertEquals(rounds, decisions.get());
+        Assert.assertEquals(keys, table.size());
+    }
+}
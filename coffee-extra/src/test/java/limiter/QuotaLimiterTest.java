@@ -0,0 +1,109 @@
+package limiter;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.limiter.LimiterViolation;
+import site.zido.coffee.extra.limiter.LocalQuotaLimiter;
+import site.zido.coffee.extra.limiter.Quota;
+import site.zido.coffee.extra.limiter.QuotaLimiter;
+import site.zido.coffee.extra.limiter.QuotaWindow;
+import site.zido.coffee.extra.limiter.RedisQuotaLimiter;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+public class QuotaLimiterTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory factory;
+    private static RedisTemplate<String, Long> template;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        redisServer = new RedisServer(6389);
+        redisServer.start();
+        factory = new JedisConnectionFactory(new JedisPoolConfig());
+        factory.getStandaloneConfiguration().setPort(6389);
+        factory.afterPropertiesSet();
+        template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void destroy() {
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    private static void assertHierarchy(QuotaLimiter limiter, String prefix) {
+        Quota user1 = Quota.daily(prefix + "user:1", 3);
+        Quota user2 = Quota.daily(prefix + "user:2", 3);
+        Quota tenant = Quota.monthly(prefix + "tenant:1", 4);
+        Quota global = Quota.monthly(prefix + "global", 100);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertNull(limiter.tryConsume(new Quota[]{user1, tenant, global}, 1));
+        }
+        //用户配额用完，其他级不被扣减
+        LimiterViolation violation = limiter.tryConsume(new Quota[]{user1, tenant, global}, 1);
+        Assert.assertNotNull(violation);
+        Assert.assertEquals(0, violation.getIndex());
+        Assert.assertTrue(violation.getRemaining() > 0);
+        Assert.assertEquals(1, limiter.getApproximateRemaining(tenant));
+        Assert.assertEquals(97, limiter.getApproximateRemaining(global));
+        //同租户的另一个用户受租户配额限制
+        Assert.assertEquals(1, limiter.tryConsume(new Quota[]{user2, tenant, global}, 2).getIndex());
+        Assert.assertNull(limiter.tryConsume(new Quota[]{user2, tenant, global}, 1));
+        Assert.assertEquals(1, limiter.tryConsume(new Quota[]{user2, tenant, global}, 1).getIndex());
+        Assert.assertEquals(0, limiter.getApproximateRemaining(tenant));
+        Assert.assertEquals(2, limiter.getApproximateRemaining(user2));
+    }
+
+    @Test
+    public void testRedis() {
+        assertHierarchy(new RedisQuotaLimiter(template), "redis:");
+    }
+
+    @Test
+    public void testLocal() {
+        assertHierarchy(new LocalQuotaLimiter(), "local:");
+    }
+
+    @Test
+    public void testApproximateRemaining() {
+        RedisQuotaLimiter limiter = new RedisQuotaLimiter("approximate:", template);
+        Quota quota = Quota.daily("user", 10);
+        Assert.assertNull(limiter.tryConsume(new Quota[]{quota}, 4));
+        Assert.assertEquals(6, limiter.getApproximateRemaining(quota));
+        //其他实例的扣减在刷新间隔内不可见
+        RedisQuotaLimiter other = new RedisQuotaLimiter("approximate:", template);
+        Assert.assertNull(other.tryConsume(new Quota[]{quota}, 3));
+        Assert.assertEquals(6, limiter.getApproximateRemaining(quota));
+        Assert.assertEquals(3, other.getApproximateRemaining(quota));
+        limiter.setRefreshInterval(0);
+        Assert.assertEquals(3, limiter.getApproximateRemaining(quota));
+        //计数器在周期结束时过期
+        String key = "approximate:user:" + QuotaWindow.DAILY.periodOf(System.currentTimeMillis(), ZoneId.systemDefault()).getId();
+        Long ttl = template.getExpire(key);
+        Assert.assertTrue(ttl != null && ttl > 0 && ttl <= 24 * 3600);
+    }
+
+    @Test
+    public void testPeriod() {
+        ZoneId zone = ZoneId.of("Asia/Shanghai");
+        long now = ZonedDateTime.of(2024, 2, 29, 23, 30, 0, 0, zone).toInstant().toEpochMilli();
+        QuotaWindow.Period daily = QuotaWindow.DAILY.periodOf(now, zone);
+        Assert.assertEquals("20240229", daily.getId());
+        Assert.assertEquals(30 * 60 * 1000, daily.getEnd() - now);
+        QuotaWindow.Period monthly = QuotaWindow.MONTHLY.periodOf(now, zone);
+        Assert.assertEquals("202402", monthly.getId());
+        Assert.assertEquals(ZonedDateTime.of(2024, 3, 1, 0, 0, 0, 0, zone).toInstant().toEpochMilli(), monthly.getEnd());
+        Assert.assertEquals(ZonedDateTime.of(2024, 2, 1, 0, 0, 0, 0, zone).toInstant().toEpochMilli(), monthly.getStart());
+    }
+}
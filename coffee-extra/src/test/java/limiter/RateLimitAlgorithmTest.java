@@ -0,0 +1,80 @@
+package limiter;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.limiter.GcraRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.RateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.SlidingWindowRateLimitAlgorithm;
+import site.zido.coffee.extra.limiter.TokenBucketRateLimitAlgorithm;
+
+import java.io.IOException;
+
+public class RateLimitAlgorithmTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory factory;
+    private static RedisTemplate<String, Long> template;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        redisServer = new RedisServer(6388);
+        redisServer.start();
+        factory = new JedisConnectionFactory(new JedisPoolConfig());
+        factory.getStandaloneConfiguration().setPort(6388);
+        factory.afterPropertiesSet();
+        template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.afterPropertiesSet();
+        //预热连接池，避免首次建立连接的耗时影响窗口计算
+        for (String name : new String[]{"bucket", "window", "gcra"}) {
+            template.hasKey(name);
+        }
+    }
+
+    @AfterClass
+    public static void destroy() {
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    public void testTokenBucket() throws InterruptedException {
+        RateLimitAlgorithm algorithm = new TokenBucketRateLimitAlgorithm(template);
+        //每秒10个，突发5个
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(0, algorithm.tryAcquire("bucket", 10, 1000, 5));
+        }
+        long wait = algorithm.tryAcquire("bucket", 10, 1000, 5);
+        Assert.assertTrue(wait > 0 && wait <= 100);
+        Thread.sleep(wait + 20);
+        Assert.assertEquals(0, algorithm.tryAcquire("bucket", 10, 1000, 5));
+    }
+
+    @Test
+    public void testSlidingWindow() throws InterruptedException {
+        RateLimitAlgorithm algorithm = new SlidingWindowRateLimitAlgorithm(template);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(0, algorithm.tryAcquire("window", 3, 300, 0));
+        }
+        long wait = algorithm.tryAcquire("window", 3, 300, 0);
+        Assert.assertTrue(wait > 0 && wait <= 300);
+        Thread.sleep(wait + 20);
+        Assert.assertEquals(0, algorithm.tryAcquire("window", 3, 300, 0));
+    }
+
+    @Test
+    public void testGcra() throws InterruptedException {
+        RateLimitAlgorithm algorithm = new GcraRateLimitAlgorithm(template);
+        //每秒5个，不允许突发：请求之间至少间隔200ms
+        Assert.assertEquals(0, algorithm.tryAcquire("gcra", 5, 1000, 1));
+        long wait = algorithm.tryAcquire("gcra", 5, 1000, 1);
+        Assert.assertTrue(wait > 0 && wait <= 200);
+        Thread.sleep(wait + 20);
+        Assert.assertEquals(0, algorithm.tryAcquire("gcra", 5, 1000, 1));
+    }
+}
@@ -1,5 +1,6 @@
 package limiter;
 
+import site.zido.coffee.extra.limiter.LimiterViolation;
 import site.zido.coffee.extra.limiter.RedisFrequencyLimiter;
 import org.junit.After;
 import org.junit.Assert;
@@ -11,7 +12,11 @@ import redis.clients.jedis.JedisPoolConfig;
 import redis.embedded.RedisServer;
 
 import java.io.IOException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RedisFrequencyLimiterTest {
     private RedisTemplate<String, Long> template;
@@ -42,8 +47,47 @@ public class RedisFrequencyLimiterTest {
         long millis = TimeUnit.SECONDS.toMillis(timeout);
         for (int i = 0; i < 3; i++) {
             Assert.assertEquals(0, limiter.tryGet(key, timeout));
-            Assert.assertEquals(0, limiter.tryGet(key, timeout));
+            long remain = limiter.tryGet(key, timeout);
+            Assert.assertTrue(remain > 0 && remain <= millis);
             Thread.sleep(millis);
         }
     }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        RedisFrequencyLimiter limiter = new RedisFrequencyLimiter(template);
+        int threads = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        AtomicInteger passed = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    barrier.await();
+                    if (limiter.tryGet("test-concurrent", 10) == 0) {
+                        passed.incrementAndGet();
+                    }
+                } catch (Exception ignore) {
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        //同时到达的请求只有一个能拿到执行权
+        Assert.assertEquals(1, passed.get());
+    }
+
+    @Test
+    public void testTryGetAll() {
+        RedisFrequencyLimiter limiter = new RedisFrequencyLimiter(template);
+        Assert.assertEquals(0, limiter.tryGet("all-ip", 10));
+        LimiterViolation violation = limiter.tryGetAll(new String[]{"all-user", "all-ip"}, new long[]{10, 10});
+        Assert.assertNotNull(violation);
+        Assert.assertEquals(1, violation.getIndex());
+        Assert.assertTrue(violation.getRemaining() > 0);
+        //后面的规则不满足时前面的规则不会被消耗
+        Assert.assertNull(limiter.tryGetAll(new String[]{"all-user", "all-other"}, new long[]{10, 10}));
+        Assert.assertTrue(limiter.tryGet("all-user", 10) > 0);
+        Assert.assertTrue(limiter.tryGet("all-other", 10) > 0);
+    }
 }
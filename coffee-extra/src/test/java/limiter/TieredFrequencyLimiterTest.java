@@ -0,0 +1,73 @@
+package limiter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import site.zido.coffee.extra.limiter.FrequencyLimiter;
+import site.zido.coffee.extra.limiter.LocalBlockedCache;
+import site.zido.coffee.extra.limiter.TieredFrequencyLimiter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TieredFrequencyLimiterTest {
+
+    /**
+     * 模拟远端：每个key在timeout秒内只放行一次，并统计访问次数
+     */
+    private static class CountingLimiter implements FrequencyLimiter {
+        private final Map<String, Long> until = new ConcurrentHashMap<>();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public long tryGet(String key, long timeout) {
+            calls.incrementAndGet();
+            long now = System.currentTimeMillis();
+            Long current = until.get(key);
+            if (current != null && current > now) {
+                return current - now;
+            }
+            until.put(key, now + TimeUnit.SECONDS.toMillis(timeout));
+            return 0;
+        }
+    }
+
+    @Test
+    public void testRejectLocally() {
+        CountingLimiter remote = new CountingLimiter();
+        TieredFrequencyLimiter limiter = new TieredFrequencyLimiter(remote, 100);
+        Assert.assertEquals(0, limiter.tryGet("hot", 10));
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(limiter.tryGet("hot", 10) > 0);
+        }
+        //第一次拒绝之后全部在本地完成
+        Assert.assertEquals(2, remote.calls.get());
+        Assert.assertEquals(999, limiter.getCache().getHits());
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        CountingLimiter remote = new CountingLimiter();
+        TieredFrequencyLimiter limiter = new TieredFrequencyLimiter(remote, 100);
+        Assert.assertEquals(0, limiter.tryGet("expire", 1));
+        Assert.assertTrue(limiter.tryGet("expire", 1) > 0);
+        Thread.sleep(1100);
+        Assert.assertEquals(0, limiter.tryGet("expire", 1));
+    }
+
+    @Test
+    public void testMaximumSize() throws InterruptedException {
+        LocalBlockedCache cache = new LocalBlockedCache(10);
+        for (int i = 0; i < 20; i++) {
+            cache.block("key" + i, 100);
+        }
+        Assert.assertEquals(10, cache.size());
+        Assert.assertEquals(0, cache.remaining("key15"));
+        //过期条目会在空间不足时被清理
+        Thread.sleep(150);
+        cache.block("new", 1000);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(cache.remaining("new") > 0);
+    }
+}
@@ -0,0 +1,127 @@
+package lock;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.lock.AsyncDistributedLockTemplate;
+import site.zido.coffee.extra.lock.DistributedLockException;
+import site.zido.coffee.extra.lock.LockHandle;
+import site.zido.coffee.extra.lock.RedisLockNotifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncDistributedLockTemplateTest {
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory factory;
+    private static RedisLockNotifier notifier;
+    private static AsyncDistributedLockTemplate template;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        redisServer = new RedisServer(6384);
+        redisServer.start();
+        factory = new LettuceConnectionFactory("localhost", 6384);
+        factory.afterPropertiesSet();
+        notifier = new RedisLockNotifier(factory);
+        notifier.afterPropertiesSet();
+        template = new AsyncDistributedLockTemplate(factory, notifier);
+        template.setMaxPollInterval(5, TimeUnit.SECONDS);
+        template.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void destroy() throws Exception {
+        template.destroy();
+        notifier.destroy();
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    public void testTryLock() {
+        Optional<LockHandle> first = template.tryLockAsync("async-try", 10, TimeUnit.SECONDS).toCompletableFuture().join();
+        Assert.assertTrue(first.isPresent());
+        Assert.assertFalse(template.tryLockAsync("async-try", 10, TimeUnit.SECONDS).toCompletableFuture().join().isPresent());
+        Assert.assertTrue(first.get().unlockAsync().toCompletableFuture().join());
+        //重复释放不会生效
+        Assert.assertFalse(first.get().unlockAsync().toCompletableFuture().join());
+        Optional<LockHandle> second = template.tryLockAsync("async-try", 10, TimeUnit.SECONDS).toCompletableFuture().join();
+        Assert.assertTrue(second.isPresent());
+        second.get().close();
+    }
+
+    private static void flushScripts() {
+        RedisConnection connection = factory.getConnection();
+        try {
+            connection.scriptFlush();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testScriptFlushed() {
+        template.tryLockAsync("async-flush", 10, TimeUnit.SECONDS).toCompletableFuture().join().get().close();
+        flushScripts();
+        //EVALSHA返回NOSCRIPT后使用EVAL重试
+        Optional<LockHandle> handle = template.tryLockAsync("async-flush", 10, TimeUnit.SECONDS).toCompletableFuture().join();
+        Assert.assertTrue(handle.isPresent());
+        flushScripts();
+        Assert.assertTrue(handle.get().unlockAsync().toCompletableFuture().join());
+    }
+
+    @Test
+    public void testNotifiedOnRelease() {
+        LockHandle holder = template.lockAsync("async-notify", 30, TimeUnit.SECONDS).toCompletableFuture().join();
+        CompletableFuture<LockHandle> waiter = template.lockAsync("async-notify", 30, TimeUnit.SECONDS).toCompletableFuture();
+        Assert.assertFalse(waiter.isDone());
+        long start = System.nanoTime();
+        holder.close();
+        LockHandle handle = waiter.join();
+        //通过通知唤醒，不需要等到租期结束或者轮询间隔
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        handle.close();
+    }
+
+    @Test
+    public void testTimeout() {
+        LockHandle holder = template.lockAsync("async-timeout", 30, TimeUnit.SECONDS).toCompletableFuture().join();
+        try {
+            template.lockAsync("async-timeout", 30, TimeUnit.SECONDS, 200, TimeUnit.MILLISECONDS).toCompletableFuture().join();
+            Assert.fail();
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof DistributedLockException);
+        } finally {
+            holder.close();
+        }
+    }
+
+    @Test
+    public void testMutualExclusion() {
+        int waiters = 50;
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        //所有等待者都由lettuce与调度线程驱动，不占用调用方线程
+        for (int i = 0; i < waiters; i++) {
+            futures.add(template.lockAsync("async-mutex", 10, TimeUnit.SECONDS).thenCompose(handle -> {
+                max.accumulateAndGet(current.incrementAndGet(), Math::max);
+                current.decrementAndGet();
+                return handle.unlockAsync();
+            }).thenAccept(released -> Assert.assertTrue(released)).toCompletableFuture());
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        Assert.assertEquals(1, max.get());
+    }
+}
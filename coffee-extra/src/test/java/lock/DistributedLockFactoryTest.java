@@ -0,0 +1,110 @@
+package lock;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.lock.DistributedLockFactory;
+import site.zido.coffee.extra.lock.DistributedRedisLock;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+public class DistributedLockFactoryTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory factory;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        redisServer = new RedisServer(6392);
+        redisServer.start();
+        factory = new JedisConnectionFactory(new JedisPoolConfig());
+        factory.getStandaloneConfiguration().setPort(6392);
+        factory.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void destroy() {
+        DistributedRedisLock.releaseAll();
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    private static DistributedLockFactory lockFactory() {
+        DistributedLockFactory lockFactory = new DistributedLockFactory();
+        lockFactory.setRedisConnectionFactory(factory);
+        return lockFactory;
+    }
+
+    private static Lock getLock(DistributedLockFactory lockFactory, String key) throws InterruptedException {
+        Lock lock = lockFactory.getLock(key, 30, TimeUnit.SECONDS);
+        //保证访问时间不同
+        Thread.sleep(3);
+        return lock;
+    }
+
+    @Test
+    public void testHitAndMiss() throws InterruptedException {
+        DistributedLockFactory lockFactory = lockFactory();
+        Lock lock = getLock(lockFactory, "factory:hit");
+        Assert.assertSame(lock, getLock(lockFactory, "factory:hit"));
+        //租期不同的锁分别缓存
+        Assert.assertNotSame(lock, lockFactory.getLock("factory:hit", 10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, lockFactory.getHitCount());
+        Assert.assertEquals(2, lockFactory.getMissCount());
+        Assert.assertEquals(2, lockFactory.size());
+    }
+
+    @Test
+    public void testMaximumSize() throws InterruptedException {
+        DistributedLockFactory lockFactory = lockFactory();
+        lockFactory.setMaximumSize(10);
+        Lock first = getLock(lockFactory, "factory:size:0");
+        Lock held = getLock(lockFactory, "factory:size:1");
+        for (int i = 2; i < 10; i++) {
+            getLock(lockFactory, "factory:size:" + i);
+        }
+        Assert.assertEquals(10, lockFactory.size());
+        Assert.assertEquals(0, lockFactory.getEvictionCount());
+        //最早创建的锁重新被访问，另一个最早的锁被持有
+        Assert.assertSame(first, getLock(lockFactory, "factory:size:0"));
+        Assert.assertTrue(held.tryLock());
+        try {
+            //超过容量后淘汰到90%，跳过被持有的锁，按访问时间淘汰2和3
+            getLock(lockFactory, "factory:size:10");
+            Assert.assertEquals(9, lockFactory.size());
+            Assert.assertEquals(2, lockFactory.getEvictionCount());
+            Assert.assertSame(first, getLock(lockFactory, "factory:size:0"));
+            Assert.assertSame(held, getLock(lockFactory, "factory:size:1"));
+            long misses = lockFactory.getMissCount();
+            getLock(lockFactory, "factory:size:2");
+            Assert.assertEquals(misses + 1, lockFactory.getMissCount());
+        } finally {
+            held.unlock();
+        }
+    }
+
+    @Test
+    public void testMaxIdle() throws InterruptedException {
+        DistributedLockFactory lockFactory = lockFactory();
+        lockFactory.setMaxIdle(50, TimeUnit.MILLISECONDS);
+        Lock idle = getLock(lockFactory, "factory:idle:0");
+        Lock held = getLock(lockFactory, "factory:idle:1");
+        Assert.assertTrue(held.tryLock());
+        try {
+            Thread.sleep(100);
+            //新建锁时顺便淘汰闲置过久的锁，被持有的锁即使闲置也不会被淘汰
+            getLock(lockFactory, "factory:idle:2");
+            Assert.assertEquals(2, lockFactory.size());
+            Assert.assertEquals(1, lockFactory.getEvictionCount());
+            Assert.assertSame(held, getLock(lockFactory, "factory:idle:1"));
+            Assert.assertNotSame(idle, getLock(lockFactory, "factory:idle:0"));
+        } finally {
+            held.unlock();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package lock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.lock.AnnotationDistributedLockOperationSource;
+import site.zido.coffee.extra.lock.BeanFactoryDistributedLockOperationSourceAdvisor;
+import site.zido.coffee.extra.lock.DistributedLock;
+import site.zido.coffee.extra.lock.DistributedLockException;
+import site.zido.coffee.extra.lock.DistributedLockFactory;
+import site.zido.coffee.extra.lock.DistributedLockInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+public class DistributedLockInterceptorTest {
+    private final List<String> keys = new ArrayList<>();
+    private final List<String> released = new ArrayList<>();
+    private final Set<String> busy = new HashSet<>();
+    private final AnnotationDistributedLockOperationSource operationSource = new AnnotationDistributedLockOperationSource();
+    private Service service;
+
+    public static class Service {
+        @DistributedLock(key = "'order:' + #orderId")
+        public void byName(String orderId, int amount) {
+        }
+
+        @DistributedLock(key = "'order:' + #p1")
+        public void byIndex(String orderId, int amount) {
+        }
+
+        @DistributedLock
+        public void overload(String id) {
+        }
+
+        @DistributedLock
+        public void overload(long id) {
+        }
+
+        @DistributedLock(key = "'fail:' + #p0")
+        public void fail(String id) {
+            throw new IllegalStateException(id);
+        }
+
+        @DistributedLock(key = "'overrun'", lease = 300, waitTime = 1000, unit = TimeUnit.MILLISECONDS)
+        public void guarded(Runnable body) {
+            body.run();
+        }
+
+        public void noop() {
+        }
+    }
+
+    private class RecordingLock implements Lock {
+        private final String key;
+
+        RecordingLock(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void lock() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void lockInterruptibly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean tryLock() {
+            keys.add(key);
+            return !busy.contains(key);
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) {
+            return tryLock();
+        }
+
+        @Override
+        public void unlock() {
+            released.add(key);
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Before
+    public void init() {
+        service = proxy(new DistributedLockFactory() {
+            @Override
+            public Lock getLock(String key, long timeout, TimeUnit unit) {
+                return new RecordingLock(key);
+            }
+        });
+    }
+
+    private Service proxy(DistributedLockFactory lockFactory) {
+        DistributedLockInterceptor interceptor = new DistributedLockInterceptor();
+        interceptor.setLockOperationSource(operationSource);
+        interceptor.setLockFactory(lockFactory);
+        interceptor.afterPropertiesSet();
+        ProxyFactory proxyFactory = new ProxyFactory(new Service());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        return (Service) proxyFactory.getProxy();
+    }
+
+    @Test
+    public void testKeys() {
+        service.byName("1001", 1);
+        service.byIndex("1001", 2);
+        //第二次调用使用缓存的表达式
+        service.byName("1002", 3);
+        service.noop();
+        Assert.assertEquals("order:1001", keys.get(0));
+        Assert.assertEquals("order:2", keys.get(1));
+        Assert.assertEquals("order:1002", keys.get(2));
+        Assert.assertEquals(3, keys.size());
+        Assert.assertEquals(keys, released);
+    }
+
+    @Test
+    public void testDefaultKey() {
+        service.overload("1");
+        service.overload(1L);
+        service.overload("2");
+        Assert.assertEquals(3, keys.size());
+        //重载的方法不共用同一个锁
+        Assert.assertNotEquals(keys.get(0), keys.get(1));
+        Assert.assertEquals(keys.get(0), keys.get(2));
+        Assert.assertTrue(keys.get(0).startsWith(Service.class.getName() + "#overload("));
+    }
+
+    @Test
+    public void testLockFailed() {
+        busy.add("order:1001");
+        try {
+            service.byName("1001", 1);
+            Assert.fail();
+        } catch (DistributedLockException e) {
+            Assert.assertEquals("order:1001", e.getKey());
+        }
+        //没有拿到的锁不释放
+        Assert.assertTrue(released.isEmpty());
+    }
+
+    @Test
+    public void testReleaseOnException() {
+        try {
+            service.fail("1");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("1", e.getMessage());
+        }
+        Assert.assertEquals(1, released.size());
+        Assert.assertEquals("fail:1", released.get(0));
+    }
+
+    @Test
+    public void testLeaseOverrun() throws Exception {
+        RedisServer redisServer = new RedisServer(6395);
+        redisServer.start();
+        JedisConnectionFactory factory = new JedisConnectionFactory(new JedisPoolConfig());
+        factory.getStandaloneConfiguration().setPort(6395);
+        factory.afterPropertiesSet();
+        DistributedLockFactory lockFactory = new DistributedLockFactory();
+        lockFactory.setRedisConnectionFactory(factory);
+        Service redisService = proxy(lockFactory);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        List<Future<?>> next = new ArrayList<>();
+        try {
+            //第一次调用超过租期，另一个线程在其结束前通过同一个锁实例拿到锁
+            redisService.guarded(() -> {
+                try {
+                    Thread.sleep(400);
+                    next.add(executor.submit(() -> redisService.guarded(() -> {
+                        entered.countDown();
+                        try {
+                            finish.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    })));
+                    Assert.assertTrue(entered.await(1, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            //第一次调用结束时只释放自己的加锁，第二次调用的锁仍然有效
+            Assert.assertTrue(exists(factory, "overrun"));
+            Assert.assertFalse(lockFactory.getLock("overrun", 300, TimeUnit.MILLISECONDS).tryLock());
+            finish.countDown();
+            next.get(0).get();
+            Assert.assertFalse(exists(factory, "overrun"));
+        } finally {
+            finish.countDown();
+            executor.shutdownNow();
+            lockFactory.destroy();
+            factory.destroy();
+            redisServer.stop();
+        }
+    }
+
+    private static boolean exists(RedisConnectionFactory factory, String key) {
+        RedisConnection connection = factory.getConnection();
+        try {
+            return connection.exists(key.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testAdvisor() throws NoSuchMethodException {
+        BeanFactoryDistributedLockOperationSourceAdvisor advisor = new BeanFactoryDistributedLockOperationSourceAdvisor();
+        advisor.setLockOperationSource(operationSource);
+        Assert.assertTrue(advisor.getPointcut().getMethodMatcher()
+                .matches(Service.class.getMethod("byName", String.class, int.class), Service.class));
+        Assert.assertFalse(advisor.getPointcut().getMethodMatcher()
+                .matches(Service.class.getMethod("noop"), Service.class));
+        Assert.assertEquals(1, operationSource
+                .getLockOperations(Service.class.getMethod("byIndex", String.class, int.class), Service.class).size());
+    }
+}
@@ -9,8 +9,13 @@ import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import redis.clients.jedis.JedisPoolConfig;
 import redis.embedded.RedisServer;
 import site.zido.coffee.extra.lock.DistributedRedisLock;
+import site.zido.coffee.extra.lock.LockContentionMetrics;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public class DistributedRedisLockTest {
@@ -59,4 +64,136 @@ public class DistributedRedisLockTest {
         lock1.unlock();
         Assert.assertTrue(lock2.tryLock());
     }
+
+    @Test
+    public void testFencingToken() throws InterruptedException {
+        DistributedRedisLock lock1 = new DistributedRedisLock("fencing", factory, 200, TimeUnit.MILLISECONDS, false);
+        DistributedRedisLock lock2 = new DistributedRedisLock("fencing", factory, 200, TimeUnit.MILLISECONDS, false);
+        LockContentionMetrics metrics = new LockContentionMetrics();
+        lock2.setMetrics(metrics);
+        lock1.afterPropertiesSet();
+        lock2.afterPropertiesSet();
+        long token1 = lock1.tryLockWithFencingToken();
+        Assert.assertTrue(token1 > 0);
+        Assert.assertEquals(token1, lock1.getFencingToken());
+        Assert.assertEquals(DistributedRedisLock.NOT_ACQUIRED, lock2.tryLockWithFencingToken());
+        //租期过期后其他持有者拿到更大的token
+        long token2 = lock2.tryLockWithFencingToken(1, TimeUnit.SECONDS);
+        Assert.assertTrue(token2 > token1);
+        //重试之间有退避，不会在租期内空转
+        Assert.assertTrue(metrics.getStats("fencing").getRoundTrips() < 20);
+        lock2.unlock();
+        Assert.assertEquals(DistributedRedisLock.NOT_ACQUIRED, lock2.getFencingToken());
+    }
+
+    @Test
+    public void testMetrics() throws InterruptedException {
+        LockContentionMetrics metrics = new LockContentionMetrics();
+        DistributedRedisLock lock1 = new DistributedRedisLock("metrics", factory, 100, TimeUnit.MILLISECONDS, false);
+        DistributedRedisLock lock2 = new DistributedRedisLock("metrics", factory, 100, TimeUnit.MILLISECONDS, false);
+        lock1.setMetrics(metrics);
+        lock2.setMetrics(metrics);
+        lock1.afterPropertiesSet();
+        lock2.afterPropertiesSet();
+        Assert.assertTrue(lock1.tryLock());
+        Assert.assertFalse(lock2.tryLock());
+        //租期结束前一直重试
+        Assert.assertTrue(lock2.tryLock(1, TimeUnit.SECONDS));
+        lock2.unlock();
+        lock1.unlock();
+        LockContentionMetrics.LockStats stats = metrics.getStats("metrics");
+        Assert.assertEquals(3, stats.getAttempts());
+        Assert.assertEquals(2, stats.getAcquired());
+        Assert.assertTrue(stats.getRoundTrips() > 3);
+        Assert.assertEquals(1, stats.getLeaseExpired());
+        Assert.assertEquals("metrics", metrics.topContended(1).get(0).getKey());
+    }
+
+    @Test
+    public void testReleaseAll() throws InterruptedException {
+        DistributedRedisLock expired = new DistributedRedisLock("release-all", factory, 100, TimeUnit.MILLISECONDS, false);
+        DistributedRedisLock holder = new DistributedRedisLock("release-all", factory, 10, TimeUnit.SECONDS, false);
+        DistributedRedisLock checker = new DistributedRedisLock("release-all", factory, 10, TimeUnit.SECONDS, false);
+        expired.afterPropertiesSet();
+        holder.afterPropertiesSet();
+        checker.afterPropertiesSet();
+        Assert.assertTrue(expired.tryLock());
+        Assert.assertTrue(holder.tryLock(1, TimeUnit.SECONDS));
+        //相同key的旧持有者解锁不能影响新持有者的登记
+        expired.unlock();
+        List<DistributedRedisLock> locks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            DistributedRedisLock lock = new DistributedRedisLock("release-all-" + i, factory, 10, TimeUnit.SECONDS, false);
+            lock.afterPropertiesSet();
+            Assert.assertTrue(lock.tryLock());
+            locks.add(lock);
+        }
+        DistributedRedisLock.releaseAll();
+        Assert.assertFalse(holder.isHeld());
+        Assert.assertTrue(checker.tryLock());
+        checker.unlock();
+        for (DistributedRedisLock lock : locks) {
+            Assert.assertFalse(lock.isHeld());
+            Assert.assertTrue(lock.tryLock());
+            lock.unlock();
+        }
+    }
+
+    @Test
+    public void testSharedInstance() throws Exception {
+        //工厂缓存的实例被多个线程共用，旧持有者租期结束后解锁不能释放新持有者的锁
+        DistributedRedisLock lock = new DistributedRedisLock("shared", factory, 100, TimeUnit.MILLISECONDS, false);
+        lock.afterPropertiesSet();
+        Assert.assertTrue(lock.tryLock());
+        Thread.sleep(150);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Assert.assertTrue(executor.submit(() -> lock.tryLock(1, TimeUnit.SECONDS)).get());
+            lock.unlock();
+            Assert.assertTrue(lock.isHeld());
+            DistributedRedisLock other = new DistributedRedisLock("shared", factory, 10, TimeUnit.SECONDS, false);
+            other.afterPropertiesSet();
+            Assert.assertFalse(other.tryLock());
+            //没有加锁的实例解锁不做任何操作
+            other.unlock();
+            Assert.assertFalse(other.tryLock());
+            executor.submit(lock::unlock).get();
+            Assert.assertFalse(lock.isHeld());
+            Assert.assertTrue(other.tryLock());
+            other.unlock();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStaleFencingHolder() throws Exception {
+        LockContentionMetrics metrics = new LockContentionMetrics();
+        DistributedRedisLock lock = new DistributedRedisLock("stale-fencing", factory, 100, TimeUnit.MILLISECONDS, false);
+        lock.setMetrics(metrics);
+        lock.afterPropertiesSet();
+        long tokenA = lock.tryLockWithFencingToken();
+        Assert.assertTrue(tokenA > 0);
+        Thread.sleep(150);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            long tokenB = executor.submit(() -> lock.tryLockWithFencingToken(1, TimeUnit.SECONDS)).get();
+            Assert.assertTrue(tokenB > tokenA);
+            //A的租期已过，解锁只记录过期，B的锁与token保持不变
+            Assert.assertEquals(tokenA, lock.getFencingToken());
+            lock.unlock();
+            Assert.assertEquals(DistributedRedisLock.NOT_ACQUIRED, lock.getFencingToken());
+            Assert.assertEquals(1, metrics.getStats("stale-fencing").getLeaseExpired());
+            Assert.assertEquals(tokenB, (long) executor.submit(lock::getFencingToken).get());
+            DistributedRedisLock other = new DistributedRedisLock("stale-fencing", factory, 10, TimeUnit.SECONDS, false);
+            other.afterPropertiesSet();
+            Assert.assertFalse(other.tryLock());
+            executor.submit(lock::unlock).get();
+            Assert.assertEquals(1, metrics.getStats("stale-fencing").getLeaseExpired());
+            Assert.assertTrue(other.tryLock());
+            other.unlock();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,112 @@
+package lock;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.lock.DistributedSemaphore;
+import site.zido.coffee.extra.lock.RedisLockNotifier;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DistributedSemaphoreTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory factory;
+    private static RedisLockNotifier notifier;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        redisServer = new RedisServer(6383);
+        redisServer.start();
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(32);
+        factory = new JedisConnectionFactory(config);
+        factory.getStandaloneConfiguration().setPort(6383);
+        factory.afterPropertiesSet();
+        notifier = new RedisLockNotifier(factory);
+        notifier.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void destroy() throws Exception {
+        notifier.destroy();
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    private static DistributedSemaphore newSemaphore(String key, int permits, long lease, TimeUnit unit) {
+        DistributedSemaphore semaphore = new DistributedSemaphore(key, factory, notifier, permits, lease, unit);
+        semaphore.afterPropertiesSet();
+        return semaphore;
+    }
+
+    @Test
+    public void testPermits() {
+        DistributedSemaphore semaphore1 = newSemaphore("semaphore-test", 3, 10, TimeUnit.SECONDS);
+        DistributedSemaphore semaphore2 = newSemaphore("semaphore-test", 3, 10, TimeUnit.SECONDS);
+        Assert.assertTrue(semaphore1.tryAcquire(2));
+        Assert.assertEquals(1, semaphore2.availablePermits());
+        Assert.assertFalse(semaphore2.tryAcquire(2));
+        Assert.assertTrue(semaphore2.tryAcquire());
+        semaphore1.release(2);
+        Assert.assertEquals(2, semaphore2.availablePermits());
+        //只能释放自己持有的许可
+        try {
+            semaphore1.release();
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+        semaphore2.destroy();
+        Assert.assertEquals(3, semaphore1.availablePermits());
+    }
+
+    @Test
+    public void testLeaseExpire() throws InterruptedException {
+        DistributedSemaphore crashed = newSemaphore("semaphore-expire", 1, 200, TimeUnit.MILLISECONDS);
+        DistributedSemaphore semaphore = newSemaphore("semaphore-expire", 1, 200, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(crashed.tryAcquire());
+        Assert.assertFalse(semaphore.tryAcquire());
+        //持有者不释放，租期结束后许可被回收
+        Assert.assertTrue(semaphore.tryAcquire(1, TimeUnit.SECONDS));
+        semaphore.release();
+    }
+
+    @Test
+    public void testConcurrency() throws InterruptedException {
+        int permits = 4;
+        int threads = 12;
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            DistributedSemaphore semaphore = newSemaphore("semaphore-concurrency", permits, 10, TimeUnit.SECONDS);
+            new Thread(() -> {
+                try {
+                    for (int j = 0; j < 10; j++) {
+                        semaphore.acquire();
+                        try {
+                            max.accumulateAndGet(current.incrementAndGet(), Math::max);
+                            Thread.sleep(2);
+                        } finally {
+                            current.decrementAndGet();
+                            semaphore.release();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        Assert.assertTrue(max.get() <= permits);
+        Assert.assertEquals(permits, newSemaphore("semaphore-concurrency", permits, 10, TimeUnit.SECONDS).availablePermits());
+    }
+}
@@ -0,0 +1,204 @@
+package lock;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.lock.FairDistributedRedisLock;
+import site.zido.coffee.extra.lock.LockContentionMetrics;
+import site.zido.coffee.extra.lock.RedisLockNotifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FairDistributedRedisLockTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory factory;
+    private static RedisLockNotifier notifier;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        redisServer = new RedisServer(6382);
+        redisServer.start();
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(32);
+        factory = new JedisConnectionFactory(config);
+        factory.getStandaloneConfiguration().setPort(6382);
+        factory.afterPropertiesSet();
+        notifier = new RedisLockNotifier(factory);
+        notifier.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void destroy() throws Exception {
+        notifier.destroy();
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    private static FairDistributedRedisLock newFairLock(String key) {
+        FairDistributedRedisLock lock = new FairDistributedRedisLock(key, factory, notifier, 10, TimeUnit.SECONDS, false);
+        lock.afterPropertiesSet();
+        return lock;
+    }
+
+    @Test
+    public void testLock() throws InterruptedException {
+        FairDistributedRedisLock lock1 = newFairLock("fair-test");
+        FairDistributedRedisLock lock2 = newFairLock("fair-test");
+        lock1.lock();
+        Assert.assertFalse(lock2.tryLock());
+        Assert.assertFalse(lock2.tryLock(100, TimeUnit.MILLISECONDS));
+        lock1.unlock();
+        //超时的等待者已经离开队列，不会阻塞后来者
+        Assert.assertTrue(lock2.tryLock());
+        lock2.unlock();
+    }
+
+    @Test
+    public void testFifo() throws InterruptedException {
+        FairDistributedRedisLock holder = newFairLock("fair-fifo");
+        holder.lock();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        int waiters = 5;
+        CountDownLatch done = new CountDownLatch(waiters);
+        for (int i = 0; i < waiters; i++) {
+            final int index = i;
+            FairDistributedRedisLock lock = newFairLock("fair-fifo");
+            new Thread(() -> {
+                try {
+                    if (lock.tryLock(10, TimeUnit.SECONDS)) {
+                        order.add(index);
+                        lock.unlock();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+            //保证按顺序进入等待队列
+            Thread.sleep(100);
+        }
+        //已经有人排队时，非阻塞加锁不能插队
+        holder.unlock();
+        Assert.assertFalse(newFairLock("fair-fifo").tryLock());
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), order);
+    }
+
+    @Test
+    public void testHandOffLatency() throws InterruptedException {
+        LockContentionMetrics metrics = new LockContentionMetrics();
+        FairDistributedRedisLock holder = newFairLock("fair-handoff");
+        holder.lock();
+        int waiters = 5;
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<Long> handOffNanos = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong releasedAt = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(waiters);
+        for (int i = 0; i < waiters; i++) {
+            final int index = i;
+            FairDistributedRedisLock lock = newFairLock("fair-handoff");
+            lock.setMetrics(metrics);
+            new Thread(() -> {
+                try {
+                    if (lock.tryLock(10, TimeUnit.SECONDS)) {
+                        handOffNanos.add(System.nanoTime() - releasedAt.get());
+                        order.add(index);
+                        Thread.sleep(20);
+                        releasedAt.set(System.nanoTime());
+                        lock.unlock();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+            Thread.sleep(100);
+        }
+        releasedAt.set(System.nanoTime());
+        holder.unlock();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), order);
+        //释放通知直接唤醒队首，交接时间远小于按waiterTimeout一半重试的5秒
+        for (long nanos : handOffNanos) {
+            Assert.assertTrue("hand-off took " + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms",
+                    nanos < TimeUnit.SECONDS.toNanos(1));
+        }
+        //每个等待者只在入队和被唤醒时访问redis，其他等待者不会被无效唤醒
+        LockContentionMetrics.LockStats stats = metrics.getStats("fair-handoff");
+        Assert.assertEquals(waiters, stats.getAcquired());
+        Assert.assertTrue("round trips: " + stats.getRoundTrips(), stats.getRoundTrips() <= 2L * waiters);
+    }
+
+    @Test
+    public void testSharedInstance() throws InterruptedException {
+        FairDistributedRedisLock shared = newFairLock("fair-shared");
+        FairDistributedRedisLock other = newFairLock("fair-shared");
+        shared.lock();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(3);
+        //同一个实例上的两个线程与另一个实例交替排队
+        waiter(shared, "first", 10_000, order, done);
+        waiter(other, "second", 10_000, order, done);
+        waiter(shared, "timeout", 200, order, done);
+        Thread.sleep(400);
+        //超时离开的线程只移除自己的排队，不影响同一实例上的其他线程
+        shared.unlock();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("first", "second"), order);
+    }
+
+    @Test
+    public void testStaleHolder() throws Exception {
+        FairDistributedRedisLock shared = new FairDistributedRedisLock("fair-stale", factory, notifier, 100, TimeUnit.MILLISECONDS, false);
+        shared.afterPropertiesSet();
+        FairDistributedRedisLock other = newFairLock("fair-stale");
+        shared.lock();
+        Thread.sleep(150);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Assert.assertTrue(executor.submit(() -> shared.tryLock(1, TimeUnit.SECONDS)).get());
+            //租期已过的旧持有者解锁不会释放同一实例上新持有者的锁
+            shared.unlock();
+            Assert.assertTrue(shared.isHeld());
+            Assert.assertFalse(other.tryLock());
+            executor.submit(shared::unlock).get();
+            Assert.assertTrue(other.tryLock());
+            other.unlock();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void waiter(FairDistributedRedisLock lock, String name, long waitMillis,
+                               List<String> order, CountDownLatch done) throws InterruptedException {
+        new Thread(() -> {
+            try {
+                if (lock.tryLock(waitMillis, TimeUnit.MILLISECONDS)) {
+                    order.add(name);
+                    lock.unlock();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        }).start();
+        //保证按顺序进入等待队列
+        Thread.sleep(100);
+    }
+}
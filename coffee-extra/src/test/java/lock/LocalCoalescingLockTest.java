@@ -0,0 +1,158 @@
+package lock;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.lock.DistributedRedisLock;
+import site.zido.coffee.extra.lock.LocalCoalescingLock;
+import site.zido.coffee.extra.lock.LockContentionMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LocalCoalescingLockTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory factory;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        redisServer = new RedisServer(6391);
+        redisServer.start();
+        factory = new JedisConnectionFactory(new JedisPoolConfig());
+        factory.getStandaloneConfiguration().setPort(6391);
+        factory.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void destroy() {
+        DistributedRedisLock.releaseAll();
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    private static DistributedRedisLock redisLock(String key) {
+        DistributedRedisLock lock = new DistributedRedisLock(key, factory, 30, TimeUnit.SECONDS, false);
+        lock.afterPropertiesSet();
+        return lock;
+    }
+
+    private static LocalCoalescingLock coalescingLock(String key, LockContentionMetrics metrics, boolean handoff) {
+        DistributedRedisLock delegate = redisLock(key);
+        delegate.setMetrics(metrics);
+        LocalCoalescingLock lock = new LocalCoalescingLock(delegate, 30, TimeUnit.SECONDS);
+        lock.setHandoff(handoff);
+        return lock;
+    }
+
+    /**
+     * 当前线程持有锁时启动waiters个线程排队，全部进入等待后释放
+     */
+    private static void runQueued(LocalCoalescingLock lock, int waiters) throws InterruptedException {
+        AtomicInteger entered = new AtomicInteger();
+        lock.lock();
+        List<Thread> threads = new ArrayList<>(waiters);
+        for (int i = 0; i < waiters; i++) {
+            Thread thread = new Thread(() -> {
+                lock.lock();
+                try {
+                    entered.incrementAndGet();
+                } finally {
+                    lock.unlock();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        while (lock.getQueueLength() < waiters) {
+            Thread.sleep(1);
+        }
+        lock.unlock();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(waiters, entered.get());
+    }
+
+    /**
+     * 最后一个持有者释放后，其他实例可以拿到redis中的锁
+     */
+    private static void assertReleased(String key) {
+        DistributedRedisLock checker = redisLock(key);
+        Assert.assertTrue(checker.tryLock());
+        checker.unlock();
+    }
+
+    @Test
+    public void testHandoff() throws InterruptedException {
+        LockContentionMetrics metrics = new LockContentionMetrics();
+        LocalCoalescingLock lock = coalescingLock("coalescing:handoff", metrics, true);
+        runQueued(lock, 1);
+        //等待者直接接手，不访问redis
+        Assert.assertEquals(1, metrics.getStats("coalescing:handoff").getAcquired());
+        Assert.assertFalse(lock.isHeld());
+        assertReleased("coalescing:handoff");
+
+        LockContentionMetrics withoutHandoff = new LockContentionMetrics();
+        runQueued(coalescingLock("coalescing:no-handoff", withoutHandoff, false), 1);
+        Assert.assertEquals(2, withoutHandoff.getStats("coalescing:no-handoff").getAcquired());
+    }
+
+    @Test
+    public void testMaxHandoffs() throws InterruptedException {
+        LockContentionMetrics metrics = new LockContentionMetrics();
+        LocalCoalescingLock lock = coalescingLock("coalescing:max", metrics, true);
+        lock.setMaxHandoffs(2);
+        //6次持有：1次加锁+2次交接，之后释放重新加锁+2次交接
+        runQueued(lock, 5);
+        Assert.assertEquals(2, metrics.getStats("coalescing:max").getAcquired());
+        Assert.assertFalse(lock.isHeld());
+        assertReleased("coalescing:max");
+    }
+
+    @Test
+    public void testWaiterTimeout() throws InterruptedException {
+        LocalCoalescingLock lock = coalescingLock("coalescing:timeout", new LockContentionMetrics(), true);
+        //等待者在持有者释放之前超时离开
+        lock.lock();
+        Thread waiter = new Thread(() -> {
+            try {
+                Assert.assertFalse(lock.tryLock(10, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waiter.join();
+        lock.unlock();
+        Assert.assertFalse(lock.isHeld());
+        assertReleased("coalescing:timeout");
+
+        //持有者看到等待者并交接的同时等待者超时离开，redis中的锁不能无人持有
+        for (int i = 0; i < 50; i++) {
+            lock.lock();
+            Thread racer = new Thread(() -> {
+                try {
+                    if (lock.tryLock(ThreadLocalRandom.current().nextInt(3), TimeUnit.MILLISECONDS)) {
+                        lock.unlock();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            racer.start();
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+            lock.unlock();
+            racer.join();
+            Assert.assertFalse(lock.isHeld());
+        }
+        assertReleased("coalescing:timeout");
+    }
+}
@@ -0,0 +1,68 @@
+package lock;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import site.zido.coffee.extra.lock.LockContentionMetrics;
+import site.zido.coffee.extra.lock.MicrometerLockMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+public class LockContentionMetricsTest {
+
+    @Test
+    public void testLateHotKey() {
+        LockContentionMetrics metrics = new LockContentionMetrics();
+        metrics.setMaximumKeys(1000);
+        for (int i = 0; i < 1000; i++) {
+            metrics.recordAcquire("order:" + i, true, 1000, 1);
+        }
+        Assert.assertEquals(1000, metrics.getTrackedKeys());
+        //第1001个key出现得晚，但是竞争最激烈
+        for (int i = 0; i < 10; i++) {
+            metrics.recordAcquire("order:1000", false, TimeUnit.MILLISECONDS.toNanos(10), 5);
+        }
+        Assert.assertTrue(metrics.getTrackedKeys() <= 1000);
+        LockContentionMetrics.LockStats top = metrics.topContended(1).get(0);
+        Assert.assertEquals("order:1000", top.getKey());
+        Assert.assertEquals(10, top.getFailed());
+    }
+
+    @Test
+    public void testEvictKeepsContendedKeys() {
+        LockContentionMetrics metrics = new LockContentionMetrics();
+        metrics.setMaximumKeys(10);
+        metrics.recordAcquire("hot", true, TimeUnit.SECONDS.toNanos(1), 10);
+        for (int i = 0; i < 100; i++) {
+            metrics.recordAcquire("cold:" + i, true, 1, 1);
+        }
+        Assert.assertNotNull(metrics.getStats("hot"));
+        Assert.assertTrue(metrics.getTrackedKeys() <= 10);
+    }
+
+    @Test
+    public void testKeyMeters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerLockMetrics metrics = new MicrometerLockMetrics(registry);
+        metrics.setTagKeys(true);
+        metrics.setMaximumKeys(2);
+        metrics.recordAcquire("hot", true, TimeUnit.SECONDS.toNanos(1), 1);
+        Timer timer = registry.get("coffee.lock.key.acquire").tags("key", "hot", "result", "acquired").timer();
+        metrics.recordAcquire("hot", true, TimeUnit.SECONDS.toNanos(1), 1);
+        Assert.assertSame(timer, registry.get("coffee.lock.key.acquire").tags("key", "hot", "result", "acquired").timer());
+        Assert.assertEquals(2, timer.count());
+        metrics.recordAcquire("cold:1", true, 1, 1);
+        metrics.recordAcquire("cold:2", true, 1, 1);
+        //被淘汰的key的指标一起移除
+        Assert.assertNotNull(registry.find("coffee.lock.key.acquire").tags("key", "hot").timer());
+        Assert.assertNull(registry.find("coffee.lock.key.acquire").tags("key", "cold:1").timer());
+        //汇总指标包含所有key，且不带key标签
+        Timer total = registry.get("coffee.lock.acquire").tags("result", "acquired").timer();
+        Assert.assertEquals(4, total.count());
+        for (Meter meter : registry.find("coffee.lock.acquire").meters()) {
+            Assert.assertNull(meter.getId().getTag("key"));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package lock;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.lock.AbstractDistributedLock;
+import site.zido.coffee.extra.lock.DistributedRedisLock;
+import site.zido.coffee.extra.lock.FairDistributedRedisLock;
+import site.zido.coffee.extra.lock.LockContentionMetrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * jvm退出扫尾时，lettuce连接在同一个pipeline中释放所有锁
+ */
+public class PipelinedReleaseTest {
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory factory;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        redisServer = new RedisServer(6394);
+        redisServer.start();
+        factory = new LettuceConnectionFactory("localhost", 6394);
+        factory.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void destroy() {
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    private static boolean exists(String key) {
+        RedisConnection connection = factory.getConnection();
+        try {
+            return connection.exists(key.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testReleaseAll() throws InterruptedException {
+        LockContentionMetrics metrics = new LockContentionMetrics();
+        DistributedRedisLock lock1 = new DistributedRedisLock("pipeline:1", factory, 30, TimeUnit.SECONDS, false);
+        DistributedRedisLock lock2 = new DistributedRedisLock("pipeline:2", factory, 30, TimeUnit.SECONDS, false);
+        FairDistributedRedisLock fair = new FairDistributedRedisLock("pipeline:fair", factory, null, 30, TimeUnit.SECONDS, false);
+        lock1.setMetrics(metrics);
+        lock2.setMetrics(metrics);
+        fair.setMetrics(metrics);
+        lock1.afterPropertiesSet();
+        lock2.afterPropertiesSet();
+        fair.afterPropertiesSet();
+        Assert.assertTrue(lock1.tryLock());
+        Assert.assertTrue(lock2.tryLock());
+        Assert.assertTrue(fair.tryLock());
+        Assert.assertTrue(exists("pipeline:1"));
+        Assert.assertTrue(exists("pipeline:fair"));
+        Thread.sleep(5);
+
+        AbstractDistributedLock.releaseAll();
+        Assert.assertFalse(exists("pipeline:1"));
+        Assert.assertFalse(exists("pipeline:2"));
+        Assert.assertFalse(exists("pipeline:fair"));
+        //与unlock一样记录持有时间
+        for (String key : new String[]{"pipeline:1", "pipeline:2", "pipeline:fair"}) {
+            Assert.assertTrue(metrics.getStats(key).getHoldNanos() >= TimeUnit.MILLISECONDS.toNanos(5));
+        }
+
+        //已经释放的锁不会重复释放，其他持有者可以继续使用
+        DistributedRedisLock other = new DistributedRedisLock("pipeline:1", factory, 30, TimeUnit.SECONDS, false);
+        other.afterPropertiesSet();
+        Assert.assertTrue(other.tryLock());
+        lock1.unlock();
+        Assert.assertTrue(exists("pipeline:1"));
+        other.unlock();
+        Assert.assertFalse(exists("pipeline:1"));
+    }
+}
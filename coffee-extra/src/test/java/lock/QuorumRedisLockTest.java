@@ -0,0 +1,155 @@
+package lock;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.lock.QuorumRedisLock;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class QuorumRedisLockTest {
+    private static final int[] PORTS = {6385, 6386, 6387};
+    private static final List<RedisServer> servers = new ArrayList<>();
+    private static final List<JedisConnectionFactory> factories = new ArrayList<>();
+
+    @BeforeClass
+    public static void init() throws IOException {
+        for (int port : PORTS) {
+            RedisServer server = new RedisServer(port);
+            server.start();
+            servers.add(server);
+            JedisConnectionFactory factory = new JedisConnectionFactory(new JedisPoolConfig());
+            factory.getStandaloneConfiguration().setPort(port);
+            factory.afterPropertiesSet();
+            factories.add(factory);
+        }
+    }
+
+    @AfterClass
+    public static void destroy() {
+        for (JedisConnectionFactory factory : factories) {
+            factory.destroy();
+        }
+        for (RedisServer server : servers) {
+            server.stop();
+        }
+    }
+
+    private static QuorumRedisLock newLock(String key, List<? extends RedisConnectionFactory> nodes) {
+        QuorumRedisLock lock = new QuorumRedisLock(key, new ArrayList<>(nodes), 10, TimeUnit.SECONDS, false);
+        lock.setNodeTimeout(500, TimeUnit.MILLISECONDS);
+        lock.afterPropertiesSet();
+        return lock;
+    }
+
+    private static boolean exists(RedisConnectionFactory factory, String key) {
+        RedisConnection connection = factory.getConnection();
+        try {
+            return connection.exists(key.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testLock() {
+        QuorumRedisLock lock1 = newLock("quorum", factories);
+        QuorumRedisLock lock2 = newLock("quorum", factories);
+        Assert.assertTrue(lock1.tryLock());
+        Assert.assertTrue(lock1.getRemainingValidity() > 0);
+        Assert.assertFalse(lock2.tryLock());
+        lock1.unlock();
+        for (JedisConnectionFactory factory : factories) {
+            Assert.assertFalse(exists(factory, "quorum"));
+        }
+        Assert.assertTrue(lock2.tryLock());
+        lock2.unlock();
+    }
+
+    @Test
+    public void testFailedAttemptKeepsHolder() {
+        //同一个实例上失败的加锁尝试不能释放当前持有者的key
+        QuorumRedisLock lock = newLock("quorum-shared", factories);
+        Assert.assertTrue(lock.tryLock());
+        Assert.assertFalse(lock.tryLock());
+        for (JedisConnectionFactory factory : factories) {
+            Assert.assertTrue(exists(factory, "quorum-shared"));
+        }
+        Assert.assertFalse(newLock("quorum-shared", factories).tryLock());
+        lock.unlock();
+        for (JedisConnectionFactory factory : factories) {
+            Assert.assertFalse(exists(factory, "quorum-shared"));
+        }
+    }
+
+    @Test
+    public void testStaleHolder() throws Exception {
+        QuorumRedisLock shared = new QuorumRedisLock("quorum-stale", new ArrayList<>(factories), 300, TimeUnit.MILLISECONDS, false);
+        shared.setNodeTimeout(100, TimeUnit.MILLISECONDS);
+        shared.afterPropertiesSet();
+        Assert.assertTrue(shared.tryLock());
+        Thread.sleep(400);
+        Assert.assertEquals(0, shared.getRemainingValidity());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Assert.assertTrue(executor.submit(() -> shared.tryLock()).get());
+            Assert.assertTrue(executor.submit(shared::getRemainingValidity).get() > 0);
+            //租期已过的旧持有者解锁不会释放同一实例上新持有者在各节点上的key
+            shared.unlock();
+            for (JedisConnectionFactory factory : factories) {
+                Assert.assertTrue(exists(factory, "quorum-stale"));
+            }
+            executor.submit(shared::unlock).get();
+            for (JedisConnectionFactory factory : factories) {
+                Assert.assertFalse(exists(factory, "quorum-stale"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMinorityFailsAndCleansUp() {
+        //另一个持有者已经在两个节点上持有锁
+        QuorumRedisLock other = newLock("quorum-minority", factories.subList(0, 2));
+        Assert.assertTrue(other.tryLock());
+        QuorumRedisLock lock = newLock("quorum-minority", factories);
+        Assert.assertFalse(lock.tryLock());
+        //只拿到少数节点时不能留下部分加锁的key
+        Assert.assertFalse(exists(factories.get(2), "quorum-minority"));
+        other.unlock();
+        Assert.assertTrue(lock.tryLock());
+        lock.unlock();
+    }
+
+    @Test
+    public void testNodeFailure() throws IOException {
+        QuorumRedisLock lock = newLock("quorum-failure", factories);
+        servers.get(2).stop();
+        try {
+            //一个节点故障时多数派仍然可以加锁
+            Assert.assertTrue(lock.tryLock());
+            lock.unlock();
+            servers.get(1).stop();
+            try {
+                Assert.assertFalse(lock.tryLock());
+            } finally {
+                servers.get(1).start();
+            }
+        } finally {
+            servers.get(2).start();
+        }
+    }
+}
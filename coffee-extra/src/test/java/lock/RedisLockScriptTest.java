@@ -0,0 +1,129 @@
+package lock;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+import site.zido.coffee.extra.lock.DistributedLockFactory;
+import site.zido.coffee.extra.lock.DistributedRedisLock;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+public class RedisLockScriptTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory jedisFactory;
+    private static LettuceConnectionFactory lettuceFactory;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        redisServer = new RedisServer(6393);
+        redisServer.start();
+        jedisFactory = new JedisConnectionFactory(new JedisPoolConfig());
+        jedisFactory.getStandaloneConfiguration().setPort(6393);
+        jedisFactory.afterPropertiesSet();
+        lettuceFactory = new LettuceConnectionFactory("localhost", 6393);
+        lettuceFactory.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void destroy() {
+        DistributedRedisLock.releaseAll();
+        jedisFactory.destroy();
+        lettuceFactory.destroy();
+        redisServer.stop();
+    }
+
+    private static void flushScripts() {
+        RedisConnection connection = jedisFactory.getConnection();
+        try {
+            connection.scriptFlush();
+            connection.resetConfigStats();
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * SCRIPT LOAD的执行次数
+     */
+    private static long scriptLoads() {
+        RedisConnection connection = jedisFactory.getConnection();
+        try {
+            String stats = connection.info("commandstats").getProperty("cmdstat_script");
+            if (stats == null) {
+                return 0;
+            }
+            return Long.parseLong(stats.substring("calls=".length(), stats.indexOf(',')));
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static void assertLockCycle(Lock lock, RedisConnectionFactory connectionFactory, String key) {
+        Assert.assertTrue(lock.tryLock());
+        DistributedRedisLock other = new DistributedRedisLock(key, connectionFactory, 30, TimeUnit.SECONDS, false);
+        other.afterPropertiesSet();
+        Assert.assertFalse(other.tryLock());
+        lock.unlock();
+        Assert.assertTrue(other.tryLock());
+        other.unlock();
+    }
+
+    private static void assertFallback(Lock lock, RedisConnectionFactory connectionFactory, String key) {
+        assertLockCycle(lock, connectionFactory, key);
+        //脚本缓存被清空后，EVALSHA返回NOSCRIPT，加载脚本后重试成功
+        flushScripts();
+        assertLockCycle(lock, connectionFactory, key);
+        long loads = scriptLoads();
+        Assert.assertTrue(loads > 0);
+        //脚本已经重新加载，之后只使用EVALSHA
+        assertLockCycle(lock, connectionFactory, key);
+        Assert.assertEquals(loads, scriptLoads());
+        //两次调用之间再次清空
+        flushScripts();
+        assertLockCycle(lock, connectionFactory, key);
+    }
+
+    @Test
+    public void testJedis() {
+        DistributedRedisLock lock = new DistributedRedisLock("script:jedis", jedisFactory, 30, TimeUnit.SECONDS, false);
+        lock.afterPropertiesSet();
+        assertFallback(lock, jedisFactory, "script:jedis");
+    }
+
+    @Test
+    public void testLettuce() {
+        DistributedRedisLock lock = new DistributedRedisLock("script:lettuce", lettuceFactory, 30, TimeUnit.SECONDS, false);
+        lock.afterPropertiesSet();
+        assertFallback(lock, lettuceFactory, "script:lettuce");
+    }
+
+    @Test
+    public void testSharedConnection() {
+        DistributedLockFactory lockFactory = new DistributedLockFactory();
+        lockFactory.setRedisConnectionFactory(lettuceFactory);
+        lockFactory.setUseSharedConnection(true);
+        try {
+            Lock lock = lockFactory.getLock("script:shared", 30, TimeUnit.SECONDS);
+            assertFallback(lock, lettuceFactory, "script:shared");
+        } finally {
+            lockFactory.destroy();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSharedConnectionRequiresLettuce() {
+        DistributedLockFactory lockFactory = new DistributedLockFactory();
+        lockFactory.setRedisConnectionFactory(jedisFactory);
+        lockFactory.setUseSharedConnection(true);
+        lockFactory.getLock("script:shared:jedis", 30, TimeUnit.SECONDS);
+    }
+}